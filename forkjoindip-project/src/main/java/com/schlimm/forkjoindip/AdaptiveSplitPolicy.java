@@ -0,0 +1,127 @@
+package com.schlimm.forkjoindip;
+
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decides at run time whether a {@link GenericRecursiveTask} forks subtasks or computes its input sequentially in the
+ * current thread. {@link DecomposableInput#computeDirectly()} only says how far an input can be split, splitting that
+ * far creates one task per item, which costs more than it gains for cheap items. The policy stops splitting if
+ * <ul>
+ * <li>the current worker already has more than surplusThreshold tasks queued that no idle worker has stolen yet
+ * ({@link ForkJoinTask#getSurplusQueuedTaskCount()}), so there is enough parallel slack to keep all cores busy, or</li>
+ * <li>the input is estimated to take less than minimumTaskNanos, based on the cost per item measured on the inputs
+ * computed so far, so a forked task would not pay for its own overhead.</li>
+ * </ul>
+ * One policy is shared by all tasks of a computation, the measured cost is shared with it.
+ * 
+ * @author Niklas Schlimm
+ * 
+ */
+public class AdaptiveSplitPolicy {
+
+	/**
+	 * Default surplus of queued tasks, as recommended in the {@link ForkJoinTask#getSurplusQueuedTaskCount()} docs.
+	 */
+	public static final int DEFAULT_SURPLUS_THRESHOLD = 3;
+
+	/**
+	 * Default minimum duration of a task worth forking.
+	 */
+	public static final long DEFAULT_MINIMUM_TASK_NANOS = 50000;
+
+	private final int surplusThreshold;
+
+	private final long minimumTaskNanos;
+
+	private final AtomicLong measuredNanos = new AtomicLong();
+
+	private final AtomicLong measuredItems = new AtomicLong();
+
+	private final AtomicLong splits = new AtomicLong();
+
+	private final AtomicLong sequentialComputations = new AtomicLong();
+
+	public AdaptiveSplitPolicy() {
+		this(DEFAULT_SURPLUS_THRESHOLD, DEFAULT_MINIMUM_TASK_NANOS);
+	}
+
+	/**
+	 * @param surplusThreshold
+	 *            queued tasks of the current worker above which no more tasks are forked
+	 * @param minimumTaskNanos
+	 *            estimated duration below which an input is not split, 0 to decide on the surplus alone
+	 */
+	public AdaptiveSplitPolicy(int surplusThreshold, long minimumTaskNanos) {
+		super();
+		if (surplusThreshold < 0 || minimumTaskNanos < 0)
+			throw new IllegalArgumentException("Threshold and minimum task time must not be negative: " + surplusThreshold + "/" + minimumTaskNanos);
+		this.surplusThreshold = surplusThreshold;
+		this.minimumTaskNanos = minimumTaskNanos;
+	}
+
+	/**
+	 * Called by a task whose input could still be split.
+	 * 
+	 * @return true if the input should be split and the parts forked, false if it should be computed sequentially
+	 */
+	public boolean shouldSplit(DecomposableInput<?> input) {
+		boolean split = ForkJoinTask.getSurplusQueuedTaskCount() <= surplusThreshold && !isCheap(input);
+		(split ? splits : sequentialComputations).incrementAndGet();
+		return split;
+	}
+
+	private boolean isCheap(DecomposableInput<?> input) {
+		int size = input.size();
+		double nanosPerItem = getNanosPerItem();
+		return size > 0 && !Double.isNaN(nanosPerItem) && size * nanosPerItem < minimumTaskNanos;
+	}
+
+	/**
+	 * Records the time an input that could not be split further took to compute.
+	 */
+	public void record(DecomposableInput<?> input, long nanos) {
+		int size = input.size();
+		if (size > 0) {
+			measuredItems.addAndGet(size);
+			measuredNanos.addAndGet(nanos);
+		}
+	}
+
+	/**
+	 * @return the measured mean cost of an item, NaN before the first input of known size was computed
+	 */
+	public double getNanosPerItem() {
+		long items = measuredItems.get();
+		return items == 0 ? Double.NaN : (double) measuredNanos.get() / items;
+	}
+
+	/**
+	 * @return number of times an input was split and forked
+	 */
+	public long getSplits() {
+		return splits.get();
+	}
+
+	/**
+	 * @return number of times a splittable input was computed sequentially instead
+	 */
+	public long getSequentialComputations() {
+		return sequentialComputations.get();
+	}
+
+	public int getSurplusThreshold() {
+		return surplusThreshold;
+	}
+
+	public long getMinimumTaskNanos() {
+		return minimumTaskNanos;
+	}
+
+	@Override
+	public String toString() {
+		return "Adaptive split policy - surplus threshold : " + surplusThreshold + " - minimum task ns : " + minimumTaskNanos + " - ns per item : "
+				+ String.format("%.2f", getNanosPerItem()) + " - splits : " + getSplits() + " - sequential : " + getSequentialComputations();
+	}
+
+}
@@ -3,7 +3,8 @@ package com.schlimm.forkjoindip;
 import java.util.concurrent.ForkJoinTask;
 
 /**
- * Abstract class that wraps the result of a fork and join task.
+ * Abstract class that wraps the result of a fork and join task. {@link SlotResult} and {@link DoubleReductionResult}
+ * compose results without copying or boxing them.
  * 
  * @author Niklas Schlimm
  * 
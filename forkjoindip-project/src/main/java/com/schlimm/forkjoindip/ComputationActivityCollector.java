@@ -0,0 +1,100 @@
+package com.schlimm.forkjoindip;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collector;
+import java.util.stream.Stream;
+
+/**
+ * Exposes a {@link ComputationActivityBridge} as {@link Collector}: every input of the stream is computed by the bridge
+ * and the results are composed in stream order, the same way {@link GenericRecursiveTask} composes them. Together with
+ * {@link DecomposableInputSpliterator} an existing bridge runs in a (parallel) {@link Stream}, e.g.
+ * <code>DecomposableInputSpliterator.stream(input, true).collect(ComputationActivityCollector.of(bridge))</code>.
+ * 
+ * @author Niklas Schlimm
+ * 
+ * @param <A>
+ *            the input type of the computation
+ * @param <B>
+ *            the result type of the computation
+ */
+public class ComputationActivityCollector<A, B> implements
+		Collector<DecomposableInput<A>, ComputationActivityCollector.Composition<B>, ComposableResult<B>> {
+
+	private final ComputationActivityBridge<A, B> activity;
+
+	public ComputationActivityCollector(ComputationActivityBridge<A, B> activity) {
+		super();
+		this.activity = activity;
+	}
+
+	public static <A, B> ComputationActivityCollector<A, B> of(ComputationActivityBridge<A, B> activity) {
+		return new ComputationActivityCollector<A, B>(activity);
+	}
+
+	@Override
+	public Supplier<Composition<B>> supplier() {
+		return new Supplier<Composition<B>>() {
+			@Override
+			public Composition<B> get() {
+				return new Composition<B>();
+			}
+		};
+	}
+
+	@Override
+	public BiConsumer<Composition<B>, DecomposableInput<A>> accumulator() {
+		return new BiConsumer<Composition<B>, DecomposableInput<A>>() {
+			@Override
+			public void accept(Composition<B> composition, DecomposableInput<A> input) {
+				composition.append(activity.compute(input));
+			}
+		};
+	}
+
+	@Override
+	public BinaryOperator<Composition<B>> combiner() {
+		return new BinaryOperator<Composition<B>>() {
+			@Override
+			public Composition<B> apply(Composition<B> left, Composition<B> right) {
+				return left.append(right.result);
+			}
+		};
+	}
+
+	@Override
+	public Function<Composition<B>, ComposableResult<B>> finisher() {
+		return new Function<Composition<B>, ComposableResult<B>>() {
+			@Override
+			public ComposableResult<B> apply(Composition<B> composition) {
+				return composition.result;
+			}
+		};
+	}
+
+	@Override
+	public Set<Characteristics> characteristics() {
+		return Collections.emptySet();
+	}
+
+	/**
+	 * Mutable container of the results composed so far, null as long as there are none.
+	 */
+	public static class Composition<B> {
+
+		private ComposableResult<B> result;
+
+		Composition<B> append(ComposableResult<B> next) {
+			if (next == null)
+				return this;
+			// compose puts the argument first
+			result = result == null ? next : next.compose(result);
+			return this;
+		}
+	}
+
+}
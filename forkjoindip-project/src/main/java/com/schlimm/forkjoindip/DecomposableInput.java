@@ -40,6 +40,26 @@ public abstract class DecomposableInput<A> {
 	 */
 	public abstract boolean computeDirectly();
 
+	/**
+	 * Subclasses override this method if they know how many items the raw input holds, the
+	 * {@link AdaptiveSplitPolicy} uses it to estimate the cost of the input.
+	 * 
+	 * @return number of items in the raw input, -1 if unknown
+	 */
+	public int size() {
+		return -1;
+	}
+
+	/**
+	 * Subclasses override this method if they know into how many inputs that are computed directly the raw input
+	 * decomposes, {@link DecomposableInputSpliterator} is only sized if they do.
+	 * 
+	 * @return number of inputs computed directly, -1 if unknown
+	 */
+	public int leaves() {
+		return -1;
+	}
+
 	/**
 	 * Subclasses implement this method to decompose the input into smaller peaces if task is too large to be computed
 	 * directly.
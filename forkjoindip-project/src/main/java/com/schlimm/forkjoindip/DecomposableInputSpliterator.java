@@ -0,0 +1,107 @@
+package com.schlimm.forkjoindip;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Exposes a {@link DecomposableInput} as {@link Spliterator}, so the input can be processed by a {@link Stream}. The
+ * elements are the inputs that can be computed directly, in the order of the input. {@link #trySplit()} splits the
+ * way {@link GenericRecursiveTask} does: it decomposes the input and hands out the first half of the parts.
+ * <p>
+ * The spliterator is {@link #SIZED} and {@link #SUBSIZED} if the input knows its {@link DecomposableInput#leaves()},
+ * the parts must know theirs as well then. Otherwise {@link DecomposableInput#size()} serves as estimate.
+ * 
+ * @author Niklas Schlimm
+ * 
+ * @param <A>
+ *            the input type of the computation
+ */
+public class DecomposableInputSpliterator<A> implements Spliterator<DecomposableInput<A>> {
+
+	// Inputs not processed yet, in input order
+	private final Deque<DecomposableInput<A>> pending = new ArrayDeque<DecomposableInput<A>>();
+
+	private final boolean sized;
+
+	public DecomposableInputSpliterator(DecomposableInput<A> input) {
+		this(input, input.leaves() >= 0);
+	}
+
+	private DecomposableInputSpliterator(DecomposableInput<A> input, boolean sized) {
+		super();
+		this.pending.add(input);
+		this.sized = sized;
+	}
+
+	/**
+	 * @return a stream of the inputs that can be computed directly
+	 */
+	public static <A> Stream<DecomposableInput<A>> stream(DecomposableInput<A> input, boolean parallel) {
+		return StreamSupport.stream(new DecomposableInputSpliterator<A>(input), parallel);
+	}
+
+	@Override
+	public boolean tryAdvance(Consumer<? super DecomposableInput<A>> action) {
+		DecomposableInput<A> next = pending.pollFirst();
+		while (next != null && !next.computeDirectly()) {
+			// an input may decompose into no parts at all
+			pushFirst(next);
+			next = pending.pollFirst();
+		}
+		if (next == null)
+			return false;
+		action.accept(next);
+		return true;
+	}
+
+	@Override
+	public Spliterator<DecomposableInput<A>> trySplit() {
+		if (pending.size() == 1) {
+			if (pending.peekFirst().computeDirectly())
+				return null;
+			pushFirst(pending.pollFirst());
+		}
+		if (pending.size() < 2)
+			return null;
+		// hand out the first half, this spliterator keeps the rest
+		int prefix = pending.size() / 2;
+		DecomposableInputSpliterator<A> split = new DecomposableInputSpliterator<A>(pending.pollFirst(), sized);
+		for (int i = 1; i < prefix; i++) {
+			split.pending.addLast(pending.pollFirst());
+		}
+		return split;
+	}
+
+	/**
+	 * Replaces the input by its parts at the head of the pending inputs.
+	 */
+	private void pushFirst(DecomposableInput<A> input) {
+		List<DecomposableInput<A>> parts = input.decompose();
+		for (int i = parts.size() - 1; i >= 0; i--) {
+			pending.addFirst(parts.get(i));
+		}
+	}
+
+	@Override
+	public long estimateSize() {
+		long estimate = 0;
+		for (DecomposableInput<A> input : pending) {
+			long size = sized ? input.leaves() : input.size();
+			if (size < 0)
+				return Long.MAX_VALUE;
+			estimate += size;
+		}
+		return estimate;
+	}
+
+	@Override
+	public int characteristics() {
+		return ORDERED | NONNULL | IMMUTABLE | (sized ? SIZED | SUBSIZED : 0);
+	}
+
+}
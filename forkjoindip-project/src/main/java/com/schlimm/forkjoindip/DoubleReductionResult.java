@@ -0,0 +1,65 @@
+package com.schlimm.forkjoindip;
+
+/**
+ * Result that reduces the outputs of a computation to a primitive double, e.g. a sum or a maximum. Composing two
+ * results applies the {@link Reduction} to their values and stores it in this result, nothing is boxed or allocated.
+ * The value is only boxed if it is read with {@link #getRawResult()}, use {@link #getValue()} instead.
+ * <p>
+ * {@link #compose(ComposableResult)} returns this result, a result must not be used anymore after it has been composed
+ * into another one.
+ * 
+ * @author Niklas Schlimm
+ * 
+ */
+public class DoubleReductionResult extends ComposableResult<Double> {
+
+	private final Reduction reduction;
+
+	private double value;
+
+	public DoubleReductionResult(Reduction reduction) {
+		this(reduction, reduction.identity());
+	}
+
+	public DoubleReductionResult(Reduction reduction, double value) {
+		super(null);
+		this.reduction = reduction;
+		this.value = value;
+	}
+
+	/**
+	 * Reduces another output of the leaf into this result.
+	 */
+	public DoubleReductionResult add(double anotherValue) {
+		value = reduction.apply(value, anotherValue);
+		return this;
+	}
+
+	@Override
+	public ComposableResult<Double> compose(ComposableResult<Double> anotherPeace) {
+		DoubleReductionResult other = (DoubleReductionResult) anotherPeace;
+		if (other.reduction != reduction)
+			throw new IllegalArgumentException("Results of different reductions can not be composed: " + reduction + "/" + other.reduction);
+		value = reduction.apply(value, other.value);
+		return this;
+	}
+
+	public double getValue() {
+		return value;
+	}
+
+	public Reduction getReduction() {
+		return reduction;
+	}
+
+	@Override
+	public Double getRawResult() {
+		return value;
+	}
+
+	@Override
+	public String toString() {
+		return reduction + ": " + value;
+	}
+
+}
@@ -0,0 +1,53 @@
+package com.schlimm.forkjoindip;
+
+/**
+ * The {@link ForkAndJoinProcessor}s a {@link GenericRecursiveTask} can distribute its decomposed input with.
+ * 
+ * @author Niklas Schlimm
+ * 
+ */
+public enum ForkAndJoinStrategy {
+
+	/**
+	 * Exactly two parts, see {@link GenericSplitProcessor}.
+	 */
+	BINARY_SPLIT {
+		@Override
+		public ForkAndJoinProcessor<GenericRecursiveTask> createProcessor(GenericRecursiveTask task) {
+			return new GenericSplitProcessor(task);
+		}
+	},
+
+	/**
+	 * Any number of parts, see {@link NWaySplitProcessor}.
+	 */
+	N_WAY {
+		@Override
+		public ForkAndJoinProcessor<GenericRecursiveTask> createProcessor(GenericRecursiveTask task) {
+			return new NWaySplitProcessor(task);
+		}
+	},
+
+	/**
+	 * Any number of parts, see {@link InvokeAllProcessor}.
+	 */
+	INVOKE_ALL {
+		@Override
+		public ForkAndJoinProcessor<GenericRecursiveTask> createProcessor(GenericRecursiveTask task) {
+			return new InvokeAllProcessor(task);
+		}
+	},
+
+	/**
+	 * Any number of parts, left part computed as a batch, see {@link ForkRightJoinLeftProcessor}.
+	 */
+	FORK_RIGHT_JOIN_LEFT {
+		@Override
+		public ForkAndJoinProcessor<GenericRecursiveTask> createProcessor(GenericRecursiveTask task) {
+			return new ForkRightJoinLeftProcessor(task);
+		}
+	};
+
+	public abstract ForkAndJoinProcessor<GenericRecursiveTask> createProcessor(GenericRecursiveTask task);
+
+}
@@ -23,7 +23,7 @@ public interface ForkAndJoinTaskPrototype<A> {
 
 	/**
 	 * Sub classes can decide which {@link ForkAndJoinProcessor} to use for distrubuting subtasks accross multiple
-	 * threads.
+	 * threads, {@link GenericRecursiveTask} selects it by its {@link ForkAndJoinStrategy}.
 	 * 
 	 * @return the created {@link ForkAndJoinProcessor}
 	 */
@@ -0,0 +1,68 @@
+package com.schlimm.forkjoindip;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Distributes the input the way the parallel streams do: the parts right of the first one are forked, the current
+ * thread goes on splitting the first part without creating a task for it, until the first part can not be split
+ * further or enough tasks are queued for the idle workers ({@link ForkJoinTask#getSurplusQueuedTaskCount()} above
+ * the batch threshold). The remaining first part is then computed as one batch in the current thread, without any
+ * further task, and the forked parts are joined left to right: the leftmost forked part, which was forked last, is
+ * joined first and every result is composed with the part to its right.
+ * 
+ * @author Niklas Schlimm
+ * 
+ */
+public class ForkRightJoinLeftProcessor extends ForkAndJoinProcessor<GenericRecursiveTask> {
+
+	/**
+	 * Default surplus of queued tasks that ends splitting of the left part.
+	 */
+	public static final int DEFAULT_BATCH_THRESHOLD = 3;
+
+	private int batchThreshold;
+
+	public ForkRightJoinLeftProcessor(GenericRecursiveTask forkAndJoinTask) {
+		this(forkAndJoinTask, DEFAULT_BATCH_THRESHOLD);
+	}
+
+	public ForkRightJoinLeftProcessor(GenericRecursiveTask forkAndJoinTask, int batchThreshold) {
+		super(forkAndJoinTask);
+		this.batchThreshold = batchThreshold;
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	@Override
+	public ComposableResult forkAndJoin(List<DecomposableInput<?>> decomposedInput) {
+		if (decomposedInput.isEmpty())
+			throw new IllegalArgumentException("Expected at least one list entry!");
+		// forked right to left, so the list runs from the right end of the input towards the left part
+		List<GenericRecursiveTask> forked = new ArrayList<GenericRecursiveTask>();
+		DecomposableInput<?> left = forkRight(decomposedInput, forked);
+		while (!left.computeDirectly() && ForkJoinTask.getSurplusQueuedTaskCount() <= batchThreshold) {
+			left = forkRight((List) left.decompose(), forked);
+		}
+		ComposableResult result = forkAndJoinTask.prototype(left).computeSequentially();
+		for (int i = forked.size() - 1; i >= 0; i--) {
+			result = forked.get(i).join().compose(result);
+		}
+		return result;
+	}
+
+	/**
+	 * Forks all parts but the first, last to first.
+	 * 
+	 * @return the first part
+	 */
+	private DecomposableInput<?> forkRight(List<DecomposableInput<?>> parts, List<GenericRecursiveTask> forked) {
+		for (int i = parts.size() - 1; i > 0; i--) {
+			GenericRecursiveTask task = forkAndJoinTask.prototype(parts.get(i));
+			task.fork();
+			forked.add(task);
+		}
+		return parts.get(0);
+	}
+
+}
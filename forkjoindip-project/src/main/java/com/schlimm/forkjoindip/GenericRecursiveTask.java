@@ -4,8 +4,11 @@ import java.util.List;
 import java.util.concurrent.RecursiveTask;
 
 /**
- * A generic recursive task that implements the typical fork and join workflow. Input objects are split into two sub
- * lists by using {@link GenericSplitProcessor}.
+ * A generic recursive task that implements the typical fork and join workflow. Input objects are decomposed and
+ * distributed by the {@link ForkAndJoinProcessor} of the {@link ForkAndJoinStrategy} given, by default they are split
+ * into two sub lists by using {@link GenericSplitProcessor}. With an {@link AdaptiveSplitPolicy} the task stops splitting when
+ * there is enough parallel slack or the input is too cheap to fork, and computes the rest of its input in the current
+ * thread.
  * 
  * @author Niklas Schlimm
  * 
@@ -25,10 +28,34 @@ public class GenericRecursiveTask extends RecursiveTask<ComposableResult> implem
 
 	private ForkAndJoinProcessor<GenericRecursiveTask> processor;
 
+	private AdaptiveSplitPolicy splitPolicy;
+
+	private ForkAndJoinStrategy strategy;
+
 	public GenericRecursiveTask(DecomposableInput input, ComputationActivityBridge activity) {
+		this(input, activity, ForkAndJoinStrategy.BINARY_SPLIT, null);
+	}
+
+	/**
+	 * @param splitPolicy
+	 *            decides whether to split at run time, null to split as far as the input allows
+	 */
+	public GenericRecursiveTask(DecomposableInput input, ComputationActivityBridge activity, AdaptiveSplitPolicy splitPolicy) {
+		this(input, activity, ForkAndJoinStrategy.BINARY_SPLIT, splitPolicy);
+	}
+
+	/**
+	 * @param strategy
+	 *            selects the {@link ForkAndJoinProcessor} that distributes the decomposed input
+	 * @param splitPolicy
+	 *            decides whether to split at run time, null to split as far as the input allows
+	 */
+	public GenericRecursiveTask(DecomposableInput input, ComputationActivityBridge activity, ForkAndJoinStrategy strategy, AdaptiveSplitPolicy splitPolicy) {
 		super();
 		this.input = input;
 		this.activity = activity;
+		this.strategy = strategy;
+		this.splitPolicy = splitPolicy;
 		this.processor = createForkAndJoinProcessor();
 	}
 
@@ -37,7 +64,11 @@ public class GenericRecursiveTask extends RecursiveTask<ComposableResult> implem
 	protected ComposableResult<?> compute() {
 
 		if (input.computeDirectly()) { // task is small enough to compute linear in this thread
-			return activity.compute(input);
+			return computeDirectly(input);
+		}
+
+		if (splitPolicy != null && !splitPolicy.shouldSplit(input)) { // enough parallel slack, no more tasks
+			return computeSequentially(input);
 		}
 
 		List<DecomposableInput<?>> decomposedInputs = input.decompose();
@@ -45,14 +76,55 @@ public class GenericRecursiveTask extends RecursiveTask<ComposableResult> implem
 
 	}
 
+	@SuppressWarnings("unchecked")
+	private ComposableResult computeDirectly(DecomposableInput input) {
+		if (splitPolicy == null)
+			return activity.compute(input);
+		long start = System.nanoTime();
+		ComposableResult result = activity.compute(input);
+		splitPolicy.record(input, System.nanoTime() - start);
+		return result;
+	}
+
+	/**
+	 * Computes the input of this task in the current thread without forking, used by processors that batch leaves.
+	 */
+	ComposableResult computeSequentially() {
+		return computeSequentially(input);
+	}
+
+	/**
+	 * Decomposes the input as far as it goes without forking, results are composed in the same order as by
+	 * {@link GenericSplitProcessor}.
+	 */
+	@SuppressWarnings("unchecked")
+	private ComposableResult computeSequentially(DecomposableInput input) {
+		if (input.computeDirectly())
+			return computeDirectly(input);
+		ComposableResult result = null;
+		for (Object part : input.decompose()) {
+			ComposableResult partResult = computeSequentially((DecomposableInput) part);
+			result = result == null ? partResult : partResult.compose(result);
+		}
+		return result;
+	}
+
 	@Override
 	public GenericRecursiveTask prototype(DecomposableInput input) {
-		return new GenericRecursiveTask(input, activity);
+		return new GenericRecursiveTask(input, activity, strategy, splitPolicy);
+	}
+
+	public AdaptiveSplitPolicy getSplitPolicy() {
+		return splitPolicy;
+	}
+
+	public ForkAndJoinStrategy getStrategy() {
+		return strategy;
 	}
 
 	@Override
 	public ForkAndJoinProcessor<GenericRecursiveTask> createForkAndJoinProcessor() {
-		return new GenericSplitProcessor(this);
+		return strategy.createProcessor(this);
 	}
 
 }
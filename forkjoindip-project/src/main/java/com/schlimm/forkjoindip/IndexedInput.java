@@ -0,0 +1,67 @@
+package com.schlimm.forkjoindip;
+
+/**
+ * Input that knows the index range it covers in the input of the whole computation. Leaves use the range to write
+ * their output into the slots of a shared output array ({@link SlotResult}), so the pieces do not need to be copied
+ * together when they are composed. Subclasses create the parts in {@link #decompose()} with
+ * {@link #partFrom(int, int)} and {@link #partTo(int, int)}, which split the range into parts of equal size.
+ * 
+ * @author Niklas Schlimm
+ * 
+ * @param <A>
+ *            the input type of that {@link java.util.concurrent.ForkJoinTask}
+ */
+public abstract class IndexedInput<A> extends DecomposableInput<A> {
+
+	/**
+	 * First index covered, inclusive
+	 */
+	protected final int from;
+
+	/**
+	 * Last index covered, exclusive
+	 */
+	protected final int to;
+
+	/**
+	 * @param from
+	 *            first index of the whole computation covered by the raw input, inclusive
+	 * @param to
+	 *            last index covered, exclusive
+	 */
+	public IndexedInput(A rawInput, int from, int to) {
+		super(rawInput);
+		if (from < 0 || to < from)
+			throw new IllegalArgumentException("Illegal index range: " + from + "-" + to);
+		this.from = from;
+		this.to = to;
+	}
+
+	public int getFrom() {
+		return from;
+	}
+
+	public int getTo() {
+		return to;
+	}
+
+	@Override
+	public int size() {
+		return to - from;
+	}
+
+	/**
+	 * @return first index of the part with the given number, if the range is split into parts parts
+	 */
+	protected int partFrom(int part, int parts) {
+		return from + (int) ((long) size() * part / parts);
+	}
+
+	/**
+	 * @return last index (exclusive) of the part with the given number, if the range is split into parts parts
+	 */
+	protected int partTo(int part, int parts) {
+		return partFrom(part + 1, parts);
+	}
+
+}
@@ -0,0 +1,38 @@
+package com.schlimm.forkjoindip;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Distributes an input decomposed into any number of parts with {@link ForkJoinTask#invokeAll(java.util.Collection)},
+ * which forks all parts but the first, computes the first one in the current thread and joins the others. The pool
+ * decides the order, this processor only composes the results in input order.
+ * 
+ * @author Niklas Schlimm
+ * 
+ */
+public class InvokeAllProcessor extends ForkAndJoinProcessor<GenericRecursiveTask> {
+
+	public InvokeAllProcessor(GenericRecursiveTask forkAndJoinTask) {
+		super(forkAndJoinTask);
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	@Override
+	public ComposableResult forkAndJoin(List<DecomposableInput<?>> decomposedInput) {
+		if (decomposedInput.isEmpty())
+			throw new IllegalArgumentException("Expected at least one list entry!");
+		List<GenericRecursiveTask> tasks = new ArrayList<GenericRecursiveTask>(decomposedInput.size());
+		for (DecomposableInput<?> input : decomposedInput) {
+			tasks.add(forkAndJoinTask.prototype(input));
+		}
+		ForkJoinTask.invokeAll(tasks);
+		ComposableResult result = null;
+		for (GenericRecursiveTask task : tasks) {
+			result = result == null ? task.getRawResult() : task.getRawResult().compose(result);
+		}
+		return result;
+	}
+
+}
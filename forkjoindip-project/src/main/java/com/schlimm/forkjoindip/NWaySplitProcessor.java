@@ -0,0 +1,37 @@
+package com.schlimm.forkjoindip;
+
+import java.util.List;
+
+/**
+ * Distributes an input decomposed into any number of parts: all parts but the first are forked, the first one is
+ * computed in the current thread. The forked parts are forked last to first and joined first to last, so the part
+ * joined next is the one forked last, which is still on top of the local queue if nobody stole it, and the join runs
+ * it in this thread instead of waiting.
+ * 
+ * @author Niklas Schlimm
+ * 
+ */
+public class NWaySplitProcessor extends ForkAndJoinProcessor<GenericRecursiveTask> {
+
+	public NWaySplitProcessor(GenericRecursiveTask forkAndJoinTask) {
+		super(forkAndJoinTask);
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	@Override
+	public ComposableResult forkAndJoin(List<DecomposableInput<?>> decomposedInput) {
+		if (decomposedInput.isEmpty())
+			throw new IllegalArgumentException("Expected at least one list entry!");
+		GenericRecursiveTask[] forked = new GenericRecursiveTask[decomposedInput.size()];
+		for (int i = decomposedInput.size() - 1; i > 0; i--) {
+			forked[i] = forkAndJoinTask.prototype(decomposedInput.get(i));
+			forked[i].fork();
+		}
+		ComposableResult result = forkAndJoinTask.prototype(decomposedInput.get(0)).compute();
+		for (int i = 1; i < forked.length; i++) {
+			result = forked[i].join().compose(result);
+		}
+		return result;
+	}
+
+}
@@ -0,0 +1,55 @@
+package com.schlimm.forkjoindip;
+
+/**
+ * Associative operations that reduce the results of a computation to a single primitive value, see
+ * {@link DoubleReductionResult}.
+ * 
+ * @author Niklas Schlimm
+ * 
+ */
+public enum Reduction {
+
+	SUM {
+		@Override
+		public double apply(double left, double right) {
+			return left + right;
+		}
+
+		@Override
+		public double identity() {
+			return 0;
+		}
+	},
+
+	MIN {
+		@Override
+		public double apply(double left, double right) {
+			return Math.min(left, right);
+		}
+
+		@Override
+		public double identity() {
+			return Double.POSITIVE_INFINITY;
+		}
+	},
+
+	MAX {
+		@Override
+		public double apply(double left, double right) {
+			return Math.max(left, right);
+		}
+
+		@Override
+		public double identity() {
+			return Double.NEGATIVE_INFINITY;
+		}
+	};
+
+	public abstract double apply(double left, double right);
+
+	/**
+	 * @return the value that does not change any other value it is reduced with, the result of an empty input
+	 */
+	public abstract double identity();
+
+}
@@ -0,0 +1,93 @@
+package com.schlimm.forkjoindip;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Result that lives in a range of slots of an output array shared by all tasks of a computation. Every leaf writes its
+ * output into the slots of its {@link IndexedInput} range, composing two results only joins their adjacent ranges. So
+ * composition is O(1) and allocates nothing, whatever the size of the pieces, and the result of the whole computation
+ * is the output array itself, nothing is copied.
+ * <p>
+ * {@link #compose(ComposableResult)} widens the range of this result and returns it, a result must not be used anymore
+ * after it has been composed into another one.
+ * 
+ * @author Niklas Schlimm
+ * 
+ * @param <T>
+ *            type of the slots
+ */
+public class SlotResult<T> extends ComposableResult<List<T>> {
+
+	private final T[] slots;
+
+	private int from;
+
+	private int to;
+
+	/**
+	 * @param slots
+	 *            the output array shared by all tasks
+	 * @param from
+	 *            first slot written, inclusive
+	 * @param to
+	 *            last slot written, exclusive
+	 */
+	public SlotResult(T[] slots, int from, int to) {
+		super(null);
+		if (from < 0 || to < from || to > slots.length)
+			throw new IllegalArgumentException("Illegal slot range: " + from + "-" + to + " of " + slots.length);
+		this.slots = slots;
+		this.from = from;
+		this.to = to;
+	}
+
+	/**
+	 * @return result for the slots of the input range
+	 */
+	public static <T> SlotResult<T> of(T[] slots, IndexedInput<?> input) {
+		return new SlotResult<T>(slots, input.getFrom(), input.getTo());
+	}
+
+	@Override
+	public ComposableResult<List<T>> compose(ComposableResult<List<T>> anotherPeace) {
+		SlotResult<T> other = (SlotResult<T>) anotherPeace;
+		if (other.slots != slots)
+			throw new IllegalArgumentException("Results of different output arrays can not be composed!");
+		if (other.to == from) {
+			from = other.from;
+		} else if (other.from == to) {
+			to = other.to;
+		} else {
+			throw new IllegalArgumentException("Slot ranges are not adjacent: " + from + "-" + to + " and " + other.from + "-" + other.to);
+		}
+		return this;
+	}
+
+	/**
+	 * @return the slots of this result as list backed by the output array
+	 */
+	@Override
+	public List<T> getRawResult() {
+		List<T> all = Arrays.asList(slots);
+		return from == 0 && to == slots.length ? all : all.subList(from, to);
+	}
+
+	public T[] getSlots() {
+		return slots;
+	}
+
+	public int getFrom() {
+		return from;
+	}
+
+	public int getTo() {
+		return to;
+	}
+
+	@Override
+	public String toString() {
+		return getRawResult().toString();
+	}
+
+}
@@ -18,17 +18,17 @@ public class ConcurrentBenchmark {
 		
 		System.out.println("First warm-up starting ...");
 		Map<String, Average> results = doTest(harness, threadCount);
-		printResults(results, " - Results, first warm-up - ");
+		printResults(results, " - Results, first warm-up - ", testIntervallTime);
 		System.out.println("Second warm-up starting ...");
 		results = doTest(harness, threadCount);
-		printResults(results, " - Results, second warm-up - ");
+		printResults(results, " - Results, second warm-up - ", testIntervallTime);
 		System.out.println("Benchmark intervall starting ...");
 		results = doTest(harness, threadCount);
-		printResults(results, " - Benchmark intervall results - ");
+		printResults(results, " - Benchmark intervall results - ", testIntervallTime);
 						
 	}
 
-	private void printResults(Map<String, Average> results, String resultHeading) {
+	private void printResults(Map<String, Average> results, String resultHeading, int testIntervallTime) {
 		System.out.println(resultHeading);
 		DecimalFormat df = new DecimalFormat("#.##");
 		for (String threadName : results.keySet()) {
@@ -36,6 +36,8 @@ public class ConcurrentBenchmark {
 			System.out.println("Thread: " + threadName);
 			System.out.println("Average run count: " + df.format(average.mean()));
 			System.out.println("Standard deviation: " + df.format(average.stddev()));
+			System.out.println("Ops/s: " + df.format(average.mean() * 1000d / testIntervallTime) + " +/- " + df.format(average.confidenceInterval() * 1000d / testIntervallTime) + " (95%)");
+			System.out.println("ns/op: " + df.format(testIntervallTime * 1000000d / average.mean()));
 		}
 	}
 
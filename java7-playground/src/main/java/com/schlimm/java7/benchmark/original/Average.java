@@ -55,4 +55,26 @@ public class Average {
     }
     return Math.sqrt(stddevtotal / values.size());
   }
+
+
+  /**
+   * Calculate the half width of the 95% confidence interval of the
+   * mean, treating the series as a sample of independent runs.
+   * @return the distance around mean() the true mean lies within
+   * with 95% confidence, NaN if there is only one value.
+   * @throws IllegalStateException if no values have been added yet.
+   */
+  public double confidenceInterval() {
+    double mean = mean();
+    int elements = values.size();
+    if (elements < 2) return Double.NaN;
+    double stddevtotal = 0;
+    for (double value : values) {
+      double dev = value - mean;
+      stddevtotal += dev * dev;
+    }
+    double sampleStddev = Math.sqrt(stddevtotal / (elements - 1));
+    return PerformanceChecker.studentT95(elements - 1) * sampleStddev
+        / Math.sqrt(elements);
+  }
 }
\ No newline at end of file
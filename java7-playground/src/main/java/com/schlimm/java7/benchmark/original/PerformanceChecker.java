@@ -1,44 +1,54 @@
 package com.schlimm.java7.benchmark.original;
 
-import java.util.*;
+import java.util.concurrent.TimeUnit;
 
 /**
  * The PerformanceChecker tries to run the task as often as possible
  * in the allotted time.  It then returns the number of times that
- * the task was called.  To make sure that the timer stops the test
- * timeously, we check that the difference between start and end
- * time is less than EPSILON.  After it has tried unsuccessfully for
- * MAXIMUM_ATTEMPTS times, it throws an exception.
+ * the task was called, normalized to exactly the allotted time.
+ * The deadline is taken from System.nanoTime() and checked once per
+ * batch of calls; the batch grows until it takes about BATCH_NANOS,
+ * so reading the clock costs next to nothing.  The cost of the
+ * measuring loop itself is calibrated once with an empty task and
+ * subtracted, but never more than half of the elapsed time.  A run
+ * that overshoots on a loaded machine is scaled back to the test
+ * time instead of being retried.  The concurrent checker shares the
+ * loop, the calibration and the t quantiles of this class.
  *
  * @author Heinz Kabutz
  * @since 2006/03/27
  */
 public class PerformanceChecker {
+  /** Target duration of a batch of calls between two clock reads. */
+  public static final long BATCH_NANOS =
+      TimeUnit.MICROSECONDS.toNanos(100);
+  private static final int MAXIMUM_BATCH = 1 << 20;
+  /** Milliseconds and number of runs of the loop calibration. */
+  private static final long CALIBRATION_TIME = 100;
+  private static final int CALIBRATION_RUNS = 5;
   /**
-   * Whether the test should continue running.  Will expire after
-   * some time specified in testTime.  Needs to be volatile for
-   * visibility.
+   * Nanoseconds the measuring loop costs per call of an empty task,
+   * -1 until calibrated.
    */
-  private volatile boolean expired = false;
+  private static volatile double loopOverhead = -1;
+  /**
+   * Two-sided 95% quantiles of Student's t-distribution for 1 to 30
+   * degrees of freedom, the normal quantile is used above.
+   */
+  private static final double[] T_95 = {12.706, 4.303, 3.182, 2.776,
+      2.571, 2.447, 2.365, 2.306, 2.262, 2.228, 2.201, 2.179, 2.160,
+      2.145, 2.131, 2.120, 2.110, 2.101, 2.093, 2.086, 2.080, 2.074,
+      2.069, 2.064, 2.060, 2.056, 2.052, 2.048, 2.045, 2.042};
   /** The number of milliseconds that each test should run */
   private final long testTime;
   /** The task to execute for the duration of the test run. */
   private final Runnable task;
-  /**
-   * Accuracy of test.  It must finish within 20ms of the testTime
-   * otherwise we retry the test.  This could be configurable.
-   */
-  public static final int EPSILON = 20;
-  /**
-   * Number of repeats before giving up with this test.
-   */
-  public static final int MAXIMUM_ATTEMPTS = 3;
+  /** Nanoseconds per call of the last run, without loop overhead. */
+  private double lastNanosPerOperation;
 
   /**
    * Set up the number of milliseconds that the test should run, and
-   * the task that should be executed during that time.  The task
-   * should ideally run for less than 10ms at most, otherwise you
-   * will get too many retry attempts.
+   * the task that should be executed during that time.
    *
    * @param testTime the number of milliseconds that the test should
    *                 execute.
@@ -51,37 +61,101 @@ public class PerformanceChecker {
   }
 
   /**
-   * Start the test, and after the set time interrupt the test and
+   * Start the test, and after the set time stop the test and
    * return the number of times that we were able to execute the
-   * run() method of the task.
+   * run() method of the task within the test time.
    */
   public long start() {
-    long numberOfLoops;
-    long start = 0;
-    int runs = 0;
-    do {
-      if (++runs > MAXIMUM_ATTEMPTS) {
-        throw new IllegalStateException("Test not accurate");
+    double overhead = getLoopOverhead();
+    long testNanos = TimeUnit.MILLISECONDS.toNanos(testTime);
+    long[] result = measure(task, testNanos);
+    long numberOfLoops = result[0];
+    long elapsed = result[1];
+    long net = netNanos(numberOfLoops, elapsed, overhead);
+    lastNanosPerOperation = (double) net / numberOfLoops;
+    collectGarbage();
+    return Math.round(numberOfLoops * (double) testNanos / net);
+  }
+
+  /**
+   * The elapsed time without the cost of the measuring loop.  At
+   * most half of the elapsed time is subtracted, a task as cheap as
+   * the loop is below the resolution of the calibration.
+   */
+  public static long netNanos(long numberOfLoops, long elapsed,
+                              double overhead) {
+    return elapsed
+        - Math.min(Math.round(numberOfLoops * overhead), elapsed / 2);
+  }
+
+  /**
+   * @param degreesOfFreedom at least 1
+   * @return the two-sided 95% quantile of Student's t-distribution
+   */
+  public static double studentT95(int degreesOfFreedom) {
+    return degreesOfFreedom <= T_95.length
+        ? T_95[degreesOfFreedom - 1] : 1.96;
+  }
+
+  /**
+   * The measuring loop, shared by the calibration and the test runs
+   * so that both pay for the same call site.
+   *
+   * @return number of calls and elapsed nanoseconds
+   */
+  public static long[] measure(Runnable task, long testNanos) {
+    long numberOfLoops = 0;
+    int batch = 1;
+    long begin = System.nanoTime();
+    long deadline = begin + testNanos;
+    long now = begin;
+    while (now - deadline < 0) {
+      long batchStart = now;
+      for (int i = 0; i < batch; i++) {
+        task.run();
       }
-      expired = false;
-      start = System.currentTimeMillis();
-      numberOfLoops = 0;
-      Timer timer = new Timer();
-      timer.schedule(new TimerTask() {
-        public void run() {
-          expired = true;
+      numberOfLoops += batch;
+      now = System.nanoTime();
+      if (now - batchStart < BATCH_NANOS && batch < MAXIMUM_BATCH) {
+        batch <<= 1;
+      }
+    }
+    return new long[] {numberOfLoops, now - begin};
+  }
+
+  /**
+   * Calibrates the cost of the measuring loop on first use.  The
+   * fastest of a few runs is taken, the slower ones were disturbed.
+   *
+   * @return nanoseconds the loop costs per call of an empty task
+   */
+  public static double getLoopOverhead() {
+    if (loopOverhead < 0) {
+      synchronized (PerformanceChecker.class) {
+        if (loopOverhead < 0) {
+          Runnable empty = new Runnable() {
+            public void run() {
+            }
+          };
+          double fastest = Double.MAX_VALUE;
+          for (int i = 0; i < CALIBRATION_RUNS; i++) {
+            long[] result = measure(empty,
+                TimeUnit.MILLISECONDS.toNanos(CALIBRATION_TIME));
+            fastest = Math.min(fastest, (double) result[1] / result[0]);
+          }
+          loopOverhead = fastest;
         }
-      }, testTime);
-      while (!expired) {
-        task.run();
-        numberOfLoops++;
       }
-      start = System.currentTimeMillis() - start;
-      timer.cancel();
-      System.out.println("EPSILON:"+EPSILON+":TESTTIME:"+testTime+":ACTTIME:"+start+":LOOPS:"+numberOfLoops);
-    } while (Math.abs(start - testTime) > EPSILON);
-    collectGarbage();
-    return numberOfLoops;
+    }
+    return loopOverhead;
+  }
+
+  public long getTestTime() {
+    return testTime;
+  }
+
+  public double getLastNanosPerOperation() {
+    return lastNanosPerOperation;
   }
 
   /**
@@ -100,4 +174,4 @@ public class PerformanceChecker {
       }
     }
   }
-}
\ No newline at end of file
+}
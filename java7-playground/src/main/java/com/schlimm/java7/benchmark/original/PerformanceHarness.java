@@ -23,6 +23,23 @@ public class PerformanceHarness {
       long count = check.start();
       avg.add(count);
     }
+    printRates(avg, check.getTestTime());
     return avg;
   }
+
+  /**
+   * Prints operations per second and nanoseconds per operation with
+   * the 95% confidence interval of the mean.
+   * @param avg number of operations per test run
+   * @param testTime milliseconds of each test run
+   */
+  private static void printRates(Average avg, long testTime) {
+    double mean = avg.mean();
+    double interval = avg.confidenceInterval();
+    System.out.println(String.format(
+        "ops/s: %.2f +/- %.2f - ns/op: %.2f +/- %.2f",
+        mean * 1000d / testTime, interval * 1000d / testTime,
+        testTime * 1000000d / mean,
+        testTime * 1000000d * interval / (mean * mean)));
+  }
 }
@@ -0,0 +1,140 @@
+package com.schlimm.java7.concurrency.forkjoin.dippricingengine;
+
+import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+
+import com.schlimm.forkjoindip.GenericRecursiveTask;
+import com.schlimm.java7.benchmark.original.Average;
+import com.schlimm.java7.benchmark.original.BenchmarkRunnable;
+import com.schlimm.java7.benchmark.original.PerformanceChecker;
+import com.schlimm.java7.benchmark.original.PerformanceHarness;
+import com.schlimm.java7.concurrency.forkjoin.pricingengine.WorkSharingTaskExample;
+
+/**
+ * Proposals priced per second by
+ * <ul>
+ * <li>WORK_SHARING: one {@link WorkSharingTaskExample} per proposal in an executor with one thread per core</li>
+ * <li>GENERIC: {@link GenericRecursiveTask} with {@link PricingEngineBridge}, as in {@link ForkJoinTaskExample_Generic}</li>
+ * <li>BATCH: {@link BatchPricingTask}, the conversion of the proposals into a {@link ProposalBatch} included</li>
+ * <li>BATCH_PREBUILT: {@link BatchPricingTask} on a batch built ahead</li>
+ * </ul>
+ * All use the same {@link PricingEngine}.
+ * <p>
+ * Arguments (all optional): number of proposals (default 10000), rate calculation iterations per price (default 100),
+ * proposals per batch task (default 256), test time in ms (default 1000), runs (default 5).
+ * 
+ * @author Niklas Schlimm
+ * 
+ */
+public class BatchPricingBenchmark {
+
+	enum Path {
+		WORK_SHARING, GENERIC, BATCH, BATCH_PREBUILT
+	}
+
+	public static void main(String[] args) {
+		int proposalCount = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+		int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+		int batchSize = args.length > 2 ? Integer.parseInt(args[2]) : 256;
+		long testTime = args.length > 3 ? Long.parseLong(args[3]) : 1000;
+		int runs = args.length > 4 ? Integer.parseInt(args[4]) : 5;
+		List<Proposal> proposals = Proposals.sample(proposalCount);
+		PricingEngine engine = new PricingEngine(iterations);
+		ForkJoinPool pool = new ForkJoinPool();
+		ExecutorService executor = Executors.newFixedThreadPool(pool.getParallelism());
+		DecimalFormat df = new DecimalFormat("#.##");
+		System.out.println("Proposals: " + proposalCount + " - iterations: " + iterations + " - batch size: " + batchSize + " - parallelism: " + pool.getParallelism());
+		List<String> table = new ArrayList<>();
+		for (Path path : Path.values()) {
+			PricingRun run = new PricingRun(path, pool, executor, engine, proposals, batchSize);
+			System.out.println("Benchmark target: " + path);
+			Average average = new PerformanceHarness().calculatePerf(new PerformanceChecker(testTime, run), runs);
+			table.add(String.format("%1$-16s %2$-14s %3$-14s %4$-12s", path, df.format(average.mean() * proposalCount * 1000d / testTime),
+					df.format(average.confidenceInterval() * proposalCount * 1000d / testTime), df.format(testTime * 1000000d / (average.mean() * proposalCount))));
+			System.out.println("To avoid dead code optimization: " + run.getResult());
+		}
+		System.out.println(String.format("%1$-16s %2$-14s %3$-14s %4$-12s", "Path", "Proposals/s", "+/- 95%", "ns/proposal"));
+		for (String row : table) {
+			System.out.println(row);
+		}
+		executor.shutdown();
+		pool.shutdown();
+	}
+
+	/**
+	 * Prices all proposals once per run.
+	 */
+	private static class PricingRun implements BenchmarkRunnable {
+
+		private Path path;
+
+		private ForkJoinPool pool;
+
+		private ExecutorService executor;
+
+		private PricingEngine engine;
+
+		private List<Proposal> proposals;
+
+		private ProposalBatch batch;
+
+		private int batchSize;
+
+		private double checksum;
+
+		public PricingRun(Path path, ForkJoinPool pool, ExecutorService executor, PricingEngine engine, List<Proposal> proposals, int batchSize) {
+			super();
+			this.path = path;
+			this.pool = pool;
+			this.executor = executor;
+			this.engine = engine;
+			this.proposals = proposals;
+			this.batch = ProposalBatch.of(proposals, engine.getRateTable());
+			this.batchSize = batchSize;
+		}
+
+		@SuppressWarnings({ "rawtypes", "unchecked" })
+		@Override
+		public void run() {
+			switch (path) {
+			case WORK_SHARING:
+				CompletionService<Map<String, Double>> completion = new ExecutorCompletionService<>(executor);
+				for (Proposal proposal : proposals) {
+					completion.submit(new WorkSharingTaskExample(proposal, engine));
+				}
+				try {
+					for (int i = 0; i < proposals.size(); i++) {
+						checksum += completion.take().get().get("Comprehensive Cover");
+					}
+				} catch (InterruptedException | ExecutionException e) {
+					throw new IllegalStateException(e);
+				}
+				break;
+			case GENERIC:
+				List<Map<String, Double>> prices = (List<Map<String, Double>>) pool.invoke(new GenericRecursiveTask(new ListOfProposals(proposals), new PricingEngineBridge(engine)))
+						.getRawResult();
+				checksum += prices.get(prices.size() - 1).get("Comprehensive Cover");
+				break;
+			case BATCH:
+				checksum += BatchPricingTask.price(pool, engine, ProposalBatch.of(proposals, engine.getRateTable()), batchSize).getComprehensive(proposals.size() - 1);
+				break;
+			default:
+				checksum += BatchPricingTask.price(pool, engine, batch, batchSize).getComprehensive(proposals.size() - 1);
+			}
+		}
+
+		@Override
+		public Object getResult() {
+			return checksum;
+		}
+	}
+
+}
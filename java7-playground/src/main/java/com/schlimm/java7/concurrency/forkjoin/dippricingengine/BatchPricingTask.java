@@ -0,0 +1,67 @@
+package com.schlimm.java7.concurrency.forkjoin.dippricingengine;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Prices a range of a {@link ProposalBatch} into a {@link PriceBatch}. Ranges larger than the batch size are split in
+ * two halves, the first one is forked, the second one computed in the current thread. Every task writes into its own
+ * slots of the shared price arrays, there is nothing to compose.
+ * 
+ * @author Niklas Schlimm
+ * 
+ */
+public class BatchPricingTask extends RecursiveAction {
+
+	private static final long serialVersionUID = 6029131263425946371L;
+
+	private PricingEngine engine;
+
+	private ProposalBatch proposals;
+
+	private PriceBatch prices;
+
+	private int from;
+
+	private int to;
+
+	private int batchSize;
+
+	public BatchPricingTask(PricingEngine engine, ProposalBatch proposals, PriceBatch prices, int from, int to, int batchSize) {
+		super();
+		if (batchSize < 1)
+			throw new IllegalArgumentException("Batch size must be positive: " + batchSize);
+		this.engine = engine;
+		this.proposals = proposals;
+		this.prices = prices;
+		this.from = from;
+		this.to = to;
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * Prices the whole batch in the pool.
+	 * 
+	 * @param batchSize
+	 *            number of proposals priced by one task
+	 */
+	public static PriceBatch price(ForkJoinPool pool, PricingEngine engine, ProposalBatch proposals, int batchSize) {
+		PriceBatch prices = new PriceBatch(proposals.size());
+		pool.invoke(new BatchPricingTask(engine, proposals, prices, 0, proposals.size(), batchSize));
+		return prices;
+	}
+
+	@Override
+	protected void compute() {
+		if (to - from <= batchSize) {
+			engine.calculatePrices(proposals, prices, from, to);
+			return;
+		}
+		int split = (from + to) >>> 1;
+		BatchPricingTask f1 = new BatchPricingTask(engine, proposals, prices, from, split, batchSize);
+		f1.fork();
+		new BatchPricingTask(engine, proposals, prices, split, to, batchSize).compute();
+		f1.join();
+	}
+
+}
@@ -0,0 +1,112 @@
+package com.schlimm.java7.concurrency.forkjoin.dippricingengine;
+
+import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import com.schlimm.forkjoindip.AdaptiveSplitPolicy;
+import com.schlimm.forkjoindip.ComputationActivityBridge;
+import com.schlimm.forkjoindip.ForkAndJoinStrategy;
+import com.schlimm.forkjoindip.GenericRecursiveTask;
+import com.schlimm.java7.benchmark.original.Average;
+import com.schlimm.java7.benchmark.original.BenchmarkRunnable;
+import com.schlimm.java7.benchmark.original.PerformanceChecker;
+import com.schlimm.java7.benchmark.original.PerformanceHarness;
+
+/**
+ * Compares the {@link ForkAndJoinStrategy}s on the pricing engine, every strategy with and without
+ * {@link AdaptiveSplitPolicy}. One operation prices the whole list of proposals in the pool. The proposals are
+ * decomposed into fan out parts, except for {@link ForkAndJoinStrategy#BINARY_SPLIT}, which takes two parts only. The
+ * prices are composed as {@link ListOfPrices}, or written into the slots of one array by {@link PriceSlotsBridge}.
+ * <p>
+ * Arguments (all optional): number of proposals (default 1000), rate calculation iterations per price (default 10000),
+ * fan out (default 4, at least 2), test time in ms (default 1000), runs (default 5), composition "lists" or "slots"
+ * (default lists).
+ * 
+ * @author Niklas Schlimm
+ * 
+ */
+public class ForkAndJoinStrategyBenchmark {
+
+	public static void main(String[] args) {
+		int proposalCount = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+		int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 10000;
+		int fanOut = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+		long testTime = args.length > 3 ? Long.parseLong(args[3]) : 1000;
+		int runs = args.length > 4 ? Integer.parseInt(args[4]) : 5;
+		boolean slots = args.length > 5 && "slots".equals(args[5]);
+		List<Proposal> proposalsList = Proposals.sample(proposalCount);
+		PricingEngine engine = new PricingEngine(iterations);
+		ForkJoinPool pool = new ForkJoinPool();
+		DecimalFormat df = new DecimalFormat("#.##");
+		System.out.println("Proposals: " + proposalCount + " - iterations: " + iterations + " - fan out: " + fanOut + " - composition: " + (slots ? "slots" : "lists") + " - parallelism: " + pool.getParallelism());
+		List<String> table = new ArrayList<>();
+		for (ForkAndJoinStrategy strategy : ForkAndJoinStrategy.values()) {
+			ListOfProposals proposals = new ListOfProposals(proposalsList, strategy == ForkAndJoinStrategy.BINARY_SPLIT ? 2 : fanOut);
+			for (boolean adaptive : new boolean[] { false, true }) {
+				PricingRun run = new PricingRun(pool, proposals, engine, slots, strategy, adaptive);
+				System.out.println("Benchmark target: " + run);
+				Average average = new PerformanceHarness().calculatePerf(new PerformanceChecker(testTime, run), runs);
+				table.add(String.format("%1$-32s %2$-12s %3$-12s %4$-12s", run, df.format(average.mean() * proposalCount * 1000d / testTime),
+						df.format(average.confidenceInterval() * proposalCount * 1000d / testTime), df.format(testTime * 1000000d / (average.mean() * proposalCount))));
+				System.out.println("To avoid dead code optimization: " + run.getResult());
+			}
+		}
+		System.out.println(String.format("%1$-32s %2$-12s %3$-12s %4$-12s", "Strategy", "Pricings/s", "+/- 95%", "ns/pricing"));
+		for (String row : table) {
+			System.out.println(row);
+		}
+		pool.shutdown();
+	}
+
+	/**
+	 * Prices all proposals once per run.
+	 */
+	private static class PricingRun implements BenchmarkRunnable {
+
+		private ForkJoinPool pool;
+
+		private ListOfProposals proposals;
+
+		private PricingEngine engine;
+
+		private boolean slots;
+
+		private ForkAndJoinStrategy strategy;
+
+		private boolean adaptive;
+
+		private int prices;
+
+		public PricingRun(ForkJoinPool pool, ListOfProposals proposals, PricingEngine engine, boolean slots, ForkAndJoinStrategy strategy, boolean adaptive) {
+			super();
+			this.pool = pool;
+			this.proposals = proposals;
+			this.engine = engine;
+			this.slots = slots;
+			this.strategy = strategy;
+			this.adaptive = adaptive;
+		}
+
+		@SuppressWarnings({ "rawtypes", "unchecked" })
+		@Override
+		public void run() {
+			// a new policy per run, so every run measures the cost of learning it
+			AdaptiveSplitPolicy splitPolicy = adaptive ? new AdaptiveSplitPolicy() : null;
+			ComputationActivityBridge bridge = slots ? new PriceSlotsBridge(engine, proposals.size()) : new PricingEngineBridge(engine);
+			prices = ((List) pool.invoke(new GenericRecursiveTask(proposals, bridge, strategy, splitPolicy)).getRawResult()).size();
+		}
+
+		@Override
+		public Object getResult() {
+			return prices;
+		}
+
+		@Override
+		public String toString() {
+			return strategy + (adaptive ? " (adaptive)" : "");
+		}
+	}
+
+}
@@ -1,17 +1,22 @@
 package com.schlimm.java7.concurrency.forkjoin.dippricingengine;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
 
+import com.schlimm.forkjoindip.AdaptiveSplitPolicy;
 import com.schlimm.forkjoindip.ComposableResult;
+import com.schlimm.forkjoindip.ComputationActivityBridge;
 import com.schlimm.forkjoindip.GenericRecursiveTask;
+import com.schlimm.forkjoindip.Reduction;
 
 public class ForkJoinTaskExample_Generic {
 
-	@SuppressWarnings("unchecked")
+	@SuppressWarnings({ "unchecked", "rawtypes" })
 	public static void main(String[] args) {
 		List<Proposal> proposalsList = new ArrayList<>();
 		proposalsList.add(new Proposal("Niklas", "Schlimm", "7909","AAL", true, true, true));
@@ -19,11 +24,28 @@ public class ForkJoinTaskExample_Generic {
 		proposalsList.add(new Proposal("Christian", "Toennessen", "0583", "442", true, true, true));
 		proposalsList.add(new Proposal("Frank","Hinkel", "4026", "AAA", true, true, true));
 		ListOfProposals proposals = new ListOfProposals(proposalsList);
-		GenericRecursiveTask task = new GenericRecursiveTask(proposals, new PricingEngineBridge());
+		List<String> options = Arrays.asList(args);
+		// pass "adaptive" to stop splitting once all workers have enough tasks
+		AdaptiveSplitPolicy splitPolicy = options.contains("adaptive") ? new AdaptiveSplitPolicy() : null;
+		// pass "memoize" to calculate every rate once
+		RateCache cache = options.contains("memoize") ? new RateCache(1000, 0, TimeUnit.MILLISECONDS) : null;
+		PricingEngine engine = cache != null ? new MemoizingPricingEngine(cache) : new PricingEngine();
+		// pass "slots" to price into one shared array instead of composing lists
+		ComputationActivityBridge bridge = options.contains("slots") ? new PriceSlotsBridge(engine, proposalsList.size()) : new PricingEngineBridge(engine);
+		GenericRecursiveTask task = new GenericRecursiveTask(proposals, bridge, splitPolicy);
 		ForkJoinPool pool = new ForkJoinPool();
 		System.out.println(new Date());
 		ComposableResult<List<Map<String, Double>>> result = pool.invoke(task);
 		System.out.println(result);
 		System.out.println(new Date());
+		if (splitPolicy != null)
+			System.out.println(splitPolicy);
+		if (cache != null)
+			System.out.println(cache);
+		// pass "total" to also reduce all prices to the total premium
+		if (options.contains("total")) {
+			System.out.println(pool.invoke(new GenericRecursiveTask(proposals, new TotalPremiumBridge(engine, Reduction.SUM), splitPolicy)));
+			System.out.println(new Date());
+		}
 	}
 }
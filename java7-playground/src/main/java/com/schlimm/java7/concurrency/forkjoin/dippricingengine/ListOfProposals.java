@@ -4,11 +4,32 @@ import java.util.ArrayList;
 import java.util.List;
 
 import com.schlimm.forkjoindip.DecomposableInput;
+import com.schlimm.forkjoindip.IndexedInput;
 
-public class ListOfProposals extends DecomposableInput<List<Proposal>> {
+public class ListOfProposals extends IndexedInput<List<Proposal>> {
+
+	// Number of parts the proposals are decomposed into
+	private int parts;
 
 	public ListOfProposals(List<Proposal> proposals) {
-		super(proposals);
+		this(proposals, 2);
+	}
+
+	public ListOfProposals(List<Proposal> proposals, int parts) {
+		this(proposals, parts, 0);
+	}
+
+	/**
+	 * @param parts
+	 *            number of parts the proposals are decomposed into, at least two
+	 * @param from
+	 *            index of the first proposal in the list of all proposals
+	 */
+	public ListOfProposals(List<Proposal> proposals, int parts, int from) {
+		super(proposals, from, from + proposals.size());
+		if (parts < 2)
+			throw new IllegalArgumentException("Proposals must be decomposed into at least two parts: " + parts);
+		this.parts = parts;
 	}
 
 	@Override
@@ -16,12 +37,19 @@ public class ListOfProposals extends DecomposableInput<List<Proposal>> {
 		return rawInput.size()==1;
 	}
 
+	@Override
+	public int leaves() {
+		return rawInput.size();
+	}
+
 	@Override
 	public List<DecomposableInput<List<Proposal>>> decompose() {
-		int split = rawInput.size() / 2;
+		int count = Math.min(parts, rawInput.size());
 		List<DecomposableInput<List<Proposal>>> decomposedListOfProposals = new ArrayList<>();
-		decomposedListOfProposals.add(new ListOfProposals(rawInput.subList(0, split)));
-		decomposedListOfProposals.add(new ListOfProposals(rawInput.subList(split, rawInput.size())));
+		for (int i = 0; i < count; i++) {
+			int partFrom = partFrom(i, count);
+			decomposedListOfProposals.add(new ListOfProposals(rawInput.subList(partFrom - from, partTo(i, count) - from), parts, partFrom));
+		}
 		return decomposedListOfProposals;
 	}
 
@@ -0,0 +1,87 @@
+package com.schlimm.java7.concurrency.forkjoin.dippricingengine;
+
+import java.text.DecimalFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import com.schlimm.forkjoindip.GenericRecursiveTask;
+import com.schlimm.java7.benchmark.original.Average;
+import com.schlimm.java7.benchmark.original.BenchmarkRunnable;
+import com.schlimm.java7.benchmark.original.PerformanceChecker;
+import com.schlimm.java7.benchmark.original.PerformanceHarness;
+
+/**
+ * Prices a portfolio whose proposals share few vehicles with {@link PricingEngine} and with
+ * {@link MemoizingPricingEngine}, both behind {@link PricingEngineBridge} in a {@link GenericRecursiveTask}. The rate
+ * cache lives as long as the benchmark, so after the first run the memoizing engine only calculates rates that were
+ * evicted or expired.
+ * <p>
+ * Arguments (all optional): number of proposals (default 1000), rate calculation iterations per price (default
+ * 100000), cache size (default 1000), time to live in ms (default 0, no expiry), test time in ms (default 1000), runs
+ * (default 5).
+ * 
+ * @author Niklas Schlimm
+ * 
+ */
+public class MemoizingPricingBenchmark {
+
+	public static void main(String[] args) {
+		int proposalCount = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+		int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 100000;
+		int cacheSize = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+		long timeToLive = args.length > 3 ? Long.parseLong(args[3]) : 0;
+		long testTime = args.length > 4 ? Long.parseLong(args[4]) : 1000;
+		int runs = args.length > 5 ? Integer.parseInt(args[5]) : 5;
+		List<Proposal> proposals = Proposals.sample(proposalCount);
+		RateCache cache = new RateCache(cacheSize, timeToLive, TimeUnit.MILLISECONDS);
+		ForkJoinPool pool = new ForkJoinPool();
+		DecimalFormat df = new DecimalFormat("#.##");
+		System.out.println("Proposals: " + proposalCount + " - iterations: " + iterations + " - parallelism: " + pool.getParallelism());
+		for (PricingEngine engine : new PricingEngine[] { new PricingEngine(iterations), new MemoizingPricingEngine(iterations, cache) }) {
+			PricingRun run = new PricingRun(pool, proposals, engine);
+			System.out.println("Benchmark target: " + engine.getClass().getSimpleName());
+			Average average = new PerformanceHarness().calculatePerf(new PerformanceChecker(testTime, run), runs);
+			System.out.println("Proposals/s: " + df.format(average.mean() * proposalCount * 1000d / testTime) + " +/- "
+					+ df.format(average.confidenceInterval() * proposalCount * 1000d / testTime));
+			System.out.println("To avoid dead code optimization: " + run.getResult());
+		}
+		System.out.println(cache);
+		pool.shutdown();
+	}
+
+	/**
+	 * Prices all proposals once per run.
+	 */
+	private static class PricingRun implements BenchmarkRunnable {
+
+		private ForkJoinPool pool;
+
+		private ListOfProposals proposals;
+
+		private PricingEngineBridge bridge;
+
+		private double checksum;
+
+		public PricingRun(ForkJoinPool pool, List<Proposal> proposals, PricingEngine engine) {
+			super();
+			this.pool = pool;
+			this.proposals = new ListOfProposals(proposals);
+			this.bridge = new PricingEngineBridge(engine);
+		}
+
+		@SuppressWarnings("unchecked")
+		@Override
+		public void run() {
+			List<Map<String, Double>> prices = (List<Map<String, Double>>) pool.invoke(new GenericRecursiveTask(proposals, bridge)).getRawResult();
+			checksum += prices.get(0).get("Comprehensive Cover");
+		}
+
+		@Override
+		public Object getResult() {
+			return checksum;
+		}
+	}
+
+}
@@ -0,0 +1,41 @@
+package com.schlimm.java7.concurrency.forkjoin.dippricingengine;
+
+import java.util.concurrent.Callable;
+
+/**
+ * {@link PricingEngine} that calculates the price of a vehicle and cover once and takes it from a {@link RateCache}
+ * afterwards. Drop-in replacement for the engine of {@link PricingEngineBridge}. Batch pricing
+ * ({@link #calculatePrices(ProposalBatch, PriceBatch, int, int)}) is not memoized.
+ * 
+ * @author Niklas Schlimm
+ * 
+ */
+public class MemoizingPricingEngine extends PricingEngine {
+
+	private RateCache cache;
+
+	public MemoizingPricingEngine(RateCache cache) {
+		super();
+		this.cache = cache;
+	}
+
+	public MemoizingPricingEngine(int rateCalculationIterations, RateCache cache) {
+		super(rateCalculationIterations);
+		this.cache = cache;
+	}
+
+	@Override
+	protected double rate(final String vehicle, final int cover) {
+		return cache.get(new RateKey(vehicle, cover), new Callable<Double>() {
+			@Override
+			public Double call() {
+				return MemoizingPricingEngine.super.rate(vehicle, cover);
+			}
+		});
+	}
+
+	public RateCache getCache() {
+		return cache;
+	}
+
+}
@@ -0,0 +1,78 @@
+package com.schlimm.java7.concurrency.forkjoin.dippricingengine;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Prices of a {@link ProposalBatch} as struct of arrays: one array per cover, index i holds the price of proposal i,
+ * NaN if the proposal does not ask for that cover. Tasks pricing different ranges of the batch write into disjoint
+ * slots of the same arrays.
+ * 
+ * @author Niklas Schlimm
+ * 
+ */
+public class PriceBatch {
+
+	private double[] comprehensive;
+
+	private double[] partInsuranceCover;
+
+	private double[] automotiveLiability;
+
+	public PriceBatch(int size) {
+		super();
+		comprehensive = new double[size];
+		partInsuranceCover = new double[size];
+		automotiveLiability = new double[size];
+	}
+
+	public int size() {
+		return comprehensive.length;
+	}
+
+	public double getComprehensive(int proposal) {
+		return comprehensive[proposal];
+	}
+
+	public double getPartInsuranceCover(int proposal) {
+		return partInsuranceCover[proposal];
+	}
+
+	public double getAutomotiveLiability(int proposal) {
+		return automotiveLiability[proposal];
+	}
+
+	double[] comprehensive() {
+		return comprehensive;
+	}
+
+	double[] partInsuranceCover() {
+		return partInsuranceCover;
+	}
+
+	double[] automotiveLiability() {
+		return automotiveLiability;
+	}
+
+	/**
+	 * @return the prices of the proposal in the form of {@link PricingEngine#calculatePrices(Proposal)}
+	 */
+	public Map<String, Double> toMap(int proposal) {
+		Map<String, Double> result = new HashMap<>();
+		if (!Double.isNaN(comprehensive[proposal]))
+			result.put("Comprehensive Cover", comprehensive[proposal]);
+		if (!Double.isNaN(partInsuranceCover[proposal]))
+			result.put("Part Insurance Cover", partInsuranceCover[proposal]);
+		if (!Double.isNaN(automotiveLiability[proposal]))
+			result.put("Automotive Liability", automotiveLiability[proposal]);
+		return result;
+	}
+
+	@Override
+	public String toString() {
+		return "Comprehensive Cover: " + Arrays.toString(comprehensive) + " - Part Insurance Cover: " + Arrays.toString(partInsuranceCover) + " - Automotive Liability: "
+				+ Arrays.toString(automotiveLiability);
+	}
+
+}
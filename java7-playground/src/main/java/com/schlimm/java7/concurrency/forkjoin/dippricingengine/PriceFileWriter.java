@@ -0,0 +1,48 @@
+package com.schlimm.java7.concurrency.forkjoin.dippricingengine;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Writes prices to a file, one line per proposal, tagged with the number of the proposal in the input:
+ * <code>sequence;comprehensive;partInsuranceCover;automotiveLiability</code>, covers not asked for are empty.
+ * 
+ * @author Niklas Schlimm
+ * 
+ */
+public class PriceFileWriter implements PriceSink, Closeable {
+
+	private BufferedWriter writer;
+
+	public PriceFileWriter(Path file) throws IOException {
+		super();
+		this.writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8);
+	}
+
+	@Override
+	public void write(long firstSequence, PriceBatch prices) throws IOException {
+		StringBuilder line = new StringBuilder(64);
+		for (int i = 0; i < prices.size(); i++) {
+			line.setLength(0);
+			line.append(firstSequence + i).append(';');
+			append(line, prices.getComprehensive(i)).append(';');
+			append(line, prices.getPartInsuranceCover(i)).append(';');
+			append(line, prices.getAutomotiveLiability(i)).append('\n');
+			writer.append(line);
+		}
+	}
+
+	private static StringBuilder append(StringBuilder line, double price) {
+		return Double.isNaN(price) ? line : line.append(price);
+	}
+
+	@Override
+	public void close() throws IOException {
+		writer.close();
+	}
+
+}
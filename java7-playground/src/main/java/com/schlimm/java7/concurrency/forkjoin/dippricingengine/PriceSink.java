@@ -0,0 +1,21 @@
+package com.schlimm.java7.concurrency.forkjoin.dippricingengine;
+
+import java.io.IOException;
+
+/**
+ * Receives the prices of a {@link StreamingPricingPipeline} batch by batch, in the order of the input.
+ * 
+ * @author Niklas Schlimm
+ * 
+ */
+public interface PriceSink {
+
+	/**
+	 * @param firstSequence
+	 *            number of the first proposal of the batch in the input, counted from 0
+	 * @param prices
+	 *            the prices of the batch, slot i belongs to proposal firstSequence + i
+	 */
+	void write(long firstSequence, PriceBatch prices) throws IOException;
+
+}
@@ -0,0 +1,42 @@
+package com.schlimm.java7.concurrency.forkjoin.dippricingengine;
+
+import java.util.List;
+import java.util.Map;
+
+import com.schlimm.forkjoindip.ComposableResult;
+import com.schlimm.forkjoindip.ComputationActivityBridge;
+import com.schlimm.forkjoindip.DecomposableInput;
+import com.schlimm.forkjoindip.SlotResult;
+
+/**
+ * Prices the proposals into the slots of one array of prices, the slot of a proposal is its index in the list of all
+ * proposals. Unlike {@link PricingEngineBridge} and {@link ListOfPrices} no list is copied when the results are
+ * composed. A bridge prices one list of proposals, create a new one for every computation.
+ * 
+ * @author Niklas Schlimm
+ * 
+ */
+public class PriceSlotsBridge extends ComputationActivityBridge<List<Proposal>, List<Map<String, Double>>> {
+
+	private PricingEngine engine;
+
+	private Map<String, Double>[] prices;
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public PriceSlotsBridge(PricingEngine engine, int proposals) {
+		super();
+		this.engine = engine;
+		this.prices = new Map[proposals];
+	}
+
+	@Override
+	public ComposableResult<List<Map<String, Double>>> compute(DecomposableInput<List<Proposal>> input) {
+		ListOfProposals proposals = (ListOfProposals) input;
+		int slot = proposals.getFrom();
+		for (Proposal proposal : proposals.getRawInput()) {
+			prices[slot++] = engine.calculatePrices(proposal);
+		}
+		return SlotResult.of(prices, proposals);
+	}
+
+}
@@ -9,6 +9,12 @@ public class PricingEngine {
 	private double partInsuranceCoverBasePrice = 70.01;
 	private double automotiveLiabilityBasePrice = 167.01;
 
+	// Iterations of the rate calculation, i.e. the cost of a price
+	private int rateCalculationIterations;
+
+	// Keeps the JIT from removing the rate calculation
+	private volatile int rateCalculationResult;
+
 	private Map<String, Double> hsnTsnFactors = new HashMap<>();
 	{
 		hsnTsnFactors.put("7909AAL", 2.31);
@@ -17,32 +23,107 @@ public class PricingEngine {
 		hsnTsnFactors.put("4026AAA", 2.43);
 	}
 
+	private RateTable rateTable = new RateTable(hsnTsnFactors);
+
+	public PricingEngine() {
+		this(1000000000);
+	}
+
+	public PricingEngine(int rateCalculationIterations) {
+		super();
+		this.rateCalculationIterations = rateCalculationIterations;
+	}
+
 	public Map<String, Double> calculatePrices(Proposal proposal) {
 		Map<String, Double> result = new HashMap<>();
+		String vehicle = proposal.getHsn().concat(proposal.getTsn());
 		if (proposal.isComprehensive()) {
-			complexRateCalculation();
-			result.put("Comprehensive Cover",
-					comprehensiveCoverBasePrice * hsnTsnFactors.get(proposal.getHsn().concat(proposal.getTsn())));
+			result.put("Comprehensive Cover", rate(vehicle, ProposalBatch.COMPREHENSIVE));
 		}
 		if (proposal.isPartInsuranceCover()) {
-			complexRateCalculation();
-			result.put("Part Insurance Cover",
-					partInsuranceCoverBasePrice * hsnTsnFactors.get(proposal.getHsn().concat(proposal.getTsn())));
+			result.put("Part Insurance Cover", rate(vehicle, ProposalBatch.PART_INSURANCE_COVER));
 		}
 		if (proposal.isAutomotiveLiability()) {
-			complexRateCalculation();
-			result.put("Automotive Liability",
-					automotiveLiabilityBasePrice * hsnTsnFactors.get(proposal.getHsn().concat(proposal.getTsn())));
+			result.put("Automotive Liability", rate(vehicle, ProposalBatch.AUTOMOTIVE_LIABILITY));
 		}
 		return result;
 	}
 
+	/**
+	 * Calculates the price of a cover of a vehicle, subclasses may override it to reuse prices.
+	 * 
+	 * @param vehicle
+	 *            HSN and TSN
+	 * @param cover
+	 *            one of the cover bits of {@link ProposalBatch}
+	 */
+	protected double rate(String vehicle, int cover) {
+		complexRateCalculation();
+		return basePrice(cover) * hsnTsnFactors.get(vehicle);
+	}
+
+	private double basePrice(int cover) {
+		switch (cover) {
+		case ProposalBatch.COMPREHENSIVE:
+			return comprehensiveCoverBasePrice;
+		case ProposalBatch.PART_INSURANCE_COVER:
+			return partInsuranceCoverBasePrice;
+		case ProposalBatch.AUTOMOTIVE_LIABILITY:
+			return automotiveLiabilityBasePrice;
+		default:
+			throw new IllegalArgumentException("Unknown cover: " + cover);
+		}
+	}
+
+	/**
+	 * Prices the proposals from (inclusive) to (exclusive) of the batch into the same slots of the price batch. Same
+	 * prices as {@link #calculatePrices(Proposal)}, without any lookup by string or object allocated per proposal.
+	 */
+	public void calculatePrices(ProposalBatch proposals, PriceBatch prices, int from, int to) {
+		int[] vehicleCodes = proposals.vehicleCodes();
+		byte[] covers = proposals.covers();
+		double[] factors = rateTable.factors();
+		double[] comprehensive = prices.comprehensive();
+		double[] partInsuranceCover = prices.partInsuranceCover();
+		double[] automotiveLiability = prices.automotiveLiability();
+		for (int i = from; i < to; i++) {
+			double factor = factors[vehicleCodes[i]];
+			int cover = covers[i];
+			if ((cover & ProposalBatch.COMPREHENSIVE) != 0) {
+				complexRateCalculation();
+				comprehensive[i] = comprehensiveCoverBasePrice * factor;
+			} else {
+				comprehensive[i] = Double.NaN;
+			}
+			if ((cover & ProposalBatch.PART_INSURANCE_COVER) != 0) {
+				complexRateCalculation();
+				partInsuranceCover[i] = partInsuranceCoverBasePrice * factor;
+			} else {
+				partInsuranceCover[i] = Double.NaN;
+			}
+			if ((cover & ProposalBatch.AUTOMOTIVE_LIABILITY) != 0) {
+				complexRateCalculation();
+				automotiveLiability[i] = automotiveLiabilityBasePrice * factor;
+			} else {
+				automotiveLiability[i] = Double.NaN;
+			}
+		}
+	}
+
+	/**
+	 * @return the table to build {@link ProposalBatch}es for this engine with
+	 */
+	public RateTable getRateTable() {
+		return rateTable;
+	}
+
 	private void complexRateCalculation() {
 		int a = 0, b = 1;
-		for (int i = 0; i < 1000000000; i++) {
+		for (int i = 0; i < rateCalculationIterations; i++) {
 			a = a + b;
 			b = a - b;
 		}
+		rateCalculationResult = a;
 	}
 
 }
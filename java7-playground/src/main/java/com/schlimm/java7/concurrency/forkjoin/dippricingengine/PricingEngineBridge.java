@@ -10,8 +10,17 @@ import com.schlimm.forkjoindip.DecomposableInput;
 
 public class PricingEngineBridge extends ComputationActivityBridge<List<Proposal>, List<Map<String, Double>>> {
 
-	private PricingEngine engine = new PricingEngine();
-	
+	private PricingEngine engine;
+
+	public PricingEngineBridge() {
+		this(new PricingEngine());
+	}
+
+	public PricingEngineBridge(PricingEngine engine) {
+		super();
+		this.engine = engine;
+	}
+
 	@Override
 	public ComposableResult<List<Map<String, Double>>> compute(DecomposableInput<List<Proposal>> input) {
 		Map<String, Double> result = engine.calculatePrices(input.getRawInput().get(0));
@@ -1,6 +1,5 @@
 package com.schlimm.java7.concurrency.forkjoin.dippricingengine;
 
-@SuppressWarnings("unused")
 public class Proposal {
 
 	private String vorname;
@@ -39,6 +38,14 @@ public class Proposal {
 		return automotiveLiability;
 	}
 
+	public String getVorname() {
+		return vorname;
+	}
+
+	public String getNachname() {
+		return nachname;
+	}
+
 	public String getHsn() {
 		return hsn;
 	}
@@ -0,0 +1,60 @@
+package com.schlimm.java7.concurrency.forkjoin.dippricingengine;
+
+import java.util.List;
+
+/**
+ * Proposals in columnar form: one array per attribute the {@link PricingEngine} needs, index i of every array belongs
+ * to proposal i. HSN/TSN are interned to the codes of a {@link RateTable}, the covers are packed into a bit mask.
+ * 
+ * @author Niklas Schlimm
+ * 
+ */
+public class ProposalBatch {
+
+	public static final int COMPREHENSIVE = 1;
+
+	public static final int PART_INSURANCE_COVER = 2;
+
+	public static final int AUTOMOTIVE_LIABILITY = 4;
+
+	private int[] vehicleCodes;
+
+	private byte[] covers;
+
+	public ProposalBatch(int[] vehicleCodes, byte[] covers) {
+		super();
+		if (vehicleCodes.length != covers.length)
+			throw new IllegalArgumentException("Columns differ in length: " + vehicleCodes.length + "/" + covers.length);
+		this.vehicleCodes = vehicleCodes;
+		this.covers = covers;
+	}
+
+	/**
+	 * Converts the proposals into columns, the vehicle is looked up in the rate table once per proposal.
+	 */
+	public static ProposalBatch of(List<Proposal> proposals, RateTable rateTable) {
+		int[] vehicleCodes = new int[proposals.size()];
+		byte[] covers = new byte[proposals.size()];
+		int i = 0;
+		for (Proposal proposal : proposals) {
+			vehicleCodes[i] = rateTable.code(proposal.getHsn(), proposal.getTsn());
+			covers[i] = (byte) ((proposal.isComprehensive() ? COMPREHENSIVE : 0) | (proposal.isPartInsuranceCover() ? PART_INSURANCE_COVER : 0)
+					| (proposal.isAutomotiveLiability() ? AUTOMOTIVE_LIABILITY : 0));
+			i++;
+		}
+		return new ProposalBatch(vehicleCodes, covers);
+	}
+
+	public int size() {
+		return vehicleCodes.length;
+	}
+
+	int[] vehicleCodes() {
+		return vehicleCodes;
+	}
+
+	byte[] covers() {
+		return covers;
+	}
+
+}
@@ -0,0 +1,55 @@
+package com.schlimm.java7.concurrency.forkjoin.dippricingengine;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Reads proposals from a file, one proposal per line:
+ * <code>vorname;nachname;hsn;tsn;comprehensive;partInsuranceCover;automotiveLiability</code>, the covers as true or
+ * false.
+ * 
+ * @author Niklas Schlimm
+ * 
+ */
+public class ProposalFileReader implements ProposalSource, Closeable {
+
+	private BufferedReader reader;
+
+	private long line = 0;
+
+	public ProposalFileReader(Path file) throws IOException {
+		super();
+		this.reader = Files.newBufferedReader(file, StandardCharsets.UTF_8);
+	}
+
+	@Override
+	public Proposal next() throws IOException {
+		String text = reader.readLine();
+		if (text == null)
+			return null;
+		line++;
+		String[] fields = text.split(";");
+		if (fields.length != 7)
+			throw new IOException("Line " + line + " is not a proposal: " + text);
+		return new Proposal(fields[0], fields[1], fields[2], fields[3], Boolean.parseBoolean(fields[4]), Boolean.parseBoolean(fields[5]), Boolean.parseBoolean(fields[6]));
+	}
+
+	/**
+	 * Writes a proposal in the format of this reader.
+	 */
+	public static void write(Writer writer, Proposal proposal) throws IOException {
+		writer.write(proposal.getVorname() + ";" + proposal.getNachname() + ";" + proposal.getHsn() + ";" + proposal.getTsn() + ";" + proposal.isComprehensive() + ";"
+				+ proposal.isPartInsuranceCover() + ";" + proposal.isAutomotiveLiability() + "\n");
+	}
+
+	@Override
+	public void close() throws IOException {
+		reader.close();
+	}
+
+}
@@ -0,0 +1,18 @@
+package com.schlimm.java7.concurrency.forkjoin.dippricingengine;
+
+import java.io.IOException;
+
+/**
+ * Proposals read one after the other, e.g. from a file or a queue, so they need not all be in memory at once.
+ * 
+ * @author Niklas Schlimm
+ * 
+ */
+public interface ProposalSource {
+
+	/**
+	 * @return the next proposal, null at the end of the input
+	 */
+	Proposal next() throws IOException, InterruptedException;
+
+}
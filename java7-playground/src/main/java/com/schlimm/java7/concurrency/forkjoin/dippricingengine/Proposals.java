@@ -0,0 +1,40 @@
+package com.schlimm.java7.concurrency.forkjoin.dippricingengine;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Sample proposals for the benchmarks and examples of the pricing engine: four vehicles in turn, with every second
+ * proposal part insured and every third one with automotive liability.
+ *
+ * @author Niklas Schlimm
+ *
+ */
+public final class Proposals {
+
+	private static final String[][] CARS = { { "7909", "AAL" }, { "0005", "432" }, { "0583", "442" }, { "4026", "AAA" } };
+
+	private Proposals() {
+		super();
+	}
+
+	/**
+	 * @return the sample proposal with the given index
+	 */
+	public static Proposal proposal(long index) {
+		String[] car = CARS[(int) (index % CARS.length)];
+		return new Proposal("Niklas", "Schlimm", car[0], car[1], true, index % 2 == 0, index % 3 == 0);
+	}
+
+	/**
+	 * @return the first count sample proposals
+	 */
+	public static List<Proposal> sample(int count) {
+		List<Proposal> proposals = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			proposals.add(proposal(i));
+		}
+		return proposals;
+	}
+
+}
@@ -0,0 +1,40 @@
+package com.schlimm.java7.concurrency.forkjoin.dippricingengine;
+
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Takes proposals from a queue filled by a producer, e.g. a message listener. The producer ends the input with
+ * {@link #END}. A bounded queue passes the back-pressure of the pipeline on to the producer.
+ * 
+ * @author Niklas Schlimm
+ * 
+ */
+public class QueueProposalSource implements ProposalSource {
+
+	/**
+	 * Marks the end of the input.
+	 */
+	public static final Proposal END = new Proposal(null, null, null, null, false, false, false);
+
+	private BlockingQueue<Proposal> queue;
+
+	private boolean ended = false;
+
+	public QueueProposalSource(BlockingQueue<Proposal> queue) {
+		super();
+		this.queue = queue;
+	}
+
+	@Override
+	public Proposal next() throws InterruptedException {
+		if (ended)
+			return null;
+		Proposal proposal = queue.take();
+		if (proposal == END) {
+			ended = true;
+			return null;
+		}
+		return proposal;
+	}
+
+}
@@ -0,0 +1,198 @@
+package com.schlimm.java7.concurrency.forkjoin.dippricingengine;
+
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded, concurrent memoization of rates. The first thread that asks for a key computes the rate, threads asking for
+ * the same key meanwhile wait for that computation instead of starting their own (single flight). A rate lives for the
+ * time to live after it was computed; if the cache holds more than maximumSize rates, the rates computed first are
+ * evicted. A computation that fails is not cached, the next request computes again. The insertion order is a linked
+ * set guarded by its own lock, so adding, evicting and removing an expired or failed rate are constant time.
+ * 
+ * @author Niklas Schlimm
+ * 
+ */
+public class RateCache {
+
+	private final ConcurrentMap<RateKey, Entry> entries = new ConcurrentHashMap<>();
+
+	// Entries in the order they were added, the head is evicted first, guarded by itself
+	private final LinkedHashSet<Entry> insertionOrder = new LinkedHashSet<>();
+
+	private final int maximumSize;
+
+	private final long timeToLiveNanos;
+
+	private final AtomicLong hits = new AtomicLong();
+
+	private final AtomicLong misses = new AtomicLong();
+
+	private final AtomicLong waits = new AtomicLong();
+
+	private final AtomicLong evictions = new AtomicLong();
+
+	private final AtomicLong expirations = new AtomicLong();
+
+	/**
+	 * @param maximumSize
+	 *            number of rates kept
+	 * @param timeToLive
+	 *            time a rate is kept after it was computed, 0 to keep it until it is evicted
+	 */
+	public RateCache(int maximumSize, long timeToLive, TimeUnit unit) {
+		super();
+		if (maximumSize < 1 || timeToLive < 0)
+			throw new IllegalArgumentException("Size must be positive, time to live must not be negative: " + maximumSize + "/" + timeToLive);
+		this.maximumSize = maximumSize;
+		this.timeToLiveNanos = unit.toNanos(timeToLive);
+	}
+
+	/**
+	 * @return the cached rate, or the rate computed by the calculation if there is none
+	 * @throws IllegalStateException
+	 *             if the calculation failed or the thread was interrupted while waiting for it
+	 */
+	public double get(RateKey key, Callable<Double> calculation) {
+		Entry entry = entries.get(key);
+		if (entry != null && entry.isExpired(System.nanoTime())) {
+			if (entries.remove(key, entry)) {
+				removed(entry);
+				expirations.incrementAndGet();
+			}
+			entry = null;
+		}
+		boolean computed = false;
+		if (entry == null) {
+			Entry created = new Entry(key, new FutureTask<Double>(calculation));
+			entry = entries.putIfAbsent(key, created);
+			if (entry == null) {
+				misses.incrementAndGet();
+				added(created);
+				evict();
+				created.compute();
+				entry = created;
+				computed = true;
+			}
+		}
+		if (!computed) {
+			hits.incrementAndGet();
+			if (!entry.task.isDone())
+				waits.incrementAndGet();
+		}
+		try {
+			return entry.task.get();
+		} catch (ExecutionException e) {
+			if (entries.remove(key, entry))
+				removed(entry);
+			throw new IllegalStateException("Rate calculation failed for " + key, e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for rate " + key, e);
+		}
+	}
+
+	private void added(Entry entry) {
+		synchronized (insertionOrder) {
+			insertionOrder.add(entry);
+		}
+	}
+
+	private void removed(Entry entry) {
+		synchronized (insertionOrder) {
+			insertionOrder.remove(entry);
+		}
+	}
+
+	private void evict() {
+		synchronized (insertionOrder) {
+			Iterator<Entry> oldest = insertionOrder.iterator();
+			while (entries.size() > maximumSize && oldest.hasNext()) {
+				Entry entry = oldest.next();
+				oldest.remove();
+				if (entries.remove(entry.key, entry))
+					evictions.incrementAndGet();
+			}
+		}
+	}
+
+	public int size() {
+		return entries.size();
+	}
+
+	public void clear() {
+		synchronized (insertionOrder) {
+			entries.clear();
+			insertionOrder.clear();
+		}
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * @return requests that waited for a computation another thread had started
+	 */
+	public long getWaits() {
+		return waits.get();
+	}
+
+	public long getEvictions() {
+		return evictions.get();
+	}
+
+	public long getExpirations() {
+		return expirations.get();
+	}
+
+	public double getHitRate() {
+		long hits = getHits();
+		long requests = hits + getMisses();
+		return requests == 0 ? 0 : (double) hits / requests;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("Rate cache - size : %1$d/%2$d - hits : %3$d - misses : %4$d - hit rate : %5$.2f%% - waits : %6$d - evictions : %7$d - expirations : %8$d", size(), maximumSize,
+				getHits(), getMisses(), getHitRate() * 100, getWaits(), getEvictions(), getExpirations());
+	}
+
+	private class Entry {
+
+		private final RateKey key;
+
+		private final FutureTask<Double> task;
+
+		// Long.MAX_VALUE while the rate is computed
+		private volatile long expires = Long.MAX_VALUE;
+
+		Entry(RateKey key, FutureTask<Double> task) {
+			super();
+			this.key = key;
+			this.task = task;
+		}
+
+		void compute() {
+			task.run();
+			if (timeToLiveNanos > 0)
+				expires = System.nanoTime() + timeToLiveNanos;
+		}
+
+		boolean isExpired(long now) {
+			return expires != Long.MAX_VALUE && now - expires > 0;
+		}
+	}
+
+}
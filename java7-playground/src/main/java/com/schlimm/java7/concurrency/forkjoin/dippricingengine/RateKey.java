@@ -0,0 +1,50 @@
+package com.schlimm.java7.concurrency.forkjoin.dippricingengine;
+
+/**
+ * The inputs a rate of the {@link PricingEngine} depends on: the vehicle (HSN and TSN) and the cover, one of the cover
+ * bits of {@link ProposalBatch}.
+ * 
+ * @author Niklas Schlimm
+ * 
+ */
+public final class RateKey {
+
+	private final String vehicle;
+
+	private final int cover;
+
+	public RateKey(String vehicle, int cover) {
+		super();
+		this.vehicle = vehicle;
+		this.cover = cover;
+	}
+
+	public String getVehicle() {
+		return vehicle;
+	}
+
+	public int getCover() {
+		return cover;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (!(obj instanceof RateKey))
+			return false;
+		RateKey other = (RateKey) obj;
+		return cover == other.cover && vehicle.equals(other.vehicle);
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * vehicle.hashCode() + cover;
+	}
+
+	@Override
+	public String toString() {
+		return vehicle + "/" + cover;
+	}
+
+}
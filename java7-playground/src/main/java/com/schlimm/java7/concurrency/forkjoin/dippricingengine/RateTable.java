@@ -0,0 +1,52 @@
+package com.schlimm.java7.concurrency.forkjoin.dippricingengine;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The HSN/TSN factors of the {@link PricingEngine} in a primitive array. Every HSN/TSN combination is interned to an
+ * int code once, when a {@link ProposalBatch} is built, pricing then reads the factor by code without any string
+ * concatenation, hashing or unboxing.
+ * 
+ * @author Niklas Schlimm
+ * 
+ */
+public class RateTable {
+
+	private Map<String, Integer> codes = new HashMap<>();
+
+	private double[] factors;
+
+	public RateTable(Map<String, Double> hsnTsnFactors) {
+		super();
+		factors = new double[hsnTsnFactors.size()];
+		for (Map.Entry<String, Double> factor : hsnTsnFactors.entrySet()) {
+			factors[codes.size()] = factor.getValue();
+			codes.put(factor.getKey(), codes.size());
+		}
+	}
+
+	/**
+	 * @return the code of the HSN/TSN combination
+	 * @throws IllegalArgumentException
+	 *             if there is no factor for the combination
+	 */
+	public int code(String hsn, String tsn) {
+		Integer code = codes.get(hsn.concat(tsn));
+		if (code == null)
+			throw new IllegalArgumentException("No rate for HSN/TSN: " + hsn + "/" + tsn);
+		return code;
+	}
+
+	public double factor(int code) {
+		return factors[code];
+	}
+
+	/**
+	 * @return the factors by code, not to be modified
+	 */
+	double[] factors() {
+		return factors;
+	}
+
+}
@@ -0,0 +1,134 @@
+package com.schlimm.java7.concurrency.forkjoin.dippricingengine;
+
+import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import com.schlimm.forkjoindip.ComputationActivityBridge;
+import com.schlimm.forkjoindip.ComputationActivityCollector;
+import com.schlimm.forkjoindip.DecomposableInputSpliterator;
+import com.schlimm.forkjoindip.GenericRecursiveTask;
+import com.schlimm.java7.benchmark.original.Average;
+import com.schlimm.java7.benchmark.original.BenchmarkRunnable;
+import com.schlimm.java7.benchmark.original.PerformanceChecker;
+import com.schlimm.java7.benchmark.original.PerformanceHarness;
+
+/**
+ * Compares the dip framework with the stream pipeline on the same proposals and the same pool:
+ * <ul>
+ * <li>FORK_JOIN: {@link GenericRecursiveTask} with the pricing bridge</li>
+ * <li>DIP_STREAM: the same input and bridge as parallel stream, see {@link DecomposableInputSpliterator} and
+ * {@link ComputationActivityCollector}</li>
+ * <li>PARALLEL_STREAM: <code>parallelStream().map(calculatePrices).collect(toList())</code> on the list of proposals</li>
+ * </ul>
+ * The streams are submitted to the pool of the benchmark, so they run in it instead of the common pool.
+ * <p>
+ * Arguments (all optional): number of proposals (default 1000), rate calculation iterations per price (default 10000),
+ * test time in ms (default 1000), runs (default 5), composition "lists" or "slots" (default lists).
+ * 
+ * @author Niklas Schlimm
+ * 
+ */
+public class StreamVersusForkJoinBenchmark {
+
+	enum Pipeline {
+		FORK_JOIN, DIP_STREAM, PARALLEL_STREAM
+	}
+
+	public static void main(String[] args) {
+		int proposalCount = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+		int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 10000;
+		long testTime = args.length > 2 ? Long.parseLong(args[2]) : 1000;
+		int runs = args.length > 3 ? Integer.parseInt(args[3]) : 5;
+		boolean slots = args.length > 4 && "slots".equals(args[4]);
+		List<Proposal> proposalsList = Proposals.sample(proposalCount);
+		PricingEngine engine = new PricingEngine(iterations);
+		ForkJoinPool pool = new ForkJoinPool();
+		DecimalFormat df = new DecimalFormat("#.##");
+		System.out.println("Proposals: " + proposalCount + " - iterations: " + iterations + " - composition: " + (slots ? "slots" : "lists") + " - parallelism: " + pool.getParallelism());
+		List<String> table = new ArrayList<>();
+		for (Pipeline pipeline : Pipeline.values()) {
+			PricingRun run = new PricingRun(pool, proposalsList, engine, slots, pipeline);
+			System.out.println("Benchmark target: " + pipeline);
+			Average average = new PerformanceHarness().calculatePerf(new PerformanceChecker(testTime, run), runs);
+			table.add(String.format("%1$-20s %2$-12s %3$-12s %4$-12s", pipeline, df.format(average.mean() * proposalCount * 1000d / testTime),
+					df.format(average.confidenceInterval() * proposalCount * 1000d / testTime), df.format(testTime * 1000000d / (average.mean() * proposalCount))));
+			System.out.println("To avoid dead code optimization: " + run.getResult());
+		}
+		System.out.println(String.format("%1$-20s %2$-12s %3$-12s %4$-12s", "Pipeline", "Pricings/s", "+/- 95%", "ns/pricing"));
+		for (String row : table) {
+			System.out.println(row);
+		}
+		pool.shutdown();
+	}
+
+	/**
+	 * Prices all proposals once per run.
+	 */
+	private static class PricingRun implements BenchmarkRunnable, Callable<List<?>> {
+
+		private ForkJoinPool pool;
+
+		private List<Proposal> proposalsList;
+
+		private ListOfProposals proposals;
+
+		private PricingEngine engine;
+
+		private boolean slots;
+
+		private Pipeline pipeline;
+
+		private int prices;
+
+		public PricingRun(ForkJoinPool pool, List<Proposal> proposalsList, PricingEngine engine, boolean slots, Pipeline pipeline) {
+			super();
+			this.pool = pool;
+			this.proposalsList = proposalsList;
+			this.proposals = new ListOfProposals(proposalsList);
+			this.engine = engine;
+			this.slots = slots;
+			this.pipeline = pipeline;
+		}
+
+		@Override
+		public void run() {
+			try {
+				prices = pipeline == Pipeline.FORK_JOIN ? call().size() : pool.submit((Callable<List<?>>) this).get().size();
+			} catch (InterruptedException | ExecutionException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+
+		@SuppressWarnings("unchecked")
+		@Override
+		public List<?> call() {
+			ComputationActivityBridge<List<Proposal>, List<Map<String, Double>>> bridge = slots ? new PriceSlotsBridge(engine, proposals.size()) : new PricingEngineBridge(engine);
+			switch (pipeline) {
+			case FORK_JOIN:
+				return (List<?>) pool.invoke(new GenericRecursiveTask(proposals, bridge)).getRawResult();
+			case DIP_STREAM:
+				return DecomposableInputSpliterator.stream(proposals, true).collect(ComputationActivityCollector.of(bridge)).getRawResult();
+			default:
+				return proposalsList.parallelStream().map(new Function<Proposal, Map<String, Double>>() {
+					@Override
+					public Map<String, Double> apply(Proposal proposal) {
+						return engine.calculatePrices(proposal);
+					}
+				}).collect(Collectors.<Map<String, Double>> toList());
+			}
+		}
+
+		@Override
+		public Object getResult() {
+			return prices;
+		}
+	}
+
+}
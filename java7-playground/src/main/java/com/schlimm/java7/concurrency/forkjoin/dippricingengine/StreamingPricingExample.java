@@ -0,0 +1,54 @@
+package com.schlimm.java7.concurrency.forkjoin.dippricingengine;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Prices a proposal file with the {@link StreamingPricingPipeline} and reports throughput and the heap used at the
+ * end. The input file is generated if it does not exist.
+ * <p>
+ * Arguments (all optional): input file (default proposals.csv), output file (default prices.csv), proposals to generate
+ * (default 1000000), rate calculation iterations per price (default 100), batch size (default 1024), batches in flight
+ * (default 16).
+ * 
+ * @author Niklas Schlimm
+ * 
+ */
+public class StreamingPricingExample {
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		Path input = Paths.get(args.length > 0 ? args[0] : "proposals.csv");
+		Path output = Paths.get(args.length > 1 ? args[1] : "prices.csv");
+		long proposalCount = args.length > 2 ? Long.parseLong(args[2]) : 1000000;
+		int iterations = args.length > 3 ? Integer.parseInt(args[3]) : 100;
+		int batchSize = args.length > 4 ? Integer.parseInt(args[4]) : 1024;
+		int maxInFlight = args.length > 5 ? Integer.parseInt(args[5]) : 16;
+		if (!Files.exists(input)) {
+			System.out.println("Generating " + proposalCount + " proposals into " + input);
+			try (BufferedWriter writer = Files.newBufferedWriter(input, StandardCharsets.UTF_8)) {
+				for (long i = 0; i < proposalCount; i++) {
+					ProposalFileReader.write(writer, Proposals.proposal(i));
+				}
+			}
+		}
+		ForkJoinPool workers = new ForkJoinPool();
+		StreamingPricingPipeline pipeline = new StreamingPricingPipeline(new PricingEngine(iterations), workers, batchSize, maxInFlight);
+		long start = System.nanoTime();
+		long priced;
+		try (ProposalFileReader source = new ProposalFileReader(input); PriceFileWriter sink = new PriceFileWriter(output)) {
+			priced = pipeline.price(source, sink);
+		}
+		long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+		workers.shutdown();
+		Runtime runtime = Runtime.getRuntime();
+		System.out.println(String.format("Priced %1$d proposals into %2$s in %3$d ms - proposals/s : %4$.2f - heap used : %5$d MB", priced, output, millis, priced * 1000d / Math.max(1, millis),
+				(runtime.totalMemory() - runtime.freeMemory()) / (1024 * 1024)));
+	}
+
+}
@@ -0,0 +1,165 @@
+package com.schlimm.java7.concurrency.forkjoin.dippricingengine;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Prices an input of any size with constant memory. A reader thread reads micro-batches of batchSize proposals from
+ * the {@link ProposalSource}, converts each one into a {@link ProposalBatch} and submits it to the workers. The
+ * calling thread takes the results in submission order and hands them to the {@link PriceSink}, so the output has the
+ * order of the input, whatever batch the workers finish first.
+ * <p>
+ * At most maxInFlight batches are read and not yet written. If the workers or the sink fall behind, the reader blocks
+ * (back-pressure) and stops reading the source, so memory use is bounded by maxInFlight * batchSize proposals and
+ * prices, not by the size of the input.
+ * 
+ * @author Niklas Schlimm
+ * 
+ */
+public class StreamingPricingPipeline {
+
+	private PricingEngine engine;
+
+	private ExecutorService workers;
+
+	private int batchSize;
+
+	private int maxInFlight;
+
+	/**
+	 * @param workers
+	 *            the threads that price the batches, e.g. a ForkJoinPool
+	 * @param batchSize
+	 *            proposals priced by one task
+	 * @param maxInFlight
+	 *            batches read but not yet written
+	 */
+	public StreamingPricingPipeline(PricingEngine engine, ExecutorService workers, int batchSize, int maxInFlight) {
+		super();
+		if (batchSize < 1 || maxInFlight < 1)
+			throw new IllegalArgumentException("Batch size and batches in flight must be positive: " + batchSize + "/" + maxInFlight);
+		this.engine = engine;
+		this.workers = workers;
+		this.batchSize = batchSize;
+		this.maxInFlight = maxInFlight;
+	}
+
+	/**
+	 * Prices all proposals of the source into the sink, returns when the last price has been written.
+	 * 
+	 * @return number of proposals priced
+	 * @throws IOException
+	 *             if the source or the sink failed
+	 */
+	public long price(ProposalSource source, PriceSink sink) throws IOException, InterruptedException {
+		// results in submission order, the capacity is the back-pressure of the reader
+		BlockingQueue<Future<PriceBatch>> inFlight = new ArrayBlockingQueue<>(maxInFlight);
+		Thread reader = new Thread(new Reader(source, inFlight), "Proposal-Reader");
+		reader.setDaemon(true);
+		reader.start();
+		long written = 0;
+		try {
+			while (true) {
+				Future<PriceBatch> result = inFlight.take();
+				if (result == END)
+					return written;
+				PriceBatch prices = result.get();
+				sink.write(written, prices);
+				written += prices.size();
+			}
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException)
+				throw (IOException) e.getCause();
+			throw new IllegalStateException("Pricing failed after " + written + " proposals", e.getCause());
+		} finally {
+			reader.interrupt();
+			for (Future<PriceBatch> result : inFlight) {
+				result.cancel(false);
+			}
+		}
+	}
+
+	private static final Future<PriceBatch> END = new FutureTask<>(new Callable<PriceBatch>() {
+		@Override
+		public PriceBatch call() {
+			return null;
+		}
+	});
+
+	private class Reader implements Runnable {
+
+		private ProposalSource source;
+
+		private BlockingQueue<Future<PriceBatch>> inFlight;
+
+		Reader(ProposalSource source, BlockingQueue<Future<PriceBatch>> inFlight) {
+			super();
+			this.source = source;
+			this.inFlight = inFlight;
+		}
+
+		@Override
+		public void run() {
+			List<Proposal> proposals = new ArrayList<>(batchSize);
+			try {
+				while (true) {
+					Proposal proposal = source.next();
+					if (proposal != null)
+						proposals.add(proposal);
+					if (proposals.size() == batchSize || (proposal == null && !proposals.isEmpty())) {
+						inFlight.put(workers.submit(new BatchPricing(ProposalBatch.of(proposals, engine.getRateTable()))));
+						proposals.clear();
+					}
+					if (proposal == null) {
+						inFlight.put(END);
+						return;
+					}
+				}
+			} catch (InterruptedException e) {
+				// writer gave up
+			} catch (final Throwable t) {
+				// the writer finds the failure in the order of the input, errors too, or it would wait for the end forever
+				FutureTask<PriceBatch> failure = new FutureTask<>(new Callable<PriceBatch>() {
+					@Override
+					public PriceBatch call() throws Exception {
+						if (t instanceof Error)
+							throw (Error) t;
+						throw (Exception) t;
+					}
+				});
+				failure.run();
+				try {
+					inFlight.put(failure);
+				} catch (InterruptedException interrupted) {
+					// writer gave up
+				}
+			}
+		}
+	}
+
+	private class BatchPricing implements Callable<PriceBatch> {
+
+		private ProposalBatch proposals;
+
+		BatchPricing(ProposalBatch proposals) {
+			super();
+			this.proposals = proposals;
+		}
+
+		@Override
+		public PriceBatch call() {
+			PriceBatch prices = new PriceBatch(proposals.size());
+			engine.calculatePrices(proposals, prices, 0, proposals.size());
+			return prices;
+		}
+	}
+
+}
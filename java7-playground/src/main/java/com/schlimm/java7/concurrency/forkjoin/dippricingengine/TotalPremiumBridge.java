@@ -0,0 +1,41 @@
+package com.schlimm.java7.concurrency.forkjoin.dippricingengine;
+
+import java.util.List;
+
+import com.schlimm.forkjoindip.ComposableResult;
+import com.schlimm.forkjoindip.ComputationActivityBridge;
+import com.schlimm.forkjoindip.DecomposableInput;
+import com.schlimm.forkjoindip.DoubleReductionResult;
+import com.schlimm.forkjoindip.Reduction;
+
+/**
+ * Reduces the prices of all covers of all proposals to one figure, e.g. the total or the highest premium, without
+ * keeping the single prices.
+ * 
+ * @author Niklas Schlimm
+ * 
+ */
+public class TotalPremiumBridge extends ComputationActivityBridge<List<Proposal>, Double> {
+
+	private PricingEngine engine;
+
+	private Reduction reduction;
+
+	public TotalPremiumBridge(PricingEngine engine, Reduction reduction) {
+		super();
+		this.engine = engine;
+		this.reduction = reduction;
+	}
+
+	@Override
+	public ComposableResult<Double> compute(DecomposableInput<List<Proposal>> input) {
+		DoubleReductionResult result = new DoubleReductionResult(reduction);
+		for (Proposal proposal : input.getRawInput()) {
+			for (Double price : engine.calculatePrices(proposal).values()) {
+				result.add(price);
+			}
+		}
+		return result;
+	}
+
+}
@@ -1,6 +1,5 @@
 package com.schlimm.java7.concurrency.forkjoin.pricingengine;
 
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
@@ -12,18 +11,30 @@ public class ForkJoinTaskExample extends RecursiveTask<List<Double>> {
 
 	private List<Double> max;
 
+	// Shared by all sub tasks, every task writes the prices of its proposals from offset on
+	private Double[] prices;
+
+	private int offset;
+
 	private static final long serialVersionUID = -2703342063482619328L;
 
 	public ForkJoinTaskExample(List<Double> max) {
+		this(max, new Double[max.size()], 0);
+	}
+
+	private ForkJoinTaskExample(List<Double> max, Double[] prices, int offset) {
 		super();
 		this.max = max;
+		this.prices = prices;
+		this.offset = offset;
 	}
 
 	@Override
 	protected List<Double> compute() {
 
 		if (max.size() == 1) { // task is small enough to compute linear in this thread
-			return Arrays.asList(computeDirectly(max.get(0)));
+			prices[offset] = computeDirectly(max.get(0));
+			return slots();
 		}
 
 		// task is to large for one thread to execute efficiently, split the task
@@ -31,14 +42,20 @@ public class ForkJoinTaskExample extends RecursiveTask<List<Double>> {
 
 		int split = max.size() / 2;
 
-		ForkJoinTaskExample f1 = new ForkJoinTaskExample(max.subList(0, split));
+		ForkJoinTaskExample f1 = new ForkJoinTaskExample(max.subList(0, split), prices, offset);
 		f1.fork(); // generate task for some other thread that can execute on some other CPU
-		ForkJoinTaskExample f2 = new ForkJoinTaskExample(max.subList(split, max.size()));
-		List<Double> newList = new ArrayList<>();
-		newList.addAll(f2.compute()); // compute this sub task in the current thread
-		newList.addAll(f1.join()); // join the results of the other sub task
-		return newList;
+		ForkJoinTaskExample f2 = new ForkJoinTaskExample(max.subList(split, max.size()), prices, offset + split);
+		f2.compute(); // compute this sub task in the current thread
+		f1.join(); // wait for the other sub task, it wrote its prices into the slots already
+		return slots();
+
+	}
 
+	/**
+	 * @return the prices of this task, a view of the shared array, nothing is copied
+	 */
+	private List<Double> slots() {
+		return Arrays.asList(prices).subList(offset, offset + max.size());
 	}
 
 	private Double computeDirectly(Double max) {
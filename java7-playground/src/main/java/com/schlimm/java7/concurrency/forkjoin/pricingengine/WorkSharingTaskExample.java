@@ -21,14 +21,21 @@ public class WorkSharingTaskExample implements Callable<Map<String, Double>> {
 
 	private Proposal proposal;
 
+	private PricingEngine engine;
+
 	public WorkSharingTaskExample(Proposal proposal) {
+		this(proposal, new PricingEngine());
+	}
+
+	public WorkSharingTaskExample(Proposal proposal, PricingEngine engine) {
 		super();
 		this.proposal = proposal;
+		this.engine = engine;
 	}
 
 	@Override
 	public Map<String, Double> call() throws Exception {
-		return new PricingEngine().calculatePrices(proposal);
+		return engine.calculatePrices(proposal);
 	}
 
 	public static void main(String[] args) throws InterruptedException, ExecutionException {
@@ -0,0 +1,395 @@
+package com.schlimm.java7.nio;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.channels.FileLock;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * File channel that bounds the memory writers can tie up: at most maxBytesInFlight bytes and maxOperations write
+ * operations are handed to the inner channel and not completed yet. So the work queue of the channel's pool can not
+ * grow beyond maxOperations tasks, however fast the producers are (see the Performance_OOM_AsynchronousFileChannel
+ * samples). A write that exceeds the caps blocks the producer until enough writes are completed or is rejected with
+ * {@link RejectedExecutionException}, depending on the {@link OverflowPolicy}. A single write larger than
+ * maxBytesInFlight is admitted when no other write is in flight. A producer interrupted while it waits gets the write
+ * failed with an {@link InterruptedIOException} and keeps its interrupt status.
+ * <p>
+ * Threads of the pool created by {@link #open(Path, Set, int, long, int, OverflowPolicy)} are never blocked or
+ * rejected by their own channel, so completion handlers that write the rest of a partial write can not deadlock the
+ * channel. Completion handlers of a channel wrapped with the constructor must not write with
+ * {@link OverflowPolicy#BLOCK}.
+ * 
+ * @author Niklas Schlimm
+ * 
+ */
+public class BoundedAsynchronousFileChannel extends AsynchronousFileChannel {
+
+	/**
+	 * What happens to a write that exceeds the caps.
+	 */
+	public enum OverflowPolicy {
+
+		/**
+		 * The producer waits until enough writes are completed.
+		 */
+		BLOCK,
+
+		/**
+		 * The write is rejected with {@link RejectedExecutionException}.
+		 */
+		REJECT
+	}
+
+	/**
+	 * Default cap of bytes in flight.
+	 */
+	public static final long DEFAULT_MAX_BYTES_IN_FLIGHT = 64 * 1024 * 1024;
+
+	/**
+	 * Default cap of write operations in flight.
+	 */
+	public static final int DEFAULT_MAX_OPERATIONS = 10000;
+
+	private final AsynchronousFileChannel innerChannel;
+
+	// The pool created by open(), shut down on close, null if the inner channel was given
+	private final ExecutorService pool;
+
+	// The live threads of that pool, empty if the inner channel was given
+	private final Set<Thread> poolThreads;
+
+	private final long maxBytesInFlight;
+
+	private final int maxOperations;
+
+	private final OverflowPolicy policy;
+
+	private final Lock lock = new ReentrantLock();
+
+	private final Condition released = lock.newCondition();
+
+	// Guarded by lock
+	private long bytesInFlight = 0;
+
+	private int operationsInFlight = 0;
+
+	private long peakBytesInFlight = 0;
+
+	private int peakOperationsInFlight = 0;
+
+	private long stalls = 0;
+
+	private long stallNanos = 0;
+
+	private long rejections = 0;
+
+	private boolean closed = false;
+
+	/**
+	 * Wraps a channel, the channel is closed with this one.
+	 */
+	public BoundedAsynchronousFileChannel(AsynchronousFileChannel innerChannel, long maxBytesInFlight, int maxOperations, OverflowPolicy policy) {
+		this(innerChannel, null, Collections.<Thread> emptySet(), maxBytesInFlight, maxOperations, policy);
+	}
+
+	private BoundedAsynchronousFileChannel(AsynchronousFileChannel innerChannel, ExecutorService pool, Set<Thread> poolThreads, long maxBytesInFlight, int maxOperations,
+			OverflowPolicy policy) {
+		super();
+		if (maxBytesInFlight < 1 || maxOperations < 1)
+			throw new IllegalArgumentException("Caps must be positive: " + maxBytesInFlight + "/" + maxOperations);
+		this.innerChannel = innerChannel;
+		this.pool = pool;
+		this.poolThreads = poolThreads;
+		this.maxBytesInFlight = maxBytesInFlight;
+		this.maxOperations = maxOperations;
+		this.policy = policy;
+	}
+
+	/**
+	 * Opens the file with the default caps, producers block when they are reached. One pool thread does the I/O.
+	 */
+	public static BoundedAsynchronousFileChannel open(Path file, Set<? extends OpenOption> options) throws IOException {
+		return open(file, options, 1, DEFAULT_MAX_BYTES_IN_FLIGHT, DEFAULT_MAX_OPERATIONS, OverflowPolicy.BLOCK);
+	}
+
+	/**
+	 * Opens the file with a fixed pool of daemon threads of its own.
+	 * 
+	 * @param poolSize
+	 *            threads that do the I/O
+	 */
+	public static BoundedAsynchronousFileChannel open(Path file, Set<? extends OpenOption> options, int poolSize, long maxBytesInFlight, int maxOperations, OverflowPolicy policy)
+			throws IOException {
+		final Set<Thread> poolThreads = Collections.newSetFromMap(new ConcurrentHashMap<Thread, Boolean>());
+		ExecutorService pool = Executors.newFixedThreadPool(poolSize, new ThreadFactory() {
+			@Override
+			public Thread newThread(final Runnable r) {
+				Thread t = new Thread(new Runnable() {
+					@Override
+					public void run() {
+						poolThreads.add(Thread.currentThread());
+						try {
+							r.run();
+						} finally {
+							poolThreads.remove(Thread.currentThread());
+						}
+					}
+				}, "Bounded-File-Channel-IO");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		try {
+			return new BoundedAsynchronousFileChannel(AsynchronousFileChannel.open(file, options, pool), pool, poolThreads, maxBytesInFlight, maxOperations, policy);
+		} catch (IOException | RuntimeException e) {
+			pool.shutdown();
+			throw e;
+		}
+	}
+
+	/**
+	 * Waits until the write fits the caps and counts it as in flight.
+	 * 
+	 * @throws RejectedExecutionException
+	 *             if the write does not fit and the policy is {@link OverflowPolicy#REJECT}
+	 * @throws InterruptedException
+	 *             if the producer was interrupted while it waited, nothing is counted then
+	 */
+	private void acquire(int bytes) throws InterruptedException {
+		boolean poolThread = poolThreads.contains(Thread.currentThread());
+		lock.lock();
+		try {
+			if (!poolThread && !fits(bytes)) {
+				if (policy == OverflowPolicy.REJECT) {
+					rejections++;
+					throw new RejectedExecutionException("Write of " + bytes + " bytes exceeds the caps, in flight: " + operationsInFlight + " writes, " + bytesInFlight + " bytes");
+				}
+				stalls++;
+				long start = System.nanoTime();
+				try {
+					while (!fits(bytes)) {
+						released.await();
+					}
+				} finally {
+					stallNanos += System.nanoTime() - start;
+				}
+			}
+			bytesInFlight += bytes;
+			operationsInFlight++;
+			peakBytesInFlight = Math.max(peakBytesInFlight, bytesInFlight);
+			peakOperationsInFlight = Math.max(peakOperationsInFlight, operationsInFlight);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private boolean fits(int bytes) {
+		return closed || operationsInFlight == 0 || (operationsInFlight < maxOperations && bytesInFlight + bytes <= maxBytesInFlight);
+	}
+
+	private void release(int bytes) {
+		lock.lock();
+		try {
+			bytesInFlight -= bytes;
+			operationsInFlight--;
+			released.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public <A> void write(ByteBuffer src, long position, A attachment, final CompletionHandler<Integer, ? super A> handler) {
+		final int bytes = src.remaining();
+		try {
+			acquire(bytes);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			InterruptedIOException failure = new InterruptedIOException("Interrupted while waiting to write " + bytes + " bytes");
+			failure.initCause(e);
+			handler.failed(failure, attachment);
+			return;
+		}
+		try {
+			innerChannel.write(src, position, attachment, new CompletionHandler<Integer, A>() {
+				@Override
+				public void completed(Integer result, A attachment) {
+					release(bytes);
+					handler.completed(result, attachment);
+				}
+
+				@Override
+				public void failed(Throwable exc, A attachment) {
+					release(bytes);
+					handler.failed(exc, attachment);
+				}
+			});
+		} catch (RuntimeException e) {
+			release(bytes);
+			throw e;
+		}
+	}
+
+	@Override
+	public Future<Integer> write(ByteBuffer src, long position) {
+		final CompletableFuture<Integer> result = new CompletableFuture<>();
+		// the handler variant releases the caps on completion, even if the producer never asks for the result
+		write(src, position, null, new CompletionHandler<Integer, Object>() {
+			@Override
+			public void completed(Integer written, Object attachment) {
+				result.complete(written);
+			}
+
+			@Override
+			public void failed(Throwable exc, Object attachment) {
+				result.completeExceptionally(exc);
+			}
+		});
+		return result;
+	}
+
+	public long getBytesInFlight() {
+		lock.lock();
+		try {
+			return bytesInFlight;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @return write operations handed to the inner channel and not completed yet, i.e. the depth of the work queue
+	 */
+	public int getOperationsInFlight() {
+		lock.lock();
+		try {
+			return operationsInFlight;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @return number of writes that had to wait, and the time they waited in total
+	 */
+	public long getStalls() {
+		lock.lock();
+		try {
+			return stalls;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public long getStallTime(TimeUnit unit) {
+		lock.lock();
+		try {
+			return unit.convert(stallNanos, TimeUnit.NANOSECONDS);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public long getRejections() {
+		lock.lock();
+		try {
+			return rejections;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public String toString() {
+		lock.lock();
+		try {
+			return String.format("Bounded channel - policy : %1$s - writes in flight : %2$d (peak %3$d, cap %4$d) - bytes in flight : %5$d (peak %6$d, cap %7$d) - stalls : %8$d (%9$d ms) - rejections : %10$d",
+					policy, operationsInFlight, peakOperationsInFlight, maxOperations, bytesInFlight, peakBytesInFlight, maxBytesInFlight, stalls, TimeUnit.NANOSECONDS.toMillis(stallNanos),
+					rejections);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public boolean isOpen() {
+		return innerChannel.isOpen();
+	}
+
+	/**
+	 * Closes the inner channel and shuts down the pool created by open().
+	 */
+	@Override
+	public void close() throws IOException {
+		innerChannel.close();
+		if (pool != null) {
+			pool.shutdown();
+		}
+		lock.lock();
+		try {
+			// waiting producers go on and find the channel closed when they write
+			closed = true;
+			released.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public long size() throws IOException {
+		return innerChannel.size();
+	}
+
+	@Override
+	public AsynchronousFileChannel truncate(long size) throws IOException {
+		return innerChannel.truncate(size);
+	}
+
+	@Override
+	public void force(boolean metaData) throws IOException {
+		innerChannel.force(metaData);
+	}
+
+	@Override
+	public <A> void lock(long position, long size, boolean shared, A attachment, CompletionHandler<FileLock, ? super A> handler) {
+		innerChannel.lock(position, size, shared, attachment, handler);
+	}
+
+	@Override
+	public Future<FileLock> lock(long position, long size, boolean shared) {
+		return innerChannel.lock(position, size, shared);
+	}
+
+	@Override
+	public FileLock tryLock(long position, long size, boolean shared) throws IOException {
+		return innerChannel.tryLock(position, size, shared);
+	}
+
+	@Override
+	public <A> void read(ByteBuffer dst, long position, A attachment, CompletionHandler<Integer, ? super A> handler) {
+		innerChannel.read(dst, position, attachment, handler);
+	}
+
+	@Override
+	public Future<Integer> read(ByteBuffer dst, long position) {
+		return innerChannel.read(dst, position);
+	}
+
+}
@@ -0,0 +1,415 @@
+package com.schlimm.java7.nio;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.CompletionHandler;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.schlimm.java7.nio.BoundedAsynchronousFileChannel.OverflowPolicy;
+
+/**
+ * Log structured writer on an {@link AsynchronousFileChannel}: appends are copied into a large direct buffer, the
+ * buffer is written with one write operation when it is full or when the oldest append in it is older than the flush
+ * delay. So thousands of small appends cost one pool task and one system call instead of one each.
+ * <p>
+ * Every append gets its file position from an atomic append offset and a future that is completed with that position
+ * when the bytes are written and, if the writer forces, durable on the device. The bytes are copied, the caller may
+ * reuse its array right away. Buffers are direct, their capacity is a multiple of the block size, and they are kept
+ * for reuse once written. A write that fails, even before the channel accepted it, fails the futures of all appends in
+ * its buffer.
+ * <p>
+ * At most maxBatchesInFlight batches, the one collecting appends included, are written or waiting to be written at a
+ * time, so the writer never holds more than that many direct buffers. An append that needs a new batch beyond the cap
+ * waits until a write is completed or fails with {@link RejectedExecutionException}, depending on the
+ * {@link OverflowPolicy}, like the writes of a {@link BoundedAsynchronousFileChannel}. A producer interrupted while it
+ * waits gets the append failed with an {@link InterruptedIOException} and keeps its interrupt status. Appends from the
+ * writer's I/O thread, e.g. by actions that depend on the futures, are never blocked or rejected.
+ * 
+ * @author Niklas Schlimm
+ * 
+ */
+public class CoalescingAsynchronousFileWriter implements Closeable {
+
+	public static final int BLOCK_SIZE = 4096;
+
+	/**
+	 * Default cap of batches in flight.
+	 */
+	public static final int DEFAULT_MAX_BATCHES_IN_FLIGHT = 16;
+
+	private final AsynchronousFileChannel channel;
+
+	private final ExecutorService pool;
+
+	private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, "Coalescing-Writer-Flusher");
+			t.setDaemon(true);
+			return t;
+		}
+	});
+
+	private final int bufferSize;
+
+	private final long flushDelayNanos;
+
+	private final boolean force;
+
+	private final int maxBatchesInFlight;
+
+	private final OverflowPolicy policy;
+
+	// The thread of the pool, it completes the writes and must never wait for them
+	private volatile Thread ioThread;
+
+	// Next free file position
+	private final AtomicLong appendOffset = new AtomicLong();
+
+	// Written buffers kept for reuse, never more than the cap of batches in flight
+	private final BlockingQueue<ByteBuffer> freeBuffers;
+
+	// Appends not yet written, guarded by this
+	private Batch current;
+
+	// Batches handed to the channel and not completed yet, guarded by this
+	private int inFlight = 0;
+
+	private boolean closed = false;
+
+	// Guarded by this
+	private long stalls = 0;
+
+	private long rejections = 0;
+
+	private final AtomicLong writes = new AtomicLong();
+
+	private final AtomicLong appends = new AtomicLong();
+
+	/**
+	 * @param bufferSize
+	 *            bytes written at once, rounded up to a multiple of {@link #BLOCK_SIZE}
+	 * @param flushDelay
+	 *            time an append waits at most for more appends before its buffer is written
+	 * @param force
+	 *            true to complete the futures only when the bytes are forced to the device
+	 */
+	public CoalescingAsynchronousFileWriter(Path file, int bufferSize, long flushDelay, TimeUnit unit, boolean force) throws IOException {
+		this(file, bufferSize, flushDelay, unit, force, DEFAULT_MAX_BATCHES_IN_FLIGHT, OverflowPolicy.BLOCK);
+	}
+
+	/**
+	 * @param bufferSize
+	 *            bytes written at once, rounded up to a multiple of {@link #BLOCK_SIZE}
+	 * @param flushDelay
+	 *            time an append waits at most for more appends before its buffer is written
+	 * @param force
+	 *            true to complete the futures only when the bytes are forced to the device
+	 * @param maxBatchesInFlight
+	 *            batches written or waiting to be written at a time, at least 2
+	 * @param policy
+	 *            what happens to an append that needs a batch beyond the cap
+	 */
+	public CoalescingAsynchronousFileWriter(Path file, int bufferSize, long flushDelay, TimeUnit unit, boolean force, int maxBatchesInFlight, OverflowPolicy policy)
+			throws IOException {
+		super();
+		if (bufferSize < 1 || flushDelay < 1)
+			throw new IllegalArgumentException("Buffer size and flush delay must be positive: " + bufferSize + "/" + flushDelay);
+		if (maxBatchesInFlight < 2)
+			throw new IllegalArgumentException("At least two batches in flight needed, one collects while the other is written: " + maxBatchesInFlight);
+		this.bufferSize = (bufferSize + BLOCK_SIZE - 1) / BLOCK_SIZE * BLOCK_SIZE;
+		this.flushDelayNanos = unit.toNanos(flushDelay);
+		this.force = force;
+		this.maxBatchesInFlight = maxBatchesInFlight;
+		this.policy = policy;
+		this.freeBuffers = new ArrayBlockingQueue<>(maxBatchesInFlight);
+		this.pool = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "Coalescing-Writer-IO");
+				t.setDaemon(true);
+				ioThread = t;
+				return t;
+			}
+		});
+		this.channel = AsynchronousFileChannel.open(file,
+				new HashSet<StandardOpenOption>(Arrays.asList(StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)), pool);
+		long delayMillis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(flushDelayNanos));
+		flusher.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				flushIfOlderThan(flushDelayNanos);
+			}
+		}, delayMillis, delayMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Appends the bytes to the file, waits first if the append needs a batch beyond the cap and the policy is
+	 * {@link OverflowPolicy#BLOCK}.
+	 * 
+	 * @return future completed with the file position of the bytes when they are written, failed with a
+	 *         {@link RejectedExecutionException} if the append needs a batch beyond the cap and the policy is
+	 *         {@link OverflowPolicy#REJECT}
+	 */
+	public CompletableFuture<Long> append(byte[] bytes) {
+		CompletableFuture<Long> done = new CompletableFuture<>();
+		// batches to write, the channel is called outside the lock
+		Batch sealed = null;
+		Batch sealedToo = null;
+		synchronized (this) {
+			if (!closed && !fits(bytes.length)) {
+				if (policy == OverflowPolicy.REJECT) {
+					rejections++;
+					done.completeExceptionally(new RejectedExecutionException("Append of " + bytes.length + " bytes exceeds the cap, batches in flight: " + inFlight));
+					return done;
+				}
+				stalls++;
+				try {
+					while (!closed && !fits(bytes.length)) {
+						wait();
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					InterruptedIOException failure = new InterruptedIOException("Interrupted while waiting to append " + bytes.length + " bytes");
+					failure.initCause(e);
+					done.completeExceptionally(failure);
+					return done;
+				}
+			}
+			if (closed) {
+				done.completeExceptionally(new ClosedChannelException());
+				return done;
+			}
+			appends.incrementAndGet();
+			if (bytes.length > bufferSize) {
+				// too large to coalesce, written on its own after the appends before it
+				sealed = seal();
+				sealedToo = new Batch(ByteBuffer.wrap(bytes.clone()), appendOffset.getAndAdd(bytes.length), false);
+				sealedToo.add(done, sealedToo.position);
+				sealedToo.buffer.position(bytes.length);
+				inFlight++;
+			} else {
+				if (current != null && current.buffer.remaining() < bytes.length)
+					sealed = seal();
+				if (current == null)
+					current = new Batch(takeBuffer(), appendOffset.get(), true);
+				current.add(done, appendOffset.getAndAdd(bytes.length));
+				current.buffer.put(bytes);
+				if (!current.buffer.hasRemaining())
+					sealedToo = seal();
+			}
+		}
+		write(sealed);
+		write(sealedToo);
+		return done;
+	}
+
+	/**
+	 * Writes the appends collected so far.
+	 */
+	public void flush() {
+		flushIfOlderThan(0);
+	}
+
+	private void flushIfOlderThan(long ageNanos) {
+		Batch batch = null;
+		synchronized (this) {
+			if (current != null && System.nanoTime() - current.created >= ageNanos)
+				batch = seal();
+		}
+		write(batch);
+	}
+
+	/**
+	 * The collecting batch counts against the cap, sealing it does not change the count, a new batch does.
+	 * 
+	 * @return true if the append does not need a new batch beyond the cap
+	 */
+	private boolean fits(int bytes) {
+		boolean newBatch = bytes > bufferSize || current == null || current.buffer.remaining() < bytes;
+		return !newBatch || inFlight + (current != null ? 1 : 0) < maxBatchesInFlight || Thread.currentThread() == ioThread;
+	}
+
+	/**
+	 * @return the batch collecting appends, counted as in flight, null if there is none
+	 */
+	private Batch seal() {
+		Batch batch = current;
+		current = null;
+		if (batch != null)
+			inFlight++;
+		return batch;
+	}
+
+	private ByteBuffer takeBuffer() {
+		ByteBuffer buffer = freeBuffers.poll();
+		return buffer != null ? buffer : ByteBuffer.allocateDirect(bufferSize);
+	}
+
+	private void write(Batch batch) {
+		if (batch == null)
+			return;
+		batch.buffer.flip();
+		writes.incrementAndGet();
+		try {
+			channel.write(batch.buffer, batch.position, batch, writeHandler);
+		} catch (RuntimeException e) {
+			// e.g. the pool rejected the write, the handler is not called
+			batch.complete(e);
+		}
+	}
+
+	private final CompletionHandler<Integer, Batch> writeHandler = new CompletionHandler<Integer, Batch>() {
+		@Override
+		public void completed(Integer result, Batch batch) {
+			try {
+				if (batch.buffer.hasRemaining()) {
+					// partial write, write the rest
+					channel.write(batch.buffer, batch.position + batch.buffer.position(), batch, this);
+					return;
+				}
+				if (force)
+					channel.force(false);
+			} catch (IOException | RuntimeException e) {
+				failed(e, batch);
+				return;
+			}
+			batch.complete(null);
+		}
+
+		@Override
+		public void failed(Throwable exc, Batch batch) {
+			batch.complete(exc);
+		}
+	};
+
+	public long getAppends() {
+		return appends.get();
+	}
+
+	public long getWrites() {
+		return writes.get();
+	}
+
+	/**
+	 * @return the number of appends that had to wait for a write to complete
+	 */
+	public synchronized long getStalls() {
+		return stalls;
+	}
+
+	/**
+	 * @return the number of appends rejected because of the cap
+	 */
+	public synchronized long getRejections() {
+		return rejections;
+	}
+
+	/**
+	 * @return the number of bytes appended so far
+	 */
+	public long getAppendOffset() {
+		return appendOffset.get();
+	}
+
+	/**
+	 * Writes the appends collected so far, waits until all writes are completed and closes the file.
+	 */
+	@Override
+	public void close() throws IOException {
+		Batch batch;
+		synchronized (this) {
+			if (closed)
+				return;
+			closed = true;
+			batch = seal();
+			// appends waiting for the cap fail now
+			notifyAll();
+		}
+		flusher.shutdown();
+		write(batch);
+		synchronized (this) {
+			try {
+				while (inFlight > 0) {
+					wait();
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted while waiting for writes to complete", e);
+			}
+		}
+		channel.close();
+		pool.shutdown();
+	}
+
+	/**
+	 * Appends written with one write operation.
+	 */
+	private class Batch {
+
+		private final ByteBuffer buffer;
+
+		// File position of the first byte
+		private final long position;
+
+		// Reusable direct buffer
+		private final boolean pooled;
+
+		private final long created = System.nanoTime();
+
+		private final List<CompletableFuture<Long>> futures = new ArrayList<>();
+
+		private long[] positions = new long[16];
+
+		Batch(ByteBuffer buffer, long position, boolean pooled) {
+			super();
+			this.buffer = buffer;
+			this.position = position;
+			this.pooled = pooled;
+		}
+
+		void add(CompletableFuture<Long> future, long position) {
+			if (futures.size() == positions.length)
+				positions = Arrays.copyOf(positions, positions.length * 2);
+			positions[futures.size()] = position;
+			futures.add(future);
+		}
+
+		void complete(Throwable failure) {
+			if (pooled) {
+				buffer.clear();
+				freeBuffers.offer(buffer);
+			}
+			for (int i = 0; i < futures.size(); i++) {
+				if (failure == null)
+					futures.get(i).complete(positions[i]);
+				else
+					futures.get(i).completeExceptionally(failure);
+			}
+			synchronized (CoalescingAsynchronousFileWriter.this) {
+				inFlight--;
+				CoalescingAsynchronousFileWriter.this.notifyAll();
+			}
+		}
+	}
+
+}
@@ -0,0 +1,94 @@
+package com.schlimm.java7.nio;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.text.DecimalFormat;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.schlimm.java7.benchmark.original.Average;
+import com.schlimm.java7.benchmark.original.PerformanceChecker;
+import com.schlimm.java7.benchmark.original.PerformanceHarness;
+
+/**
+ * Writes "Hello" as often as possible, once with one {@link AsynchronousFileChannel#write(ByteBuffer, long)} per
+ * "Hello" as in {@link Performance_Benchmark_AsynchronousFileChannel_2a} (one thread, bounded queue, caller runs), once
+ * with the {@link CoalescingAsynchronousFileWriter}. The time to close includes waiting for all writes to complete.
+ * <p>
+ * Arguments (all optional): buffer size (default 65536), flush delay in ms (default 10), "force" to force every buffer
+ * to the device (default off, like the per write benchmarks).
+ * 
+ * @author Niklas Schlimm
+ * 
+ */
+public class Performance_Benchmark_CoalescingAsynchronousFileWriter {
+
+	private static final byte[] HELLO = "Hello".getBytes();
+
+	public static void main(String[] args) throws IOException {
+		int bufferSize = args.length > 0 ? Integer.parseInt(args[0]) : 65536;
+		long flushDelay = args.length > 1 ? Long.parseLong(args[1]) : 10;
+		boolean force = args.length > 2 && "force".equals(args[2]);
+		DecimalFormat df = new DecimalFormat("#.##");
+
+		Path file = Files.createTempFile("perwrite", ".out");
+		final ThreadPoolExecutor pool = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(100000), new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r);
+				t.setDaemon(true);
+				return t;
+			}
+		}, new ThreadPoolExecutor.CallerRunsPolicy());
+		final AsynchronousFileChannel channel = AsynchronousFileChannel.open(file,
+				new HashSet<StandardOpenOption>(Arrays.asList(StandardOpenOption.WRITE, StandardOpenOption.CREATE)), pool);
+		final AtomicInteger fileindex = new AtomicInteger(0);
+		System.out.println("Benchmark target: per write");
+		Average perWrite = new PerformanceHarness().calculatePerf(new PerformanceChecker(1000, new Runnable() {
+			@Override
+			public void run() {
+				channel.write(ByteBuffer.wrap(HELLO), fileindex.getAndIncrement() * 5L);
+			}
+		}), 5);
+		long start = System.nanoTime();
+		pool.shutdown();
+		try {
+			pool.awaitTermination(10, TimeUnit.MINUTES);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		channel.close();
+		long perWriteClose = System.nanoTime() - start;
+		System.out.println("File size (bytes): " + df.format(Files.size(file)) + " - writes: " + fileindex.get() + " - close (ms): " + TimeUnit.NANOSECONDS.toMillis(perWriteClose));
+		Files.delete(file);
+
+		file = Files.createTempFile("coalescing", ".out");
+		final CoalescingAsynchronousFileWriter writer = new CoalescingAsynchronousFileWriter(file, bufferSize, flushDelay, TimeUnit.MILLISECONDS, force);
+		System.out.println("Benchmark target: coalescing, buffer size " + bufferSize + ", flush delay " + flushDelay + " ms" + (force ? ", forced" : ""));
+		Average coalescing = new PerformanceHarness().calculatePerf(new PerformanceChecker(1000, new Runnable() {
+			@Override
+			public void run() {
+				writer.append(HELLO);
+			}
+		}), 5);
+		start = System.nanoTime();
+		writer.close();
+		long coalescingClose = System.nanoTime() - start;
+		System.out.println("File size (bytes): " + df.format(Files.size(file)) + " - appends: " + writer.getAppends() + " - writes: " + writer.getWrites() + " - close (ms): "
+				+ TimeUnit.NANOSECONDS.toMillis(coalescingClose));
+		Files.delete(file);
+
+		System.out.println("Per write  - mean: " + df.format(perWrite.mean()) + " - std. deviation: " + df.format(perWrite.stddev()));
+		System.out.println("Coalescing - mean: " + df.format(coalescing.mean()) + " - std. deviation: " + df.format(coalescing.stddev()));
+	}
+
+}
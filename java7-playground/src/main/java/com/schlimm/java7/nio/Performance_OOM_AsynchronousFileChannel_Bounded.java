@@ -0,0 +1,58 @@
+package com.schlimm.java7.nio;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.text.DecimalFormat;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.schlimm.java7.benchmark.original.Average;
+import com.schlimm.java7.benchmark.original.PerformanceChecker;
+import com.schlimm.java7.benchmark.original.PerformanceHarness;
+import com.schlimm.java7.nio.BoundedAsynchronousFileChannel.OverflowPolicy;
+
+/**
+ * The producer of {@link Performance_OOM_AsynchronousFileChannel_1} on a {@link BoundedAsynchronousFileChannel}: the
+ * work queue can not grow beyond the caps, so the benchmark runs in a small heap (e.g. -Xmx32m) without
+ * OutOfMemoryError.
+ * <p>
+ * Arguments (all optional): policy BLOCK or REJECT (default BLOCK), max writes in flight (default 10000), max bytes in
+ * flight (default 65536).
+ * 
+ * @author Niklas Schlimm
+ * 
+ */
+public class Performance_OOM_AsynchronousFileChannel_Bounded implements Runnable {
+
+	private static BoundedAsynchronousFileChannel outputfile;
+	private static AtomicInteger fileindex = new AtomicInteger(0);
+
+	public static void main(String[] args) throws InterruptedException, IOException {
+		OverflowPolicy policy = args.length > 0 ? OverflowPolicy.valueOf(args[0].toUpperCase()) : OverflowPolicy.BLOCK;
+		int maxOperations = args.length > 1 ? Integer.parseInt(args[1]) : 10000;
+		long maxBytes = args.length > 2 ? Long.parseLong(args[2]) : 65536;
+		try {
+			outputfile = BoundedAsynchronousFileChannel.open(Files.createTempFile("bounded", ".out"),
+					new HashSet<StandardOpenOption>(Arrays.asList(StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE)), 1, maxBytes, maxOperations, policy);
+			Average average = new PerformanceHarness().calculatePerf(new PerformanceChecker(1000, new Performance_OOM_AsynchronousFileChannel_Bounded()), 10);
+			System.out.println("Mean: " + DecimalFormat.getInstance().format(average.mean()));
+			System.out.println("Std. Deviation: " + DecimalFormat.getInstance().format(average.stddev()));
+		} finally {
+			System.out.println(outputfile);
+			outputfile.close();
+		}
+	}
+
+	@Override
+	public void run() {
+		try {
+			outputfile.write(ByteBuffer.wrap("Hello".getBytes()), fileindex.getAndIncrement() * 5);
+		} catch (RejectedExecutionException e) {
+			// dropped, counted by the channel
+		}
+	}
+}
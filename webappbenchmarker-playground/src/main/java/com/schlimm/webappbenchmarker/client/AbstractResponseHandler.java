@@ -1,8 +1,26 @@
 package com.schlimm.webappbenchmarker.client;
 
+import com.schlimm.webappbenchmarker.protocol.OverloadReason;
+
 public abstract class AbstractResponseHandler {
 
 	abstract public boolean handleResponse(byte[] rsp);
 	abstract public void waitForResponse();
+
+	/**
+	 * Called instead of {@link #handleResponse(byte[])} when the server rejected the request.
+	 */
+	abstract public boolean handleOverloaded(OverloadReason reason);
+
+	/**
+	 * Called instead of {@link #handleResponse(byte[])} when the request could not be sent or its connection dropped
+	 * before the response arrived.
+	 */
+	abstract public boolean handleConnectionLost();
+
+	/**
+	 * Called instead of {@link #handleResponse(byte[])} when the server could not decode or execute the request.
+	 */
+	abstract public boolean handleError(String message);
 	
 }
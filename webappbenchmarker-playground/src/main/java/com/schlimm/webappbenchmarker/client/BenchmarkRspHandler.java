@@ -1,38 +1,78 @@
 package com.schlimm.webappbenchmarker.client;
 
-import java.io.ByteArrayInputStream;
-import java.io.IOException;
-import java.io.ObjectInputStream;
 import java.text.DecimalFormat;
 
+import com.schlimm.webappbenchmarker.protocol.ApplicationLayerProtocol;
+import com.schlimm.webappbenchmarker.protocol.OverloadReason;
+import com.schlimm.webappbenchmarker.protocol.Protocols;
 import com.schlimm.webappbenchmarker.statistic.Statistics;
 
 public class BenchmarkRspHandler extends AbstractResponseHandler {
 	private byte[] rsp = null;
+	private OverloadReason overloaded = null;
+	private boolean connectionLost = false;
+	private String error = null;
+	private ApplicationLayerProtocol protocol;
+
+	public BenchmarkRspHandler() {
+		this(Protocols.JAVA_SERIALIZATION);
+	}
+
+	public BenchmarkRspHandler(ApplicationLayerProtocol protocol) {
+		super();
+		this.protocol = protocol;
+	}
 	
 	public synchronized boolean handleResponse(byte[] rsp) {
 		this.rsp = rsp;
 		this.notify();
 		return true;
 	}
+
+	public synchronized boolean handleOverloaded(OverloadReason reason) {
+		this.overloaded = reason;
+		this.notify();
+		return true;
+	}
+
+	public synchronized boolean handleConnectionLost() {
+		this.connectionLost = true;
+		this.notify();
+		return true;
+	}
+
+	public synchronized boolean handleError(String message) {
+		this.error = message;
+		this.notify();
+		return true;
+	}
+
+	public synchronized OverloadReason getOverloaded() {
+		return overloaded;
+	}
 	
 	public synchronized void waitForResponse() {
-		while(this.rsp == null) {
+		while(this.rsp == null && this.overloaded == null && !this.connectionLost && this.error == null) {
 			try {
 				this.wait();
 			} catch (InterruptedException e) {
 			}
 		}
-		Object[] object = null;
-		try {
-			object = (Object[]) new ObjectInputStream(new ByteArrayInputStream(rsp)).readObject();
-		} catch (IOException e) {
-			e.printStackTrace();
-		} catch (ClassNotFoundException e) {
-			e.printStackTrace();
+		if (this.overloaded != null) {
+			System.out.println("Server overloaded: " + overloaded);
+			return;
+		}
+		if (this.connectionLost) {
+			System.out.println("Connection lost, no response");
+			return;
+		}
+		if (this.error != null) {
+			System.out.println("Request failed: " + error);
+			return;
 		}
+		Object[] object = (Object[]) protocol.fromByteArray(rsp);
 		Statistics statistics = (Statistics) object[0];
 		 DecimalFormat df = new DecimalFormat("#.####");
-		System.out.println(String.format("%1$-20s %2$-15s %3$-11s %4$-10s %5$-10s %6$-10s", df.format(statistics.mean()), df.format(statistics.stddev()), statistics.getJitTimeBeforeHarness(), statistics.getJitTimeAfterHarness(), statistics.getClassesLoadedBeforeHarness(), statistics.getClassesLoadedAfterHarness()));
+		System.out.println(String.format("%1$-20s %2$-15s %3$-11s %4$-10s %5$-10s %6$-10s %7$-15s %8$-12s %9$-10s", df.format(statistics.mean()), df.format(statistics.stddev()), statistics.getJitTimeBeforeHarness(), statistics.getJitTimeAfterHarness(), statistics.getClassesLoadedBeforeHarness(), statistics.getClassesLoadedAfterHarness(), df.format(statistics.opsPerSecond()), df.format(statistics.opsPerSecondConfidenceInterval()), df.format(statistics.nanosPerOperation())));
 	}
 }
\ No newline at end of file
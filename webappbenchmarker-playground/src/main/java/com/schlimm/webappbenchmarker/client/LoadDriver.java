@@ -0,0 +1,413 @@
+package com.schlimm.webappbenchmarker.client;
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import com.schlimm.webappbenchmarker.command.ClientCommand;
+import com.schlimm.webappbenchmarker.protocol.ApplicationLayerProtocol;
+import com.schlimm.webappbenchmarker.protocol.OverloadReason;
+import com.schlimm.webappbenchmarker.protocol.Protocols;
+import com.schlimm.webappbenchmarker.statistic.Histogram;
+
+/**
+ * Applies concurrent load to the server through a {@link WBClient} and records the latency of every request, following
+ * a {@link LoadProfile}. In the open model sender threads fire requests on a fixed schedule without waiting for the
+ * responses, the latency is taken from the time a request was due, so stalls of the server or of the client itself
+ * are not hidden (no coordinated omission). In the closed model every user thread waits for its response before it
+ * sends again, the histogram is corrected for the requests a stalled user held back.
+ * <p>
+ * Several driver JVMs can load the same server: started with the same -WBstartAt they run their phases in lockstep,
+ * each writes its {@link LoadResult} to a -WBresultFile and a final run with -WBmerge adds up the histograms.
+ *
+ * @author Niklas Schlimm
+ *
+ */
+public class LoadDriver {
+
+	// Time the drivers wait for the responses of requests still in flight at the end of the run, a user of the closed
+	// model gives up on its response then as well
+	private static final long DRAIN_TIMEOUT = TimeUnit.SECONDS.toNanos(5);
+
+	private WBClient client;
+
+	private LoadProfile profile;
+
+	// Sender threads of the open model
+	private int senders;
+
+	// Latency of the requests started in the steady phase in microseconds, recorded by the client's selecting thread
+	private Histogram latency = new Histogram();
+
+	private AtomicLong steadyCompleted = new AtomicLong(0);
+	private AtomicLong sent = new AtomicLong(0);
+	private AtomicLong completed = new AtomicLong(0);
+	private AtomicLong overloaded = new AtomicLong(0);
+	private AtomicLong failed = new AtomicLong(0);
+
+	// System.nanoTime() after which a user of the closed model stops waiting for its response
+	private volatile long responseDeadline;
+
+	public LoadDriver(WBClient client, LoadProfile profile) {
+		this(client, profile, 1);
+	}
+
+	/**
+	 * @param senders
+	 *            threads sharing the arrival rate of the open model, ignored by the closed model
+	 */
+	public LoadDriver(WBClient client, LoadProfile profile, int senders) {
+		super();
+		if (senders < 1)
+			throw new IllegalArgumentException("At least one sender required!");
+		this.client = client;
+		this.profile = profile;
+		this.senders = senders;
+	}
+
+	public LoadResult run(byte[] request) throws InterruptedException {
+		return run(request, 0);
+	}
+
+	/**
+	 * Runs the profile once. The counters and the histogram start from zero on every run.
+	 *
+	 * @param startAt
+	 *            wall clock time (ms) at which the run starts, lets drivers in several JVMs start together, 0 starts
+	 *            immediately
+	 */
+	public LoadResult run(final byte[] request, long startAt) throws InterruptedException {
+		long delay = startAt - System.currentTimeMillis();
+		if (delay > 0)
+			Thread.sleep(delay);
+		synchronized (latency) {
+			latency.reset();
+		}
+		steadyCompleted.set(0);
+		sent.set(0);
+		completed.set(0);
+		overloaded.set(0);
+		failed.set(0);
+		final long begin = System.nanoTime();
+		responseDeadline = begin + TimeUnit.MILLISECONDS.toNanos(profile.getDuration()) + DRAIN_TIMEOUT;
+		List<Thread> threads = new ArrayList<Thread>();
+		if (profile.getModel() == LoadProfile.Model.OPEN) {
+			for (int i = 0; i < senders; i++) {
+				final int sender = i;
+				threads.add(new Thread(new Runnable() {
+					@Override
+					public void run() {
+						sendOpen(request, begin, sender);
+					}
+				}, "Load-Sender-" + i));
+			}
+		} else {
+			for (int i = 0; i < profile.getLoad(); i++) {
+				final int user = i;
+				threads.add(new Thread(new Runnable() {
+					@Override
+					public void run() {
+						sendClosed(request, begin, user);
+					}
+				}, "Load-User-" + i));
+			}
+		}
+		for (Thread thread : threads) {
+			thread.setDaemon(true);
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		long drainDeadline = System.nanoTime() + DRAIN_TIMEOUT;
+		while (completed.get() + overloaded.get() + failed.get() < sent.get() && System.nanoTime() - drainDeadline < 0) {
+			Thread.sleep(10);
+		}
+		synchronized (latency) {
+			Histogram copy = new Histogram();
+			copy.merge(latency);
+			return new LoadResult(copy, steadyCompleted.get(), sent.get(), completed.get(), overloaded.get(), failed.get(), profile.getSteady());
+		}
+	}
+
+	/**
+	 * Sender of the open model, fires its share of the rate on schedule. The rate is integrated in steps of at most a
+	 * millisecond, so the schedule follows the ramps at any rate. A sender that falls behind catches up without pausing,
+	 * the requests keep the time they were due.
+	 */
+	private void sendOpen(byte[] request, long begin, int sender) {
+		long step = TimeUnit.MILLISECONDS.toNanos(1);
+		long end = begin + TimeUnit.MILLISECONDS.toNanos(profile.getDuration());
+		long next = begin;
+		// share of the next request already due, staggers the senders
+		double due = (double) sender / senders;
+		while (next - end < 0) {
+			double elapsed = (next - begin) / 1000000d;
+			double rate = profile.getLoad() * profile.fraction(elapsed) / senders;
+			double untilDue = rate > 0 ? (1 - due) * TimeUnit.SECONDS.toNanos(1) / rate : Double.MAX_VALUE;
+			if (untilDue > step) {
+				due += rate * step / TimeUnit.SECONDS.toNanos(1);
+				next += step;
+				continue;
+			}
+			next += (long) untilDue;
+			due = 0;
+			long remaining;
+			while ((remaining = next - System.nanoTime()) > 0) {
+				LockSupport.parkNanos(remaining);
+			}
+			send(request, next, profile.isSteady((next - begin) / 1000000d));
+		}
+	}
+
+	/**
+	 * User of the closed model, the users join and leave one after the other as the profile ramps up and down.
+	 */
+	private void sendClosed(byte[] request, long begin, int user) {
+		double share = (double) user / profile.getLoad();
+		while (true) {
+			long now = System.nanoTime();
+			double elapsed = (now - begin) / 1000000d;
+			if (elapsed >= profile.getDuration())
+				break;
+			if (profile.fraction(elapsed) <= share) {
+				LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+				continue;
+			}
+			LatencyRspHandler handler = send(request, now, profile.isSteady(elapsed));
+			handler.waitForResponse();
+			if (profile.getThinkTime() > 0) {
+				try {
+					Thread.sleep(profile.getThinkTime());
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+			}
+		}
+	}
+
+	private LatencyRspHandler send(byte[] request, long intended, boolean steady) {
+		LatencyRspHandler handler = new LatencyRspHandler(intended, steady);
+		sent.incrementAndGet();
+		client.send(request, handler);
+		return handler;
+	}
+
+	private class LatencyRspHandler extends AbstractResponseHandler {
+
+		private long intended;
+		private boolean steady;
+		private boolean done = false;
+		// Set when the user gave up waiting, a late answer is not counted any more
+		private boolean timedOut = false;
+
+		public LatencyRspHandler(long intended, boolean steady) {
+			super();
+			this.intended = intended;
+			this.steady = steady;
+		}
+
+		@Override
+		public synchronized boolean handleResponse(byte[] rsp) {
+			if (timedOut)
+				return false;
+			long micros = (System.nanoTime() - intended) / 1000;
+			completed.incrementAndGet();
+			if (steady) {
+				steadyCompleted.incrementAndGet();
+				synchronized (latency) {
+					latency.recordCorrected(micros, profile.getModel() == LoadProfile.Model.CLOSED ? profile.getExpectedInterval() : 0);
+				}
+			}
+			done = true;
+			this.notify();
+			return true;
+		}
+
+		@Override
+		public synchronized boolean handleOverloaded(OverloadReason reason) {
+			if (timedOut)
+				return false;
+			overloaded.incrementAndGet();
+			done = true;
+			this.notify();
+			return true;
+		}
+
+		@Override
+		public synchronized boolean handleConnectionLost() {
+			if (timedOut)
+				return false;
+			failed.incrementAndGet();
+			done = true;
+			this.notify();
+			return true;
+		}
+
+		@Override
+		public synchronized boolean handleError(String message) {
+			if (timedOut)
+				return false;
+			failed.incrementAndGet();
+			done = true;
+			this.notify();
+			return true;
+		}
+
+		/**
+		 * Waits until the response arrived, at most until the drain timeout after the end of the run. A request that
+		 * times out counts as failed.
+		 */
+		@Override
+		public synchronized void waitForResponse() {
+			while (!done) {
+				long remaining = responseDeadline - System.nanoTime();
+				if (remaining <= 0) {
+					timedOut = true;
+					done = true;
+					failed.incrementAndGet();
+					return;
+				}
+				try {
+					TimeUnit.NANOSECONDS.timedWait(this, remaining);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+			}
+		}
+	}
+
+	public static void main(String[] args) {
+		try {
+			String host = "localhost";
+			int port = 9090;
+			int connections = 4;
+			ApplicationLayerProtocol protocol = Protocols.JAVA_SERIALIZATION;
+			LoadProfile.Model model = LoadProfile.Model.OPEN;
+			int rate = 1000;
+			int users = 16;
+			int senderCount = 1;
+			long rampUp = 2000;
+			long steady = 10000;
+			long rampDown = 1000;
+			long thinkTime = 0;
+			long expectedInterval = 0;
+			String command = "com.schlimm.webappbenchmarker.command.trial.BusyCommand";
+			String commandArguments = "";
+			long startAt = 0;
+			String resultFile = null;
+			String merge = null;
+			for (String arg : args) {
+				if (arg.startsWith("-WBhost="))
+					host = arg.split("=")[1];
+				if (arg.startsWith("-WBport="))
+					port = Integer.parseInt(arg.split("=")[1]);
+				if (arg.startsWith("-WBconnections="))
+					connections = Integer.parseInt(arg.split("=")[1]);
+				if (arg.startsWith("-WBprotocol="))
+					protocol = Protocols.forName(arg.split("=")[1]);
+				if (arg.startsWith("-WBmodel="))
+					model = LoadProfile.Model.forName(arg.split("=")[1]);
+				if (arg.startsWith("-WBrate="))
+					rate = Integer.parseInt(arg.split("=")[1]);
+				if (arg.startsWith("-WBusers="))
+					users = Integer.parseInt(arg.split("=")[1]);
+				if (arg.startsWith("-WBsenders="))
+					senderCount = Integer.parseInt(arg.split("=")[1]);
+				if (arg.startsWith("-WBrampUp="))
+					rampUp = Long.parseLong(arg.split("=")[1]);
+				if (arg.startsWith("-WBsteady="))
+					steady = Long.parseLong(arg.split("=")[1]);
+				if (arg.startsWith("-WBrampDown="))
+					rampDown = Long.parseLong(arg.split("=")[1]);
+				if (arg.startsWith("-WBthinkTime="))
+					thinkTime = Long.parseLong(arg.split("=")[1]);
+				if (arg.startsWith("-WBexpectedInterval="))
+					expectedInterval = Long.parseLong(arg.split("=")[1]);
+				if (arg.startsWith("-WBcommand="))
+					command = arg.split("=")[1];
+				if (arg.startsWith("-WBcommandArguments="))
+					commandArguments = arg.split("=")[1];
+				if (arg.startsWith("-WBstartAt="))
+					startAt = Long.parseLong(arg.split("=")[1]);
+				if (arg.startsWith("-WBresultFile="))
+					resultFile = arg.split("=")[1];
+				if (arg.startsWith("-WBmerge="))
+					merge = arg.split("=")[1];
+			}
+			if (merge != null) {
+				System.out.println(merge(merge.split(",")).report());
+				return;
+			}
+			LoadProfile profile = new LoadProfile(model, model == LoadProfile.Model.OPEN ? rate : users, rampUp, steady, rampDown);
+			profile.setThinkTime(thinkTime);
+			profile.setExpectedInterval(expectedInterval);
+			NioClient client = new NioClient(InetAddress.getByName(host), port, connections, protocol);
+			Thread t = new Thread(client, "Load-Client");
+			t.setDaemon(true);
+			t.start();
+			byte[] request = protocol.toByteArray(ClientCommand.interned(command, parseArguments(commandArguments)));
+			System.out.println(profile);
+			LoadResult result = new LoadDriver(client, profile, senderCount).run(request, startAt);
+			System.out.println(result.report());
+			if (resultFile != null)
+				write(result, resultFile);
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+		System.exit(0);
+	}
+
+	// Numbers are passed as longs, everything else as strings
+	private static Object[] parseArguments(String arguments) {
+		if (arguments.isEmpty())
+			return new Object[0];
+		String[] tokens = arguments.split(";");
+		Object[] parsed = new Object[tokens.length];
+		for (int i = 0; i < tokens.length; i++) {
+			try {
+				parsed[i] = Long.valueOf(tokens[i]);
+			} catch (NumberFormatException e) {
+				parsed[i] = tokens[i];
+			}
+		}
+		return parsed;
+	}
+
+	static void write(LoadResult result, String fileName) throws IOException {
+		ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(fileName));
+		try {
+			out.writeObject(result);
+		} finally {
+			out.close();
+		}
+	}
+
+	static LoadResult merge(String... fileNames) throws IOException, ClassNotFoundException {
+		LoadResult merged = null;
+		for (String fileName : fileNames) {
+			ObjectInputStream in = new ObjectInputStream(new FileInputStream(fileName));
+			try {
+				LoadResult result = (LoadResult) in.readObject();
+				if (merged == null)
+					merged = result;
+				else
+					merged.merge(result);
+			} finally {
+				in.close();
+			}
+		}
+		return merged;
+	}
+
+}
@@ -0,0 +1,141 @@
+package com.schlimm.webappbenchmarker.client;
+
+/**
+ * Shape of the load a {@link LoadDriver} applies: the load model, the target load and the ramp-up, steady and ramp-down
+ * phases. The load rises linearly to the target during ramp-up and falls linearly during ramp-down, only requests
+ * started in the steady phase are measured.
+ *
+ * @author Niklas Schlimm
+ *
+ */
+public class LoadProfile {
+
+	public enum Model {
+
+		/**
+		 * Requests arrive at a constant rate (requests per second) whether or not earlier requests were answered. The
+		 * latency is measured from the time a request was due, so a stalled server or client shows up in the latency.
+		 */
+		OPEN,
+
+		/**
+		 * A fixed number of users send a request, wait for the response, think and send the next one. The server
+		 * throttles the arrival rate, the latency histogram is corrected for the requests a stalled user did not send.
+		 */
+		CLOSED;
+
+		public static Model forName(String name) {
+			return valueOf(name.toUpperCase());
+		}
+	}
+
+	private Model model;
+
+	// Requests per second (OPEN) or number of users (CLOSED)
+	private int load;
+
+	private long rampUp;
+
+	private long steady;
+
+	private long rampDown;
+
+	// Closed loop only: pause of a user between a response and its next request
+	private long thinkTime = 0;
+
+	// Closed loop only: microseconds in which a user is expected to send a request, 0 disables the correction
+	private long expectedInterval = 0;
+
+	/**
+	 * @param load
+	 *            requests per second for the open model, number of users for the closed model
+	 * @param rampUp
+	 *            milliseconds
+	 * @param steady
+	 *            milliseconds
+	 * @param rampDown
+	 *            milliseconds
+	 */
+	public LoadProfile(Model model, int load, long rampUp, long steady, long rampDown) {
+		super();
+		if (load < 1)
+			throw new IllegalArgumentException("Load must be positive: " + load);
+		if (rampUp < 0 || steady <= 0 || rampDown < 0)
+			throw new IllegalArgumentException("Illegal phases: " + rampUp + "/" + steady + "/" + rampDown);
+		this.model = model;
+		this.load = load;
+		this.rampUp = rampUp;
+		this.steady = steady;
+		this.rampDown = rampDown;
+	}
+
+	/**
+	 * @param elapsed
+	 *            milliseconds since the start of the run
+	 * @return share of the target load to apply at that time, between 0 and 1
+	 */
+	public double fraction(double elapsed) {
+		if (elapsed < 0 || elapsed >= getDuration())
+			return 0;
+		if (elapsed < rampUp)
+			return elapsed / rampUp;
+		if (elapsed < rampUp + steady)
+			return 1;
+		return (getDuration() - elapsed) / rampDown;
+	}
+
+	/**
+	 * @param elapsed
+	 *            milliseconds since the start of the run
+	 */
+	public boolean isSteady(double elapsed) {
+		return elapsed >= rampUp && elapsed < rampUp + steady;
+	}
+
+	public long getDuration() {
+		return rampUp + steady + rampDown;
+	}
+
+	public Model getModel() {
+		return model;
+	}
+
+	public int getLoad() {
+		return load;
+	}
+
+	public long getRampUp() {
+		return rampUp;
+	}
+
+	public long getSteady() {
+		return steady;
+	}
+
+	public long getRampDown() {
+		return rampDown;
+	}
+
+	public long getThinkTime() {
+		return thinkTime;
+	}
+
+	public void setThinkTime(long thinkTime) {
+		this.thinkTime = thinkTime;
+	}
+
+	public long getExpectedInterval() {
+		return expectedInterval;
+	}
+
+	public void setExpectedInterval(long expectedInterval) {
+		this.expectedInterval = expectedInterval;
+	}
+
+	@Override
+	public String toString() {
+		return "Load profile - model : " + model + " - load : " + load + (model == Model.OPEN ? " req/s" : " users") + " - ramp up : " + rampUp + " ms - steady : " + steady + " ms - ramp down : " + rampDown
+				+ " ms" + (model == Model.CLOSED ? " - think time : " + thinkTime + " ms - expected interval : " + expectedInterval + " us" : "");
+	}
+
+}
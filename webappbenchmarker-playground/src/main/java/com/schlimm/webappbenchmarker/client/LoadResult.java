@@ -0,0 +1,127 @@
+package com.schlimm.webappbenchmarker.client;
+
+import java.io.Serializable;
+import java.text.DecimalFormat;
+
+import com.schlimm.webappbenchmarker.statistic.Histogram;
+
+/**
+ * Outcome of a {@link LoadDriver} run: the latency histogram of the requests started in the steady phase (microseconds)
+ * and the request counts. Results of driver JVMs that ran against the same server at the same time are merged into one.
+ *
+ * @author Niklas Schlimm
+ *
+ */
+public class LoadResult implements Serializable {
+
+	/**
+	 * Version
+	 */
+	private static final long serialVersionUID = 1L;
+
+	private Histogram latency;
+
+	// Requests started in the steady phase and answered
+	private long steadyCompleted;
+
+	// All requests of the run
+	private long sent;
+	private long completed;
+	private long overloaded;
+	private long failed;
+
+	// Milliseconds of the steady phase
+	private long steadyTime;
+
+	// Number of driver runs merged into this result
+	private int drivers = 1;
+
+	public LoadResult(Histogram latency, long steadyCompleted, long sent, long completed, long overloaded, long failed, long steadyTime) {
+		super();
+		this.latency = latency;
+		this.steadyCompleted = steadyCompleted;
+		this.sent = sent;
+		this.completed = completed;
+		this.overloaded = overloaded;
+		this.failed = failed;
+		this.steadyTime = steadyTime;
+	}
+
+	/**
+	 * Adds the result of a driver that ran in parallel to this one.
+	 */
+	public void merge(LoadResult other) {
+		latency.merge(other.latency);
+		steadyCompleted += other.steadyCompleted;
+		sent += other.sent;
+		completed += other.completed;
+		overloaded += other.overloaded;
+		failed += other.failed;
+		steadyTime = Math.max(steadyTime, other.steadyTime);
+		drivers += other.drivers;
+	}
+
+	/**
+	 * @return requests answered per second in the steady phase
+	 */
+	public double getThroughput() {
+		return steadyCompleted * 1000d / steadyTime;
+	}
+
+	/**
+	 * @return requests sent but neither answered, rejected nor failed with their connection when the run ended
+	 */
+	public long getLost() {
+		return sent - completed - overloaded - failed;
+	}
+
+	public Histogram getLatency() {
+		return latency;
+	}
+
+	public long getSteadyCompleted() {
+		return steadyCompleted;
+	}
+
+	public long getSent() {
+		return sent;
+	}
+
+	public long getCompleted() {
+		return completed;
+	}
+
+	public long getOverloaded() {
+		return overloaded;
+	}
+
+	/**
+	 * @return requests answered with an error, lost with their connection or given up by a user of the closed model
+	 */
+	public long getFailed() {
+		return failed;
+	}
+
+	public long getSteadyTime() {
+		return steadyTime;
+	}
+
+	public int getDrivers() {
+		return drivers;
+	}
+
+	public String report() {
+		DecimalFormat df = new DecimalFormat("#.##");
+		StringBuilder report = new StringBuilder();
+		report.append(String.format("%1$-10s %2$-10s %3$-10s %4$-10s %5$-10s %6$-10s %7$-12s %8$-10s%n", "Drivers", "Sent", "Completed", "Overloaded", "Failed", "Lost", "Req/sec", "Samples"));
+		report.append(String.format("%1$-10s %2$-10s %3$-10s %4$-10s %5$-10s %6$-10s %7$-12s %8$-10s%n", drivers, sent, completed, overloaded, failed, getLost(), df.format(getThroughput()), latency.getCount()));
+		if (latency.getCount() > 0) {
+			report.append(String.format("%1$-12s %2$-12s %3$-12s %4$-12s %5$-12s %6$-12s %7$-12s%n", "Mean us", "p50 us", "p90 us", "p99 us", "p99.9 us", "Max us", "Stddev us"));
+			report.append(String.format("%1$-12s %2$-12s %3$-12s %4$-12s %5$-12s %6$-12s %7$-12s%n", df.format(latency.getMean()), df.format(latency.getValueAtPercentile(50)),
+					df.format(latency.getValueAtPercentile(90)), df.format(latency.getValueAtPercentile(99)), df.format(latency.getValueAtPercentile(99.9)), df.format(latency.getMax()),
+					df.format(Math.sqrt(latency.getVariance()))));
+		}
+		return report.toString();
+	}
+
+}
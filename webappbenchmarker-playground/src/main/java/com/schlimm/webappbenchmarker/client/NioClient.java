@@ -8,92 +8,172 @@ import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.SocketChannel;
 import java.nio.channels.spi.SelectorProvider;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashMap;
+import java.nio.charset.Charset;
 import java.util.Iterator;
-import java.util.LinkedList;
-import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import com.schlimm.webappbenchmarker.ChangeRequest;
 import com.schlimm.webappbenchmarker.command.Testscenario;
+import com.schlimm.webappbenchmarker.protocol.ApplicationLayerProtocol;
+import com.schlimm.webappbenchmarker.protocol.DirectBufferPool;
+import com.schlimm.webappbenchmarker.protocol.FrameDecoder;
+import com.schlimm.webappbenchmarker.protocol.FrameEncoder;
+import com.schlimm.webappbenchmarker.protocol.OverloadReason;
+import com.schlimm.webappbenchmarker.protocol.Protocols;
 
+/**
+ * Client that multiplexes all requests over a fixed number of long-lived connections. Every request frame carries a
+ * request id, the server answers with the same id, so responses are dispatched to their
+ * {@link AbstractResponseHandler} in whatever order they arrive. Each connection starts with a hello frame that
+ * negotiates the {@link ApplicationLayerProtocol} the server uses to decode requests and encode responses.
+ * <p>
+ * A lost connection is replaced right away, requests sent meanwhile are queued on the new connection until it is
+ * established. The handlers of the requests that were in flight on the lost connection get
+ * {@link AbstractResponseHandler#handleConnectionLost()}, so no thread waits for a response that never comes.
+ * <p>
+ * A connection the server refuses, because the connect fails or because the server answers with an overloaded frame
+ * for request 0 (see {@link OverloadReason#CONNECTIONS}), is replaced only after a backoff that doubles with every
+ * refusal in a row, up to {@link #MAX_RECONNECT_DELAY} ms. The requests pending on a rejected connection get
+ * {@link AbstractResponseHandler#handleOverloaded(OverloadReason)}, requests sent while no connection is up get
+ * {@link AbstractResponseHandler#handleConnectionLost()}.
+ */
 public class NioClient implements Runnable, WBClient {
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	// Backoff of the reconnect after a refused connection in ms, doubled with every refusal in a row
+	public static final long MIN_RECONNECT_DELAY = 50;
+
+	public static final long MAX_RECONNECT_DELAY = 5000;
+
 	// The host:port combination to connect to
 	private InetAddress hostAddress;
 	private int port;
 
+	// The protocol negotiated for all our connections
+	private ApplicationLayerProtocol protocol;
+
 	// The selector we'll be monitoring
 	private Selector selector;
 
-	// The buffer into which we'll read data when it's available
-	private ByteBuffer readBuffer = ByteBuffer.allocate(8192);
+	// The pool of the direct buffers in which the connections accumulate their response frames
+	private DirectBufferPool bufferPool = new DirectBufferPool(1024 * 1024, 64);
+
+	// Pending registrations and interest changes, added by sending threads, drained by the selecting thread
+	private Queue<ChangeRequest> pendingChanges = new ConcurrentLinkedQueue<ChangeRequest>();
+
+	// Maps a SocketChannel to its queue of ByteBuffers waiting to be written
+	private Map<SocketChannel, Queue<ByteBuffer>> pendingData = new ConcurrentHashMap<SocketChannel, Queue<ByteBuffer>>();
+
+	// Maps a request id to the handler waiting for its response
+	private Map<Integer, PendingRequest> rspHandlers = new ConcurrentHashMap<Integer, PendingRequest>();
+
+	// The long-lived connections, requests are spread across them round-robin
+	private AtomicReferenceArray<SocketChannel> connections;
+
+	private AtomicInteger requestIds = new AtomicInteger(0);
+
+	private AtomicInteger sendCount = new AtomicInteger(0);
+
+	// Set when a wakeup is already on its way, avoids a wakeup system call per send
+	private AtomicBoolean wakeupPending = new AtomicBoolean(false);
 
-	// A list of PendingChange instances
-	private List<ChangeRequest> pendingChanges = new LinkedList<ChangeRequest>();
+	// Per connection slot: refusals in a row and when the delayed reconnect is due (0 if none), selecting thread only
+	private int[] refusals;
+
+	private long[] reconnectAt;
 
-	// Maps a SocketChannel to a list of ByteBuffer instances
-	private Map<SocketChannel, List<ByteBuffer>> pendingData = new HashMap<SocketChannel, List<ByteBuffer>>();
-	
-	// Maps a SocketChannel to a BenchmarkRspHandler
-	private Map<SocketChannel, AbstractResponseHandler> rspHandlers = Collections.synchronizedMap(new HashMap<SocketChannel, AbstractResponseHandler>());
-	
 	public NioClient(InetAddress hostAddress, int port) throws IOException {
+		this(hostAddress, port, 1);
+	}
+
+	public NioClient(InetAddress hostAddress, int port, int connectionCount) throws IOException {
+		this(hostAddress, port, connectionCount, Protocols.JAVA_SERIALIZATION);
+	}
+
+	public NioClient(InetAddress hostAddress, int port, int connectionCount, ApplicationLayerProtocol protocol) throws IOException {
+		if (connectionCount < 1)
+			throw new IllegalArgumentException("At least one connection required!");
 		this.hostAddress = hostAddress;
 		this.port = port;
+		this.protocol = protocol;
 		this.selector = this.initSelector();
+		this.connections = new AtomicReferenceArray<SocketChannel>(connectionCount);
+		this.refusals = new int[connectionCount];
+		this.reconnectAt = new long[connectionCount];
+		for (int i = 0; i < connectionCount; i++) {
+			this.connections.set(i, this.initiateConnection());
+		}
+	}
+
+	public ApplicationLayerProtocol getProtocol() {
+		return protocol;
 	}
 
+	/**
+	 * Queues the request on one of the connections. Does not throw when no connection is left, the handler gets
+	 * {@link AbstractResponseHandler#handleConnectionLost()} instead.
+	 */
 	public void send(byte[] data, AbstractResponseHandler handler) {
-		// Start a new connection
-		SocketChannel socket = null;
-		try {
-			socket = this.initiateConnection();
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
-		
-		// Register the response handler
-		this.rspHandlers.put(socket, handler);
-		
-		// And queue the data we want written
-		synchronized (this.pendingData) {
-			List<ByteBuffer> queue = (List<ByteBuffer>) this.pendingData.get(socket);
-			if (queue == null) {
-				queue = new ArrayList<ByteBuffer>();
-				this.pendingData.put(socket, queue);
+		int requestId = this.requestIds.incrementAndGet();
+		ByteBuffer frame = FrameEncoder.encode(requestId, FrameDecoder.TYPE_DATA, data);
+
+		// Pick one of our connections, skip connections that got lost and were not replaced yet
+		int index = (this.sendCount.getAndIncrement() & Integer.MAX_VALUE) % this.connections.length();
+		for (int i = 0; i < this.connections.length(); i++) {
+			SocketChannel socket = this.connections.get((index + i) % this.connections.length());
+			Queue<ByteBuffer> queue = this.pendingData.get(socket);
+			if (queue == null)
+				continue;
+			// close() removes the queue before it fails the pending requests of the connection
+			synchronized (queue) {
+				if (this.pendingData.get(socket) != queue)
+					continue;
+				// Register the response handler and queue the data we want written
+				this.rspHandlers.put(requestId, new PendingRequest(socket, handler));
+				queue.add(frame);
 			}
-			queue.add(ByteBuffer.wrap(data));
-		}
+			this.pendingChanges.add(new ChangeRequest(socket, ChangeRequest.CHANGEOPS, SelectionKey.OP_READ | SelectionKey.OP_WRITE));
 
-		// Finally, wake up our selecting thread so it can make the required changes
-		this.selector.wakeup();
+			// Finally, wake up our selecting thread so it can make the required changes
+			this.wakeup();
+			return;
+		}
+		handler.handleConnectionLost();
 	}
 
 	public void run() {
 		while (true) {
 			try {
 				// Process any pending changes
-				synchronized (this.pendingChanges) {
-					Iterator<ChangeRequest> changes = this.pendingChanges.iterator();
-					while (changes.hasNext()) {
-						ChangeRequest change = (ChangeRequest) changes.next();
-						switch (change.type) {
-						case ChangeRequest.CHANGEOPS:
-							SelectionKey key = change.socket.keyFor(this.selector);
-							key.interestOps(change.ops);
-							break;
-						case ChangeRequest.REGISTER:
-							change.socket.register(this.selector, change.ops);
-							break;
-						}
+				this.wakeupPending.set(false);
+				long reconnectDelay = this.reconnectDue();
+				ChangeRequest change;
+				while ((change = this.pendingChanges.poll()) != null) {
+					switch (change.type) {
+					case ChangeRequest.CHANGEOPS:
+						SelectionKey key = change.socket.keyFor(this.selector);
+						// finishConnection() sets the interest ops of connections still being established
+						if (key == null || !key.isValid() || !change.socket.isConnected())
+							continue;
+						key.interestOps(change.ops);
+						break;
+					case ChangeRequest.REGISTER:
+						change.socket.register(this.selector, change.ops, new FrameDecoder(this.bufferPool));
+						break;
 					}
-					this.pendingChanges.clear();
 				}
 
-				// Wait for an event one of the registered channels
-				this.selector.select();
+				// Wait for an event one of the registered channels, or until the next reconnect is due
+				if (reconnectDelay > 0)
+					this.selector.select(reconnectDelay);
+				else
+					this.selector.select();
 
 				// Iterate over the set of keys for which events are available
 				Iterator<SelectionKey> selectedKeys = this.selector.selectedKeys().iterator();
@@ -108,9 +188,12 @@ public class NioClient implements Runnable, WBClient {
 					// Check what event is available and deal with it
 					if (key.isConnectable()) {
 						this.finishConnection(key);
-					} else if (key.isReadable()) {
+						continue;
+					}
+					if (key.isReadable()) {
 						this.read(key);
-					} else if (key.isWritable()) {
+					}
+					if (key.isValid() && key.isWritable()) {
 						this.write(key);
 					}
 				}
@@ -122,80 +205,174 @@ public class NioClient implements Runnable, WBClient {
 
 	private void read(SelectionKey key) throws IOException {
 		SocketChannel socketChannel = (SocketChannel) key.channel();
-
-		// Clear out our read buffer so it's ready for new data
-		this.readBuffer.clear();
+		FrameDecoder decoder = (FrameDecoder) key.attachment();
 
 		// Attempt to read off the channel
 		int numRead;
 		try {
-			numRead = socketChannel.read(this.readBuffer);
+			numRead = decoder.read(socketChannel);
 		} catch (IOException e) {
 			// The remote forcibly closed the connection, cancel
 			// the selection key and close the channel.
-			key.cancel();
-			socketChannel.close();
+			this.close(key, true);
 			return;
 		}
 
 		if (numRead == -1) {
 			// Remote entity shut the socket down cleanly. Do the
 			// same from our end and cancel the channel.
-			key.channel().close();
-			key.cancel();
+			this.close(key, true);
 			return;
 		}
 
-		// Handle the response
-		this.handleResponse(socketChannel, this.readBuffer.array(), numRead);
+		// Handle every complete response frame
+		byte[] frame;
+		while (key.isValid() && (frame = decoder.nextFrame()) != null) {
+			if (decoder.getRequestId() == 0 && decoder.getFrameType() == FrameDecoder.TYPE_OVERLOADED) {
+				// The server rejected the connection itself
+				this.refused(key, frame.length > 0 ? OverloadReason.forCode(frame[0]) : OverloadReason.UNKNOWN);
+				return;
+			}
+			this.handleResponse(decoder.getRequestId(), decoder.getFrameType(), frame);
+		}
 	}
 
-	private void handleResponse(SocketChannel socketChannel, byte[] data, int numRead) throws IOException {
-		// Make a correctly sized copy of the data before handing it
-		// to the client
-		byte[] rspData = new byte[numRead];
-		System.arraycopy(data, 0, rspData, 0, numRead);
-		
-		// Look up the handler for this channel
-		AbstractResponseHandler handler = (AbstractResponseHandler) this.rspHandlers.get(socketChannel);
-		
-		// And pass the response to it
-		if (handler.handleResponse(rspData)) {
-			// The handler has seen enough, close the connection
-			socketChannel.close();
-			socketChannel.keyFor(this.selector).cancel();
+	private void handleResponse(int requestId, byte frameType, byte[] rspData) throws IOException {
+		// Look up the handler for this request
+		PendingRequest pending = this.rspHandlers.remove(requestId);
+		if (pending == null) {
+			System.out.println("No handler for response to request: " + requestId);
+			return;
+		}
+		AbstractResponseHandler handler = pending.handler;
+
+		// And pass the response to it, the connection stays open for further requests
+		if (frameType == FrameDecoder.TYPE_OVERLOADED) {
+			handler.handleOverloaded(rspData.length > 0 ? OverloadReason.forCode(rspData[0]) : OverloadReason.UNKNOWN);
+		} else if (frameType == FrameDecoder.TYPE_ERROR) {
+			handler.handleError(new String(rspData, UTF8));
+		} else {
+			handler.handleResponse(rspData);
 		}
 	}
 
-	private void write(SelectionKey key) throws IOException {
-		SocketChannel socketChannel = (SocketChannel) key.channel();
+	private void close(SelectionKey key, boolean reconnect) throws IOException {
+		SocketChannel socketChannel = this.disconnect(key, null);
+
+		// Replace the lost connection
+		int slot = this.slotOf(socketChannel);
+		if (reconnect && slot >= 0) {
+			System.out.println("Connection lost, reconnecting ...");
+			this.refusals[slot] = 0;
+			this.connections.set(slot, this.initiateConnection());
+		}
+	}
 
-		synchronized (this.pendingData) {
-			List<ByteBuffer> queue = (List<ByteBuffer>) this.pendingData.get(socketChannel);
+	/**
+	 * Closes a connection the server refused and replaces it after the backoff.
+	 * 
+	 * @param rejection
+	 *            the reason the server gave, null if the connect failed
+	 */
+	private void refused(SelectionKey key, OverloadReason rejection) throws IOException {
+		SocketChannel socketChannel = this.disconnect(key, rejection);
+		int slot = this.slotOf(socketChannel);
+		if (slot < 0)
+			return;
+		long delay = Math.min(MAX_RECONNECT_DELAY, MIN_RECONNECT_DELAY << Math.min(this.refusals[slot], 16));
+		this.refusals[slot]++;
+		this.reconnectAt[slot] = System.currentTimeMillis() + delay;
+		System.out.println("Connection refused" + (rejection == null ? "" : " (" + rejection + ")") + ", reconnecting in " + delay + " ms ...");
+	}
+
+	/**
+	 * Replaces the refused connections whose backoff is over.
+	 * 
+	 * @return ms until the next reconnect is due, 0 if none is scheduled
+	 */
+	private long reconnectDue() throws IOException {
+		long now = System.currentTimeMillis();
+		long next = 0;
+		for (int i = 0; i < this.reconnectAt.length; i++) {
+			if (this.reconnectAt[i] == 0)
+				continue;
+			long delay = this.reconnectAt[i] - now;
+			if (delay <= 0) {
+				this.reconnectAt[i] = 0;
+				this.connections.set(i, this.initiateConnection());
+			} else if (next == 0 || delay < next) {
+				next = delay;
+			}
+		}
+		return next;
+	}
 
-			// Write until there's not more data ...
-			while (!queue.isEmpty()) {
-				ByteBuffer buf = (ByteBuffer) queue.get(0);
-				socketChannel.write(buf);
-				if (buf.remaining() > 0) {
-					// ... or the socket's buffer fills up
-					break;
+	/**
+	 * Closes the channel and completes the handlers of the requests pending on it, they will not be answered.
+	 * 
+	 * @param rejection
+	 *            the handlers get {@link AbstractResponseHandler#handleOverloaded(OverloadReason)} with it, if null
+	 *            {@link AbstractResponseHandler#handleConnectionLost()}
+	 */
+	private SocketChannel disconnect(SelectionKey key, OverloadReason rejection) throws IOException {
+		SocketChannel socketChannel = (SocketChannel) key.channel();
+		((FrameDecoder) key.attachment()).release();
+		key.cancel();
+		socketChannel.close();
+		Queue<ByteBuffer> queue = this.pendingData.remove(socketChannel);
+		if (queue != null) {
+			// Senders register under the lock of the queue, no one registers on this connection after we got it
+			synchronized (queue) {
+				Iterator<PendingRequest> pending = this.rspHandlers.values().iterator();
+				while (pending.hasNext()) {
+					PendingRequest request = pending.next();
+					if (request.socket == socketChannel) {
+						pending.remove();
+						if (rejection != null)
+							request.handler.handleOverloaded(rejection);
+						else
+							request.handler.handleConnectionLost();
+					}
 				}
-				queue.remove(0);
 			}
+		}
+		return socketChannel;
+	}
 
-			if (queue.isEmpty()) {
-				// We wrote away all data, so we're no longer interested
-				// in writing on this socket. Switch back to waiting for
-				// data.
-				key.interestOps(SelectionKey.OP_READ);
+	private int slotOf(SocketChannel socketChannel) {
+		for (int i = 0; i < this.connections.length(); i++) {
+			if (this.connections.get(i) == socketChannel)
+				return i;
+		}
+		return -1;
+	}
+
+	private void write(SelectionKey key) throws IOException {
+		SocketChannel socketChannel = (SocketChannel) key.channel();
+		Queue<ByteBuffer> queue = this.pendingData.get(socketChannel);
+
+		// Write until there's not more data ...
+		ByteBuffer buf;
+		while ((buf = queue.peek()) != null) {
+			socketChannel.write(buf);
+			if (buf.remaining() > 0) {
+				// ... or the socket's buffer fills up
+				break;
 			}
+			queue.poll();
+		}
+
+		if (queue.isEmpty()) {
+			// We wrote away all data, so we're no longer interested
+			// in writing on this socket. Switch back to waiting for
+			// data only.
+			key.interestOps(SelectionKey.OP_READ);
 		}
 	}
 
 	private void finishConnection(SelectionKey key) throws IOException {
 		SocketChannel socketChannel = (SocketChannel) key.channel();
-	
+
 		// Finish the connection. If the connection operation failed
 		// this will raise an IOException.
 		try {
@@ -203,52 +380,81 @@ public class NioClient implements Runnable, WBClient {
 		} catch (IOException e) {
 			// Cancel the channel's registration with our selector
 			System.out.println(e);
-			key.cancel();
+			this.refused(key, null);
 			return;
 		}
-	
-		// Register an interest in writing on this channel
-		key.interestOps(SelectionKey.OP_WRITE);
+
+		// The hello frame and any requests queued while we were connecting
+		key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
 	}
 
 	private SocketChannel initiateConnection() throws IOException {
 		// Create a non-blocking socket channel
 		SocketChannel socketChannel = SocketChannel.open();
 		socketChannel.configureBlocking(false);
-	
+
 		// Kick off connection establishment
 		socketChannel.connect(new InetSocketAddress(this.hostAddress, this.port));
-	
-		// Queue a channel registration since the caller is not the 
+
+		// Requests may be queued before the connection is established, the hello frame goes first
+		Queue<ByteBuffer> queue = new ConcurrentLinkedQueue<ByteBuffer>();
+		queue.add(FrameEncoder.encode(0, FrameDecoder.TYPE_HELLO, new byte[] { this.protocol.getId() }));
+		this.pendingData.put(socketChannel, queue);
+
+		// Queue a channel registration since the caller is not the
 		// selecting thread. As part of the registration we'll register
 		// an interest in connection events. These are raised when a channel
 		// is ready to complete connection establishment.
-		synchronized(this.pendingChanges) {
-			this.pendingChanges.add(new ChangeRequest(socketChannel, ChangeRequest.REGISTER, SelectionKey.OP_CONNECT));
-		}
-		
+		this.pendingChanges.add(new ChangeRequest(socketChannel, ChangeRequest.REGISTER, SelectionKey.OP_CONNECT));
+		this.wakeup();
+
 		return socketChannel;
 	}
 
+	private void wakeup() {
+		if (this.wakeupPending.compareAndSet(false, true)) {
+			this.selector.wakeup();
+		}
+	}
+
 	private Selector initSelector() throws IOException {
 		// Create a new selector
 		return SelectorProvider.provider().openSelector();
 	}
 
+	private static class PendingRequest {
+
+		private final SocketChannel socket;
+
+		private final AbstractResponseHandler handler;
+
+		public PendingRequest(SocketChannel socket, AbstractResponseHandler handler) {
+			super();
+			this.socket = socket;
+			this.handler = handler;
+		}
+	}
+
 	public static void main(String[] args) {
 		try {
-			NioClient client = new NioClient(InetAddress.getByName("localhost"), 9090);
-			Thread t = new Thread(client, "Tiny-Client");
-			t.setDaemon(true);
-			t.start();
 			String scenarioStr = null;
 			String scenarioArguments = "";
+			int connections = 1;
+			ApplicationLayerProtocol protocol = Protocols.JAVA_SERIALIZATION;
 			for (String arg : args) {
 				if (arg.startsWith("-WBscenario="))
 					scenarioStr=arg.split("=")[1];
 				if (arg.startsWith("-WBscenarioArguments="))
 					scenarioArguments=arg.split("=")[1];
+				if (arg.startsWith("-WBconnections="))
+					connections=Integer.parseInt(arg.split("=")[1]);
+				if (arg.startsWith("-WBprotocol="))
+					protocol=Protocols.forName(arg.split("=")[1]);
 			}
+			NioClient client = new NioClient(InetAddress.getByName("localhost"), 9090, connections, protocol);
+			Thread t = new Thread(client, "Tiny-Client");
+			t.setDaemon(true);
+			t.start();
 			Testscenario scenario = (Testscenario) Class.forName(scenarioStr).getConstructor(new Class[]{WBClient.class}).newInstance(client);
 			scenario.execute((Object[])scenarioArguments.split(";"));
 		} catch (Exception e) {
@@ -1,20 +1,67 @@
 package com.schlimm.webappbenchmarker.client;
 
-import java.io.ByteArrayInputStream;
-import java.io.IOException;
-import java.io.ObjectInputStream;
+import com.schlimm.webappbenchmarker.protocol.ApplicationLayerProtocol;
+import com.schlimm.webappbenchmarker.protocol.OverloadReason;
+import com.schlimm.webappbenchmarker.protocol.Protocols;
 
 public class SimpleRspHandler extends AbstractResponseHandler {
 	private byte[] rsp = null;
+	private OverloadReason overloaded = null;
+	private boolean connectionLost = false;
+	private String error = null;
+	private Object[] response = null;
+	private ApplicationLayerProtocol protocol;
+
+	public SimpleRspHandler() {
+		this(Protocols.JAVA_SERIALIZATION);
+	}
+
+	public SimpleRspHandler(ApplicationLayerProtocol protocol) {
+		super();
+		this.protocol = protocol;
+	}
 	
 	public synchronized boolean handleResponse(byte[] rsp) {
 		this.rsp = rsp;
 		this.notify();
 		return true;
 	}
+
+	public synchronized boolean handleOverloaded(OverloadReason reason) {
+		this.overloaded = reason;
+		this.notify();
+		return true;
+	}
+
+	public synchronized boolean handleConnectionLost() {
+		this.connectionLost = true;
+		this.notify();
+		return true;
+	}
+
+	public synchronized boolean handleError(String message) {
+		this.error = message;
+		this.notify();
+		return true;
+	}
+
+	public synchronized OverloadReason getOverloaded() {
+		return overloaded;
+	}
+
+	public synchronized boolean isConnectionLost() {
+		return connectionLost;
+	}
+
+	/**
+	 * @return the message of the server if it could not decode or execute the request, null otherwise
+	 */
+	public synchronized String getError() {
+		return error;
+	}
 	
 	public synchronized void waitForResponse() {
-		while(this.rsp == null) {
+		while(this.rsp == null && this.overloaded == null && !this.connectionLost && this.error == null) {
 			try {
 				this.wait();
 			} catch (InterruptedException e) {
@@ -22,15 +69,16 @@ public class SimpleRspHandler extends AbstractResponseHandler {
 				return;
 			}
 		}
-		try {
-			@SuppressWarnings("unused")
-			Object[] object = (Object[]) new ObjectInputStream(new ByteArrayInputStream(rsp)).readObject();
-		} catch (IOException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
-		} catch (ClassNotFoundException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
-		}
+		if (this.overloaded != null || this.connectionLost || this.error != null)
+			return;
+		this.response = (Object[]) protocol.fromByteArray(rsp);
+	}
+
+	/**
+	 * @return the decoded response after {@link #waitForResponse()}, null if the server rejected the request, the
+	 *         request failed or the connection was lost
+	 */
+	public synchronized Object[] getResponse() {
+		return response;
 	}
 }
\ No newline at end of file
@@ -1,7 +1,11 @@
 package com.schlimm.webappbenchmarker.client;
 
+import com.schlimm.webappbenchmarker.protocol.ApplicationLayerProtocol;
+
 public interface WBClient {
 	
 	void send(byte[] data, AbstractResponseHandler handler);
 
+	ApplicationLayerProtocol getProtocol();
+
 }
@@ -11,11 +11,33 @@ public class ClientCommand implements Serializable {
 	
 	private String serverCommandClassName;
 	private Object[] arguments;
+	// Interned ID of the server command, CommandRegistry.NO_ID if the command is only known by name
+	private int commandId;
 
 	public ClientCommand(String serverCommandClassName, Object... arguments) {
 		super();
 		this.serverCommandClassName = serverCommandClassName;
 		this.arguments = arguments;
+		this.commandId = CommandRegistry.NO_ID;
+	}
+
+	/**
+	 * A command known by its interned ID, see {@link CommandRegistry}.
+	 */
+	public ClientCommand(int commandId, Object... arguments) {
+		super();
+		this.serverCommandClassName = CommandRegistry.nameOf(commandId);
+		this.arguments = arguments;
+		this.commandId = commandId;
+	}
+
+	/**
+	 * @return a command that carries the interned ID of the server command if it is registered, so the server
+	 *         dispatches it without hashing the class name
+	 */
+	public static ClientCommand interned(String serverCommandClassName, Object... arguments) {
+		int commandId = CommandRegistry.idOf(serverCommandClassName);
+		return commandId == CommandRegistry.NO_ID ? new ClientCommand(serverCommandClassName, arguments) : new ClientCommand(commandId, arguments);
 	}
 
 	public String getServerCommandClassName() {
@@ -25,5 +47,9 @@ public class ClientCommand implements Serializable {
 	public Object[] getArguments() {
 		return arguments;
 	}
+
+	public int getCommandId() {
+		return commandId;
+	}
 	
 }
@@ -0,0 +1,22 @@
+package com.schlimm.webappbenchmarker.command;
+
+/**
+ * Executors the server can run a {@link ServerCommand} on, see {@link ExecuteOn}.
+ *
+ * @author Niklas Schlimm
+ *
+ */
+public enum CommandExecutor {
+
+	/**
+	 * The fixed pool of workers, one per core. Right for CPU-bound commands.
+	 */
+	WORKER_POOL,
+
+	/**
+	 * A thread of its own per request, virtual if the JVM supports it. Right for commands that block, so they cannot
+	 * starve the worker pool.
+	 */
+	VIRTUAL_THREAD
+
+}
@@ -0,0 +1,82 @@
+package com.schlimm.webappbenchmarker.command;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Interns server command class names into numeric IDs, so a request can name its command with an int instead of the
+ * class name and the server can find the command by array index. Client and server agree on the IDs because the
+ * commands of this project are registered in a fixed order when the class is loaded. Commands registered later with
+ * {@link #register(String)} only get the same ID on both sides if both register them in the same order. ID 0 means
+ * the command has no ID.
+ *
+ * @author Niklas Schlimm
+ *
+ */
+public final class CommandRegistry {
+
+	public static final int NO_ID = 0;
+
+	private static final String[] WELL_KNOWN = new String[] { "com.schlimm.webappbenchmarker.command.system.BenchmarkCommand",
+			"com.schlimm.webappbenchmarker.command.trial.EchoCommand", "com.schlimm.webappbenchmarker.command.trial.BusyCommand",
+			"com.schlimm.webappbenchmarker.command.trial.SleepCommand", "com.schlimm.webappbenchmarker.command.threadingissues.ContentionSynchronized",
+			"com.schlimm.webappbenchmarker.command.threadingissues.ContentionJava5Locks", "com.schlimm.webappbenchmarker.command.cachebenchmark.CacheEngineBenchmark",
+			"com.schlimm.webappbenchmarker.command.monitoring.ContentionProfiler" };
+
+	private static final Map<String, Integer> ids = new ConcurrentHashMap<String, Integer>();
+
+	// Index is the ID, slot 0 stays empty
+	private static volatile String[] names = new String[1];
+
+	static {
+		for (String name : WELL_KNOWN) {
+			register(name);
+		}
+	}
+
+	private CommandRegistry() {
+		super();
+	}
+
+	/**
+	 * @return the ID of the command, the existing one if the command was registered before
+	 */
+	public static synchronized int register(String serverCommandClassName) {
+		Integer id = ids.get(serverCommandClassName);
+		if (id != null)
+			return id;
+		String[] grown = Arrays.copyOf(names, names.length + 1);
+		grown[names.length] = serverCommandClassName;
+		ids.put(serverCommandClassName, names.length);
+		names = grown;
+		return grown.length - 1;
+	}
+
+	/**
+	 * @return the ID of the command, {@link #NO_ID} if it is not registered
+	 */
+	public static int idOf(String serverCommandClassName) {
+		Integer id = ids.get(serverCommandClassName);
+		return id == null ? NO_ID : id;
+	}
+
+	/**
+	 * @throws IllegalArgumentException
+	 *             if no command is registered with the ID
+	 */
+	public static String nameOf(int id) {
+		String[] current = names;
+		if (id <= NO_ID || id >= current.length)
+			throw new IllegalArgumentException("Unknown command id: " + id);
+		return current[id];
+	}
+
+	/**
+	 * @return the highest ID handed out so far
+	 */
+	public static int maxId() {
+		return names.length - 1;
+	}
+
+}
@@ -0,0 +1,23 @@
+package com.schlimm.webappbenchmarker.command;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Declares the executor a {@link ServerCommand} wants to run on. Commands without the annotation run on the
+ * {@link CommandExecutor#WORKER_POOL}.
+ *
+ * @author Niklas Schlimm
+ *
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface ExecuteOn {
+
+	CommandExecutor value();
+
+}
@@ -0,0 +1,24 @@
+package com.schlimm.webappbenchmarker.command.cachebenchmark;
+
+import java.util.function.Function;
+
+/**
+ * A cache as compared by the {@link CacheEngineBenchmark}: a value is looked up by key and loaded on a miss. All
+ * implementations are thread-safe.
+ *
+ * @author Niklas Schlimm
+ *
+ */
+public interface Cache<K, V> {
+
+	/**
+	 * @return the cached value, loaded with the loader and cached if the key is missing
+	 */
+	V get(K key, Function<? super K, ? extends V> loader);
+
+	/**
+	 * @return number of cached entries
+	 */
+	int size();
+
+}
@@ -0,0 +1,123 @@
+package com.schlimm.webappbenchmarker.command.cachebenchmark;
+
+import java.io.Serializable;
+import java.text.DecimalFormat;
+
+import com.schlimm.webappbenchmarker.statistic.Histogram;
+
+/**
+ * Result of one {@link CacheEngineBenchmark} run: throughput over all threads, hit rate and the latency of single
+ * lookups in nanoseconds.
+ *
+ * @author Niklas Schlimm
+ *
+ */
+public class CacheBenchmarkResult implements Serializable {
+
+	/**
+	 * Version
+	 */
+	private static final long serialVersionUID = 1L;
+
+	private static final String FORMAT = "%1$-18s %2$-12s %3$-10s %4$-10s %5$-8s %6$-14s %7$-8s %8$-10s %9$-10s %10$-10s %11$-12s %12$-10s%n";
+
+	private String engine;
+
+	private String distribution;
+
+	private int capacity;
+
+	private int keySpace;
+
+	private int threads;
+
+	private long operations;
+
+	private long misses;
+
+	// Sum of the lookups per second of all threads
+	private double throughput;
+
+	// Entries cached at the end of the run
+	private int size;
+
+	// Nanoseconds per lookup, including the cost of one of the two reads of the clock that time it
+	private Histogram latency;
+
+	public CacheBenchmarkResult(String engine, String distribution, int capacity, int keySpace, int threads, long operations, long misses, double throughput, int size, Histogram latency) {
+		super();
+		this.engine = engine;
+		this.distribution = distribution;
+		this.capacity = capacity;
+		this.keySpace = keySpace;
+		this.threads = threads;
+		this.operations = operations;
+		this.misses = misses;
+		this.throughput = throughput;
+		this.size = size;
+		this.latency = latency;
+	}
+
+	/**
+	 * @return hits per lookup within 0 and 1
+	 */
+	public double getHitRate() {
+		return operations == 0 ? 0 : 1d - (double) misses / operations;
+	}
+
+	public String getEngine() {
+		return engine;
+	}
+
+	public String getDistribution() {
+		return distribution;
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	public int getKeySpace() {
+		return keySpace;
+	}
+
+	public int getThreads() {
+		return threads;
+	}
+
+	public long getOperations() {
+		return operations;
+	}
+
+	public long getMisses() {
+		return misses;
+	}
+
+	public double getThroughput() {
+		return throughput;
+	}
+
+	public int getSize() {
+		return size;
+	}
+
+	public Histogram getLatency() {
+		return latency;
+	}
+
+	public static String header() {
+		return String.format(FORMAT, "Engine", "Keys", "Capacity", "Key space", "Threads", "Ops/s", "Hit %", "p50 ns", "p99 ns", "p99.9 ns", "Max ns", "Size");
+	}
+
+	public String row() {
+		DecimalFormat df = new DecimalFormat("#.##");
+		return String.format(FORMAT, engine, distribution, capacity, keySpace, threads, df.format(throughput), df.format(getHitRate() * 100), df.format(latency.getValueAtPercentile(50)),
+				df.format(latency.getValueAtPercentile(99)), df.format(latency.getValueAtPercentile(99.9)), df.format(latency.getMax()), size);
+	}
+
+	@Override
+	public String toString() {
+		return header() + row();
+	}
+
+}
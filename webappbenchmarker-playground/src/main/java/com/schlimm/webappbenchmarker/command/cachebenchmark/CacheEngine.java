@@ -0,0 +1,71 @@
+package com.schlimm.webappbenchmarker.command.cachebenchmark;
+
+/**
+ * The cache designs compared by the {@link CacheEngineBenchmark}.
+ *
+ * @author Niklas Schlimm
+ *
+ */
+public enum CacheEngine {
+
+	/**
+	 * Unbounded, see {@link ComputeIfAbsentCache}.
+	 */
+	COMPUTE_IF_ABSENT {
+		@Override
+		public <K, V> Cache<K, V> create(int capacity) {
+			return new ComputeIfAbsentCache<K, V>();
+		}
+	},
+
+	/**
+	 * Bounded, four stripes per processor, see {@link StripedLockCache}.
+	 */
+	STRIPED_LOCK {
+		@Override
+		public <K, V> Cache<K, V> create(int capacity) {
+			return new StripedLockCache<K, V>(capacity, 4 * Runtime.getRuntime().availableProcessors());
+		}
+	},
+
+	/**
+	 * Bounded, see {@link SegmentedLruCache}.
+	 */
+	SEGMENTED_LRU {
+		@Override
+		public <K, V> Cache<K, V> create(int capacity) {
+			return new SegmentedLruCache<K, V>(capacity);
+		}
+	},
+
+	/**
+	 * Bounded, see {@link TinyLfuCache}.
+	 */
+	TINY_LFU {
+		@Override
+		public <K, V> Cache<K, V> create(int capacity) {
+			return new TinyLfuCache<K, V>(capacity);
+		}
+	},
+
+	/**
+	 * Unbounded, see {@link CopyOnWriteCache}.
+	 */
+	COPY_ON_WRITE {
+		@Override
+		public <K, V> Cache<K, V> create(int capacity) {
+			return new CopyOnWriteCache<K, V>();
+		}
+	};
+
+	/**
+	 * @param capacity
+	 *            maximum number of entries, ignored by the unbounded engines
+	 */
+	public abstract <K, V> Cache<K, V> create(int capacity);
+
+	public static CacheEngine forName(String name) {
+		return valueOf(name.toUpperCase());
+	}
+
+}
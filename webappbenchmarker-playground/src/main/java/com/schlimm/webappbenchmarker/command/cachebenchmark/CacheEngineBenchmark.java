@@ -0,0 +1,155 @@
+package com.schlimm.webappbenchmarker.command.cachebenchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import com.schlimm.webappbenchmarker.command.ServerCommand;
+import com.schlimm.webappbenchmarker.command.cachebenchmark.KeyDistribution.KeyGenerator;
+import com.schlimm.webappbenchmarker.statistic.Histogram;
+
+/**
+ * Drives a {@link Cache} from several threads at once and measures throughput, hit rate and latency of the lookups.
+ * Arguments: engine (see {@link CacheEngine}), key distribution (see {@link KeyDistribution}), capacity, key space,
+ * threads, test time in milliseconds, miss penalty in microseconds and optionally the seed of the key generators.
+ * <p>
+ * Every thread first warms up for a quarter of the test time, which also fills the cache, then times every lookup
+ * into a {@link Histogram} of its own. Timing takes two reads of the clock per lookup, both count against the
+ * throughput, the recorded latency includes the cost of one of them. A miss busy spins for the miss penalty, like a
+ * load from a database would keep the thread busy, so a better hit rate shows up in the throughput. Returns a
+ * {@link CacheBenchmarkResult}.
+ *
+ * @author Niklas Schlimm
+ *
+ */
+public class CacheEngineBenchmark implements ServerCommand {
+
+	@Override
+	public Object[] execute(Object... arguments) {
+		CacheEngine engine = CacheEngine.forName((String) arguments[0]);
+		KeyDistribution distribution = KeyDistribution.forName((String) arguments[1]);
+		int capacity = (Integer) arguments[2];
+		int keySpace = (Integer) arguments[3];
+		int threads = (Integer) arguments[4];
+		long testTime = ((Number) arguments[5]).longValue();
+		int missPenalty = (Integer) arguments[6];
+		long seed = arguments.length > 7 ? ((Number) arguments[7]).longValue() : 42;
+		try {
+			return new Object[] { run(engine, distribution, capacity, keySpace, threads, testTime, missPenalty, seed) };
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Cache benchmark interrupted", e);
+		}
+	}
+
+	public CacheBenchmarkResult run(CacheEngine engine, KeyDistribution distribution, int capacity, int keySpace, int threads, long testTime, int missPenalty, long seed)
+			throws InterruptedException {
+		final Cache<Integer, String> cache = engine.create(capacity);
+		// boxed up front, so a lookup does not allocate its key
+		final Integer[] keys = new Integer[keySpace];
+		for (int i = 0; i < keySpace; i++) {
+			keys[i] = i;
+		}
+		KeyGenerator[] generators = distribution.generators(keySpace, threads, seed);
+		final CountDownLatch start = new CountDownLatch(1);
+		final long warmUpNanos = TimeUnit.MILLISECONDS.toNanos(testTime) / 4;
+		final long testNanos = TimeUnit.MILLISECONDS.toNanos(testTime);
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		List<Future<Worker>> futures = new ArrayList<Future<Worker>>();
+		for (int i = 0; i < threads; i++) {
+			final Worker worker = new Worker(generators[i], TimeUnit.MICROSECONDS.toNanos(missPenalty));
+			futures.add(pool.submit(new Callable<Worker>() {
+				@Override
+				public Worker call() throws Exception {
+					start.await();
+					worker.run(cache, keys, warmUpNanos, testNanos);
+					return worker;
+				}
+			}));
+		}
+		start.countDown();
+		Histogram latency = new Histogram();
+		long operations = 0;
+		long misses = 0;
+		double throughput = 0;
+		try {
+			for (Future<Worker> future : futures) {
+				Worker worker = future.get();
+				latency.merge(worker.latency);
+				operations += worker.operations;
+				misses += worker.misses;
+				throughput += worker.operations * 1e9d / worker.elapsedNanos;
+			}
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("Cache benchmark failed", e.getCause());
+		} finally {
+			pool.shutdownNow();
+		}
+		return new CacheBenchmarkResult(engine.name(), distribution.name(), capacity, keySpace, threads, operations, misses, throughput, cache.size(), latency);
+	}
+
+	/**
+	 * One thread of the benchmark, also the loader of the cache, so it counts its own misses.
+	 */
+	private static class Worker implements Function<Integer, String> {
+
+		private KeyGenerator generator;
+
+		private long missPenaltyNanos;
+
+		private Histogram latency = new Histogram();
+
+		private long operations = 0;
+
+		private long misses = 0;
+
+		private long elapsedNanos = 0;
+
+		public Worker(KeyGenerator generator, long missPenaltyNanos) {
+			super();
+			this.generator = generator;
+			this.missPenaltyNanos = missPenaltyNanos;
+		}
+
+		public void run(Cache<Integer, String> cache, Integer[] keys, long warmUpNanos, long testNanos) {
+			long begin = System.nanoTime();
+			while (System.nanoTime() - begin < warmUpNanos) {
+				cache.get(keys[generator.next()], this);
+			}
+			misses = 0;
+			long now = System.nanoTime();
+			begin = now;
+			long deadline = begin + testNanos;
+			while (now - deadline < 0) {
+				Integer key = keys[generator.next()];
+				long before = System.nanoTime();
+				cache.get(key, this);
+				now = System.nanoTime();
+				latency.record(now - before);
+				operations++;
+			}
+			elapsedNanos = now - begin;
+		}
+
+		@Override
+		public String apply(Integer key) {
+			misses++;
+			if (missPenaltyNanos > 0) {
+				long begin = System.nanoTime();
+				while (System.nanoTime() - begin < missPenaltyNanos) {
+					// the load keeps the thread busy
+				}
+			}
+			return Integer.toHexString(key);
+		}
+
+	}
+
+}
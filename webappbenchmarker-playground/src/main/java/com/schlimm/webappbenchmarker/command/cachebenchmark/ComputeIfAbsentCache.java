@@ -0,0 +1,29 @@
+package com.schlimm.webappbenchmarker.command.cachebenchmark;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Unbounded memoization with {@link ConcurrentHashMap#computeIfAbsent(Object, Function)}: every key is loaded exactly
+ * once, a concurrent miss on the same key waits for the load instead of loading again. Hits are a plain get first,
+ * computeIfAbsent may lock the bin even if the key is present.
+ *
+ * @author Niklas Schlimm
+ *
+ */
+public class ComputeIfAbsentCache<K, V> implements Cache<K, V> {
+
+	private ConcurrentHashMap<K, V> map = new ConcurrentHashMap<K, V>();
+
+	@Override
+	public V get(K key, Function<? super K, ? extends V> loader) {
+		V value = map.get(key);
+		return value != null ? value : map.computeIfAbsent(key, loader);
+	}
+
+	@Override
+	public int size() {
+		return map.size();
+	}
+
+}
@@ -0,0 +1,41 @@
+package com.schlimm.webappbenchmarker.command.cachebenchmark;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Unbounded read-mostly cache: readers look into an immutable {@link HashMap} published through a volatile field,
+ * without any lock or CAS. A miss copies the whole map under a lock, adds the entry and publishes the copy. Cheapest
+ * possible hit, a miss costs time proportional to the cache size, so it only pays off if the keys settle quickly.
+ *
+ * @author Niklas Schlimm
+ *
+ */
+public class CopyOnWriteCache<K, V> implements Cache<K, V> {
+
+	private volatile Map<K, V> snapshot = new HashMap<K, V>();
+
+	@Override
+	public V get(K key, Function<? super K, ? extends V> loader) {
+		V value = snapshot.get(key);
+		if (value != null)
+			return value;
+		synchronized (this) {
+			value = snapshot.get(key);
+			if (value == null) {
+				value = loader.apply(key);
+				Map<K, V> copy = new HashMap<K, V>(snapshot);
+				copy.put(key, value);
+				snapshot = copy;
+			}
+			return value;
+		}
+	}
+
+	@Override
+	public int size() {
+		return snapshot.size();
+	}
+
+}
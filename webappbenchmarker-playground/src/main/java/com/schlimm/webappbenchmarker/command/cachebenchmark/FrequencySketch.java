@@ -0,0 +1,83 @@
+package com.schlimm.webappbenchmarker.command.cachebenchmark;
+
+/**
+ * Count-min sketch of how often keys were seen, the popularity estimate of TinyLFU. Every key increments one counter
+ * in each of four rows, the estimate is the smallest of the four counters, so collisions can only overestimate.
+ * Counters saturate at 15. After ten times the capacity increments all counters are halved, so the sketch forgets
+ * old popularity. Not thread-safe.
+ *
+ * @author Niklas Schlimm
+ *
+ */
+class FrequencySketch<K> {
+
+	private static final int[] SEEDS = new int[] { 0x97cb3127, 0xb5ad4ecf, 0x7feb352d, 0x846ca68b };
+
+	private static final int MAXIMUM = 15;
+
+	private int[][] rows;
+
+	private int mask;
+
+	private int sampleSize;
+
+	private int additions = 0;
+
+	public FrequencySketch(int capacity) {
+		super();
+		int width = 16;
+		while (width < capacity) {
+			width <<= 1;
+		}
+		rows = new int[SEEDS.length][width];
+		mask = width - 1;
+		sampleSize = 10 * Math.max(1, capacity);
+	}
+
+	public void increment(K key) {
+		int hash = spread(key.hashCode());
+		boolean added = false;
+		for (int row = 0; row < rows.length; row++) {
+			int index = index(hash, row);
+			if (rows[row][index] < MAXIMUM) {
+				rows[row][index]++;
+				added = true;
+			}
+		}
+		if (added && ++additions >= sampleSize)
+			reset();
+	}
+
+	public int frequency(K key) {
+		int hash = spread(key.hashCode());
+		int frequency = MAXIMUM;
+		for (int row = 0; row < rows.length; row++) {
+			frequency = Math.min(frequency, rows[row][index(hash, row)]);
+		}
+		return frequency;
+	}
+
+	private int index(int hash, int row) {
+		int h = hash * SEEDS[row];
+		return (h ^ (h >>> 16)) & mask;
+	}
+
+	// Murmur3 finalizer, hash codes of boxed integers are the value itself
+	private static int spread(int hash) {
+		hash ^= hash >>> 16;
+		hash *= 0x85ebca6b;
+		hash ^= hash >>> 13;
+		hash *= 0xc2b2ae35;
+		return hash ^ (hash >>> 16);
+	}
+
+	private void reset() {
+		for (int[] row : rows) {
+			for (int i = 0; i < row.length; i++) {
+				row[i] >>>= 1;
+			}
+		}
+		additions /= 2;
+	}
+
+}
@@ -0,0 +1,117 @@
+package com.schlimm.webappbenchmarker.command.cachebenchmark;
+
+import java.util.SplittableRandom;
+
+/**
+ * How the {@link CacheEngineBenchmark} picks the keys it looks up, keys are numbers within 0 and the key space. Every
+ * thread gets a {@link KeyGenerator} of its own, so generating keys does not contend.
+ *
+ * @author Niklas Schlimm
+ *
+ */
+public enum KeyDistribution {
+
+	/**
+	 * Every key is equally likely, the hit rate approaches capacity / key space.
+	 */
+	UNIFORM {
+		@Override
+		KeyGenerator[] generators(final int keySpace, int count, long seed) {
+			KeyGenerator[] generators = new KeyGenerator[count];
+			for (int i = 0; i < count; i++) {
+				final SplittableRandom random = new SplittableRandom(seed + i);
+				generators[i] = new KeyGenerator() {
+					@Override
+					public int next() {
+						return random.nextInt(keySpace);
+					}
+				};
+			}
+			return generators;
+		}
+	},
+
+	/**
+	 * Key k has a probability proportional to 1 / (k + 1)^0.99, a few keys take most of the lookups, like the requests
+	 * of a web application. Generated as in YCSB (Gray et al., Quickly generating billion-record synthetic databases).
+	 */
+	ZIPFIAN {
+		@Override
+		KeyGenerator[] generators(final int keySpace, int count, long seed) {
+			final double theta = 0.99d;
+			final double zetaN = zeta(keySpace, theta);
+			final double alpha = 1d / (1d - theta);
+			final double eta = (1d - Math.pow(2d / keySpace, 1d - theta)) / (1d - zeta(2, theta) / zetaN);
+			final double secondThreshold = 1d + Math.pow(0.5d, theta);
+			KeyGenerator[] generators = new KeyGenerator[count];
+			for (int i = 0; i < count; i++) {
+				final SplittableRandom random = new SplittableRandom(seed + i);
+				generators[i] = new KeyGenerator() {
+					@Override
+					public int next() {
+						double u = random.nextDouble();
+						double uz = u * zetaN;
+						if (uz < 1d)
+							return 0;
+						if (uz < secondThreshold)
+							return Math.min(1, keySpace - 1);
+						return Math.min(keySpace - 1, (int) (keySpace * Math.pow(eta * u - eta + 1d, alpha)));
+					}
+				};
+			}
+			return generators;
+		}
+	},
+
+	/**
+	 * Every thread walks through the whole key space in order, starting at a different offset. If the key space is
+	 * larger than the cache an LRU never hits, the worst case for recency based eviction.
+	 */
+	SCAN {
+		@Override
+		KeyGenerator[] generators(final int keySpace, int count, long seed) {
+			KeyGenerator[] generators = new KeyGenerator[count];
+			for (int i = 0; i < count; i++) {
+				final int start = (int) ((long) keySpace * i / count);
+				generators[i] = new KeyGenerator() {
+					private int next = start;
+
+					@Override
+					public int next() {
+						int key = next;
+						next = next + 1 == keySpace ? 0 : next + 1;
+						return key;
+					}
+				};
+			}
+			return generators;
+		}
+	};
+
+	/**
+	 * @return one generator per thread, the generators share what is expensive to compute
+	 */
+	abstract KeyGenerator[] generators(int keySpace, int count, long seed);
+
+	public static KeyDistribution forName(String name) {
+		return valueOf(name.toUpperCase());
+	}
+
+	private static double zeta(int n, double theta) {
+		double sum = 0;
+		for (int i = 1; i <= n; i++) {
+			sum += 1d / Math.pow(i, theta);
+		}
+		return sum;
+	}
+
+	/**
+	 * Keys of one thread, not thread-safe.
+	 */
+	public interface KeyGenerator {
+
+		int next();
+
+	}
+
+}
@@ -0,0 +1,70 @@
+package com.schlimm.webappbenchmarker.command.cachebenchmark;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * Bounded cache whose entries live in a {@link ConcurrentHashMap} while the eviction order is kept by a policy that
+ * is not thread-safe and guarded by one lock. A hit reads the map without locking and only updates the policy if the
+ * lock is free, a hit that finds the lock taken is not recorded (lossy, like the read buffers of Caffeine), so hits
+ * never wait for each other. A miss loads the value without the lock, then adds the key to the policy and removes the
+ * evicted key from the map under the lock. Concurrent misses on the same key may both load, the first one wins.
+ *
+ * @author Niklas Schlimm
+ *
+ */
+public abstract class PolicyCache<K, V> implements Cache<K, V> {
+
+	private ConcurrentHashMap<K, V> data = new ConcurrentHashMap<K, V>();
+
+	private ReentrantLock policyLock = new ReentrantLock();
+
+	@Override
+	public V get(K key, Function<? super K, ? extends V> loader) {
+		V value = data.get(key);
+		if (value != null) {
+			if (policyLock.tryLock()) {
+				try {
+					recordAccess(key);
+				} finally {
+					policyLock.unlock();
+				}
+			}
+			return value;
+		}
+		V loaded = loader.apply(key);
+		policyLock.lock();
+		try {
+			value = data.putIfAbsent(key, loaded);
+			if (value != null) {
+				recordAccess(key);
+				return value;
+			}
+			K evicted = add(key);
+			if (evicted != null)
+				data.remove(evicted);
+		} finally {
+			policyLock.unlock();
+		}
+		return loaded;
+	}
+
+	@Override
+	public int size() {
+		return data.size();
+	}
+
+	/**
+	 * A cached key was hit, called under the policy lock.
+	 */
+	protected abstract void recordAccess(K key);
+
+	/**
+	 * A key was loaded, called under the policy lock.
+	 * 
+	 * @return the key to evict, may be the new key itself if the policy rejects it, null if nothing is evicted
+	 */
+	protected abstract K add(K key);
+
+}
@@ -0,0 +1,92 @@
+package com.schlimm.webappbenchmarker.command.cachebenchmark;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Eviction order of a segmented LRU: new keys enter the probation segment, a key that is hit again moves to the
+ * protected segment, which takes 80% of the capacity. When the protected segment is full its least recently used key
+ * drops back to probation, victims are taken from probation first. A key that is only seen once, e.g. by a scan,
+ * never pushes a key out of the protected segment. Not thread-safe.
+ *
+ * @author Niklas Schlimm
+ *
+ */
+class SegmentedLru<K> {
+
+	private int capacity;
+
+	private int protectedCapacity;
+
+	// Both in LRU order, eldest first, a hit moves the key to the end
+	private LinkedHashMap<K, Boolean> probation = new LinkedHashMap<K, Boolean>();
+
+	private LinkedHashMap<K, Boolean> protectedSegment = new LinkedHashMap<K, Boolean>();
+
+	public SegmentedLru(int capacity) {
+		super();
+		this.capacity = Math.max(1, capacity);
+		this.protectedCapacity = (int) (this.capacity * 0.8d);
+	}
+
+	/**
+	 * @return true if the key is held by this LRU
+	 */
+	public boolean recordAccess(K key) {
+		if (protectedSegment.remove(key) != null) {
+			protectedSegment.put(key, Boolean.TRUE);
+			return true;
+		}
+		if (probation.remove(key) == null)
+			return false;
+		protectedSegment.put(key, Boolean.TRUE);
+		if (protectedSegment.size() > protectedCapacity) {
+			K demoted = eldest(protectedSegment);
+			protectedSegment.remove(demoted);
+			probation.put(demoted, Boolean.TRUE);
+		}
+		return true;
+	}
+
+	/**
+	 * Adds a key that is not held yet.
+	 * 
+	 * @return the key evicted to make room, null if there was room
+	 */
+	public K add(K key) {
+		probation.put(key, Boolean.TRUE);
+		if (size() <= capacity)
+			return null;
+		K victim = victim();
+		remove(victim);
+		return victim;
+	}
+
+	/**
+	 * @return the key that would be evicted next, null if empty
+	 */
+	public K victim() {
+		if (!probation.isEmpty())
+			return eldest(probation);
+		return protectedSegment.isEmpty() ? null : eldest(protectedSegment);
+	}
+
+	public void remove(K key) {
+		if (probation.remove(key) == null)
+			protectedSegment.remove(key);
+	}
+
+	public int size() {
+		return probation.size() + protectedSegment.size();
+	}
+
+	public boolean isFull() {
+		return size() >= capacity;
+	}
+
+	private static <K> K eldest(LinkedHashMap<K, Boolean> segment) {
+		Iterator<K> keys = segment.keySet().iterator();
+		return keys.next();
+	}
+
+}
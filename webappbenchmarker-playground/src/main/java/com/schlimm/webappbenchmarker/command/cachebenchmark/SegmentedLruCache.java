@@ -0,0 +1,28 @@
+package com.schlimm.webappbenchmarker.command.cachebenchmark;
+
+/**
+ * Bounded cache evicting in segmented LRU order, see {@link SegmentedLru}.
+ *
+ * @author Niklas Schlimm
+ *
+ */
+public class SegmentedLruCache<K, V> extends PolicyCache<K, V> {
+
+	private SegmentedLru<K> lru;
+
+	public SegmentedLruCache(int capacity) {
+		super();
+		this.lru = new SegmentedLru<K>(capacity);
+	}
+
+	@Override
+	protected void recordAccess(K key) {
+		lru.recordAccess(key);
+	}
+
+	@Override
+	protected K add(K key) {
+		return lru.add(key);
+	}
+
+}
@@ -0,0 +1,99 @@
+package com.schlimm.webappbenchmarker.command.cachebenchmark;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * Bounded LRU cache split into stripes by key hash, every stripe is an access ordered {@link LinkedHashMap} guarded
+ * by a lock of its own. The number of stripes is rounded up to a power of two, but kept at most the capacity, and the
+ * capacity is spread over the stripes so they hold exactly capacity entries together. Hits take the lock too, because
+ * they reorder the stripe. A miss loads the value without the lock, concurrent misses on the same key may both load,
+ * the first one wins. Threads only contend if their keys fall into the same stripe, in exchange the LRU order is only
+ * kept per stripe.
+ *
+ * @author Niklas Schlimm
+ *
+ */
+public class StripedLockCache<K, V> implements Cache<K, V> {
+
+	private Stripe<K, V>[] stripes;
+
+	private int mask;
+
+	@SuppressWarnings("unchecked")
+	public StripedLockCache(int capacity, int stripeCount) {
+		super();
+		capacity = Math.max(1, capacity);
+		int size = 1;
+		while (size < stripeCount && size << 1 <= capacity) {
+			size <<= 1;
+		}
+		stripes = (Stripe<K, V>[]) new Stripe<?, ?>[size];
+		for (int i = 0; i < size; i++) {
+			stripes[i] = new Stripe<K, V>(capacity / size + (i < capacity % size ? 1 : 0));
+		}
+		mask = size - 1;
+	}
+
+	@Override
+	public V get(K key, Function<? super K, ? extends V> loader) {
+		int hash = key.hashCode();
+		Stripe<K, V> stripe = stripes[(hash ^ (hash >>> 16)) & mask];
+		stripe.lock.lock();
+		try {
+			V value = stripe.entries.get(key);
+			if (value != null)
+				return value;
+		} finally {
+			stripe.lock.unlock();
+		}
+		V loaded = loader.apply(key);
+		stripe.lock.lock();
+		try {
+			V value = stripe.entries.get(key);
+			if (value != null)
+				return value;
+			stripe.entries.put(key, loaded);
+			return loaded;
+		} finally {
+			stripe.lock.unlock();
+		}
+	}
+
+	@Override
+	public int size() {
+		int size = 0;
+		for (Stripe<K, V> stripe : stripes) {
+			stripe.lock.lock();
+			try {
+				size += stripe.entries.size();
+			} finally {
+				stripe.lock.unlock();
+			}
+		}
+		return size;
+	}
+
+	private static class Stripe<K, V> {
+
+		private ReentrantLock lock = new ReentrantLock();
+
+		private Map<K, V> entries;
+
+		public Stripe(final int capacity) {
+			super();
+			this.entries = new LinkedHashMap<K, V>(16, 0.75f, true) {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+					return size() > capacity;
+				}
+			};
+		}
+
+	}
+
+}
@@ -0,0 +1,61 @@
+package com.schlimm.webappbenchmarker.command.cachebenchmark;
+
+import java.util.LinkedHashMap;
+
+/**
+ * Bounded cache with the W-TinyLFU policy of Caffeine: new keys enter a small LRU window (1% of the capacity), a key
+ * falling out of the window competes with the next victim of the main {@link SegmentedLru} and is only admitted if
+ * the {@link FrequencySketch} has seen it more often. Bursts of new keys stay in the window, a scan cannot flush the
+ * popular keys out of the main segment.
+ *
+ * @author Niklas Schlimm
+ *
+ */
+public class TinyLfuCache<K, V> extends PolicyCache<K, V> {
+
+	private int windowCapacity;
+
+	// LRU order, eldest first
+	private LinkedHashMap<K, Boolean> window = new LinkedHashMap<K, Boolean>();
+
+	private SegmentedLru<K> main;
+
+	private FrequencySketch<K> sketch;
+
+	public TinyLfuCache(int capacity) {
+		super();
+		capacity = Math.max(2, capacity);
+		this.windowCapacity = Math.max(1, capacity / 100);
+		this.main = new SegmentedLru<K>(capacity - windowCapacity);
+		this.sketch = new FrequencySketch<K>(capacity);
+	}
+
+	@Override
+	protected void recordAccess(K key) {
+		sketch.increment(key);
+		if (window.remove(key) != null) {
+			window.put(key, Boolean.TRUE);
+		} else {
+			main.recordAccess(key);
+		}
+	}
+
+	@Override
+	protected K add(K key) {
+		sketch.increment(key);
+		window.put(key, Boolean.TRUE);
+		if (window.size() <= windowCapacity)
+			return null;
+		K candidate = window.keySet().iterator().next();
+		window.remove(candidate);
+		if (!main.isFull())
+			return main.add(candidate);
+		K victim = main.victim();
+		if (sketch.frequency(candidate) <= sketch.frequency(victim))
+			return candidate;
+		main.remove(victim);
+		main.add(candidate);
+		return victim;
+	}
+
+}
@@ -0,0 +1,93 @@
+package com.schlimm.webappbenchmarker.command.clientscenarios;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.schlimm.webappbenchmarker.client.SimpleRspHandler;
+import com.schlimm.webappbenchmarker.client.WBClient;
+import com.schlimm.webappbenchmarker.command.ClientCommand;
+import com.schlimm.webappbenchmarker.command.Testscenario;
+import com.schlimm.webappbenchmarker.command.cachebenchmark.CacheBenchmarkResult;
+import com.schlimm.webappbenchmarker.command.cachebenchmark.CacheEngineBenchmark;
+import com.schlimm.webappbenchmarker.protocol.ApplicationLayerProtocol;
+
+/**
+ * Compares the cache engines on the server: every engine on every key distribution, capacity and thread count, one
+ * {@link CacheEngineBenchmark} after the other. Scenario arguments override the defaults, items separated by ';',
+ * values by ',', e.g.
+ * <code>-WBscenarioArguments=engines:tiny_lfu,segmented_lru;distributions:zipfian,scan;capacity:1000;keySpace:100000;threads:1,4;testTime:1000;missPenalty:5</code>.
+ *
+ * @author Niklas Schlimm
+ *
+ */
+public class CacheEngineScenario extends Testscenario {
+
+	public static final String DEFAULTS = "engines:compute_if_absent,striped_lock,segmented_lru,tiny_lfu,copy_on_write;distributions:uniform,zipfian,scan;"
+			+ "capacity:1000;keySpace:10000;threads:1,4;testTime:1000;missPenalty:5;seed:42";
+
+	public CacheEngineScenario(WBClient client) {
+		super(client);
+	}
+
+	@Override
+	public void execute(Object... args) {
+		Map<String, List<String>> settings = parse(DEFAULTS);
+		for (Object arg : args) {
+			settings.putAll(parse((String) arg));
+		}
+		long testTime = Long.parseLong(settings.get("testTime").get(0));
+		int keySpace = Integer.parseInt(settings.get("keySpace").get(0));
+		int missPenalty = Integer.parseInt(settings.get("missPenalty").get(0));
+		long seed = Long.parseLong(settings.get("seed").get(0));
+		StringBuilder table = new StringBuilder(CacheBenchmarkResult.header());
+		for (String distribution : settings.get("distributions")) {
+			for (String capacity : settings.get("capacity")) {
+				for (String threads : settings.get("threads")) {
+					for (String engine : settings.get("engines")) {
+						ClientCommand command = ClientCommand.interned(CacheEngineBenchmark.class.getName(), engine, distribution, Integer.valueOf(capacity), keySpace,
+								Integer.valueOf(threads), testTime, missPenalty, seed);
+						try {
+							CacheBenchmarkResult result = run(command);
+							if (result == null) {
+								System.out.println(engine + " " + distribution + " - rejected by the server");
+								continue;
+							}
+							System.out.print(result);
+							table.append(result.row());
+						} catch (Exception e) {
+							System.out.println(engine + " " + distribution + " - failed : " + e);
+						}
+					}
+				}
+			}
+		}
+		System.out.println(table);
+	}
+
+	private CacheBenchmarkResult run(ClientCommand command) throws Exception {
+		ApplicationLayerProtocol protocol = client.getProtocol();
+		SimpleRspHandler handler = new SimpleRspHandler(protocol);
+		client.send(protocol.toByteArray(command), handler);
+		handler.waitForResponse();
+		Object[] response = handler.getResponse();
+		return response == null ? null : (CacheBenchmarkResult) response[0];
+	}
+
+	private static Map<String, List<String>> parse(String definition) {
+		Map<String, List<String>> settings = new LinkedHashMap<String, List<String>>();
+		for (String item : definition.split(";")) {
+			item = item.trim();
+			if (item.isEmpty())
+				continue;
+			int colon = item.indexOf(':');
+			if (colon < 1)
+				throw new IllegalArgumentException("Scenario argument is not key:values: " + item);
+			settings.put(item.substring(0, colon).trim(), new ArrayList<String>(Arrays.asList(item.substring(colon + 1).trim().split(","))));
+		}
+		return settings;
+	}
+
+}
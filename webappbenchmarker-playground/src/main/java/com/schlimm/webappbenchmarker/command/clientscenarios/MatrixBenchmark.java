@@ -0,0 +1,233 @@
+package com.schlimm.webappbenchmarker.command.clientscenarios;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.schlimm.webappbenchmarker.client.SimpleRspHandler;
+import com.schlimm.webappbenchmarker.client.WBClient;
+import com.schlimm.webappbenchmarker.command.Testscenario;
+import com.schlimm.webappbenchmarker.command.clientscenarios.ScenarioMatrix.Cell;
+import com.schlimm.webappbenchmarker.command.system.ForkedCommand;
+import com.schlimm.webappbenchmarker.protocol.ApplicationLayerProtocol;
+import com.schlimm.webappbenchmarker.statistic.Statistics;
+
+/**
+ * Runs a {@link ScenarioMatrix}. Every cell is run repeat times, the runs of all cells are shuffled so that drift of the
+ * machine (JIT, heap growth, thermal throttling) spreads over all cells instead of favouring the cells that run first.
+ * The cells run on the server or in forked JVMs, one at a time or several at once. The results of all runs of a cell
+ * are merged and reported as a comparison table, optionally also as CSV and JSON.
+ * <p>
+ * The matrix is passed as scenario arguments, e.g.
+ * <code>-WBscenarioArguments=classes:...;cacheSize:10,100000;initialize:false,true;mode:fork;threads:2</code>.
+ *
+ * @author Niklas Schlimm
+ *
+ */
+public class MatrixBenchmark extends Testscenario {
+
+	public MatrixBenchmark(WBClient client) {
+		super(client);
+	}
+
+	/**
+	 * @return the matrix of the scenario, items given as scenario arguments are added and win over it, null if the
+	 *         whole matrix is given as arguments
+	 */
+	protected String getDefaultDefinition() {
+		return null;
+	}
+
+	@Override
+	public void execute(Object... args) {
+		StringBuilder definition = new StringBuilder();
+		if (getDefaultDefinition() != null)
+			definition.append(getDefaultDefinition());
+		for (Object arg : args) {
+			definition.append(';').append(arg);
+		}
+		ScenarioMatrix matrix = ScenarioMatrix.parse(definition.toString());
+		try {
+			Map<Cell, Statistics> results = run(matrix);
+			System.out.println(table(matrix, results));
+			if (matrix.getCsv() != null)
+				write(csv(matrix, results), matrix.getCsv());
+			if (matrix.getJson() != null)
+				write(json(matrix, results), matrix.getJson());
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * @return the merged statistics of every cell, in the order of {@link ScenarioMatrix#cells()}
+	 */
+	public Map<Cell, Statistics> run(final ScenarioMatrix matrix) throws InterruptedException {
+		System.out.println(matrix);
+		final Map<Cell, Statistics> results = new LinkedHashMap<Cell, Statistics>();
+		List<Cell> schedule = new ArrayList<Cell>();
+		for (Cell cell : matrix.cells()) {
+			Statistics statistics = new Statistics();
+			statistics.setTestTime(matrix.getTestTime());
+			results.put(cell, statistics);
+			for (int i = 0; i < matrix.getRepeat(); i++) {
+				schedule.add(cell);
+			}
+		}
+		Collections.shuffle(schedule, new Random(matrix.getSeed()));
+		final int total = schedule.size();
+		final AtomicInteger finished = new AtomicInteger(0);
+		long start = System.nanoTime();
+		ExecutorService pool = Executors.newFixedThreadPool(matrix.getThreads());
+		for (final Cell cell : schedule) {
+			pool.submit(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						Statistics statistics = runCell(matrix, cell);
+						if (statistics == null) {
+							System.out.println(cell + " - rejected by the server");
+							return;
+						}
+						Statistics merged = results.get(cell);
+						synchronized (merged) {
+							merged.merge(statistics);
+						}
+						System.out.println(String.format("(%1$d/%2$d) %3$s - ops/s : %4$.2f", finished.incrementAndGet(), total, cell, statistics.mean() * 1000d / matrix.getTestTime()));
+					} catch (Exception e) {
+						System.out.println(cell + " - failed : " + e);
+					}
+				}
+			});
+		}
+		pool.shutdown();
+		pool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+		System.out.println("Matrix of " + results.size() + " cells, " + total + " runs finished in " + TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start) + " s");
+		return results;
+	}
+
+	private Statistics runCell(ScenarioMatrix matrix, Cell cell) throws Exception {
+		Object[] response;
+		if (matrix.getMode() == ScenarioMatrix.Mode.FORK) {
+			response = ForkedCommand.execute(cell.toCommand());
+		} else {
+			ApplicationLayerProtocol protocol = client.getProtocol();
+			SimpleRspHandler handler = new SimpleRspHandler(protocol);
+			client.send(protocol.toByteArray(cell.toCommand()), handler);
+			handler.waitForResponse();
+			response = handler.getResponse();
+		}
+		return response == null ? null : (Statistics) response[0];
+	}
+
+	/**
+	 * Ops/s relative to the fastest class on the same parameters. A '*' marks cells whose confidence interval does not
+	 * overlap with the one of the fastest cell, so the difference is not noise.
+	 */
+	public static String table(ScenarioMatrix matrix, Map<Cell, Statistics> results) {
+		DecimalFormat df = new DecimalFormat("#.##");
+		StringBuilder table = new StringBuilder(String.format("%1$-60s %2$-8s %3$-15s %4$-12s %5$-12s %6$-10s%n", "Cell", "Samples", "Ops/s", "+/- 95%", "ns/op", "Relative"));
+		for (Map.Entry<Cell, Statistics> entry : results.entrySet()) {
+			Statistics statistics = entry.getValue();
+			if (statistics.count() == 0) {
+				table.append(String.format("%1$-60s %2$-8s%n", entry.getKey(), 0));
+				continue;
+			}
+			Statistics best = best(entry.getKey(), results);
+			double relative = statistics.opsPerSecond() / best.opsPerSecond();
+			boolean significant = statistics != best && statistics.count() > 1 && best.count() > 1
+					&& statistics.opsPerSecond() + statistics.opsPerSecondConfidenceInterval() < best.opsPerSecond() - best.opsPerSecondConfidenceInterval();
+			table.append(String.format("%1$-60s %2$-8s %3$-15s %4$-12s %5$-12s %6$-10s%n", entry.getKey(), statistics.count(), df.format(statistics.opsPerSecond()),
+					df.format(statistics.opsPerSecondConfidenceInterval()), df.format(statistics.nanosPerOperation()), df.format(relative) + (significant ? " *" : "")));
+		}
+		return table.toString();
+	}
+
+	private static Statistics best(Cell cell, Map<Cell, Statistics> results) {
+		Statistics best = null;
+		for (Map.Entry<Cell, Statistics> entry : results.entrySet()) {
+			if (entry.getKey().getGroup() == cell.getGroup() && entry.getValue().count() > 0 && (best == null || entry.getValue().mean() > best.mean()))
+				best = entry.getValue();
+		}
+		return best;
+	}
+
+	public static String csv(ScenarioMatrix matrix, Map<Cell, Statistics> results) {
+		DecimalFormat df = new DecimalFormat("0.###", DecimalFormatSymbols.getInstance(Locale.US));
+		StringBuilder csv = new StringBuilder("class");
+		for (String axis : matrix.getAxisNames()) {
+			csv.append(',').append(axis);
+		}
+		csv.append(",samples,mean,stddev,opsPerSecond,confidenceInterval,nanosPerOperation").append(System.getProperty("line.separator"));
+		for (Map.Entry<Cell, Statistics> entry : results.entrySet()) {
+			Statistics statistics = entry.getValue();
+			csv.append(entry.getKey().getClassName());
+			for (Object parameter : entry.getKey().getParameters()) {
+				csv.append(',').append(parameter);
+			}
+			if (statistics.count() == 0) {
+				csv.append(",0,,,,,");
+			} else {
+				csv.append(',').append(statistics.count()).append(',').append(df.format(statistics.mean())).append(',').append(df.format(statistics.stddev())).append(',')
+						.append(df.format(statistics.opsPerSecond())).append(',').append(df.format(statistics.opsPerSecondConfidenceInterval())).append(',')
+						.append(df.format(statistics.nanosPerOperation()));
+			}
+			csv.append(System.getProperty("line.separator"));
+		}
+		return csv.toString();
+	}
+
+	public static String json(ScenarioMatrix matrix, Map<Cell, Statistics> results) {
+		DecimalFormat df = new DecimalFormat("0.###", DecimalFormatSymbols.getInstance(Locale.US));
+		List<String> axes = matrix.getAxisNames();
+		StringBuilder json = new StringBuilder("{\"testTime\":").append(matrix.getTestTime()).append(",\"runs\":").append(matrix.getRuns()).append(",\"repeat\":").append(matrix.getRepeat())
+				.append(",\"seed\":").append(matrix.getSeed()).append(",\"cells\":[");
+		boolean first = true;
+		for (Map.Entry<Cell, Statistics> entry : results.entrySet()) {
+			Statistics statistics = entry.getValue();
+			json.append(first ? "" : ",").append("{\"class\":").append(quote(entry.getKey().getClassName())).append(",\"parameters\":{");
+			Object[] parameters = entry.getKey().getParameters();
+			for (int i = 0; i < parameters.length; i++) {
+				json.append(i == 0 ? "" : ",").append(quote(axes.get(i))).append(':').append(parameters[i] instanceof String ? quote((String) parameters[i]) : parameters[i]);
+			}
+			json.append("},\"samples\":").append(statistics.count());
+			if (statistics.count() > 0) {
+				json.append(",\"mean\":").append(df.format(statistics.mean())).append(",\"stddev\":").append(df.format(statistics.stddev())).append(",\"opsPerSecond\":")
+						.append(df.format(statistics.opsPerSecond())).append(",\"nanosPerOperation\":").append(df.format(statistics.nanosPerOperation()));
+				if (statistics.count() > 1)
+					json.append(",\"confidenceInterval\":").append(df.format(statistics.opsPerSecondConfidenceInterval()));
+			}
+			json.append('}');
+			first = false;
+		}
+		return json.append("]}").toString();
+	}
+
+	private static String quote(String value) {
+		return '"' + value.replace("\\", "\\\\").replace("\"", "\\\"") + '"';
+	}
+
+	private static void write(String content, String fileName) throws IOException {
+		Writer writer = new FileWriter(fileName);
+		try {
+			writer.write(content);
+		} finally {
+			writer.close();
+		}
+		System.out.println("Results written to " + fileName);
+	}
+
+}
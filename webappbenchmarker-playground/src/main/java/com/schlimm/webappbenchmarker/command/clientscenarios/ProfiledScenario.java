@@ -0,0 +1,50 @@
+package com.schlimm.webappbenchmarker.command.clientscenarios;
+
+import java.util.Arrays;
+
+import com.schlimm.webappbenchmarker.client.SimpleRspHandler;
+import com.schlimm.webappbenchmarker.client.WBClient;
+import com.schlimm.webappbenchmarker.command.ClientCommand;
+import com.schlimm.webappbenchmarker.command.Testscenario;
+import com.schlimm.webappbenchmarker.command.monitoring.ContentionProfiler;
+import com.schlimm.webappbenchmarker.protocol.ApplicationLayerProtocol;
+
+/**
+ * Runs another scenario while the {@link ContentionProfiler} samples the server and prints the contention hotspots
+ * afterwards. The first scenario argument is the class of the scenario, the remaining arguments are passed on, e.g.
+ * <code>-WBscenarioArguments=com.schlimm.webappbenchmarker.command.clientscenarios.threading.ContentionScenario;com.schlimm.webappbenchmarker.command.threadingissues.ContentionSynchronized</code>.
+ *
+ * @author Niklas Schlimm
+ *
+ */
+public class ProfiledScenario extends Testscenario {
+
+	public ProfiledScenario(WBClient client) {
+		super(client);
+	}
+
+	@Override
+	public void execute(Object... args) {
+		try {
+			Testscenario scenario = (Testscenario) Class.forName((String) args[0]).getConstructor(new Class<?>[] { WBClient.class }).newInstance(client);
+			send(ClientCommand.interned(ContentionProfiler.class.getName(), "start", ContentionProfiler.DEFAULT_INTERVAL));
+			try {
+				scenario.execute(Arrays.copyOfRange(args, 1, args.length));
+			} finally {
+				Object[] response = send(ClientCommand.interned(ContentionProfiler.class.getName(), "stop"));
+				System.out.println(response == null ? "Contention profiler failed on the server" : response[0]);
+			}
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+	}
+
+	private Object[] send(ClientCommand command) throws Exception {
+		ApplicationLayerProtocol protocol = client.getProtocol();
+		SimpleRspHandler handler = new SimpleRspHandler(protocol);
+		client.send(protocol.toByteArray(command), handler);
+		handler.waitForResponse();
+		return handler.getResponse();
+	}
+
+}
@@ -0,0 +1,261 @@
+package com.schlimm.webappbenchmarker.command.clientscenarios;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.schlimm.webappbenchmarker.command.ClientCommand;
+import com.schlimm.webappbenchmarker.command.system.BenchmarkCommand;
+
+/**
+ * Declares a benchmark suite as a parameter matrix: benchmark classes times parameter axes. Every combination is a
+ * {@link Cell} that runs one {@link BenchmarkCommand}, the axis values are passed to the benchmark constructor in the
+ * order of the axes.
+ * <p>
+ * The matrix is written in one line, items separated by ';', values by ',', e.g.
+ * <code>package:com.schlimm.webappbenchmarker.command.cachebenchmark;classes:CacheSolution_CheckNull,CacheSolution_CheckMap;cacheSize:10,100000;initialize:false,true;testTime:500;runs:5;repeat:4</code>.
+ * The keys package, classes, testTime, runs, repeat, mode, threads, seed, csv and json are settings, every other key is
+ * an axis. Axis values that are numbers are passed as Integer, true and false as Boolean, all others as String. An item
+ * given twice replaces the first one.
+ *
+ * @author Niklas Schlimm
+ *
+ */
+public class ScenarioMatrix {
+
+	public enum Mode {
+
+		/**
+		 * Cells are sent to the server, one at a time or by several client threads.
+		 */
+		SERVER,
+
+		/**
+		 * Every cell runs in a JVM of its own on the client machine, nothing is shared between the cells.
+		 */
+		FORK;
+
+		public static Mode forName(String name) {
+			return valueOf(name.toUpperCase());
+		}
+	}
+
+	private String packageName = null;
+
+	private List<String> classes = new ArrayList<String>();
+
+	// Axis name to values, in declaration order
+	private Map<String, List<Object>> axes = new LinkedHashMap<String, List<Object>>();
+
+	private long testTime = 500;
+
+	private int runs = 5;
+
+	// Number of times every cell is run, the runs of all cells are shuffled
+	private int repeat = 4;
+
+	private Mode mode = Mode.SERVER;
+
+	// Cells run at the same time
+	private int threads = 1;
+
+	private long seed = System.nanoTime();
+
+	private String csv = null;
+
+	private String json = null;
+
+	public static ScenarioMatrix parse(String definition) {
+		ScenarioMatrix matrix = new ScenarioMatrix();
+		for (String item : definition.split(";")) {
+			item = item.trim();
+			if (item.isEmpty())
+				continue;
+			int colon = item.indexOf(':');
+			if (colon < 1)
+				throw new IllegalArgumentException("Matrix item is not key:values: " + item);
+			String key = item.substring(0, colon).trim();
+			String value = item.substring(colon + 1).trim();
+			if ("package".equals(key))
+				matrix.packageName = value;
+			else if ("classes".equals(key))
+				matrix.classes = Arrays.asList(value.split(","));
+			else if ("testTime".equals(key))
+				matrix.testTime = Long.parseLong(value);
+			else if ("runs".equals(key))
+				matrix.runs = Integer.parseInt(value);
+			else if ("repeat".equals(key))
+				matrix.repeat = Integer.parseInt(value);
+			else if ("mode".equals(key))
+				matrix.mode = Mode.forName(value);
+			else if ("threads".equals(key))
+				matrix.threads = Integer.parseInt(value);
+			else if ("seed".equals(key))
+				matrix.seed = Long.parseLong(value);
+			else if ("csv".equals(key))
+				matrix.csv = value;
+			else if ("json".equals(key))
+				matrix.json = value;
+			else
+				matrix.addAxis(key, parseValues(value));
+		}
+		if (matrix.classes.isEmpty())
+			throw new IllegalArgumentException("Matrix without classes: " + definition);
+		return matrix;
+	}
+
+	private static Object[] parseValues(String values) {
+		String[] tokens = values.split(",");
+		Object[] parsed = new Object[tokens.length];
+		for (int i = 0; i < tokens.length; i++) {
+			String token = tokens[i].trim();
+			if ("true".equals(token) || "false".equals(token)) {
+				parsed[i] = Boolean.valueOf(token);
+			} else {
+				try {
+					parsed[i] = Integer.valueOf(token);
+				} catch (NumberFormatException e) {
+					parsed[i] = token;
+				}
+			}
+		}
+		return parsed;
+	}
+
+	public void addAxis(String name, Object... values) {
+		if (values.length == 0)
+			throw new IllegalArgumentException("Axis without values: " + name);
+		axes.put(name, Arrays.asList(values));
+	}
+
+	/**
+	 * @return the cartesian product of classes and axes, the classes vary fastest, so the cells that compare the classes
+	 *         on the same parameters are next to each other
+	 */
+	public List<Cell> cells() {
+		List<Object[]> combinations = new ArrayList<Object[]>();
+		combinations.add(new Object[0]);
+		for (List<Object> values : axes.values()) {
+			List<Object[]> extended = new ArrayList<Object[]>();
+			for (Object[] combination : combinations) {
+				for (Object value : values) {
+					Object[] longer = Arrays.copyOf(combination, combination.length + 1);
+					longer[combination.length] = value;
+					extended.add(longer);
+				}
+			}
+			combinations = extended;
+		}
+		List<Cell> cells = new ArrayList<Cell>();
+		for (int group = 0; group < combinations.size(); group++) {
+			for (String className : classes) {
+				cells.add(new Cell(qualify(className), combinations.get(group), group));
+			}
+		}
+		return cells;
+	}
+
+	private String qualify(String className) {
+		return packageName == null || className.contains(".") ? className : packageName + "." + className;
+	}
+
+	public List<String> getAxisNames() {
+		return new ArrayList<String>(axes.keySet());
+	}
+
+	public long getTestTime() {
+		return testTime;
+	}
+
+	public int getRuns() {
+		return runs;
+	}
+
+	public int getRepeat() {
+		return repeat;
+	}
+
+	public Mode getMode() {
+		return mode;
+	}
+
+	public int getThreads() {
+		return threads;
+	}
+
+	public long getSeed() {
+		return seed;
+	}
+
+	public String getCsv() {
+		return csv;
+	}
+
+	public String getJson() {
+		return json;
+	}
+
+	@Override
+	public String toString() {
+		return "Scenario matrix - classes : " + classes + " - axes : " + axes + " - test time : " + testTime + " - runs : " + runs + " - repeat : " + repeat + " - mode : " + mode + " - threads : "
+				+ threads + " - seed : " + seed;
+	}
+
+	/**
+	 * One combination of benchmark class and parameters.
+	 */
+	public class Cell {
+
+		private String className;
+
+		private Object[] parameters;
+
+		// Cells with the same parameters share the group, their classes are compared with each other
+		private int group;
+
+		Cell(String className, Object[] parameters, int group) {
+			super();
+			this.className = className;
+			this.parameters = parameters;
+			this.group = group;
+		}
+
+		public ClientCommand toCommand() {
+			Object[] arguments = new Object[parameters.length + 3];
+			arguments[0] = className;
+			arguments[1] = testTime;
+			arguments[2] = runs;
+			System.arraycopy(parameters, 0, arguments, 3, parameters.length);
+			return ClientCommand.interned(BenchmarkCommand.class.getName(), arguments);
+		}
+
+		public String getClassName() {
+			return className;
+		}
+
+		public String getSimpleClassName() {
+			return className.substring(className.lastIndexOf('.') + 1);
+		}
+
+		public Object[] getParameters() {
+			return parameters;
+		}
+
+		public int getGroup() {
+			return group;
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder label = new StringBuilder(getSimpleClassName());
+			int i = 0;
+			for (String axis : axes.keySet()) {
+				label.append(' ').append(axis).append('=').append(parameters[i++]);
+			}
+			return label.toString();
+		}
+	}
+
+}
@@ -8,7 +8,6 @@ import com.schlimm.webappbenchmarker.client.SimpleRspHandler;
 import com.schlimm.webappbenchmarker.client.WBClient;
 import com.schlimm.webappbenchmarker.command.ClientCommand;
 import com.schlimm.webappbenchmarker.command.Testscenario;
-import com.schlimm.webappbenchmarker.protocol.StandardJavaSerialization;
 
 public class ContentionScenario extends Testscenario {
 
@@ -31,8 +30,8 @@ public class ContentionScenario extends Testscenario {
 				if (Thread.currentThread().isInterrupted()) {
 					break;
 				}
-				SimpleRspHandler rspHandler = new SimpleRspHandler();
-				client.send(new StandardJavaSerialization().toByteArray(command), rspHandler);
+				SimpleRspHandler rspHandler = new SimpleRspHandler(client.getProtocol());
+				client.send(client.getProtocol().toByteArray(command), rspHandler);
 				rspHandler.waitForResponse();
 			}
 			return new Long(0);
@@ -0,0 +1,264 @@
+package com.schlimm.webappbenchmarker.command.monitoring;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.schlimm.webappbenchmarker.command.ServerCommand;
+
+/**
+ * Samples lock contention in the server JVM with the {@link ThreadMXBean} while a scenario runs and returns a ranked
+ * {@link ContentionReport}. Every interval all threads are dumped with a short stack: a thread blocked on a monitor,
+ * or parked on a lock that another thread owns, is a contention sample for that lock, for the first stack frame
+ * outside the JDK (where it waits) and for the first such frame of the owner (where the lock is held). Threads waiting
+ * for work (parked on a condition nobody owns, or in Object.wait()) are not contention and are not counted. Thread
+ * contention monitoring is switched on while at least one sampler runs and restored when the last one finishes.
+ * <p>
+ * Arguments: the action, then its parameters.
+ * <ul>
+ * <li>start [interval ms] - starts sampling in the background</li>
+ * <li>stop - stops sampling and returns the report</li>
+ * <li>profile duration ms [interval ms] - samples for the duration on the calling thread and returns the report</li>
+ * </ul>
+ * The server caches one instance of the command, so start and stop find the same sampler.
+ *
+ * @author Niklas Schlimm
+ *
+ */
+public class ContentionProfiler implements ServerCommand {
+
+	public static final long DEFAULT_INTERVAL = 10;
+
+	private static final int STACK_DEPTH = 16;
+
+	private static final String UNKNOWN_LOCK = "(monitor not sampled)";
+
+	private static final String[] JDK_PACKAGES = new String[] { "java.", "javax.", "jdk.", "sun.", "com.sun." };
+
+	private static final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+
+	// Samplers running in this JVM and the contention monitoring setting before the first one started, guarded by the
+	// class
+	private static int monitoringUsers = 0;
+
+	private static boolean monitoringWasEnabled;
+
+	private Sampler background = null;
+
+	private Thread backgroundThread = null;
+
+	@Override
+	public Object[] execute(Object... arguments) {
+		String action = (String) arguments[0];
+		if ("start".equals(action)) {
+			start(arguments.length > 1 ? ((Number) arguments[1]).longValue() : DEFAULT_INTERVAL);
+			return new Object[] { "Contention profiler started" };
+		} else if ("stop".equals(action)) {
+			return new Object[] { stop() };
+		} else if ("profile".equals(action)) {
+			return new Object[] { profile(((Number) arguments[1]).longValue(), arguments.length > 2 ? ((Number) arguments[2]).longValue() : DEFAULT_INTERVAL) };
+		}
+		throw new IllegalArgumentException("Unknown action: " + action + ", expected start, stop or profile");
+	}
+
+	public synchronized void start(long intervalMillis) {
+		if (background != null)
+			throw new IllegalStateException("Contention profiler already running");
+		background = new Sampler(intervalMillis);
+		backgroundThread = new Thread(background, "Contention-Profiler");
+		backgroundThread.setDaemon(true);
+		backgroundThread.start();
+	}
+
+	public synchronized ContentionReport stop() {
+		if (background == null)
+			throw new IllegalStateException("Contention profiler not running");
+		backgroundThread.interrupt();
+		try {
+			backgroundThread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		ContentionReport report = background.finish();
+		background = null;
+		backgroundThread = null;
+		return report;
+	}
+
+	public ContentionReport profile(long durationMillis, long intervalMillis) {
+		Sampler sampler = new Sampler(intervalMillis);
+		ContentionReport report;
+		try {
+			sampler.run(System.currentTimeMillis() + durationMillis);
+		} finally {
+			// releases contention monitoring even if sampling failed
+			report = sampler.finish();
+		}
+		return report;
+	}
+
+	/**
+	 * @return the first frame outside the JDK, the top frame if all are JDK frames
+	 */
+	static String applicationFrame(StackTraceElement[] stack) {
+		if (stack == null || stack.length == 0)
+			return "(no stack)";
+		for (StackTraceElement frame : stack) {
+			if (!isJdk(frame.getClassName()))
+				return location(frame);
+		}
+		return location(stack[0]);
+	}
+
+	// Without the class loader and module prefix of StackTraceElement.toString()
+	private static String location(StackTraceElement frame) {
+		return frame.getClassName() + "." + frame.getMethodName() + "(" + frame.getFileName() + ":" + frame.getLineNumber() + ")";
+	}
+
+	private static boolean isJdk(String className) {
+		for (String prefix : JDK_PACKAGES) {
+			if (className.startsWith(prefix))
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * @return true if the thread is parked on a lock another thread owns, a thread in Object.wait() may report the
+	 *         monitor and its owner too, but it waits for a notification
+	 */
+	static boolean parkedOnOwnedLock(ThreadInfo info) {
+		if (info.getLockName() == null || info.getLockOwnerId() == -1)
+			return false;
+		StackTraceElement[] stack = info.getStackTrace();
+		return stack.length > 0 && "park".equals(stack[0].getMethodName()) && stack[0].getClassName().endsWith("Unsafe");
+	}
+
+	private static synchronized void acquireContentionMonitoring() {
+		if (!threadMXBean.isThreadContentionMonitoringSupported())
+			return;
+		if (monitoringUsers++ == 0) {
+			monitoringWasEnabled = threadMXBean.isThreadContentionMonitoringEnabled();
+			threadMXBean.setThreadContentionMonitoringEnabled(true);
+		}
+	}
+
+	private static synchronized void releaseContentionMonitoring() {
+		if (!threadMXBean.isThreadContentionMonitoringSupported())
+			return;
+		if (--monitoringUsers == 0)
+			threadMXBean.setThreadContentionMonitoringEnabled(monitoringWasEnabled);
+	}
+
+	private class Sampler implements Runnable {
+
+		private long intervalMillis;
+
+		private ContentionReport report;
+
+		private long begin = System.currentTimeMillis();
+
+		// Thread id to blocked count, blocked time, waited count, waited time of the previous sample
+		private Map<Long, long[]> previous = new HashMap<Long, long[]>();
+
+		// Thread id to the lock and location the thread was last seen blocked at
+		private Map<Long, String[]> lastBlocked = new HashMap<Long, String[]>();
+
+		public Sampler(long intervalMillis) {
+			super();
+			if (intervalMillis < 1)
+				throw new IllegalArgumentException("Sample interval must be positive: " + intervalMillis);
+			this.intervalMillis = intervalMillis;
+			this.report = new ContentionReport(intervalMillis);
+			acquireContentionMonitoring();
+		}
+
+		@Override
+		public void run() {
+			run(Long.MAX_VALUE);
+		}
+
+		void run(long deadline) {
+			while (!Thread.currentThread().isInterrupted() && System.currentTimeMillis() < deadline) {
+				sample();
+				try {
+					Thread.sleep(intervalMillis);
+				} catch (InterruptedException e) {
+					break;
+				}
+			}
+		}
+
+		private void sample() {
+			long self = Thread.currentThread().getId();
+			ThreadInfo[] infos = threadMXBean.getThreadInfo(threadMXBean.getAllThreadIds(), STACK_DEPTH);
+			Map<Long, ThreadInfo> byId = new HashMap<Long, ThreadInfo>();
+			for (ThreadInfo info : infos) {
+				if (info != null)
+					byId.put(info.getThreadId(), info);
+			}
+			for (ThreadInfo info : byId.values()) {
+				if (info.getThreadId() == self)
+					continue;
+				String[] waiting = null;
+				boolean parkedOnOwnedLock = false;
+				switch (info.getThreadState()) {
+				case BLOCKED:
+					waiting = waiting(info, byId);
+					lastBlocked.put(info.getThreadId(), waiting);
+					break;
+				case WAITING:
+				case TIMED_WAITING:
+					if (parkedOnOwnedLock(info)) {
+						waiting = waiting(info, byId);
+						parkedOnOwnedLock = true;
+					}
+					break;
+				default:
+					break;
+				}
+				counters(info, waiting, parkedOnOwnedLock);
+			}
+			report.sampled();
+		}
+
+		private String[] waiting(ThreadInfo info, Map<Long, ThreadInfo> byId) {
+			String location = applicationFrame(info.getStackTrace());
+			ThreadInfo owner = byId.get(info.getLockOwnerId());
+			report.contended(info.getLockName(), info.getThreadName(), location, info.getLockOwnerName(), owner == null ? null : applicationFrame(owner.getStackTrace()));
+			return new String[] { info.getLockName(), location };
+		}
+
+		/**
+		 * Blocked time can only be spent on monitors and is charged to the monitor the thread was last seen blocked
+		 * on. Waited time is charged only while the thread is parked on an owned lock, otherwise it waited for work.
+		 */
+		private void counters(ThreadInfo info, String[] waiting, boolean parkedOnOwnedLock) {
+			long[] current = new long[] { info.getBlockedCount(), info.getBlockedTime(), info.getWaitedCount(), info.getWaitedTime() };
+			long[] before = previous.put(info.getThreadId(), current);
+			if (before == null)
+				return;
+			long blockedCount = current[0] - before[0];
+			long blockedMillis = current[1] >= 0 ? current[1] - before[1] : 0;
+			if (blockedCount > 0 || blockedMillis > 0) {
+				String[] monitor = lastBlocked.get(info.getThreadId());
+				report.counters(monitor == null ? UNKNOWN_LOCK : monitor[0], monitor == null ? null : monitor[1], blockedCount, blockedMillis, 0, 0);
+			}
+			if (parkedOnOwnedLock) {
+				long waitedCount = current[2] - before[2];
+				long waitedMillis = current[3] >= 0 ? current[3] - before[3] : 0;
+				report.counters(waiting[0], waiting[1], 0, 0, waitedCount, waitedMillis);
+			}
+		}
+
+		ContentionReport finish() {
+			releaseContentionMonitoring();
+			report.setDurationMillis(System.currentTimeMillis() - begin);
+			return report;
+		}
+
+	}
+
+}
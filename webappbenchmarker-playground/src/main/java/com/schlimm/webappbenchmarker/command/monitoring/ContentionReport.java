@@ -0,0 +1,267 @@
+package com.schlimm.webappbenchmarker.command.monitoring;
+
+import java.io.Serializable;
+import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Contention sampled by the {@link ContentionProfiler}, aggregated per lock and per code location. A sample counts a
+ * thread that was blocked on a monitor or parked on a lock some other thread owned, so the number of samples of a lock
+ * times the sample interval estimates how long threads waited for it. Blocked and waited counts and times are the
+ * deltas of the {@link java.lang.management.ThreadMXBean} counters, charged to the lock the thread was last seen
+ * waiting for.
+ *
+ * @author Niklas Schlimm
+ *
+ */
+public class ContentionReport implements Serializable {
+
+	/**
+	 * Version
+	 */
+	private static final long serialVersionUID = 1L;
+
+	private static final int TOP = 10;
+
+	private long intervalMillis;
+
+	private long durationMillis;
+
+	private long sampleRounds = 0;
+
+	private Map<String, Hotspot> locks = new HashMap<String, Hotspot>();
+
+	private Map<String, Hotspot> locations = new HashMap<String, Hotspot>();
+
+	public ContentionReport(long intervalMillis) {
+		super();
+		this.intervalMillis = intervalMillis;
+	}
+
+	void sampled() {
+		sampleRounds++;
+	}
+
+	void contended(String lock, String thread, String waitingAt, String owner, String heldAt) {
+		hotspot(locks, lock).contended(thread, waitingAt, owner, heldAt);
+		hotspot(locations, waitingAt).contended(thread, lock, owner, heldAt);
+	}
+
+	void counters(String lock, String waitingAt, long blockedCount, long blockedMillis, long waitedCount, long waitedMillis) {
+		hotspot(locks, lock).counters(blockedCount, blockedMillis, waitedCount, waitedMillis);
+		if (waitingAt != null)
+			hotspot(locations, waitingAt).counters(blockedCount, blockedMillis, waitedCount, waitedMillis);
+	}
+
+	private static Hotspot hotspot(Map<String, Hotspot> hotspots, String name) {
+		Hotspot hotspot = hotspots.get(name);
+		if (hotspot == null) {
+			hotspot = new Hotspot(name);
+			hotspots.put(name, hotspot);
+		}
+		return hotspot;
+	}
+
+	void setDurationMillis(long durationMillis) {
+		this.durationMillis = durationMillis;
+	}
+
+	/**
+	 * @return the locks, most contended first
+	 */
+	public List<Hotspot> getLocks() {
+		return ranked(locks);
+	}
+
+	/**
+	 * @return the code locations threads waited at, most contended first
+	 */
+	public List<Hotspot> getLocations() {
+		return ranked(locations);
+	}
+
+	private static List<Hotspot> ranked(Map<String, Hotspot> hotspots) {
+		List<Hotspot> ranked = new ArrayList<Hotspot>(hotspots.values());
+		Collections.sort(ranked, new Comparator<Hotspot>() {
+			@Override
+			public int compare(Hotspot o1, Hotspot o2) {
+				if (o1.samples != o2.samples)
+					return o1.samples > o2.samples ? -1 : 1;
+				long time1 = o1.blockedMillis + o1.waitedMillis;
+				long time2 = o2.blockedMillis + o2.waitedMillis;
+				return time1 > time2 ? -1 : (time1 < time2 ? 1 : 0);
+			}
+		});
+		return ranked;
+	}
+
+	public long getIntervalMillis() {
+		return intervalMillis;
+	}
+
+	public long getDurationMillis() {
+		return durationMillis;
+	}
+
+	public long getSampleRounds() {
+		return sampleRounds;
+	}
+
+	@Override
+	public String toString() {
+		DecimalFormat df = new DecimalFormat("#.##");
+		StringBuilder report = new StringBuilder(String.format("Contention hotspots - %1$d samples every %2$d ms over %3$d ms%n", sampleRounds, intervalMillis, durationMillis));
+		String format = "%1$-5s %2$-60s %3$-8s %4$-12s %5$-8s %6$-11s %7$-8s %8$-11s %9$-8s%n";
+		report.append(String.format(format, "Rank", "Lock", "Samples", "Est. wait ms", "Blocked", "Blocked ms", "Waited", "Waited ms", "Threads"));
+		int rank = 1;
+		for (Hotspot hotspot : getLocks()) {
+			if (rank > TOP)
+				break;
+			report.append(String.format(format, rank++, hotspot.name, hotspot.samples, df.format(hotspot.samples * intervalMillis), hotspot.blockedCount, hotspot.blockedMillis,
+					hotspot.waitedCount, hotspot.waitedMillis, hotspot.threads.size()));
+			report.append("      waiting at : ").append(top(hotspot.related)).append(System.getProperty("line.separator"));
+			report.append("      held at    : ").append(top(hotspot.heldAt)).append(System.getProperty("line.separator"));
+			report.append("      owners     : ").append(top(hotspot.owners)).append(System.getProperty("line.separator"));
+		}
+		report.append(String.format("%nBy code location%n"));
+		format = "%1$-5s %2$-80s %3$-8s %4$-12s %5$-8s%n";
+		report.append(String.format(format, "Rank", "Waiting at", "Samples", "Est. wait ms", "Threads"));
+		rank = 1;
+		for (Hotspot hotspot : getLocations()) {
+			if (rank > TOP)
+				break;
+			report.append(String.format(format, rank++, hotspot.name, hotspot.samples, df.format(hotspot.samples * intervalMillis), hotspot.threads.size()));
+			report.append("      locks      : ").append(top(hotspot.related)).append(System.getProperty("line.separator"));
+		}
+		return report.toString();
+	}
+
+	private static String top(Map<String, Integer> counts) {
+		List<Map.Entry<String, Integer>> entries = new ArrayList<Map.Entry<String, Integer>>(counts.entrySet());
+		Collections.sort(entries, new Comparator<Map.Entry<String, Integer>>() {
+			@Override
+			public int compare(Map.Entry<String, Integer> o1, Map.Entry<String, Integer> o2) {
+				return o2.getValue().compareTo(o1.getValue());
+			}
+		});
+		StringBuilder top = new StringBuilder();
+		for (int i = 0; i < Math.min(3, entries.size()); i++) {
+			top.append(i == 0 ? "" : ", ").append(entries.get(i).getKey()).append(" (").append(entries.get(i).getValue()).append(')');
+		}
+		return top.length() == 0 ? "-" : top.toString();
+	}
+
+	/**
+	 * A lock or a code location with everything sampled for it.
+	 */
+	public static class Hotspot implements Serializable {
+
+		/**
+		 * Version
+		 */
+		private static final long serialVersionUID = 1L;
+
+		private String name;
+
+		private long samples = 0;
+
+		private long blockedCount = 0;
+
+		private long blockedMillis = 0;
+
+		private long waitedCount = 0;
+
+		private long waitedMillis = 0;
+
+		private Set<String> threads = new HashSet<String>();
+
+		// Code locations for a lock, locks for a code location
+		private Map<String, Integer> related = new HashMap<String, Integer>();
+
+		private Map<String, Integer> owners = new HashMap<String, Integer>();
+
+		private Map<String, Integer> heldAt = new HashMap<String, Integer>();
+
+		Hotspot(String name) {
+			super();
+			this.name = name;
+		}
+
+		void contended(String thread, String related, String owner, String heldAt) {
+			samples++;
+			threads.add(thread);
+			count(this.related, related);
+			if (owner != null)
+				count(owners, owner);
+			if (heldAt != null)
+				count(this.heldAt, heldAt);
+		}
+
+		void counters(long blockedCount, long blockedMillis, long waitedCount, long waitedMillis) {
+			this.blockedCount += blockedCount;
+			this.blockedMillis += blockedMillis;
+			this.waitedCount += waitedCount;
+			this.waitedMillis += waitedMillis;
+		}
+
+		private static void count(Map<String, Integer> counts, String key) {
+			Integer count = counts.get(key);
+			counts.put(key, count == null ? 1 : count + 1);
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public long getSamples() {
+			return samples;
+		}
+
+		public long getBlockedCount() {
+			return blockedCount;
+		}
+
+		public long getBlockedMillis() {
+			return blockedMillis;
+		}
+
+		public long getWaitedCount() {
+			return waitedCount;
+		}
+
+		public long getWaitedMillis() {
+			return waitedMillis;
+		}
+
+		public Set<String> getThreads() {
+			return threads;
+		}
+
+		/**
+		 * @return sample count per code location of a lock, per lock of a code location
+		 */
+		public Map<String, Integer> getRelated() {
+			return related;
+		}
+
+		public Map<String, Integer> getOwners() {
+			return owners;
+		}
+
+		/**
+		 * @return sample count per code location the owner was at while others waited
+		 */
+		public Map<String, Integer> getHeldAt() {
+			return heldAt;
+		}
+
+	}
+
+}
@@ -1,40 +1,150 @@
 package com.schlimm.webappbenchmarker.command.system;
 
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
 
+import com.schlimm.webappbenchmarker.command.ClientCommand;
 import com.schlimm.webappbenchmarker.command.ServerCommand;
 import com.schlimm.webappbenchmarker.statistic.PerformanceChecker;
 import com.schlimm.webappbenchmarker.statistic.PerformanceHarness;
 import com.schlimm.webappbenchmarker.statistic.Statistics;
 
+/**
+ * Runs a benchmark class through the {@link PerformanceHarness}. Arguments: benchmark class name, test time, number of
+ * runs, then the arguments of the benchmark constructor. Where the benchmark runs is configured server wide with
+ * {@link #configure(Isolation, int, long, String...)}.
+ *
+ * @author Niklas Schlimm
+ *
+ */
 public class BenchmarkCommand implements ServerCommand {
 
+	public enum Isolation {
+
+		/**
+		 * The benchmark runs in the server JVM and shares JIT profile, loaded classes and heap with the server and
+		 * with every benchmark before it.
+		 */
+		IN_PROCESS,
+
+		/**
+		 * Every benchmark runs in a JVM forked for it.
+		 */
+		FORK,
+
+		/**
+		 * Every benchmark runs in a JVM of its own that was started ahead of time by a {@link WorkerPool}.
+		 */
+		POOL;
+
+		public static Isolation forName(String name) {
+			return valueOf(name.toUpperCase());
+		}
+	}
+
+	private static volatile Isolation isolation = Isolation.IN_PROCESS;
+
+	private static volatile String[] workerJvmArguments = new String[0];
+
+	private static volatile long workerTimeout = WorkerJvm.DEFAULT_TIMEOUT;
+
+	private static WorkerPool workerPool = null;
+
+	// Benchmark class name and constructor argument types to constructor handle
+	private static final ConcurrentMap<List<Object>, MethodHandle> benchmarkFactories = new ConcurrentHashMap<List<Object>, MethodHandle>();
+
+	/**
+	 * @param poolSize
+	 *            workers kept started for {@link Isolation#POOL}
+	 * @param timeoutMillis
+	 *            time a benchmark may take in a forked JVM before the JVM is killed
+	 * @param jvmArguments
+	 *            arguments of the forked JVMs
+	 */
+	public static synchronized void configure(Isolation isolation, int poolSize, long timeoutMillis, String... jvmArguments) {
+		if (workerPool != null) {
+			workerPool.shutdown();
+			workerPool = null;
+		}
+		if (isolation == Isolation.POOL)
+			workerPool = new WorkerPool(poolSize, 1, timeoutMillis, jvmArguments);
+		BenchmarkCommand.workerJvmArguments = jvmArguments;
+		BenchmarkCommand.workerTimeout = timeoutMillis;
+		BenchmarkCommand.isolation = isolation;
+	}
+
+	private static synchronized WorkerPool getWorkerPool() {
+		return workerPool;
+	}
+
 	@Override
-	@SuppressWarnings({ "rawtypes", "unchecked" })
 	public Object[] execute(Object... arguments) {
+		if (isolation == Isolation.IN_PROCESS)
+			return executeInProcess(arguments);
+		// the worker runs this command in process
+		ClientCommand command = new ClientCommand(BenchmarkCommand.class.getName(), arguments);
+		try {
+			WorkerPool pool = getWorkerPool();
+			return pool != null ? pool.execute(command) : ForkedCommand.execute(command, workerTimeout, workerJvmArguments);
+		} catch (IOException e) {
+			throw new IllegalStateException("Worker JVM could not be started", e);
+		}
+	}
+
+	private Object[] executeInProcess(Object... arguments) {
 		String classname = (String) arguments[0];
 		long testtime = (Long) arguments[1];
 		int testruns = (Integer) arguments[2];
 		Object[] benchmarkConstructorArguments = Arrays.copyOfRange(arguments, 3, arguments.length);
-		List<Class> constructorArgumentTypeList = new ArrayList<Class>();
-		for (Object object : benchmarkConstructorArguments) {
-			constructorArgumentTypeList.add(object.getClass());
-		}
-		Class[] constrArgTypeArray = constructorArgumentTypeList.toArray(new Class[constructorArgumentTypeList.size()]);
-		Class benchmarkClass = null; Runnable benachmarkObject = null;
+		Runnable benchmarkObject;
 		try {
-			benchmarkClass = Class.forName(classname);
-			benachmarkObject = (Runnable) benchmarkClass.getConstructor(constrArgTypeArray).newInstance(benchmarkConstructorArguments);
-		} catch (Exception e) {
-			e.printStackTrace();
+			benchmarkObject = (Runnable) factoryFor(classname, benchmarkConstructorArguments).invokeExact(benchmarkConstructorArguments);
+		} catch (Throwable e) {
+			throw new IllegalArgumentException("Benchmark could not be created: " + classname, e);
 		}
 		PerformanceHarness harness = new PerformanceHarness();
 	    Statistics arrayClone = harness.calculatePerf(
 	            new PerformanceChecker(testtime,
-	                benachmarkObject), testruns);
+	                benchmarkObject), testruns);
 		return new Object[]{arrayClone};
 	}
 
+	/**
+	 * @return the cached constructor of the benchmark that takes the constructor arguments as Object[] and returns the
+	 *         benchmark as {@link Runnable}, the constructor is looked up on first use of the class and argument types
+	 */
+	static MethodHandle factoryFor(String classname, Object[] constructorArguments) {
+		List<Object> key = new ArrayList<Object>(constructorArguments.length + 1);
+		key.add(classname);
+		for (Object argument : constructorArguments) {
+			key.add(argument.getClass());
+		}
+		MethodHandle factory = benchmarkFactories.get(key);
+		return factory != null ? factory : benchmarkFactories.computeIfAbsent(key, BENCHMARK_FACTORY);
+	}
+
+	private static final Function<List<Object>, MethodHandle> BENCHMARK_FACTORY = new Function<List<Object>, MethodHandle>() {
+		@Override
+		public MethodHandle apply(List<Object> key) {
+			Class<?>[] argumentTypes = new Class<?>[key.size() - 1];
+			for (int i = 0; i < argumentTypes.length; i++) {
+				argumentTypes[i] = (Class<?>) key.get(i + 1);
+			}
+			try {
+				MethodHandle constructor = MethodHandles.publicLookup().findConstructor(Class.forName((String) key.get(0)), MethodType.methodType(void.class, argumentTypes));
+				return constructor.asType(MethodType.genericMethodType(argumentTypes.length).changeReturnType(Runnable.class)).asSpreader(Object[].class, argumentTypes.length);
+			} catch (Exception e) {
+				throw new IllegalArgumentException("No public constructor " + key, e);
+			}
+		}
+	};
+
 }
@@ -0,0 +1,149 @@
+package com.schlimm.webappbenchmarker.command.system;
+
+import java.nio.ByteBuffer;
+import java.text.DecimalFormat;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.schlimm.webappbenchmarker.command.ClientCommand;
+import com.schlimm.webappbenchmarker.command.ServerCommand;
+import com.schlimm.webappbenchmarker.command.trial.EchoCommand;
+import com.schlimm.webappbenchmarker.protocol.ApplicationLayerProtocol;
+import com.schlimm.webappbenchmarker.protocol.Protocols;
+import com.schlimm.webappbenchmarker.statistic.PerformanceChecker;
+import com.schlimm.webappbenchmarker.statistic.PerformanceHarness;
+import com.schlimm.webappbenchmarker.statistic.Statistics;
+
+/**
+ * Measures the dispatch overhead per request: finding the {@link ServerCommand} of a decoded {@link ClientCommand} and
+ * calling it. The command is the {@link EchoCommand}, so nearly all of the time is dispatch. Compared are reflection
+ * on every request, the former cache (containsKey and get, lock on a miss), the {@link ServerCommandHandler} by class
+ * name and by interned ID, and decoding plus dispatch of a compact binary request by class name and by ID.
+ *
+ * @author Niklas Schlimm
+ *
+ */
+public class DispatchBenchmark {
+
+	public static void main(String[] args) {
+		long testTime = 1000;
+		int runs = 5;
+		for (String arg : args) {
+			if (arg.startsWith("-WBtesttime="))
+				testTime = Long.parseLong(arg.split("=")[1]);
+			if (arg.startsWith("-WBruns="))
+				runs = Integer.parseInt(arg.split("=")[1]);
+		}
+		final ClientCommand byName = new ClientCommand(EchoCommand.class.getName(), "ping");
+		final ClientCommand byId = ClientCommand.interned(EchoCommand.class.getName(), "ping");
+		final ServerCommandHandler handler = new ServerCommandHandler();
+		final LockedCache lockedCache = new LockedCache();
+		ApplicationLayerProtocol protocol = Protocols.COMPACT_BINARY;
+
+		Runnable[] dispatchers = new Runnable[] { new Dispatch("Reflection per request") {
+			@Override
+			Object[] dispatch() throws Exception {
+				ServerCommand command = (ServerCommand) Class.forName(byName.getServerCommandClassName()).getConstructor(new Class<?>[] {}).newInstance();
+				return command.execute(byName.getArguments());
+			}
+		}, new Dispatch("Locked cache by name") {
+			@Override
+			Object[] dispatch() throws Exception {
+				return lockedCache.lookup(byName.getServerCommandClassName()).execute(byName.getArguments());
+			}
+		}, new Dispatch("Handler by name") {
+			@Override
+			Object[] dispatch() {
+				return handler.execute(byName);
+			}
+		}, new Dispatch("Handler by id") {
+			@Override
+			Object[] dispatch() {
+				return handler.execute(byId);
+			}
+		}, new Decode("Decode and dispatch by name", protocol, handler, byName), new Decode("Decode and dispatch by id", protocol, handler, byId) };
+
+		DecimalFormat df = new DecimalFormat("#.##");
+		PerformanceHarness harness = new PerformanceHarness();
+		StringBuilder report = new StringBuilder(String.format("%1$-35s %2$-15s %3$-15s %4$-12s%n", "Dispatch", "Ops/s", "+/- 95%", "ns/op"));
+		for (Runnable dispatcher : dispatchers) {
+			Statistics perf = harness.calculatePerf(new PerformanceChecker(testTime, dispatcher), runs);
+			report.append(String.format("%1$-35s %2$-15s %3$-15s %4$-12s%n", dispatcher, df.format(perf.opsPerSecond()), df.format(perf.opsPerSecondConfidenceInterval()), df.format(perf.nanosPerOperation())));
+		}
+		System.out.println(report);
+	}
+
+	private static abstract class Dispatch implements Runnable {
+
+		private String name;
+
+		public Dispatch(String name) {
+			super();
+			this.name = name;
+		}
+
+		abstract Object[] dispatch() throws Exception;
+
+		@Override
+		public void run() {
+			try {
+				if (dispatch() == null)
+					throw new IllegalStateException("Dispatch failed!");
+			} catch (Exception e) {
+				throw new IllegalStateException(e);
+			}
+		}
+
+		@Override
+		public String toString() {
+			return name;
+		}
+
+	}
+
+	private static class Decode extends Dispatch {
+
+		private ApplicationLayerProtocol protocol;
+		private ServerCommandHandler handler;
+		private byte[] request;
+
+		public Decode(String name, ApplicationLayerProtocol protocol, ServerCommandHandler handler, ClientCommand command) {
+			super(name);
+			this.protocol = protocol;
+			this.handler = handler;
+			this.request = protocol.toByteArray(command);
+		}
+
+		@Override
+		Object[] dispatch() {
+			return handler.execute(protocol.decode(ByteBuffer.wrap(request)));
+		}
+
+	}
+
+	/**
+	 * The command cache as it was before the {@link ServerCommandHandler} resolved commands with computeIfAbsent.
+	 */
+	private static class LockedCache {
+
+		private Map<String, ServerCommand> commandCache = new ConcurrentHashMap<String, ServerCommand>();
+		private Lock lock = new ReentrantLock();
+
+		public ServerCommand lookup(String serverCommandClassName) throws Exception {
+			if (commandCache.containsKey(serverCommandClassName))
+				return commandCache.get(serverCommandClassName);
+			lock.lock();
+			try {
+				if (!commandCache.containsKey(serverCommandClassName))
+					commandCache.put(serverCommandClassName, (ServerCommand) Class.forName(serverCommandClassName).getConstructor(new Class<?>[] {}).newInstance());
+				return commandCache.get(serverCommandClassName);
+			} finally {
+				lock.unlock();
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,41 @@
+package com.schlimm.webappbenchmarker.command.system;
+
+import java.io.IOException;
+
+import com.schlimm.webappbenchmarker.command.ClientCommand;
+
+/**
+ * Executes a {@link ClientCommand} in a fresh {@link WorkerJvm}, so that JIT profile, class loading and heap of one
+ * benchmark cannot influence another one. The worker is discarded afterwards.
+ *
+ * @author Niklas Schlimm
+ *
+ */
+public class ForkedCommand {
+
+	/**
+	 * @param jvmArguments
+	 *            arguments of the forked JVM, e.g. heap settings, the class path of this JVM is passed on
+	 * @return the result of the command
+	 */
+	public static Object[] execute(ClientCommand command, String... jvmArguments) throws IOException {
+		return execute(command, WorkerJvm.DEFAULT_TIMEOUT, jvmArguments);
+	}
+
+	/**
+	 * @param timeoutMillis
+	 *            time the command may take before the forked JVM is killed
+	 * @param jvmArguments
+	 *            arguments of the forked JVM, e.g. heap settings, the class path of this JVM is passed on
+	 * @return the result of the command
+	 */
+	public static Object[] execute(ClientCommand command, long timeoutMillis, String... jvmArguments) throws IOException {
+		WorkerJvm worker = new WorkerJvm(jvmArguments);
+		try {
+			return worker.execute(command, timeoutMillis);
+		} finally {
+			worker.close();
+		}
+	}
+
+}
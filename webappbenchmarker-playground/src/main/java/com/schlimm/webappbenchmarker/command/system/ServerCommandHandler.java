@@ -1,43 +1,98 @@
 package com.schlimm.webappbenchmarker.command.system;
 
-import java.util.Map;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Arrays;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
 
 import com.schlimm.webappbenchmarker.command.ClientCommand;
+import com.schlimm.webappbenchmarker.command.CommandRegistry;
 import com.schlimm.webappbenchmarker.command.ServerCommand;
 
+/**
+ * Dispatches a {@link ClientCommand} to its {@link ServerCommand}. Every server command is created once, through a
+ * constructor {@link MethodHandle}, and cached. Commands that carry an interned ID (see {@link CommandRegistry}) are
+ * found by array index, so the hot path does neither hash the class name nor reflect. Commands known by name only are
+ * found with one lock free read of a {@link ConcurrentHashMap}.
+ *
+ * @author Niklas Schlimm
+ *
+ */
 public class ServerCommandHandler implements ServerCommand {
 
-	private Map<String, ServerCommand> commandCache = new ConcurrentHashMap<String, ServerCommand>();
-	private Lock lock = new ReentrantLock();
+	private static final MethodType NO_ARGUMENT_FACTORY = MethodType.methodType(ServerCommand.class);
+
+	private ConcurrentMap<String, ServerCommand> commandCache = new ConcurrentHashMap<String, ServerCommand>();
+
+	// Index is the interned command ID, grown copy on write when a new ID shows up
+	private volatile ServerCommand[] commandsById = new ServerCommand[CommandRegistry.maxId() + 1];
+
+	private Function<String, ServerCommand> factory = new Function<String, ServerCommand>() {
+		@Override
+		public ServerCommand apply(String serverCommandClassName) {
+			return create(serverCommandClassName);
+		}
+	};
 
 	@Override
 	public Object[] execute(Object... arguments) {
 		ClientCommand clientCommand = (ClientCommand) arguments[0];
-		ServerCommand serverCommand = null;
-		if (commandCache.containsKey(clientCommand.getServerCommandClassName())) {
-			serverCommand = commandCache.get(clientCommand.getServerCommandClassName());
-		} else {
-			lock.lock();
-			try {
-				if (commandCache.containsKey(clientCommand.getServerCommandClassName())) {
-					serverCommand = commandCache.get(clientCommand.getServerCommandClassName());
-				} else {
-					serverCommand = (ServerCommand) Class.forName(clientCommand.getServerCommandClassName()).getConstructor(new Class[] {}).newInstance();
-					commandCache.put(clientCommand.getServerCommandClassName(), serverCommand);
-				}
-			} catch (ClassNotFoundException e) {
-				System.out.println("Could not find class: " + clientCommand.getServerCommandClassName());
-			} catch (Exception e) {
-				e.printStackTrace();
-			} finally {
-				lock.unlock();
-			}
+		ServerCommand serverCommand = lookup(clientCommand);
+		if (serverCommand == null)
+			throw new IllegalArgumentException("Unknown server command: " + clientCommand.getServerCommandClassName());
+		return serverCommand.execute(clientCommand.getArguments());
+	}
+
+	/**
+	 * @return the cached instance of the server command, by ID if the command carries one, null if it cannot be
+	 *         created. The ID comes from the client, it is only used if it is registered for the command's class name.
+	 */
+	public ServerCommand lookup(ClientCommand clientCommand) {
+		int id = clientCommand.getCommandId();
+		if (id <= CommandRegistry.NO_ID || id > CommandRegistry.maxId() || !CommandRegistry.nameOf(id).equals(clientCommand.getServerCommandClassName()))
+			return lookup(clientCommand.getServerCommandClassName());
+		ServerCommand[] commands = commandsById;
+		ServerCommand serverCommand = id < commands.length ? commands[id] : null;
+		return serverCommand != null ? serverCommand : lookupById(id, clientCommand.getServerCommandClassName());
+	}
+
+	/**
+	 * @return the cached instance of the server command, created on first use, null if it cannot be created
+	 */
+	public ServerCommand lookup(String serverCommandClassName) {
+		// get first, computeIfAbsent may lock the bin even if the command is cached
+		ServerCommand serverCommand = commandCache.get(serverCommandClassName);
+		return serverCommand != null ? serverCommand : commandCache.computeIfAbsent(serverCommandClassName, factory);
+	}
+
+	private synchronized ServerCommand lookupById(int id, String serverCommandClassName) {
+		ServerCommand serverCommand = lookup(serverCommandClassName);
+		if (serverCommand != null) {
+			ServerCommand[] commands = commandsById;
+			if (id >= commands.length)
+				commands = Arrays.copyOf(commands, Math.max(id + 1, CommandRegistry.maxId() + 1));
+			else
+				commands = commands.clone();
+			commands[id] = serverCommand;
+			commandsById = commands;
+		}
+		return serverCommand;
+	}
+
+	private static ServerCommand create(String serverCommandClassName) {
+		try {
+			Class<? extends ServerCommand> commandClass = Class.forName(serverCommandClassName).asSubclass(ServerCommand.class);
+			MethodHandle constructor = MethodHandles.publicLookup().findConstructor(commandClass, MethodType.methodType(void.class)).asType(NO_ARGUMENT_FACTORY);
+			return (ServerCommand) constructor.invokeExact();
+		} catch (ClassNotFoundException e) {
+			System.out.println("Could not find class: " + serverCommandClassName);
+		} catch (Throwable e) {
+			e.printStackTrace();
 		}
-		Object[] result = serverCommand.execute(clientCommand.getArguments());
-		return result;
+		return null;
 	}
 
 }
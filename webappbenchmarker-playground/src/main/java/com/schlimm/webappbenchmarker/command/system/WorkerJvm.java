@@ -0,0 +1,222 @@
+package com.schlimm.webappbenchmarker.command.system;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import com.schlimm.webappbenchmarker.command.ClientCommand;
+
+/**
+ * A forked JVM that executes {@link ClientCommand}s. Commands and results are streamed as serialized objects over the
+ * standard input and output pipes of the worker, so the worker can execute one command after the other without being
+ * restarted. Anything the commands print goes to the standard error of the worker, which is passed through to the
+ * standard error of this JVM. A worker that does not answer within the timeout of a command is killed.
+ *
+ * @author Niklas Schlimm
+ *
+ */
+public class WorkerJvm {
+
+	// Milliseconds a command may take unless the caller gives a timeout
+	public static final long DEFAULT_TIMEOUT = TimeUnit.MINUTES.toMillis(10);
+
+	// Kills the workers whose command timed out, shared by all workers
+	private static final ScheduledThreadPoolExecutor watchdog = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "Worker-JVM-Watchdog");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	static {
+		watchdog.setRemoveOnCancelPolicy(true);
+	}
+
+	private Process process;
+
+	private ObjectOutputStream commands;
+
+	private ObjectInputStream results;
+
+	private int executed = 0;
+
+	private volatile boolean timedOut = false;
+
+	private volatile boolean closed = false;
+
+	/**
+	 * Forks the worker and waits until it is ready to take commands.
+	 *
+	 * @param jvmArguments
+	 *            arguments of the forked JVM, e.g. heap or JIT settings, the class path of this JVM is passed on
+	 */
+	public WorkerJvm(String... jvmArguments) throws IOException {
+		List<String> processCommand = new ArrayList<String>();
+		processCommand.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+		processCommand.addAll(Arrays.asList(jvmArguments));
+		processCommand.add("-cp");
+		processCommand.add(System.getProperty("java.class.path"));
+		processCommand.add(WorkerJvm.class.getName());
+		this.process = new ProcessBuilder(processCommand).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+		try {
+			this.commands = new ObjectOutputStream(new BufferedOutputStream(process.getOutputStream()));
+			this.commands.flush();
+			// blocks until the worker has started up and written its stream header
+			this.results = new ObjectInputStream(new BufferedInputStream(process.getInputStream()));
+		} catch (IOException e) {
+			process.destroy();
+			throw e;
+		} catch (RuntimeException e) {
+			process.destroy();
+			throw e;
+		}
+	}
+
+	/**
+	 * Executes the command in the worker and waits for the result, at most {@link #DEFAULT_TIMEOUT} ms.
+	 *
+	 * @throws IllegalStateException
+	 *             if the command failed in the worker, the worker died or timed out
+	 */
+	public Object[] execute(ClientCommand command) {
+		return execute(command, DEFAULT_TIMEOUT);
+	}
+
+	/**
+	 * Executes the command in the worker and waits for the result. If the result is not there within the timeout the
+	 * worker is killed, it cannot execute further commands.
+	 *
+	 * @throws IllegalStateException
+	 *             if the command failed in the worker, the worker died or timed out
+	 */
+	public synchronized Object[] execute(ClientCommand command, long timeoutMillis) {
+		Object reply;
+		// killing the process ends the blocked read below
+		ScheduledFuture<?> timeout = watchdog.schedule(new Runnable() {
+			@Override
+			public void run() {
+				timedOut = true;
+				process.destroyForcibly();
+			}
+		}, timeoutMillis, TimeUnit.MILLISECONDS);
+		try {
+			commands.writeObject(command);
+			commands.flush();
+			commands.reset();
+			reply = results.readObject();
+		} catch (Exception e) {
+			close();
+			if (timedOut)
+				throw new IllegalStateException("Worker JVM killed, " + command.getServerCommandClassName() + " took longer than " + timeoutMillis + " ms", e);
+			throw new IllegalStateException("Worker JVM lost while executing " + command.getServerCommandClassName(), e);
+		} finally {
+			timeout.cancel(false);
+		}
+		executed++;
+		if (reply instanceof Throwable)
+			throw new IllegalStateException("Command " + command.getServerCommandClassName() + " failed in worker JVM", (Throwable) reply);
+		return (Object[]) reply;
+	}
+
+	public synchronized int getExecuted() {
+		return executed;
+	}
+
+	/**
+	 * @return false once the worker was closed, killed or exited
+	 */
+	public boolean isAlive() {
+		if (closed || timedOut)
+			return false;
+		try {
+			process.exitValue();
+			return false;
+		} catch (IllegalThreadStateException e) {
+			return true;
+		}
+	}
+
+	/**
+	 * Closes the pipe, the worker exits when it reads the end of its input.
+	 */
+	public void close() {
+		closed = true;
+		try {
+			commands.close();
+		} catch (IOException e) {
+			// worker is gone already
+		}
+		try {
+			results.close();
+		} catch (IOException e) {
+			// worker is gone already
+		}
+		process.destroy();
+	}
+
+	/**
+	 * Entry point of the worker JVM. Standard output becomes the result pipe, so everything printed is redirected to
+	 * standard error.
+	 */
+	public static void main(String[] args) throws Exception {
+		ObjectOutputStream results = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out)));
+		results.flush();
+		System.setOut(System.err);
+		ObjectInputStream commands = new ObjectInputStream(new BufferedInputStream(System.in));
+		ServerCommandHandler handler = new ServerCommandHandler();
+		while (true) {
+			Object command;
+			try {
+				command = commands.readObject();
+			} catch (EOFException e) {
+				break;
+			}
+			Object reply;
+			try {
+				reply = handler.execute(command);
+				if (reply == null)
+					reply = new IllegalStateException("Command returned no result: " + ((ClientCommand) command).getServerCommandClassName());
+			} catch (Throwable t) {
+				reply = t;
+			}
+			results.writeObject(serializable(reply));
+			results.flush();
+			results.reset();
+		}
+		System.exit(0);
+	}
+
+	/**
+	 * A reply that cannot be serialized would break the result pipe half way through, it is replaced by an exception
+	 * that carries its class name, message and stack trace.
+	 */
+	private static Object serializable(Object reply) {
+		try {
+			new ObjectOutputStream(new ByteArrayOutputStream()).writeObject(reply);
+			return reply;
+		} catch (IOException e) {
+			String description = reply instanceof Throwable ? reply.toString() : "Result of type " + reply.getClass().getName();
+			IllegalStateException replacement = new IllegalStateException(description + " (not serializable: " + e + ")");
+			if (reply instanceof Throwable)
+				replacement.setStackTrace(((Throwable) reply).getStackTrace());
+			return replacement;
+		}
+	}
+
+}
@@ -0,0 +1,212 @@
+package com.schlimm.webappbenchmarker.command.system;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.schlimm.webappbenchmarker.command.ClientCommand;
+
+/**
+ * Keeps {@link WorkerJvm}s started ahead of time, so a command does not wait for JVM startup. A worker executes at most
+ * maxUses commands, with one use (the default) every command still gets a JVM nobody has used before, the pool only
+ * hides the startup time. The pool never holds more than size workers, idle, busy or starting. Whenever a worker is
+ * retired a replacement is started in the background, a command that finds all workers busy waits for one. A worker
+ * whose command times out is killed and replaced. If a worker cannot be started in the background, the next command
+ * that waits for a worker gets the exception.
+ *
+ * @author Niklas Schlimm
+ *
+ */
+public class WorkerPool {
+
+	private BlockingQueue<WorkerJvm> idle = new LinkedBlockingQueue<WorkerJvm>();
+
+	// Workers idle, busy or being started
+	private AtomicInteger live = new AtomicInteger(0);
+
+	private int size;
+
+	private int maxUses;
+
+	private long timeoutMillis;
+
+	private String[] jvmArguments;
+
+	// Why the last worker started in the background failed to start, cleared by the next successful start
+	private AtomicReference<IOException> startFailure = new AtomicReference<IOException>();
+
+	private ExecutorService starter = Executors.newSingleThreadExecutor(new ThreadFactory() {
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "Worker-JVM-Starter");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	private volatile boolean shutdown = false;
+
+	/**
+	 * @param size
+	 *            number of workers kept started
+	 * @param maxUses
+	 *            number of commands a worker executes before it is replaced
+	 */
+	public WorkerPool(int size, int maxUses, String... jvmArguments) {
+		this(size, maxUses, WorkerJvm.DEFAULT_TIMEOUT, jvmArguments);
+	}
+
+	/**
+	 * @param size
+	 *            number of workers kept started
+	 * @param maxUses
+	 *            number of commands a worker executes before it is replaced
+	 * @param timeoutMillis
+	 *            time a command may take before its worker is killed
+	 */
+	public WorkerPool(int size, int maxUses, long timeoutMillis, String... jvmArguments) {
+		super();
+		if (size < 1 || maxUses < 1 || timeoutMillis < 1)
+			throw new IllegalArgumentException("Pool size, uses and timeout must be positive: " + size + "/" + maxUses + "/" + timeoutMillis);
+		this.size = size;
+		this.maxUses = maxUses;
+		this.timeoutMillis = timeoutMillis;
+		this.jvmArguments = jvmArguments;
+		for (int i = 0; i < size; i++) {
+			startWorker();
+		}
+	}
+
+	public Object[] execute(ClientCommand command) throws IOException {
+		WorkerJvm worker = take();
+		try {
+			return worker.execute(command, timeoutMillis);
+		} finally {
+			if (!shutdown && worker.isAlive() && worker.getExecuted() < maxUses) {
+				idle.offer(worker);
+				if (shutdown && idle.remove(worker))
+					retire(worker);
+			} else {
+				retire(worker);
+			}
+		}
+	}
+
+	/**
+	 * Takes an idle worker, starts one in this thread if the pool has room left, or waits for a worker to become idle.
+	 */
+	private WorkerJvm take() throws IOException {
+		while (true) {
+			if (shutdown)
+				throw new IllegalStateException("Worker pool shut down!");
+			WorkerJvm worker = idle.poll();
+			if (worker == null && reserve()) {
+				try {
+					return new WorkerJvm(jvmArguments);
+				} catch (IOException e) {
+					live.decrementAndGet();
+					throw e;
+				}
+			}
+			if (worker == null) {
+				IOException failure = startFailure.getAndSet(null);
+				if (failure != null)
+					throw new IOException("Worker JVM could not be started", failure);
+				try {
+					// time out now and then, a worker that fails to start never shows up
+					worker = idle.poll(100, TimeUnit.MILLISECONDS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException("Interrupted while waiting for a worker JVM");
+				}
+			}
+			if (worker != null) {
+				if (worker.isAlive())
+					return worker;
+				// died while waiting
+				retire(worker);
+			}
+		}
+	}
+
+	/**
+	 * @return true if the pool has room for another worker, which is then counted as live
+	 */
+	private boolean reserve() {
+		while (true) {
+			int current = live.get();
+			if (current >= size)
+				return false;
+			if (live.compareAndSet(current, current + 1))
+				return true;
+		}
+	}
+
+	private void retire(WorkerJvm worker) {
+		worker.close();
+		live.decrementAndGet();
+		startWorker();
+	}
+
+	private void startWorker() {
+		if (shutdown || !reserve())
+			return;
+		try {
+			starter.submit(new Runnable() {
+				@Override
+				public void run() {
+					if (shutdown) {
+						live.decrementAndGet();
+						return;
+					}
+					try {
+						WorkerJvm worker = new WorkerJvm(jvmArguments);
+						startFailure.set(null);
+						idle.offer(worker);
+						if (shutdown && idle.remove(worker)) {
+							worker.close();
+							live.decrementAndGet();
+						}
+					} catch (IOException e) {
+						// handed to the next command that waits for a worker
+						startFailure.set(e);
+						live.decrementAndGet();
+					}
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			// shut down meanwhile
+			live.decrementAndGet();
+		}
+	}
+
+	public int getIdle() {
+		return idle.size();
+	}
+
+	/**
+	 * @return number of workers idle, busy or being started, never more than the size of the pool
+	 */
+	public int getLive() {
+		return live.get();
+	}
+
+	public void shutdown() {
+		shutdown = true;
+		starter.shutdown();
+		WorkerJvm worker;
+		while ((worker = idle.poll()) != null) {
+			worker.close();
+			live.decrementAndGet();
+		}
+	}
+
+}
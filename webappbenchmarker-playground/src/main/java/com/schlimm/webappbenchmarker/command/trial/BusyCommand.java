@@ -0,0 +1,21 @@
+package com.schlimm.webappbenchmarker.command.trial;
+
+import com.schlimm.webappbenchmarker.command.ServerCommand;
+
+/**
+ * Keeps the CPU busy for the given number of microseconds (first argument, default 100).
+ */
+public class BusyCommand implements ServerCommand {
+
+	@Override
+	public Object[] execute(Object... arguments) {
+		long micros = arguments.length > 0 ? ((Number) arguments[0]).longValue() : 100;
+		long deadline = System.nanoTime() + micros * 1000;
+		long iterations = 0;
+		while (System.nanoTime() < deadline) {
+			iterations++;
+		}
+		return new Object[]{iterations};
+	}
+
+}
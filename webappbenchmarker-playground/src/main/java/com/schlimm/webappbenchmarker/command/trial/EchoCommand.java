@@ -0,0 +1,12 @@
+package com.schlimm.webappbenchmarker.command.trial;
+
+import com.schlimm.webappbenchmarker.command.ServerCommand;
+
+public class EchoCommand implements ServerCommand {
+
+	@Override
+	public Object[] execute(Object... arguments) {
+		return arguments;
+	}
+
+}
@@ -1,13 +1,19 @@
 package com.schlimm.webappbenchmarker.command.trial;
 
+import com.schlimm.webappbenchmarker.command.CommandExecutor;
+import com.schlimm.webappbenchmarker.command.ExecuteOn;
 import com.schlimm.webappbenchmarker.command.ServerCommand;
 
+/**
+ * Sleeps for the given number of milliseconds (first argument, default 1000).
+ */
+@ExecuteOn(CommandExecutor.VIRTUAL_THREAD)
 public class SleepCommand implements ServerCommand {
 
 	@Override
 	public Object[] execute(Object... arguments) {
 		try {
-			Thread.sleep(1000);
+			Thread.sleep(arguments.length > 0 ? ((Number) arguments[0]).longValue() : 1000);
 		} catch (InterruptedException e) {
 			e.printStackTrace();
 		}
@@ -1,8 +1,30 @@
 package com.schlimm.webappbenchmarker.protocol;
 
+import java.nio.ByteBuffer;
+
 public interface ApplicationLayerProtocol {
 	
 	byte[] toByteArray(Object object);
 	Object fromByteArray(byte[] data);
 
+	/**
+	 * Encodes the object into a buffer that the protocol may reuse for the calling thread. The returned buffer is ready
+	 * to be read and only valid until the next call to encode from the same thread.
+	 */
+	ByteBuffer encode(Object object);
+
+	/**
+	 * Decodes an object in place from the remaining bytes of the buffer.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if the data names a command or type the protocol does not know, the server answers such a request
+	 *             with an error frame
+	 */
+	Object decode(ByteBuffer data);
+
+	/**
+	 * @return the id a client announces when it negotiates this protocol for a connection
+	 */
+	byte getId();
+
 }
@@ -0,0 +1,39 @@
+package com.schlimm.webappbenchmarker.protocol;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * {@link InputStream} that reads the remaining bytes of a {@link ByteBuffer} without copying them first.
+ */
+public class ByteBufferInputStream extends InputStream {
+
+	private ByteBuffer buffer;
+
+	public ByteBufferInputStream(ByteBuffer buffer) {
+		super();
+		this.buffer = buffer;
+	}
+
+	@Override
+	public int read() {
+		return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) {
+		if (len == 0)
+			return 0;
+		if (!buffer.hasRemaining())
+			return -1;
+		len = Math.min(len, buffer.remaining());
+		buffer.get(b, off, len);
+		return len;
+	}
+
+	@Override
+	public int available() {
+		return buffer.remaining();
+	}
+
+}
@@ -0,0 +1,299 @@
+package com.schlimm.webappbenchmarker.protocol;
+
+import java.io.Serializable;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+import com.schlimm.webappbenchmarker.command.ClientCommand;
+import com.schlimm.webappbenchmarker.command.CommandRegistry;
+import com.schlimm.webappbenchmarker.statistic.Histogram;
+import com.schlimm.webappbenchmarker.statistic.Statistics;
+
+/**
+ * Compact binary encoding for the objects that travel between client and server. Every value starts with a one byte
+ * type tag followed by a fixed layout for that type: no class descriptors, no stream headers, no back references.
+ * {@link ClientCommand}, {@link Statistics}, strings, boxed primitives, primitive arrays and object arrays are encoded
+ * natively, any other {@link Serializable} falls back to Java serialization. A {@link ClientCommand} with an interned ID
+ * is written with the ID instead of the class name, see {@link CommandRegistry}. Encoding goes into a buffer that is reused
+ * per thread, decoding reads in place from the given buffer.
+ *
+ * @author Niklas Schlimm
+ *
+ */
+public class CompactBinaryProtocol implements ApplicationLayerProtocol {
+
+	public static final byte ID = 1;
+
+	private static final byte NULL = 0;
+	private static final byte STRING = 1;
+	private static final byte INTEGER = 2;
+	private static final byte LONG = 3;
+	private static final byte DOUBLE = 4;
+	private static final byte BOOLEAN = 5;
+	private static final byte FLOAT = 6;
+	private static final byte SHORT = 7;
+	private static final byte BYTE = 8;
+	private static final byte CHARACTER = 9;
+	private static final byte INT_ARRAY = 10;
+	private static final byte LONG_ARRAY = 11;
+	private static final byte DOUBLE_ARRAY = 12;
+	private static final byte BYTE_ARRAY = 13;
+	private static final byte OBJECT_ARRAY = 14;
+	private static final byte CLIENT_COMMAND = 15;
+	private static final byte STATISTICS = 16;
+	private static final byte SERIALIZABLE = 17;
+	private static final byte CLIENT_COMMAND_ID = 18;
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private static final int INITIAL_BUFFER_SIZE = 8192;
+
+	private ThreadLocal<ByteBuffer> buffers = new ThreadLocal<ByteBuffer>() {
+		@Override
+		protected ByteBuffer initialValue() {
+			return ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+		}
+	};
+
+	private StandardJavaSerialization fallback = new StandardJavaSerialization();
+
+	@Override
+	public byte[] toByteArray(Object object) {
+		ByteBuffer buffer = encode(object);
+		byte[] data = new byte[buffer.remaining()];
+		buffer.get(data);
+		return data;
+	}
+
+	@Override
+	public Object fromByteArray(byte[] data) {
+		return decode(ByteBuffer.wrap(data));
+	}
+
+	@Override
+	public ByteBuffer encode(Object object) {
+		ByteBuffer buffer = buffers.get();
+		while (true) {
+			buffer.clear();
+			try {
+				write(object, buffer);
+				buffer.flip();
+				return buffer;
+			} catch (BufferOverflowException e) {
+				// grow the thread's buffer and start over
+				buffer = ByteBuffer.allocate(buffer.capacity() * 2);
+				buffers.set(buffer);
+			}
+		}
+	}
+
+	@Override
+	public Object decode(ByteBuffer data) {
+		return read(data);
+	}
+
+	@Override
+	public byte getId() {
+		return ID;
+	}
+
+	private void write(Object object, ByteBuffer out) {
+		if (object == null) {
+			out.put(NULL);
+		} else if (object instanceof String) {
+			out.put(STRING);
+			writeString((String) object, out);
+		} else if (object instanceof Integer) {
+			out.put(INTEGER).putInt((Integer) object);
+		} else if (object instanceof Long) {
+			out.put(LONG).putLong((Long) object);
+		} else if (object instanceof Double) {
+			out.put(DOUBLE).putDouble((Double) object);
+		} else if (object instanceof Boolean) {
+			out.put(BOOLEAN).put((byte) ((Boolean) object ? 1 : 0));
+		} else if (object instanceof Float) {
+			out.put(FLOAT).putFloat((Float) object);
+		} else if (object instanceof Short) {
+			out.put(SHORT).putShort((Short) object);
+		} else if (object instanceof Byte) {
+			out.put(BYTE).put((Byte) object);
+		} else if (object instanceof Character) {
+			out.put(CHARACTER).putChar((Character) object);
+		} else if (object instanceof int[]) {
+			int[] array = (int[]) object;
+			out.put(INT_ARRAY).putInt(array.length);
+			for (int value : array) {
+				out.putInt(value);
+			}
+		} else if (object instanceof long[]) {
+			long[] array = (long[]) object;
+			out.put(LONG_ARRAY).putInt(array.length);
+			for (long value : array) {
+				out.putLong(value);
+			}
+		} else if (object instanceof double[]) {
+			out.put(DOUBLE_ARRAY);
+			writeDoubles((double[]) object, out);
+		} else if (object instanceof byte[]) {
+			byte[] array = (byte[]) object;
+			out.put(BYTE_ARRAY).putInt(array.length).put(array);
+		} else if (object.getClass() == Object[].class) {
+			Object[] array = (Object[]) object;
+			out.put(OBJECT_ARRAY).putInt(array.length);
+			for (Object element : array) {
+				write(element, out);
+			}
+		} else if (object.getClass() == ClientCommand.class) {
+			ClientCommand command = (ClientCommand) object;
+			if (command.getCommandId() != CommandRegistry.NO_ID) {
+				out.put(CLIENT_COMMAND_ID).putInt(command.getCommandId());
+			} else {
+				out.put(CLIENT_COMMAND);
+				writeString(command.getServerCommandClassName(), out);
+			}
+			write(command.getArguments(), out);
+		} else if (object.getClass() == Statistics.class) {
+			Statistics statistics = (Statistics) object;
+			out.put(STATISTICS);
+			statistics.getHistogram().encode(out);
+			out.putLong(statistics.getJitTimeBeforeHarness());
+			out.putLong(statistics.getJitTimeAfterHarness());
+			out.putLong(statistics.getClassesLoadedBeforeHarness());
+			out.putLong(statistics.getClassesLoadedAfterHarness());
+			out.putLong(statistics.getTestTime());
+		} else if (object instanceof Serializable) {
+			byte[] serialized = fallback.toByteArray(object);
+			out.put(SERIALIZABLE).putInt(serialized.length).put(serialized);
+		} else {
+			throw new IllegalArgumentException("Cannot encode: " + object.getClass());
+		}
+	}
+
+	private Object read(ByteBuffer in) {
+		byte tag = in.get();
+		switch (tag) {
+		case NULL:
+			return null;
+		case STRING:
+			return readString(in);
+		case INTEGER:
+			return in.getInt();
+		case LONG:
+			return in.getLong();
+		case DOUBLE:
+			return in.getDouble();
+		case BOOLEAN:
+			return in.get() != 0;
+		case FLOAT:
+			return in.getFloat();
+		case SHORT:
+			return in.getShort();
+		case BYTE:
+			return in.get();
+		case CHARACTER:
+			return in.getChar();
+		case INT_ARRAY: {
+			int[] array = new int[readLength(in, 4)];
+			for (int i = 0; i < array.length; i++) {
+				array[i] = in.getInt();
+			}
+			return array;
+		}
+		case LONG_ARRAY: {
+			long[] array = new long[readLength(in, 8)];
+			for (int i = 0; i < array.length; i++) {
+				array[i] = in.getLong();
+			}
+			return array;
+		}
+		case DOUBLE_ARRAY:
+			return readDoubles(in);
+		case BYTE_ARRAY: {
+			byte[] array = new byte[readLength(in, 1)];
+			in.get(array);
+			return array;
+		}
+		case OBJECT_ARRAY: {
+			// every element takes at least its tag
+			Object[] array = new Object[readLength(in, 1)];
+			for (int i = 0; i < array.length; i++) {
+				array[i] = read(in);
+			}
+			return array;
+		}
+		case CLIENT_COMMAND: {
+			String serverCommandClassName = readString(in);
+			return new ClientCommand(serverCommandClassName, (Object[]) read(in));
+		}
+		case CLIENT_COMMAND_ID: {
+			int commandId = in.getInt();
+			return new ClientCommand(commandId, (Object[]) read(in));
+		}
+		case STATISTICS: {
+			Statistics statistics = new Statistics(Histogram.decode(in));
+			statistics.setJitTimeBeforeHarness(in.getLong());
+			statistics.setJitTimeAfterHarness(in.getLong());
+			statistics.setClassesLoadedBeforeHarness(in.getLong());
+			statistics.setClassesLoadedAfterHarness(in.getLong());
+			statistics.setTestTime(in.getLong());
+			return statistics;
+		}
+		case SERIALIZABLE: {
+			int length = readLength(in, 1);
+			ByteBuffer serialized = in.slice();
+			serialized.limit(length);
+			in.position(in.position() + length);
+			return fallback.decode(serialized);
+		}
+		default:
+			throw new IllegalArgumentException("Unknown type tag: " + tag);
+		}
+	}
+
+	private static void writeString(String value, ByteBuffer out) {
+		byte[] bytes = value.getBytes(UTF8);
+		out.putInt(bytes.length).put(bytes);
+	}
+
+	/**
+	 * Reads a length off the wire and checks it against the bytes left before anything is allocated for it, a corrupt
+	 * or forged length must not be able to exhaust the heap.
+	 */
+	private static int readLength(ByteBuffer in, int elementSize) {
+		int length = in.getInt();
+		if (length < 0 || (long) length * elementSize > in.remaining())
+			throw new IllegalArgumentException("Invalid length: " + length + ", " + in.remaining() + " bytes left");
+		return length;
+	}
+
+	private static String readString(ByteBuffer in) {
+		int length = readLength(in, 1);
+		String value;
+		if (in.hasArray()) {
+			value = new String(in.array(), in.arrayOffset() + in.position(), length, UTF8);
+		} else {
+			byte[] bytes = new byte[length];
+			in.duplicate().get(bytes);
+			value = new String(bytes, UTF8);
+		}
+		in.position(in.position() + length);
+		return value;
+	}
+
+	private static void writeDoubles(double[] array, ByteBuffer out) {
+		out.putInt(array.length);
+		for (double value : array) {
+			out.putDouble(value);
+		}
+	}
+
+	private static double[] readDoubles(ByteBuffer in) {
+		double[] array = new double[readLength(in, 8)];
+		for (int i = 0; i < array.length; i++) {
+			array[i] = in.getDouble();
+		}
+		return array;
+	}
+
+}
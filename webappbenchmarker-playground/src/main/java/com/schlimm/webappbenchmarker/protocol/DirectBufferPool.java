@@ -0,0 +1,74 @@
+package com.schlimm.webappbenchmarker.protocol;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Pool of direct {@link ByteBuffer}s in power of two size classes, starting at {@link #MIN_CAPACITY}. Direct buffers
+ * are expensive to allocate and are only reclaimed by the garbage collector, so connections borrow them here and give
+ * them back on close.
+ *
+ * @author Niklas Schlimm
+ *
+ */
+public class DirectBufferPool {
+
+	private static final int MIN_CAPACITY_SHIFT = 13;
+
+	/**
+	 * Capacity of the smallest size class.
+	 */
+	public static final int MIN_CAPACITY = 1 << MIN_CAPACITY_SHIFT;
+
+	private List<BlockingQueue<ByteBuffer>> sizeClasses;
+
+	/**
+	 * @param maxCapacity
+	 *            capacity of the largest buffer that gets pooled, larger buffers are allocated on demand and dropped on
+	 *            release
+	 * @param maxPooledPerSizeClass
+	 *            number of idle buffers kept per size class
+	 */
+	public DirectBufferPool(int maxCapacity, int maxPooledPerSizeClass) {
+		int count = sizeClass(maxCapacity) + 1;
+		this.sizeClasses = new ArrayList<BlockingQueue<ByteBuffer>>(count);
+		for (int i = 0; i < count; i++) {
+			sizeClasses.add(new ArrayBlockingQueue<ByteBuffer>(maxPooledPerSizeClass));
+		}
+	}
+
+	/**
+	 * Borrows a cleared buffer.
+	 *
+	 * @param minCapacity
+	 *            the capacity the caller needs at least
+	 * @return a buffer with a capacity of the next power of two size class
+	 */
+	public ByteBuffer acquire(int minCapacity) {
+		int sizeClass = sizeClass(minCapacity);
+		ByteBuffer buffer = sizeClass < sizeClasses.size() ? sizeClasses.get(sizeClass).poll() : null;
+		if (buffer == null) {
+			buffer = ByteBuffer.allocateDirect(MIN_CAPACITY << sizeClass);
+		}
+		buffer.clear();
+		return buffer;
+	}
+
+	/**
+	 * Returns a buffer to the pool. The caller must not touch the buffer afterwards.
+	 */
+	public void release(ByteBuffer buffer) {
+		int sizeClass = sizeClass(buffer.capacity());
+		if (sizeClass < sizeClasses.size() && (MIN_CAPACITY << sizeClass) == buffer.capacity()) {
+			sizeClasses.get(sizeClass).offer(buffer);
+		}
+	}
+
+	private static int sizeClass(int capacity) {
+		return 32 - Integer.numberOfLeadingZeros((capacity - 1) >> MIN_CAPACITY_SHIFT);
+	}
+
+}
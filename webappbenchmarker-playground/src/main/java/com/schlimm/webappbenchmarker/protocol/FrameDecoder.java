@@ -0,0 +1,214 @@
+package com.schlimm.webappbenchmarker.protocol;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Reassembles length prefixed frames (see {@link FrameEncoder}) from a non-blocking channel. Every connection owns one
+ * decoder. Reads are accumulated in a pooled direct buffer until one or more complete frames are available, so a frame
+ * may arrive in any number of TCP segments and many frames may be pipelined in a single read. Frames are either copied
+ * out with {@link #nextFrame()} or handed out in place with {@link #nextSlice()}, the accumulation buffer is a
+ * {@link PooledSlab} that stays alive until the last slice is released.
+ *
+ * @author Niklas Schlimm
+ *
+ */
+public class FrameDecoder {
+
+	/**
+	 * Length of the frame header: the payload length and the request id, both as int, and the frame type.
+	 */
+	public static final int HEADER_LENGTH = 9;
+
+	/**
+	 * Frame type of requests and responses.
+	 */
+	public static final byte TYPE_DATA = 0;
+
+	/**
+	 * Frame type a client sends first on a new connection. The one byte payload is the id of the
+	 * {@link ApplicationLayerProtocol} the connection is going to use.
+	 */
+	public static final byte TYPE_HELLO = 1;
+
+	/**
+	 * Frame type the server answers a request with when it rejects it. The one byte payload is the code of the
+	 * {@link OverloadReason}.
+	 */
+	public static final byte TYPE_OVERLOADED = 2;
+
+	/**
+	 * Frame type the server answers a request with when it could not be decoded or executed. The payload is the UTF-8
+	 * encoded error message.
+	 */
+	public static final byte TYPE_ERROR = 3;
+
+	/**
+	 * Frames with a larger payload are considered corrupt.
+	 */
+	public static final int MAX_FRAME_LENGTH = 16 * 1024 * 1024;
+
+	private DirectBufferPool pool;
+
+	// Owns the accumulation buffer, slices handed out by nextSlice() hold further references
+	private PooledSlab slab;
+
+	// Accumulation buffer, always in write mode
+	private ByteBuffer buffer;
+
+	// Start of the first byte not yet consumed by nextFrame()
+	private int readIndex = 0;
+
+	// Request id of the frame last returned by nextFrame()
+	private int requestId;
+
+	// Type of the frame last returned by nextFrame()
+	private byte frameType;
+
+	// Slab of the slice last returned by nextSlice()
+	private PooledSlab frameSlab;
+
+	public FrameDecoder(DirectBufferPool pool) {
+		super();
+		this.pool = pool;
+		this.slab = new PooledSlab(pool, DirectBufferPool.MIN_CAPACITY);
+		this.buffer = slab.buffer();
+	}
+
+	/**
+	 * Reads whatever the channel has available into the accumulation buffer.
+	 *
+	 * @return the number of bytes read, -1 if the channel has reached end-of-stream
+	 */
+	public int read(ReadableByteChannel channel) throws IOException {
+		if (readIndex > 0) {
+			if (!slab.isShared()) {
+				// discard consumed frames
+				buffer.limit(buffer.position());
+				buffer.position(readIndex);
+				buffer.compact();
+				readIndex = 0;
+			} else if (!buffer.hasRemaining()) {
+				// slices of consumed frames are still in use, move the unconsumed bytes to a fresh slab
+				replaceSlab(buffer.capacity());
+			}
+		}
+		if (!buffer.hasRemaining()) {
+			ensureCapacity(buffer.capacity() * 2);
+		}
+		return channel.read(buffer);
+	}
+
+	/**
+	 * Extracts the next complete frame from the accumulated data.
+	 *
+	 * @return the payload of the next frame, or null if no complete frame is available yet. The request id of the
+	 *         frame is available from {@link #getRequestId()}, its type from {@link #getFrameType()}
+	 * @throws IOException
+	 *             if the frame header announces an illegal length
+	 */
+	public byte[] nextFrame() throws IOException {
+		int length = nextFrameLength();
+		if (length < 0) {
+			return null;
+		}
+		byte[] frame = new byte[length];
+		int position = buffer.position();
+		buffer.position(readIndex + HEADER_LENGTH);
+		buffer.get(frame);
+		buffer.position(position);
+		readIndex += HEADER_LENGTH + length;
+		return frame;
+	}
+
+	/**
+	 * Extracts the next complete frame without copying it. The returned slice shares the accumulation buffer, the caller
+	 * owns a reference to the slab returned by {@link #getSlab()} and has to release it when done with the slice.
+	 *
+	 * @return the payload of the next frame, or null if no complete frame is available yet
+	 * @throws IOException
+	 *             if the frame header announces an illegal length
+	 */
+	public ByteBuffer nextSlice() throws IOException {
+		int length = nextFrameLength();
+		if (length < 0) {
+			return null;
+		}
+		ByteBuffer slice = slab.slice(readIndex + HEADER_LENGTH, length);
+		frameSlab = slab;
+		readIndex += HEADER_LENGTH + length;
+		return slice;
+	}
+
+	/**
+	 * @return the slab backing the slice last returned by {@link #nextSlice()}
+	 */
+	public PooledSlab getSlab() {
+		return frameSlab;
+	}
+
+	/**
+	 * @return the request id of the frame last returned by {@link #nextFrame()}
+	 */
+	public int getRequestId() {
+		return requestId;
+	}
+
+	/**
+	 * @return the type of the frame last returned by {@link #nextFrame()}
+	 */
+	public byte getFrameType() {
+		return frameType;
+	}
+
+	/**
+	 * Gives the accumulation buffer back to the pool. Called when the connection is closed.
+	 */
+	public void release() {
+		if (slab != null) {
+			slab.release();
+			slab = null;
+			buffer = null;
+		}
+	}
+
+	// Parses the header of the next frame, returns the payload length or -1 if the frame is not complete yet
+	private int nextFrameLength() throws IOException {
+		int available = buffer.position() - readIndex;
+		if (available < HEADER_LENGTH) {
+			return -1;
+		}
+		int length = buffer.getInt(readIndex);
+		if (length < 0 || length > MAX_FRAME_LENGTH) {
+			throw new IOException("Illegal frame length: " + length);
+		}
+		if (available < HEADER_LENGTH + length) {
+			// make room for the rest of the frame so the next reads can complete it
+			ensureCapacity(HEADER_LENGTH + length);
+			return -1;
+		}
+		requestId = buffer.getInt(readIndex + 4);
+		frameType = buffer.get(readIndex + 8);
+		return length;
+	}
+
+	private void ensureCapacity(int frameLength) {
+		if (readIndex + frameLength <= buffer.capacity()) {
+			return;
+		}
+		replaceSlab(frameLength);
+	}
+
+	private void replaceSlab(int minCapacity) {
+		PooledSlab fresh = new PooledSlab(pool, minCapacity);
+		buffer.flip();
+		buffer.position(readIndex);
+		fresh.buffer().put(buffer);
+		slab.release();
+		slab = fresh;
+		buffer = fresh.buffer();
+		readIndex = 0;
+	}
+
+}
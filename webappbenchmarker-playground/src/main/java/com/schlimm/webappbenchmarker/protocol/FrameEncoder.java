@@ -0,0 +1,47 @@
+package com.schlimm.webappbenchmarker.protocol;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Writes the frame format read by {@link FrameDecoder}: a four byte payload length, a four byte request id, the one
+ * byte frame type and the payload. The request id correlates a response with its request, so many requests can be in flight on one connection
+ * and their responses may come back in any order.
+ *
+ * @author Niklas Schlimm
+ *
+ */
+public class FrameEncoder {
+
+	/**
+	 * Wraps the payload into a frame.
+	 *
+	 * @param requestId
+	 *            the id of the request, a response carries the id of its request
+	 * @param frameType
+	 *            one of the frame types defined in {@link FrameDecoder}
+	 * @param payload
+	 *            the serialized command or result
+	 * @return the frame, ready to be written to a channel
+	 */
+	public static ByteBuffer encode(int requestId, byte frameType, byte[] payload) {
+		return encode(requestId, frameType, ByteBuffer.wrap(payload));
+	}
+
+	/**
+	 * Wraps the remaining bytes of the payload buffer into a frame. The payload is copied, so the caller may reuse the
+	 * payload buffer as soon as this method returns.
+	 */
+	public static ByteBuffer encode(int requestId, byte frameType, ByteBuffer payload) {
+		int length = payload.remaining();
+		if (length > FrameDecoder.MAX_FRAME_LENGTH)
+			throw new IllegalArgumentException("Frame too large: " + length);
+		ByteBuffer frame = ByteBuffer.allocate(FrameDecoder.HEADER_LENGTH + length);
+		frame.putInt(length);
+		frame.putInt(requestId);
+		frame.put(frameType);
+		frame.put(payload);
+		frame.flip();
+		return frame;
+	}
+
+}
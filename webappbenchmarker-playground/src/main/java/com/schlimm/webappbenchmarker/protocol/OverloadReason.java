@@ -0,0 +1,48 @@
+package com.schlimm.webappbenchmarker.protocol;
+
+/**
+ * Why the server rejected a request, sent as the payload of a {@link FrameDecoder#TYPE_OVERLOADED} frame.
+ *
+ * @author Niklas Schlimm
+ *
+ */
+public enum OverloadReason {
+
+	/**
+	 * The server serves the maximum number of connections, the connection is closed after the frame.
+	 */
+	CONNECTIONS,
+
+	/**
+	 * The connection has the maximum number of requests in flight.
+	 */
+	IN_FLIGHT,
+
+	/**
+	 * The server has the maximum number of requests in flight across all connections.
+	 */
+	QUEUE_DEPTH,
+
+	/**
+	 * The client address exceeded its request rate.
+	 */
+	RATE_LIMIT,
+
+	/**
+	 * A code this side does not know, or a frame without a code. The server never sends it.
+	 */
+	UNKNOWN;
+
+	public byte getCode() {
+		return (byte) ordinal();
+	}
+
+	/**
+	 * @return the reason with the code, {@link #UNKNOWN} if there is none
+	 */
+	public static OverloadReason forCode(byte code) {
+		OverloadReason[] reasons = values();
+		return code >= 0 && code < reasons.length ? reasons[code] : UNKNOWN;
+	}
+
+}
@@ -0,0 +1,74 @@
+package com.schlimm.webappbenchmarker.protocol;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reference counted direct buffer borrowed from a {@link DirectBufferPool}. A {@link FrameDecoder} accumulates its
+ * reads in a slab and hands out slices of it, every slice holds a reference. The buffer goes back to the pool when the
+ * last reference is released, so frames can be decoded in place by other threads while the decoder keeps reading.
+ *
+ * @author Niklas Schlimm
+ *
+ */
+public class PooledSlab {
+
+	private DirectBufferPool pool;
+
+	private ByteBuffer buffer;
+
+	private AtomicInteger refCount = new AtomicInteger(1);
+
+	/**
+	 * Borrows a buffer from the pool, the caller holds the first reference.
+	 */
+	public PooledSlab(DirectBufferPool pool, int minCapacity) {
+		super();
+		this.pool = pool;
+		this.buffer = pool.acquire(minCapacity);
+	}
+
+	/**
+	 * @return the underlying buffer, only to be written by the owner of the slab
+	 */
+	public ByteBuffer buffer() {
+		return buffer;
+	}
+
+	/**
+	 * Creates a view of a region of the slab and takes a reference for it.
+	 *
+	 * @return a buffer positioned on the region, independent of the position and limit of the slab
+	 */
+	public ByteBuffer slice(int offset, int length) {
+		retain();
+		ByteBuffer slice = buffer.duplicate();
+		slice.limit(offset + length);
+		slice.position(offset);
+		return slice;
+	}
+
+	public void retain() {
+		refCount.incrementAndGet();
+	}
+
+	/**
+	 * Gives up one reference. The caller must not touch the slab or its slices afterwards.
+	 */
+	public void release() {
+		int count = refCount.decrementAndGet();
+		if (count == 0) {
+			pool.release(buffer);
+		} else if (count < 0) {
+			throw new IllegalStateException("Slab released too often!");
+		}
+	}
+
+	/**
+	 * @return true if slices of the slab are still in use, so regions that were handed out must not be overwritten
+	 */
+	public boolean isShared() {
+		return refCount.get() > 1;
+	}
+
+}
@@ -0,0 +1,77 @@
+package com.schlimm.webappbenchmarker.protocol;
+
+import java.nio.ByteBuffer;
+import java.text.DecimalFormat;
+
+import com.schlimm.webappbenchmarker.command.ClientCommand;
+import com.schlimm.webappbenchmarker.statistic.PerformanceChecker;
+import com.schlimm.webappbenchmarker.statistic.PerformanceHarness;
+import com.schlimm.webappbenchmarker.statistic.Statistics;
+
+/**
+ * Compares the {@link ApplicationLayerProtocol}s on the messages of the hot path: a {@link ClientCommand} request as
+ * decoded by the work processor and a {@link Statistics} result as encoded by the result sender. Every message is
+ * encoded and decoded again, the table shows the round trips per second with their 95% confidence interval, the time
+ * per round trip and the encoded size.
+ *
+ * @author Niklas Schlimm
+ *
+ */
+public class ProtocolBenchmark {
+
+	public static void main(String[] args) {
+		long testTime = 1000;
+		int runs = 5;
+		for (String arg : args) {
+			if (arg.startsWith("-WBtesttime="))
+				testTime = Long.parseLong(arg.split("=")[1]);
+			if (arg.startsWith("-WBruns="))
+				runs = Integer.parseInt(arg.split("=")[1]);
+		}
+		Statistics statistics = new Statistics();
+		for (int i = 0; i < 10; i++) {
+			statistics.add(1000 + i);
+		}
+		Object command = new ClientCommand("com.schlimm.webappbenchmarker.command.system.BenchmarkCommand", "com.schlimm.webappbenchmarker.command.cachebenchmark.CacheSolution_CheckNull", 500L, 5, 10, false);
+		Object result = new Object[] { statistics };
+
+		ApplicationLayerProtocol[] protocols = new ApplicationLayerProtocol[] { Protocols.JAVA_SERIALIZATION, Protocols.COMPACT_BINARY };
+		DecimalFormat df = new DecimalFormat("#.##");
+		PerformanceHarness harness = new PerformanceHarness();
+		StringBuilder report = new StringBuilder(String.format("%1$-40s %2$-15s %3$-15s %4$-12s %5$-10s%n", "Protocol / message", "Ops/s", "+/- 95%", "ns/op", "Bytes"));
+		for (ApplicationLayerProtocol protocol : protocols) {
+			for (Object message : new Object[] { command, result }) {
+				Statistics perf = harness.calculatePerf(new PerformanceChecker(testTime, new RoundTrip(protocol, message)), runs);
+				String name = protocol.getClass().getSimpleName() + " / " + (message == command ? "command" : "result");
+				report.append(String.format("%1$-40s %2$-15s %3$-15s %4$-12s %5$-10s%n", name, df.format(perf.opsPerSecond()), df.format(perf.opsPerSecondConfidenceInterval()), df.format(perf.nanosPerOperation()), protocol.encode(message).remaining()));
+			}
+		}
+		System.out.println(report);
+	}
+
+	private static class RoundTrip implements Runnable {
+
+		private ApplicationLayerProtocol protocol;
+		private Object message;
+
+		public RoundTrip(ApplicationLayerProtocol protocol, Object message) {
+			super();
+			this.protocol = protocol;
+			this.message = message;
+		}
+
+		@Override
+		public void run() {
+			ByteBuffer encoded = protocol.encode(message);
+			if (protocol.decode(encoded) == null)
+				throw new IllegalStateException("Round trip failed!");
+		}
+
+		@Override
+		public String toString() {
+			return protocol.getClass().getSimpleName() + " round trip of " + message.getClass().getSimpleName();
+		}
+
+	}
+
+}
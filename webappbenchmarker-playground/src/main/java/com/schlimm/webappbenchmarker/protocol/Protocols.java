@@ -0,0 +1,40 @@
+package com.schlimm.webappbenchmarker.protocol;
+
+/**
+ * Registry of the {@link ApplicationLayerProtocol}s a connection can negotiate. Protocol instances are thread safe and
+ * shared by all connections.
+ */
+public class Protocols {
+
+	public static final ApplicationLayerProtocol JAVA_SERIALIZATION = new StandardJavaSerialization();
+
+	public static final ApplicationLayerProtocol COMPACT_BINARY = new CompactBinaryProtocol();
+
+	/**
+	 * @param id
+	 *            the id announced by a client, see {@link ApplicationLayerProtocol#getId()}
+	 */
+	public static ApplicationLayerProtocol forId(byte id) {
+		switch (id) {
+		case StandardJavaSerialization.ID:
+			return JAVA_SERIALIZATION;
+		case CompactBinaryProtocol.ID:
+			return COMPACT_BINARY;
+		default:
+			throw new IllegalArgumentException("Unknown protocol id: " + id);
+		}
+	}
+
+	/**
+	 * @param name
+	 *            "java" or "compact", e.g. from a -WBprotocol= command line argument
+	 */
+	public static ApplicationLayerProtocol forName(String name) {
+		if ("java".equals(name))
+			return JAVA_SERIALIZATION;
+		if ("compact".equals(name))
+			return COMPACT_BINARY;
+		throw new IllegalArgumentException("Unknown protocol: " + name);
+	}
+
+}
@@ -3,11 +3,15 @@ package com.schlimm.webappbenchmarker.protocol;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
 
 public class StandardJavaSerialization implements ApplicationLayerProtocol {
 
+	public static final byte ID = 0;
+
 	@Override
 	public byte[] toByteArray(Object object) {
 	    ByteArrayOutputStream bos = new ByteArrayOutputStream() ;
@@ -23,9 +27,28 @@ public class StandardJavaSerialization implements ApplicationLayerProtocol {
 
 	@Override
 	public Object fromByteArray(byte[] data) {
+		return readObject(new ByteArrayInputStream(data));
+	}
+
+	@Override
+	public ByteBuffer encode(Object object) {
+		return ByteBuffer.wrap(toByteArray(object));
+	}
+
+	@Override
+	public Object decode(ByteBuffer data) {
+		return readObject(new ByteBufferInputStream(data));
+	}
+
+	@Override
+	public byte getId() {
+		return ID;
+	}
+
+	private Object readObject(InputStream in) {
 		Object object = null;
 		try {
-			object = new ObjectInputStream(new ByteArrayInputStream(data)).readObject();
+			object = new ObjectInputStream(in).readObject();
 		} catch (IOException e) {
 			e.printStackTrace();
 		} catch (ClassNotFoundException e) {
@@ -0,0 +1,215 @@
+package com.schlimm.webappbenchmarker.server;
+
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import com.schlimm.webappbenchmarker.protocol.FrameDecoder;
+import com.schlimm.webappbenchmarker.protocol.OverloadReason;
+
+/**
+ * Limits the load a {@link NioServer} accepts: the number of connections, the requests in flight per connection and
+ * across all connections, and the request rate per client address (token bucket). A request that exceeds a limit is
+ * answered with a {@link FrameDecoder#TYPE_OVERLOADED} frame right away instead of being queued. The counters of
+ * rejected requests are exposed through the {@link AdmissionControlMBean}.
+ *
+ * @author Niklas Schlimm
+ *
+ */
+public class AdmissionControl implements AdmissionControlMBean {
+
+	private int maxConnections;
+
+	private int maxInFlightPerConnection;
+
+	private int maxQueueDepth;
+
+	// Requests per second per client address, 0 disables rate limiting
+	private double rateLimit;
+
+	private double burst;
+
+	private AtomicInteger connections = new AtomicInteger(0);
+
+	// Requests admitted and not answered yet, across all connections
+	private AtomicInteger inFlight = new AtomicInteger(0);
+
+	private AtomicLong[] rejected = new AtomicLong[OverloadReason.values().length];
+
+	private ConcurrentMap<InetAddress, TokenBucket> buckets = new ConcurrentHashMap<InetAddress, TokenBucket>();
+
+	private ObjectName objectName;
+
+	/**
+	 * Generous limits that only stop runaway clients, no rate limit.
+	 */
+	public AdmissionControl() {
+		this(10000, 1024, 8192, 0, 0);
+	}
+
+	/**
+	 * @param rateLimit
+	 *            requests per second per client address, 0 for no rate limit
+	 * @param burst
+	 *            number of requests a client address may send at once before the rate limit applies
+	 */
+	public AdmissionControl(int maxConnections, int maxInFlightPerConnection, int maxQueueDepth, double rateLimit, double burst) {
+		super();
+		this.maxConnections = maxConnections;
+		this.maxInFlightPerConnection = maxInFlightPerConnection;
+		this.maxQueueDepth = maxQueueDepth;
+		this.rateLimit = rateLimit;
+		this.burst = Math.max(1, burst);
+		for (int i = 0; i < rejected.length; i++) {
+			rejected[i] = new AtomicLong(0);
+		}
+	}
+
+	/**
+	 * Registers the counters with the platform MBean server.
+	 *
+	 * @param name
+	 *            distinguishes several servers in one JVM, for instance the port
+	 */
+	public void register(String name) {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			objectName = new ObjectName("com.schlimm.webappbenchmarker:type=AdmissionControl,name=" + name);
+			if (!server.isRegistered(objectName))
+				server.registerMBean(this, objectName);
+		} catch (JMException e) {
+			e.printStackTrace();
+		}
+	}
+
+	public void unregister() {
+		try {
+			if (objectName != null && ManagementFactory.getPlatformMBeanServer().isRegistered(objectName))
+				ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+		} catch (JMException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Called by the acceptor for every new connection.
+	 *
+	 * @return false if the server already serves the maximum number of connections
+	 */
+	public boolean acceptConnection() {
+		if (connections.incrementAndGet() > maxConnections) {
+			connections.decrementAndGet();
+			rejected[OverloadReason.CONNECTIONS.ordinal()].incrementAndGet();
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @return the rate limiter shared by all connections of the address, null if rate limiting is disabled
+	 */
+	TokenBucket connected(InetAddress address) {
+		if (rateLimit <= 0 || address == null)
+			return null;
+		TokenBucket bucket = buckets.get(address);
+		if (bucket == null) {
+			TokenBucket fresh = new TokenBucket(rateLimit, burst);
+			bucket = buckets.putIfAbsent(address, fresh);
+			if (bucket == null)
+				bucket = fresh;
+		}
+		bucket.connected();
+		return bucket;
+	}
+
+	void disconnected(Connection connection) {
+		connections.decrementAndGet();
+		// the responses to its requests will not be sent any more
+		inFlight.addAndGet(-connection.releaseAllRequests());
+		TokenBucket bucket = connection.getRateLimiter();
+		if (bucket != null && bucket.disconnected()) {
+			buckets.remove(connection.getAddress(), bucket);
+		}
+	}
+
+	/**
+	 * Decides whether a request read from the connection is executed.
+	 *
+	 * @return null if the request is admitted, the reason of the rejection otherwise
+	 */
+	OverloadReason admit(Connection connection) {
+		// the token is taken last, a request rejected for another reason must not use up the rate of its address
+		OverloadReason reason = null;
+		TokenBucket bucket = connection.getRateLimiter();
+		if (connection.getRequestsInFlight() >= maxInFlightPerConnection) {
+			reason = OverloadReason.IN_FLIGHT;
+		} else if (inFlight.incrementAndGet() > maxQueueDepth) {
+			inFlight.decrementAndGet();
+			reason = OverloadReason.QUEUE_DEPTH;
+		} else if (bucket != null && !bucket.tryAcquire()) {
+			inFlight.decrementAndGet();
+			reason = OverloadReason.RATE_LIMIT;
+		}
+		if (reason != null) {
+			rejected[reason.ordinal()].incrementAndGet();
+			return reason;
+		}
+		connection.requestAdmitted();
+		return null;
+	}
+
+	/**
+	 * Called when the response to an admitted request is queued for writing or the request failed.
+	 */
+	void completed(Connection connection) {
+		if (connection.requestCompleted()) {
+			inFlight.decrementAndGet();
+		}
+	}
+
+	public int getMaxInFlightPerConnection() {
+		return maxInFlightPerConnection;
+	}
+
+	public long getRejected(OverloadReason reason) {
+		return rejected[reason.ordinal()].get();
+	}
+
+	@Override
+	public int getConnections() {
+		return connections.get();
+	}
+
+	@Override
+	public int getInFlight() {
+		return inFlight.get();
+	}
+
+	@Override
+	public long getRejectedConnections() {
+		return getRejected(OverloadReason.CONNECTIONS);
+	}
+
+	@Override
+	public long getRejectedInFlight() {
+		return getRejected(OverloadReason.IN_FLIGHT);
+	}
+
+	@Override
+	public long getRejectedQueueDepth() {
+		return getRejected(OverloadReason.QUEUE_DEPTH);
+	}
+
+	@Override
+	public long getRejectedRateLimit() {
+		return getRejected(OverloadReason.RATE_LIMIT);
+	}
+
+}
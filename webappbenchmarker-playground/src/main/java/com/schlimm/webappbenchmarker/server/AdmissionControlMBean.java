@@ -0,0 +1,23 @@
+package com.schlimm.webappbenchmarker.server;
+
+/**
+ * Management interface of the {@link AdmissionControl}, registered with the platform MBean server.
+ *
+ * @author Niklas Schlimm
+ *
+ */
+public interface AdmissionControlMBean {
+
+	int getConnections();
+
+	int getInFlight();
+
+	long getRejectedConnections();
+
+	long getRejectedInFlight();
+
+	long getRejectedQueueDepth();
+
+	long getRejectedRateLimit();
+
+}
@@ -0,0 +1,207 @@
+package com.schlimm.webappbenchmarker.server;
+
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.schlimm.webappbenchmarker.protocol.ApplicationLayerProtocol;
+import com.schlimm.webappbenchmarker.protocol.FrameDecoder;
+import com.schlimm.webappbenchmarker.protocol.PooledSlab;
+import com.schlimm.webappbenchmarker.protocol.Protocols;
+
+/**
+ * State of a client connection served by a {@link NioReactor}. The decoder is only touched by the reactor thread,
+ * the write queue is filled by the threads that send results. The connection also keeps the per-connection state of the
+ * {@link AdmissionControl}.
+ *
+ * @author Niklas Schlimm
+ *
+ */
+public class Connection {
+
+	private SocketChannel socket;
+
+	private FrameDecoder decoder;
+
+	private InetAddress address;
+
+	// Shared by all connections of the client address, null if there is no rate limit
+	private TokenBucket rateLimiter;
+
+	// Frames waiting to be written
+	private Queue<ByteBuffer> writeQueue = new ConcurrentLinkedQueue<ByteBuffer>();
+
+	// Size of the write queue, ConcurrentLinkedQueue.size() has to walk the queue
+	private AtomicInteger queuedFrames = new AtomicInteger(0);
+
+	// Requests admitted and not answered yet
+	private AtomicInteger requestsInFlight = new AtomicInteger(0);
+
+	// Request the ring had no room for, handed to the processor before anything else is read from the connection
+	private int stalledRequestId;
+	private ByteBuffer stalledFrame;
+	private PooledSlab stalledSlab;
+
+	// Set while the client does not read its responses, only touched by the reactor thread
+	private boolean readingPaused = false;
+
+	// Protocol negotiated by the client, Java serialization until the client says hello
+	private volatile ApplicationLayerProtocol protocol = Protocols.JAVA_SERIALIZATION;
+
+	private volatile boolean closed = false;
+
+	public Connection(SocketChannel socket, FrameDecoder decoder) {
+		this(socket, decoder, null, null);
+	}
+
+	public Connection(SocketChannel socket, FrameDecoder decoder, InetAddress address, TokenBucket rateLimiter) {
+		super();
+		this.socket = socket;
+		this.decoder = decoder;
+		this.address = address;
+		this.rateLimiter = rateLimiter;
+	}
+
+	public SocketChannel getSocket() {
+		return socket;
+	}
+
+	public FrameDecoder getDecoder() {
+		return decoder;
+	}
+
+	public Queue<ByteBuffer> getWriteQueue() {
+		return writeQueue;
+	}
+
+	/**
+	 * Queues a frame for writing.
+	 */
+	public void enqueue(ByteBuffer frame) {
+		queuedFrames.incrementAndGet();
+		writeQueue.add(frame);
+	}
+
+	/**
+	 * Removes the head of the write queue after it was written completely.
+	 */
+	void dequeue() {
+		writeQueue.poll();
+		queuedFrames.decrementAndGet();
+	}
+
+	public int getQueuedFrames() {
+		return queuedFrames.get();
+	}
+
+	public InetAddress getAddress() {
+		return address;
+	}
+
+	TokenBucket getRateLimiter() {
+		return rateLimiter;
+	}
+
+	public int getRequestsInFlight() {
+		return requestsInFlight.get();
+	}
+
+	void requestAdmitted() {
+		requestsInFlight.incrementAndGet();
+	}
+
+	/**
+	 * @return false if the request was already released because the connection closed
+	 */
+	boolean requestCompleted() {
+		while (true) {
+			int count = requestsInFlight.get();
+			if (count == 0)
+				return false;
+			if (requestsInFlight.compareAndSet(count, count - 1))
+				return true;
+		}
+	}
+
+	/**
+	 * @return the number of requests that were still in flight
+	 */
+	int releaseAllRequests() {
+		return requestsInFlight.getAndSet(0);
+	}
+
+	/**
+	 * Keeps a request the {@link WorkProcessor} could not take. Called by the reactor thread only.
+	 */
+	void stall(int requestId, ByteBuffer frame, PooledSlab slab) {
+		this.stalledRequestId = requestId;
+		this.stalledFrame = frame;
+		this.stalledSlab = slab;
+	}
+
+	boolean isStalled() {
+		return stalledFrame != null;
+	}
+
+	int getStalledRequestId() {
+		return stalledRequestId;
+	}
+
+	ByteBuffer getStalledFrame() {
+		return stalledFrame;
+	}
+
+	PooledSlab getStalledSlab() {
+		return stalledSlab;
+	}
+
+	/**
+	 * Forgets the stalled request after the {@link WorkProcessor} took it.
+	 */
+	void unstall() {
+		this.stalledFrame = null;
+		this.stalledSlab = null;
+	}
+
+	boolean isReadingPaused() {
+		return readingPaused;
+	}
+
+	void setReadingPaused(boolean readingPaused) {
+		this.readingPaused = readingPaused;
+	}
+
+	public ApplicationLayerProtocol getProtocol() {
+		return protocol;
+	}
+
+	public void setProtocol(ApplicationLayerProtocol protocol) {
+		this.protocol = protocol;
+	}
+
+	public boolean isClosed() {
+		return closed;
+	}
+
+	/**
+	 * Releases the resources of the connection. Called by the reactor thread only.
+	 *
+	 * @return false if the connection was closed before
+	 */
+	boolean closed() {
+		if (this.closed)
+			return false;
+		this.closed = true;
+		if (this.stalledSlab != null)
+			this.stalledSlab.release();
+		unstall();
+		this.decoder.release();
+		this.writeQueue.clear();
+		this.queuedFrames.set(0);
+		return true;
+	}
+
+}
@@ -0,0 +1,48 @@
+package com.schlimm.webappbenchmarker.server;
+
+import com.schlimm.webappbenchmarker.command.CommandExecutor;
+import com.schlimm.webappbenchmarker.command.ExecuteOn;
+import com.schlimm.webappbenchmarker.command.ServerCommand;
+
+/**
+ * Decides which executor the {@link WorkProcessor} runs a {@link ServerCommand} on.
+ *
+ * @author Niklas Schlimm
+ *
+ */
+public enum ExecutionMode {
+
+	/**
+	 * Every command runs on the worker pool, blocking commands hold a worker while they block.
+	 */
+	POOLED {
+		@Override
+		CommandExecutor executorFor(ServerCommand command) {
+			return CommandExecutor.WORKER_POOL;
+		}
+	},
+
+	/**
+	 * Commands run where their {@link ExecuteOn} annotation says, on the worker pool if they are not annotated.
+	 */
+	DECLARED {
+		@Override
+		CommandExecutor executorFor(ServerCommand command) {
+			ExecuteOn executeOn = command == null ? null : command.getClass().getAnnotation(ExecuteOn.class);
+			return executeOn == null ? CommandExecutor.WORKER_POOL : executeOn.value();
+		}
+	},
+
+	/**
+	 * Every command runs on a virtual thread of its own.
+	 */
+	VIRTUAL {
+		@Override
+		CommandExecutor executorFor(ServerCommand command) {
+			return CommandExecutor.VIRTUAL_THREAD;
+		}
+	};
+
+	abstract CommandExecutor executorFor(ServerCommand command);
+
+}
@@ -0,0 +1,131 @@
+package com.schlimm.webappbenchmarker.server;
+
+import java.net.InetAddress;
+import java.text.DecimalFormat;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.schlimm.webappbenchmarker.client.NioClient;
+import com.schlimm.webappbenchmarker.client.SimpleRspHandler;
+import com.schlimm.webappbenchmarker.command.ClientCommand;
+import com.schlimm.webappbenchmarker.command.trial.BusyCommand;
+import com.schlimm.webappbenchmarker.command.trial.SleepCommand;
+import com.schlimm.webappbenchmarker.protocol.ApplicationLayerProtocol;
+import com.schlimm.webappbenchmarker.protocol.Protocols;
+
+/**
+ * Compares the {@link ExecutionMode}s of the {@link WorkProcessor} under mixed load. Client threads fire CPU-bound
+ * {@link BusyCommand}s and blocking {@link SleepCommand}s at a server started in this JVM, the share of blocking
+ * requests is configurable. For every mode the throughput and the mean latency of both kinds of requests are reported.
+ * With {@link ExecutionMode#POOLED} the sleeping requests occupy the workers and the CPU-bound requests queue up behind
+ * them.
+ *
+ * @author Niklas Schlimm
+ *
+ */
+public class ExecutionModeBenchmark {
+
+	private static final int BASE_PORT = 9290;
+
+	private static volatile boolean measuring;
+	private static volatile boolean expired;
+
+	public static void main(String[] args) throws Exception {
+		int clientThreads = 32;
+		long testTime = 5000;
+		int blockingShare = 20;
+		long sleepMillis = 50;
+		long busyMicros = 100;
+		ApplicationLayerProtocol protocol = Protocols.COMPACT_BINARY;
+		for (String arg : args) {
+			if (arg.startsWith("-WBclients="))
+				clientThreads = Integer.parseInt(arg.split("=")[1]);
+			if (arg.startsWith("-WBtesttime="))
+				testTime = Long.parseLong(arg.split("=")[1]);
+			if (arg.startsWith("-WBblockingShare="))
+				blockingShare = Integer.parseInt(arg.split("=")[1]);
+			if (arg.startsWith("-WBsleep="))
+				sleepMillis = Long.parseLong(arg.split("=")[1]);
+			if (arg.startsWith("-WBbusy="))
+				busyMicros = Long.parseLong(arg.split("=")[1]);
+			if (arg.startsWith("-WBprotocol="))
+				protocol = Protocols.forName(arg.split("=")[1]);
+		}
+
+		DecimalFormat df = new DecimalFormat("#.##");
+		System.out.println("Client threads: " + clientThreads + " - test time : " + testTime + " - blocking share : " + blockingShare + "% - sleep : " + sleepMillis + " ms - busy : " + busyMicros + " us");
+		System.out.println(String.format("%1$-10s %2$-15s %3$-15s %4$-15s %5$-15s", "Mode", "CPU req/sec", "CPU latency ms", "Block req/sec", "Block latency ms"));
+		int port = BASE_PORT;
+		for (ExecutionMode mode : ExecutionMode.values()) {
+			WorkProcessor processor = new WorkProcessor(true, WorkProcessor.DEFAULT_RING_SIZE, WaitStrategy.PARK, mode);
+			Thread processorThread = new Thread(processor, "Work-Processor");
+			processorThread.setDaemon(true);
+			processorThread.start();
+			NioServer server = new NioServer(null, port, processor, 1, ReactorAssignment.ROUND_ROBIN);
+			new Thread(server, "Nio-Acceptor").start();
+			long[] result = drive(port++, clientThreads, testTime, protocol, blockingShare, ClientCommand.interned(BusyCommand.class.getName(), busyMicros),
+					ClientCommand.interned(SleepCommand.class.getName(), sleepMillis));
+			server.stop();
+			processor.stop();
+			System.out.println(String.format("%1$-10s %2$-15s %3$-15s %4$-15s %5$-15s", mode, df.format(result[0] * 1000d / testTime), result[0] == 0 ? "-" : df.format(result[1] / 1000000d / result[0]),
+					df.format(result[2] * 1000d / testTime), result[2] == 0 ? "-" : df.format(result[3] / 1000000d / result[2])));
+		}
+		System.exit(0);
+	}
+
+	// Returns count and summed latency (ns) of the CPU-bound requests, then of the blocking requests
+	private static long[] drive(int port, int clientThreads, long testTime, ApplicationLayerProtocol protocol, final int blockingShare, ClientCommand busy, ClientCommand sleep) throws Exception {
+		final NioClient client = new NioClient(InetAddress.getByName("localhost"), port, 4, protocol);
+		Thread t = new Thread(client, "Benchmark-Client");
+		t.setDaemon(true);
+		t.start();
+		final byte[] busyRequest = protocol.toByteArray(busy);
+		final byte[] sleepRequest = protocol.toByteArray(sleep);
+		final AtomicLong busyCount = new AtomicLong(0);
+		final AtomicLong busyLatency = new AtomicLong(0);
+		final AtomicLong sleepCount = new AtomicLong(0);
+		final AtomicLong sleepLatency = new AtomicLong(0);
+		measuring = false;
+		expired = false;
+		ExecutorService pool = Executors.newFixedThreadPool(clientThreads);
+		for (int i = 0; i < clientThreads; i++) {
+			final Random random = new Random(i);
+			pool.submit(new Runnable() {
+				@Override
+				public void run() {
+					while (!expired) {
+						boolean blocking = random.nextInt(100) < blockingShare;
+						SimpleRspHandler handler = new SimpleRspHandler(client.getProtocol());
+						long start = System.nanoTime();
+						client.send(blocking ? sleepRequest : busyRequest, handler);
+						handler.waitForResponse();
+						long latency = System.nanoTime() - start;
+						if (measuring) {
+							if (blocking) {
+								sleepCount.incrementAndGet();
+								sleepLatency.addAndGet(latency);
+							} else {
+								busyCount.incrementAndGet();
+								busyLatency.addAndGet(latency);
+							}
+						}
+					}
+				}
+			});
+		}
+		// warm up before we start counting
+		Thread.sleep(testTime / 5);
+		measuring = true;
+		Thread.sleep(testTime);
+		measuring = false;
+		long[] result = new long[] { busyCount.get(), busyLatency.get(), sleepCount.get(), sleepLatency.get() };
+		expired = true;
+		pool.shutdown();
+		pool.awaitTermination(10, TimeUnit.SECONDS);
+		return result;
+	}
+
+}
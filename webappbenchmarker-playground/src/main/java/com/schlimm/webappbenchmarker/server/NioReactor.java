@@ -0,0 +1,402 @@
+package com.schlimm.webappbenchmarker.server;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.spi.SelectorProvider;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.schlimm.webappbenchmarker.ChangeRequest;
+import com.schlimm.webappbenchmarker.protocol.DirectBufferPool;
+import com.schlimm.webappbenchmarker.protocol.FrameDecoder;
+import com.schlimm.webappbenchmarker.protocol.FrameEncoder;
+import com.schlimm.webappbenchmarker.protocol.OverloadReason;
+import com.schlimm.webappbenchmarker.protocol.PooledSlab;
+import com.schlimm.webappbenchmarker.protocol.Protocols;
+
+/**
+ * I/O reactor of the {@link NioServer}. Each reactor owns a selector and reads and writes the connections that the
+ * acceptor assigned to it. Other threads only talk to a reactor through lock-free queues: registrations and interest
+ * changes go to the change queues, response data goes to the write queue of the {@link Connection}. Requests and
+ * responses are length prefixed frames, every connection reassembles its requests in a {@link FrameDecoder}. Unless
+ * the {@link WorkProcessor} asks for copies, requests are handed to the workers as slices of the read buffer and
+ * decoded in place. Every request has to pass the {@link AdmissionControl} of the server, a rejected request is
+ * answered with an overloaded frame by the reactor itself. The reactor stops reading from a connection whose client
+ * does not read its responses, and from a connection whose request found the ring of the work processor full.
+ *
+ * @author Niklas Schlimm
+ *
+ */
+public class NioReactor implements Runnable {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	// The selector we'll be monitoring
+	private Selector selector;
+
+	// The pool of the direct buffers in which the connections accumulate their frames
+	private DirectBufferPool bufferPool = new DirectBufferPool(1024 * 1024, 64);
+
+	private WorkProcessor processor;
+
+	private AdmissionControl admission;
+
+	// Accepted connections waiting to be registered with our selector
+	private Queue<Connection> pendingRegistrations = new ConcurrentLinkedQueue<Connection>();
+
+	// Pending interest changes, added by foreign threads, drained by the reactor thread
+	private Queue<ChangeRequest> pendingChanges = new ConcurrentLinkedQueue<ChangeRequest>();
+
+	// Set when a wakeup is already on its way, avoids a wakeup system call per send
+	private AtomicBoolean wakeupPending = new AtomicBoolean(false);
+
+	// Connections holding a request the work processor had no room for, only touched by the reactor thread
+	private List<Connection> stalledConnections = new ArrayList<Connection>();
+
+	// Number of connections currently served by this reactor
+	private AtomicInteger connectionCount = new AtomicInteger(0);
+
+	private volatile boolean running = true;
+
+	public NioReactor(WorkProcessor processor) throws IOException {
+		this(processor, new AdmissionControl());
+	}
+
+	public NioReactor(WorkProcessor processor, AdmissionControl admission) throws IOException {
+		this.processor = processor;
+		this.admission = admission;
+		this.selector = SelectorProvider.provider().openSelector();
+	}
+
+	/**
+	 * Hands an accepted connection over to this reactor. Called by the acceptor thread.
+	 *
+	 * @param socketChannel
+	 *            the accepted, non-blocking channel
+	 */
+	public void register(SocketChannel socketChannel) {
+		this.connectionCount.incrementAndGet();
+		InetAddress address = socketChannel.socket().getInetAddress();
+		this.pendingRegistrations.add(new Connection(socketChannel, new FrameDecoder(this.bufferPool), address, this.admission.connected(address)));
+		this.wakeup();
+	}
+
+	/**
+	 * Queues a response for the connection. The payload is copied into the response frame before this method returns.
+	 */
+	public void send(Connection connection, int requestId, ByteBuffer payload) {
+		this.respond(connection, FrameEncoder.encode(requestId, FrameDecoder.TYPE_DATA, payload));
+	}
+
+	/**
+	 * Called instead of {@link #send(Connection, int, ByteBuffer)} when a request failed, answers it with an error
+	 * frame.
+	 */
+	public void requestFailed(Connection connection, int requestId, String error) {
+		this.respond(connection, FrameEncoder.encode(requestId, FrameDecoder.TYPE_ERROR, error.getBytes(UTF8)));
+	}
+
+	private void respond(Connection connection, ByteBuffer frame) {
+		this.admission.completed(connection);
+		if (connection.isClosed()) {
+			// connection was closed in the meantime
+			return;
+		}
+		connection.enqueue(frame);
+
+		// Indicate we want to write, the reactor works out the interest ops from the state of the connection
+		this.pendingChanges.add(new ChangeRequest(connection.getSocket(), ChangeRequest.CHANGEOPS, SelectionKey.OP_WRITE));
+
+		// Finally, wake up our selecting thread so it can make the required changes
+		this.wakeup();
+	}
+
+
+	public int getConnectionCount() {
+		return connectionCount.get();
+	}
+
+	public void stop() {
+		this.running = false;
+		this.selector.wakeup();
+	}
+
+	public void run() {
+		while (running) {
+			try {
+				// Register new connections and process any pending changes (e.g. OP_WRITE when data is available for
+				// writing back to client)
+				this.wakeupPending.set(false);
+				Connection connection;
+				while ((connection = this.pendingRegistrations.poll()) != null) {
+					try {
+						connection.getSocket().register(this.selector, SelectionKey.OP_READ, connection);
+					} catch (ClosedChannelException e) {
+						this.closed(connection);
+					}
+				}
+				ChangeRequest change;
+				while ((change = this.pendingChanges.poll()) != null) {
+					SelectionKey key = change.socket.keyFor(this.selector);
+					if (key == null || !key.isValid())
+						continue;
+					// The requesting thread does not know whether reading is paused
+					key.interestOps(this.interestOps((Connection) key.attachment()));
+				}
+
+				// Wait for an event one of the registered channels, the ring does not tell us when a slot gets free
+				if (this.stalledConnections.isEmpty()) {
+					this.selector.select();
+				} else {
+					this.selector.select(1);
+				}
+
+				// Iterate over the set of keys for which events are available
+				Iterator<SelectionKey> selectedKeys = this.selector.selectedKeys().iterator();
+				while (selectedKeys.hasNext()) {
+					SelectionKey key = (SelectionKey) selectedKeys.next();
+					selectedKeys.remove();
+
+					if (!key.isValid()) {
+						continue;
+					}
+
+					// Check what event is available and deal with it
+					if (key.isReadable()) {
+						this.read(key);
+					}
+					if (key.isValid() && key.isWritable()) {
+						this.write(key);
+					}
+				}
+
+				this.resumeStalled();
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+		}
+		this.closeAll();
+	}
+
+	private void read(SelectionKey key) throws IOException {
+		SocketChannel socketChannel = (SocketChannel) key.channel();
+		Connection connection = (Connection) key.attachment();
+		FrameDecoder decoder = connection.getDecoder();
+
+		if (connection.isStalled()) {
+			// Selected before the ring turned out to be full
+			key.interestOps(this.interestOps(connection));
+			return;
+		}
+		if (connection.getQueuedFrames() >= this.admission.getMaxInFlightPerConnection()) {
+			// The client does not read its responses, stop reading its requests until the write queue drained
+			connection.setReadingPaused(true);
+			key.interestOps(this.interestOps(connection));
+			return;
+		}
+
+		// Attempt to read off the channel
+		int numRead;
+		try {
+			numRead = decoder.read(socketChannel);
+		} catch (IOException e) {
+			// The remote forcibly closed the connection, cancel
+			// the selection key and close the channel.
+			this.close(key);
+			return;
+		}
+
+		if (numRead == -1) {
+			// Remote entity shut the socket down cleanly. Do the
+			// same from our end and cancel the channel.
+			this.close(key);
+			return;
+		}
+
+		if (!this.dispatch(key, connection)) {
+			// The ring is full, stop reading until the stalled request got a slot
+			this.stalledConnections.add(connection);
+			key.interestOps(this.interestOps(connection));
+		}
+	}
+
+	/**
+	 * Hands every complete frame off to our processor thread, the stalled request of the connection first.
+	 *
+	 * @return false if the ring is full, the connection keeps the request that did not fit
+	 */
+	private boolean dispatch(SelectionKey key, Connection connection) throws IOException {
+		if (connection.isStalled()) {
+			if (!this.processor.dropData(this, connection, connection.getStalledRequestId(), connection.getStalledFrame(), connection.getStalledSlab()))
+				return false;
+			connection.unstall();
+		}
+		FrameDecoder decoder = connection.getDecoder();
+		try {
+			if (this.processor.isZeroCopy()) {
+				ByteBuffer frame;
+				while ((frame = decoder.nextSlice()) != null) {
+					PooledSlab slab = decoder.getSlab();
+					int requestId = decoder.getRequestId();
+					if (decoder.getFrameType() == FrameDecoder.TYPE_HELLO) {
+						// The client negotiates the protocol of this connection
+						boolean negotiated = frame.hasRemaining() && this.negotiate(connection, frame.get(frame.position()));
+						slab.release();
+						if (!negotiated) {
+							this.close(key);
+							return true;
+						}
+					} else if (this.admit(key, connection, requestId)) {
+						if (!this.processor.dropData(this, connection, requestId, frame, slab)) {
+							connection.stall(requestId, frame, slab);
+							return false;
+						}
+					} else {
+						slab.release();
+					}
+				}
+			} else {
+				byte[] frame;
+				while ((frame = decoder.nextFrame()) != null) {
+					int requestId = decoder.getRequestId();
+					if (decoder.getFrameType() == FrameDecoder.TYPE_HELLO) {
+						if (frame.length == 0 || !this.negotiate(connection, frame[0])) {
+							this.close(key);
+							return true;
+						}
+					} else if (this.admit(key, connection, requestId)) {
+						if (!this.processor.dropData(this, connection, requestId, ByteBuffer.wrap(frame), null)) {
+							connection.stall(requestId, ByteBuffer.wrap(frame), null);
+							return false;
+						}
+					}
+				}
+			}
+		} catch (IOException e) {
+			// Corrupt frame, we cannot resynchronize on this stream
+			e.printStackTrace();
+			this.close(key);
+		}
+		return true;
+	}
+
+	// Retries the stalled requests, resumes reading from the connections whose request got a slot
+	private void resumeStalled() throws IOException {
+		Iterator<Connection> stalled = this.stalledConnections.iterator();
+		while (stalled.hasNext()) {
+			Connection connection = stalled.next();
+			SelectionKey key = connection.getSocket().keyFor(this.selector);
+			if (key == null || !key.isValid()) {
+				stalled.remove();
+			} else if (this.dispatch(key, connection)) {
+				stalled.remove();
+				if (key.isValid())
+					key.interestOps(this.interestOps(connection));
+			}
+		}
+	}
+
+	/**
+	 * Reading from a connection pauses while its stalled request waits for a slot or while its client does not read
+	 * its responses, writing pauses while nothing is queued.
+	 */
+	private int interestOps(Connection connection) {
+		int ops = connection.isStalled() || connection.isReadingPaused() ? 0 : SelectionKey.OP_READ;
+		if (connection.getQueuedFrames() > 0)
+			ops |= SelectionKey.OP_WRITE;
+		return ops;
+	}
+
+	// Sets the protocol the client announced in its hello frame, false if we do not know it
+	private boolean negotiate(Connection connection, byte protocolId) {
+		try {
+			connection.setProtocol(Protocols.forId(protocolId));
+			return true;
+		} catch (IllegalArgumentException e) {
+			System.out.println(e.getMessage() + ", closing connection");
+			return false;
+		}
+	}
+
+	// Answers the request with an overloaded frame if the admission control rejects it
+	private boolean admit(SelectionKey key, Connection connection, int requestId) {
+		OverloadReason reason = this.admission.admit(connection);
+		if (reason == null)
+			return true;
+		connection.enqueue(FrameEncoder.encode(requestId, FrameDecoder.TYPE_OVERLOADED, new byte[] { reason.getCode() }));
+		key.interestOps(this.interestOps(connection));
+		return false;
+	}
+
+	private void write(SelectionKey key) throws IOException {
+		SocketChannel socketChannel = (SocketChannel) key.channel();
+		Connection connection = (Connection) key.attachment();
+		Queue<ByteBuffer> queue = connection.getWriteQueue();
+
+		// Write until there's not more data ...
+		ByteBuffer buf;
+		while ((buf = queue.peek()) != null) {
+			socketChannel.write(buf);
+			if (buf.remaining() > 0) {
+				// ... or the socket's buffer fills up
+				break;
+			}
+			connection.dequeue();
+		}
+
+		if (connection.isReadingPaused() && connection.getQueuedFrames() < this.admission.getMaxInFlightPerConnection()) {
+			// The client catches up, read its requests again
+			connection.setReadingPaused(false);
+		}
+		// Once we wrote away all data we're no longer interested
+		// in writing on this socket.
+		key.interestOps(this.interestOps(connection));
+	}
+
+	private void close(SelectionKey key) throws IOException {
+		key.cancel();
+		key.channel().close();
+		this.closed((Connection) key.attachment());
+	}
+
+	private void closed(Connection connection) {
+		// closeAll() closes keys again that were cancelled but not yet deregistered
+		if (!connection.closed())
+			return;
+		this.connectionCount.decrementAndGet();
+		this.admission.disconnected(connection);
+	}
+
+	private void closeAll() {
+		for (SelectionKey key : this.selector.keys()) {
+			try {
+				this.close(key);
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+		try {
+			this.selector.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	private void wakeup() {
+		if (this.wakeupPending.compareAndSet(false, true)) {
+			this.selector.wakeup();
+		}
+	}
+
+}
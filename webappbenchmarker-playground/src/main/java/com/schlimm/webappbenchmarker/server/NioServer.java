@@ -3,26 +3,27 @@ package com.schlimm.webappbenchmarker.server;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
-import java.nio.ByteBuffer;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
 import java.nio.channels.spi.SelectorProvider;
-import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.Iterator;
-import java.util.LinkedList;
-import java.util.List;
-import java.util.Map;
-
-import com.schlimm.webappbenchmarker.ChangeRequest;
 
+import com.schlimm.webappbenchmarker.command.system.BenchmarkCommand;
+import com.schlimm.webappbenchmarker.command.system.WorkerJvm;
+import com.schlimm.webappbenchmarker.protocol.FrameDecoder;
+import com.schlimm.webappbenchmarker.protocol.FrameEncoder;
+import com.schlimm.webappbenchmarker.protocol.OverloadReason;
 
 /**
- * 
+ *
  * http://rox-xmlrpc.sourceforge.net/niotut/index.html
- * 
+ *
+ * The server runs one acceptor thread and a configurable number of {@link NioReactor}s. The acceptor only accepts
+ * connections and assigns them to a reactor, the reactors do all the reading and writing on their own selector. All
+ * of them share the {@link AdmissionControl} that limits the load the server accepts.
+ *
  * @author Niklas Schlimm
  *
  */
@@ -34,66 +35,56 @@ public class NioServer implements Runnable {
 	// The channel on which we'll accept connections
 	private ServerSocketChannel serverChannel;
 
-	// The selector we'll be monitoring
+	// The selector we'll be monitoring for new connections
 	private Selector selector;
 
-	// The buffer into which we'll read data when it's available
-	private ByteBuffer readBuffer = ByteBuffer.allocate(8192);
+	// The reactors that serve the accepted connections
+	private NioReactor[] reactors;
 
-	private WorkProcessor processor;
+	// How accepted connections are distributed across the reactors
+	private ReactorAssignment assignment;
 
-	// A list of PendingChange instances
-	private List<ChangeRequest> pendingChanges = new LinkedList<ChangeRequest>();
+	// Limits connections and requests, shared by the acceptor and the reactors
+	private AdmissionControl admission;
 
-	// Maps a SocketChannel to a list of ByteBuffer instances
-	private Map<SocketChannel, List<ByteBuffer>> pendingData = new HashMap<SocketChannel, List<ByteBuffer>>();
+	// Number of connections accepted so far
+	private long acceptCount = 0;
+
+	private volatile boolean running = true;
 
 	public NioServer(InetAddress hostAddress, int port, WorkProcessor processor) throws IOException {
+		this(hostAddress, port, processor, 1, ReactorAssignment.ROUND_ROBIN);
+	}
+
+	public NioServer(InetAddress hostAddress, int port, WorkProcessor processor, int reactorCount, ReactorAssignment assignment) throws IOException {
+		this(hostAddress, port, processor, reactorCount, assignment, new AdmissionControl());
+	}
+
+	public NioServer(InetAddress hostAddress, int port, WorkProcessor processor, int reactorCount, ReactorAssignment assignment, AdmissionControl admission) throws IOException {
+		if (reactorCount < 1)
+			throw new IllegalArgumentException("At least one reactor required!");
 		this.hostAddress = hostAddress;
 		this.port = port;
 		this.selector = this.initSelector(); // ** 1 **
-		this.processor = processor;
-	}
-
-	public void send(SocketChannel socket, byte[] data) {
-		synchronized (this.pendingChanges) {
-			// Indicate we want the interest ops set changed
-			this.pendingChanges.add(new ChangeRequest(socket, ChangeRequest.CHANGEOPS, SelectionKey.OP_WRITE));
-
-			// And processor the data we want written
-			synchronized (this.pendingData) {
-				List<ByteBuffer> queue = (List<ByteBuffer>) this.pendingData.get(socket);
-				if (queue == null) {
-					queue = new ArrayList<ByteBuffer>();
-					this.pendingData.put(socket, queue);
-				}
-				queue.add(ByteBuffer.wrap(data));
-			}
+		this.assignment = assignment;
+		this.admission = admission;
+		this.admission.register("port-" + port);
+		this.reactors = new NioReactor[reactorCount];
+		for (int i = 0; i < reactorCount; i++) {
+			this.reactors[i] = new NioReactor(processor, admission);
 		}
+	}
 
-		// Finally, wake up our selecting thread so it can make the required changes
-		this.selector.wakeup();
+	public AdmissionControl getAdmissionControl() {
+		return admission;
 	}
 
 	public void run() {
-		while (true) {
+		for (int i = 0; i < this.reactors.length; i++) {
+			new Thread(this.reactors[i], "Nio-Reactor-" + i).start();
+		}
+		while (running) {
 			try {
-				// Process any pending changes (e.g. OP_WRITE when data is available for writing back to client)
-				synchronized (this.pendingChanges) {
-					Iterator<ChangeRequest> changes = this.pendingChanges.iterator();
-					while (changes.hasNext()) {
-						ChangeRequest change = (ChangeRequest) changes.next();
-						switch (change.type) {
-						case ChangeRequest.CHANGEOPS:
-							SelectionKey key = change.socket.keyFor(this.selector);
-							if (key==null) continue;
-							key.interestOps(change.ops); // if this is OP_WRITE then the selection key is immediately available on selected keys
-														// this is because the socket channel is almost always ready for writing
-						}
-					}
-					this.pendingChanges.clear();
-				}
-
 				// Wait for an event one of the registered channels
 				this.selector.select();
 
@@ -103,23 +94,32 @@ public class NioServer implements Runnable {
 					SelectionKey key = (SelectionKey) selectedKeys.next();
 					selectedKeys.remove();
 
-					if (!key.isValid()) {
-						continue;
-					}
-
-					// Check what event is available and deal with it
-					if (key.isAcceptable()) {
+					if (key.isValid() && key.isAcceptable()) {
 						this.accept(key);
-					} else if (key.isReadable()) {
-						this.read(key);
-					} else if (key.isWritable()) {
-						this.write(key);
 					}
 				}
 			} catch (Exception e) {
 				e.printStackTrace();
 			}
 		}
+		this.admission.unregister();
+		try {
+			this.serverChannel.close();
+			this.selector.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Stops the acceptor and all reactors and closes their connections.
+	 */
+	public void stop() {
+		this.running = false;
+		this.selector.wakeup();
+		for (NioReactor reactor : this.reactors) {
+			reactor.stop();
+		}
 	}
 
 	private void accept(SelectionKey key) throws IOException {
@@ -128,67 +128,21 @@ public class NioServer implements Runnable {
 
 		// Accept the connection and make it non-blocking
 		SocketChannel socketChannel = serverSocketChannel.accept();
-		socketChannel.configureBlocking(false);
-
-		// Register the new SocketChannel with our Selector, indicating
-		// we'd like to be notified when there's data waiting to be read
-		socketChannel.register(this.selector, SelectionKey.OP_READ);
-	}
-
-	private void read(SelectionKey key) throws IOException, ClassNotFoundException {
-		SocketChannel socketChannel = (SocketChannel) key.channel();
-
-		// Clear out our read buffer so it's ready for new data
-		this.readBuffer.clear();
-
-		// Attempt to read off the channel
-		int numRead;
-		try {
-			numRead = socketChannel.read(this.readBuffer);
-		} catch (IOException e) {
-			// The remote forcibly closed the connection, cancel
-			// the selection key and close the channel.
-			key.cancel();
-			socketChannel.close();
+		if (socketChannel == null) {
 			return;
 		}
+		socketChannel.configureBlocking(false);
 
-		if (numRead == -1) {
-			// Remote entity shut the socket down cleanly. Do the
-			// same from our end and cancel the channel.
-			key.channel().close();
-			key.cancel();
+		if (!this.admission.acceptConnection()) {
+			// Tell the client why before we hang up, the frame is small enough to fit into the socket buffer
+			socketChannel.write(FrameEncoder.encode(0, FrameDecoder.TYPE_OVERLOADED, new byte[] { OverloadReason.CONNECTIONS.getCode() }));
+			socketChannel.close();
 			return;
 		}
 
-		// Hand the data off to our processor thread
-		this.processor.dropData(this, socketChannel, this.readBuffer.array(), numRead);
-	}
-
-	private void write(SelectionKey key) throws IOException {
-		SocketChannel socketChannel = (SocketChannel) key.channel();
-
-		synchronized (this.pendingData) {
-			List<ByteBuffer> queue = (List<ByteBuffer>) this.pendingData.get(socketChannel);
-
-			// Write until there's not more data ...
-			while (!queue.isEmpty()) {
-				ByteBuffer buf = (ByteBuffer) queue.get(0);
-				socketChannel.write(buf);
-				if (buf.remaining() > 0) {
-					// ... or the socket's buffer fills up
-					break;
-				}
-				queue.remove(0);
-			}
-
-			if (queue.isEmpty()) {
-				// We wrote away all data, so we're no longer interested
-				// in writing on this socket. Switch back to waiting for
-				// data.
-				key.interestOps(SelectionKey.OP_READ);
-			}
-		}
+		// Hand the new SocketChannel over to one of our reactors, it
+		// registers the channel for read events with its own selector
+		this.assignment.select(this.reactors, this.acceptCount++).register(socketChannel);
 	}
 
 	private Selector initSelector() throws IOException {
@@ -203,7 +157,7 @@ public class NioServer implements Runnable {
 		InetSocketAddress isa = new InetSocketAddress(this.hostAddress, this.port);
 		serverChannel.socket().bind(isa);
 
-		// Register the server socket channel, indicating an interest in 
+		// Register the server socket channel, indicating an interest in
 		// accepting new connections
 		serverChannel.register(socketSelector, SelectionKey.OP_ACCEPT);
 
@@ -212,11 +166,60 @@ public class NioServer implements Runnable {
 
 	public static void main(String[] args) {
 		try {
-			WorkProcessor processor = new WorkProcessor();
+			int reactorCount = Runtime.getRuntime().availableProcessors();
+			ReactorAssignment assignment = ReactorAssignment.ROUND_ROBIN;
+			boolean zeroCopy = true;
+			int ringSize = WorkProcessor.DEFAULT_RING_SIZE;
+			WaitStrategy waitStrategy = WaitStrategy.PARK;
+			ExecutionMode executionMode = ExecutionMode.DECLARED;
+			int maxConnections = 10000;
+			int maxInFlight = 1024;
+			int maxQueueDepth = 8192;
+			double rateLimit = 0;
+			double burst = 0;
+			BenchmarkCommand.Isolation isolation = BenchmarkCommand.Isolation.IN_PROCESS;
+			int workerPoolSize = 2;
+			long workerTimeout = WorkerJvm.DEFAULT_TIMEOUT;
+			String[] workerJvmArguments = new String[0];
+			for (String arg : args) {
+				if (arg.startsWith("-WBreactors="))
+					reactorCount = Integer.parseInt(arg.split("=")[1]);
+				if (arg.startsWith("-WBassignment="))
+					assignment = ReactorAssignment.valueOf(arg.split("=")[1]);
+				if (arg.startsWith("-WBzeroCopy="))
+					zeroCopy = Boolean.parseBoolean(arg.split("=")[1]);
+				if (arg.startsWith("-WBringSize="))
+					ringSize = Integer.parseInt(arg.split("=")[1]);
+				if (arg.startsWith("-WBwaitStrategy="))
+					waitStrategy = WaitStrategy.valueOf(arg.split("=")[1]);
+				if (arg.startsWith("-WBexecution="))
+					executionMode = ExecutionMode.valueOf(arg.split("=")[1]);
+				if (arg.startsWith("-WBmaxConnections="))
+					maxConnections = Integer.parseInt(arg.split("=")[1]);
+				if (arg.startsWith("-WBmaxInFlight="))
+					maxInFlight = Integer.parseInt(arg.split("=")[1]);
+				if (arg.startsWith("-WBmaxQueueDepth="))
+					maxQueueDepth = Integer.parseInt(arg.split("=")[1]);
+				if (arg.startsWith("-WBrateLimit="))
+					rateLimit = Double.parseDouble(arg.split("=")[1]);
+				if (arg.startsWith("-WBburst="))
+					burst = Double.parseDouble(arg.split("=")[1]);
+				if (arg.startsWith("-WBisolation="))
+					isolation = BenchmarkCommand.Isolation.forName(arg.split("=")[1]);
+				if (arg.startsWith("-WBworkerPool="))
+					workerPoolSize = Integer.parseInt(arg.split("=")[1]);
+				if (arg.startsWith("-WBworkerTimeout="))
+					workerTimeout = Long.parseLong(arg.split("=")[1]);
+				// JVM flags may contain '=' themselves, e.g. -WBworkerJvmArgs=-Xmx256m,-XX:CICompilerCount=2
+				if (arg.startsWith("-WBworkerJvmArgs="))
+					workerJvmArguments = arg.substring(arg.indexOf('=') + 1).split(",");
+			}
+			BenchmarkCommand.configure(isolation, workerPoolSize, workerTimeout, workerJvmArguments);
+			WorkProcessor processor = new WorkProcessor(zeroCopy, ringSize, waitStrategy, executionMode);
 			new Thread(processor, "Work-Processor").start();
-			new Thread(new NioServer(null, 9090, processor)).start();
+			new Thread(new NioServer(null, 9090, processor, reactorCount, assignment, new AdmissionControl(maxConnections, maxInFlight, maxQueueDepth, rateLimit, burst)), "Nio-Acceptor").start();
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,39 @@
+package com.schlimm.webappbenchmarker.server;
+
+/**
+ * Strategies the acceptor of the {@link NioServer} uses to hand a new connection to one of its {@link NioReactor}s.
+ *
+ * @author Niklas Schlimm
+ *
+ */
+public enum ReactorAssignment {
+
+	/**
+	 * Cycles through the reactors in accept order.
+	 */
+	ROUND_ROBIN {
+		@Override
+		NioReactor select(NioReactor[] reactors, long acceptCount) {
+			return reactors[(int) (acceptCount % reactors.length)];
+		}
+	},
+
+	/**
+	 * Picks the reactor that currently serves the fewest connections.
+	 */
+	LEAST_LOADED {
+		@Override
+		NioReactor select(NioReactor[] reactors, long acceptCount) {
+			NioReactor leastLoaded = reactors[0];
+			for (int i = 1; i < reactors.length; i++) {
+				if (reactors[i].getConnectionCount() < leastLoaded.getConnectionCount()) {
+					leastLoaded = reactors[i];
+				}
+			}
+			return leastLoaded;
+		}
+	};
+
+	abstract NioReactor select(NioReactor[] reactors, long acceptCount);
+
+}
@@ -0,0 +1,128 @@
+package com.schlimm.webappbenchmarker.server;
+
+import java.net.InetAddress;
+import java.text.DecimalFormat;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.schlimm.webappbenchmarker.client.NioClient;
+import com.schlimm.webappbenchmarker.client.SimpleRspHandler;
+import com.schlimm.webappbenchmarker.command.ClientCommand;
+import com.schlimm.webappbenchmarker.command.trial.EchoCommand;
+import com.schlimm.webappbenchmarker.protocol.ApplicationLayerProtocol;
+import com.schlimm.webappbenchmarker.protocol.Protocols;
+import com.schlimm.webappbenchmarker.statistic.AllocationMonitor;
+
+/**
+ * Measures how the request throughput of the {@link NioServer} scales with the number of {@link NioReactor}s. For
+ * every reactor count (1, 2, 4, ... up to the number of cores) a server is started in this JVM and a fixed number of
+ * client threads fire {@link EchoCommand}s at it for the configured test time. The heap allocated per request by the
+ * server threads (reactors and work processor) is reported alongside, -WBzeroCopy=false lets the reactors copy every
+ * request out of the read buffer for comparison.
+ *
+ * @author Niklas Schlimm
+ *
+ */
+public class ReactorScalingBenchmark {
+
+	private static final int BASE_PORT = 9190;
+
+	private static volatile boolean measuring;
+	private static volatile boolean expired;
+
+	public static void main(String[] args) throws Exception {
+		int maxReactors = Runtime.getRuntime().availableProcessors();
+		int clientThreads = 4 * maxReactors;
+		long testTime = 5000;
+		ReactorAssignment assignment = ReactorAssignment.ROUND_ROBIN;
+		ApplicationLayerProtocol protocol = Protocols.JAVA_SERIALIZATION;
+		boolean zeroCopy = true;
+		int ringSize = WorkProcessor.DEFAULT_RING_SIZE;
+		WaitStrategy waitStrategy = WaitStrategy.PARK;
+		ExecutionMode executionMode = ExecutionMode.DECLARED;
+		for (String arg : args) {
+			if (arg.startsWith("-WBmaxReactors="))
+				maxReactors = Integer.parseInt(arg.split("=")[1]);
+			if (arg.startsWith("-WBclients="))
+				clientThreads = Integer.parseInt(arg.split("=")[1]);
+			if (arg.startsWith("-WBtesttime="))
+				testTime = Long.parseLong(arg.split("=")[1]);
+			if (arg.startsWith("-WBassignment="))
+				assignment = ReactorAssignment.valueOf(arg.split("=")[1]);
+			if (arg.startsWith("-WBprotocol="))
+				protocol = Protocols.forName(arg.split("=")[1]);
+			if (arg.startsWith("-WBzeroCopy="))
+				zeroCopy = Boolean.parseBoolean(arg.split("=")[1]);
+			if (arg.startsWith("-WBringSize="))
+				ringSize = Integer.parseInt(arg.split("=")[1]);
+			if (arg.startsWith("-WBwaitStrategy="))
+				waitStrategy = WaitStrategy.valueOf(arg.split("=")[1]);
+			if (arg.startsWith("-WBexecution="))
+				executionMode = ExecutionMode.valueOf(arg.split("=")[1]);
+		}
+		WorkProcessor processor = new WorkProcessor(zeroCopy, ringSize, waitStrategy, executionMode);
+		Thread processorThread = new Thread(processor, "Work-Processor");
+		processorThread.setDaemon(true);
+		processorThread.start();
+
+		DecimalFormat df = new DecimalFormat("#.##");
+		System.out.println("Client threads: " + clientThreads + " - test time : " + testTime + " - assignment : " + assignment + " - protocol : " + protocol.getClass().getSimpleName() + " - zero copy : " + zeroCopy + " - wait strategy : " + waitStrategy);
+		System.out.println(String.format("%1$-10s %2$-15s %3$-15s %4$-15s", "Reactors", "Requests", "Requests/sec", "Bytes/request"));
+		AllocationMonitor allocations = new AllocationMonitor("Nio-Reactor", "Work-Processor");
+		int port = BASE_PORT;
+		int reactors = 1;
+		while (true) {
+			NioServer server = new NioServer(null, port, processor, reactors, assignment);
+			new Thread(server, "Nio-Acceptor").start();
+			long[] result = drive(port++, clientThreads, testTime, protocol, allocations);
+			server.stop();
+			long requests = result[0];
+			System.out.println(String.format("%1$-10s %2$-15s %3$-15s %4$-15s", reactors, requests, df.format(requests * 1000d / testTime), requests == 0 ? "-" : df.format((double) result[1] / requests)));
+			if (reactors == maxReactors)
+				break;
+			reactors = Math.min(reactors * 2, maxReactors);
+		}
+		System.exit(0);
+	}
+
+	// Returns the number of requests and the bytes allocated by the server threads during the measurement
+	private static long[] drive(int port, int clientThreads, long testTime, ApplicationLayerProtocol protocol, AllocationMonitor allocations) throws Exception {
+		final NioClient client = new NioClient(InetAddress.getByName("localhost"), port, clientThreads, protocol);
+		Thread t = new Thread(client, "Benchmark-Client");
+		t.setDaemon(true);
+		t.start();
+		final byte[] request = protocol.toByteArray(ClientCommand.interned(EchoCommand.class.getName(), "ping"));
+		final AtomicLong requests = new AtomicLong(0);
+		measuring = false;
+		expired = false;
+		ExecutorService pool = Executors.newFixedThreadPool(clientThreads);
+		for (int i = 0; i < clientThreads; i++) {
+			pool.submit(new Runnable() {
+				@Override
+				public void run() {
+					while (!expired) {
+						SimpleRspHandler handler = new SimpleRspHandler(client.getProtocol());
+						client.send(request, handler);
+						handler.waitForResponse();
+						if (measuring)
+							requests.incrementAndGet();
+					}
+				}
+			});
+		}
+		// warm up before we start counting
+		Thread.sleep(testTime / 5);
+		long allocatedBefore = allocations.allocatedBytes();
+		measuring = true;
+		Thread.sleep(testTime);
+		measuring = false;
+		long[] result = new long[] { requests.get(), allocations.allocatedBytes() - allocatedBefore };
+		expired = true;
+		pool.shutdown();
+		pool.awaitTermination(10, TimeUnit.SECONDS);
+		return result;
+	}
+
+}
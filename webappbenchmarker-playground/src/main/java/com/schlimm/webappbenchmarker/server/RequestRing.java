@@ -0,0 +1,227 @@
+package com.schlimm.webappbenchmarker.server;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Pre-allocated ring of {@link ServerDataEvent}s that carries the requests from the {@link NioReactor}s through the
+ * stages of the {@link WorkProcessor}. Reactors claim a slot, fill it and publish it. Each stage follows the stage in
+ * front of it through a {@link SequenceBarrier}. A slot is reused once the last stage has passed it. A reactor that
+ * finds the ring full stops reading from the connection until a slot is free, so a flooding client slows down itself
+ * through TCP instead of growing a queue.
+ *
+ * @author Niklas Schlimm
+ *
+ */
+class RequestRing {
+
+	private ServerDataEvent[] slots;
+
+	private int mask;
+
+	private int indexShift;
+
+	// Round in which each slot was last published, lets consumers tell published slots from claimed ones
+	private AtomicIntegerArray published;
+
+	// Round in which each slot was last completed by the first stage, lets the last stage take slots out of order
+	private AtomicIntegerArray completed;
+
+	// Highest sequence claimed by a producer
+	private AtomicLong cursor = new AtomicLong(-1);
+
+	// Sequences of the last stage, a slot may only be reused once all of them have passed it
+	private AtomicLong[] gatingSequences = new AtomicLong[0];
+
+	// Last known minimum of the gating sequences, saves scanning them on every claim
+	private volatile long gatingCache = -1;
+
+	private WaitStrategy waitStrategy;
+
+	// Blocking wait strategies park here until a sequence moves
+	private ReentrantLock lock = new ReentrantLock();
+
+	private Condition sequenceMoved = lock.newCondition();
+
+	// Number of parked threads, lets the threads that move sequences skip the lock while nobody waits
+	private AtomicInteger parked = new AtomicInteger(0);
+
+	private volatile boolean halted = false;
+
+	RequestRing(int size, WaitStrategy waitStrategy) {
+		if (size < 1 || Integer.bitCount(size) != 1)
+			throw new IllegalArgumentException("Ring size must be a power of two: " + size);
+		this.slots = new ServerDataEvent[size];
+		this.mask = size - 1;
+		this.indexShift = Integer.numberOfTrailingZeros(size);
+		this.published = new AtomicIntegerArray(size);
+		this.completed = new AtomicIntegerArray(size);
+		for (int i = 0; i < size; i++) {
+			this.slots[i] = new ServerDataEvent();
+			this.published.set(i, -1);
+			this.completed.set(i, -1);
+		}
+		this.waitStrategy = waitStrategy;
+	}
+
+	void setGatingSequences(AtomicLong... gatingSequences) {
+		this.gatingSequences = gatingSequences;
+	}
+
+	/**
+	 * Claims the next slot, waits while the ring is full. Safe to be called by many producers.
+	 *
+	 * @return the sequence of the claimed slot, -1 if the ring was halted while waiting
+	 */
+	long next() {
+		int attempts = 0;
+		while (true) {
+			long sequence = tryNext();
+			if (sequence >= 0)
+				return sequence;
+			if (halted)
+				return -1;
+			waitStrategy.idle(attempts++, this);
+		}
+	}
+
+	/**
+	 * Claims the next slot without waiting. Safe to be called by many producers.
+	 *
+	 * @return the sequence of the claimed slot, -1 if the ring is full
+	 */
+	long tryNext() {
+		while (true) {
+			long current = cursor.get();
+			long next = current + 1;
+			long wrapPoint = next - slots.length;
+			if (wrapPoint > gatingCache) {
+				long gating = minimum(gatingSequences, current);
+				if (wrapPoint > gating)
+					return -1;
+				gatingCache = gating;
+			}
+			if (cursor.compareAndSet(current, next))
+				return next;
+		}
+	}
+
+	ServerDataEvent get(long sequence) {
+		return slots[(int) sequence & mask];
+	}
+
+	/**
+	 * Makes a filled slot visible to the first stage.
+	 */
+	void publish(long sequence) {
+		published.set((int) sequence & mask, (int) (sequence >>> indexShift));
+		signal();
+	}
+
+	boolean isPublished(long sequence) {
+		return published.get((int) sequence & mask) == (int) (sequence >>> indexShift);
+	}
+
+	/**
+	 * Marks a slot as done by the stage that processes it, the stage behind may take it regardless of the slots in
+	 * front of it.
+	 */
+	void complete(long sequence) {
+		completed.set((int) sequence & mask, (int) (sequence >>> indexShift));
+	}
+
+	boolean isCompleted(long sequence) {
+		return completed.get((int) sequence & mask) == (int) (sequence >>> indexShift);
+	}
+
+	/**
+	 * @return the highest sequence claimed by a producer, the slot may not be published yet
+	 */
+	long claimed() {
+		return cursor.get();
+	}
+
+	/**
+	 * Producers may publish out of claim order, consumers may only proceed up to the first gap.
+	 *
+	 * @return the highest sequence from lowerBound on up to which every slot is published, lowerBound - 1 if none is
+	 */
+	long highestPublished(long lowerBound) {
+		long claimed = cursor.get();
+		for (long sequence = lowerBound; sequence <= claimed; sequence++) {
+			if (!isPublished(sequence))
+				return sequence - 1;
+		}
+		return claimed;
+	}
+
+	int size() {
+		return slots.length;
+	}
+
+	WaitStrategy getWaitStrategy() {
+		return waitStrategy;
+	}
+
+	/**
+	 * Releases all producers and consumers that are waiting on the ring.
+	 */
+	void halt() {
+		this.halted = true;
+		lock.lock();
+		try {
+			sequenceMoved.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	boolean isHalted() {
+		return halted;
+	}
+
+	/**
+	 * Wakes up the threads parked by a blocking wait strategy. Called by every thread that moves a sequence.
+	 */
+	void signal() {
+		if (parked.get() > 0) {
+			lock.lock();
+			try {
+				sequenceMoved.signalAll();
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * Parks the calling thread until the next {@link #signal()}. The caller re-checks its sequence afterwards, the
+	 * timeout only guards against a signal that raced with parking.
+	 */
+	void await() {
+		parked.incrementAndGet();
+		lock.lock();
+		try {
+			if (!halted) {
+				sequenceMoved.await(1, TimeUnit.MILLISECONDS);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			lock.unlock();
+			parked.decrementAndGet();
+		}
+	}
+
+	static long minimum(AtomicLong[] sequences, long minimum) {
+		for (AtomicLong sequence : sequences) {
+			minimum = Math.min(minimum, sequence.get());
+		}
+		return minimum;
+	}
+
+}
@@ -0,0 +1,42 @@
+package com.schlimm.webappbenchmarker.server;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps a stage of the {@link WorkProcessor} behind the stage in front of it. The first stage follows the slots
+ * published by the reactors, later stages follow the sequences of the previous stage's threads.
+ *
+ * @author Niklas Schlimm
+ *
+ */
+class SequenceBarrier {
+
+	private RequestRing ring;
+
+	// Sequences of the previous stage, empty for the first stage
+	private AtomicLong[] dependencies;
+
+	SequenceBarrier(RequestRing ring, AtomicLong... dependencies) {
+		super();
+		this.ring = ring;
+		this.dependencies = dependencies;
+	}
+
+	/**
+	 * Waits until the slot with the given sequence may be processed by this stage.
+	 *
+	 * @return the highest sequence that may be processed, at least the requested one, -1 if the ring was halted
+	 */
+	long waitFor(long sequence) {
+		int attempts = 0;
+		while (true) {
+			long available = dependencies.length == 0 ? ring.highestPublished(sequence) : RequestRing.minimum(dependencies, Long.MAX_VALUE);
+			if (available >= sequence)
+				return available;
+			if (ring.isHalted())
+				return -1;
+			ring.getWaitStrategy().idle(attempts++, ring);
+		}
+	}
+
+}
@@ -1,17 +1,52 @@
 package com.schlimm.webappbenchmarker.server;
 
-import java.nio.channels.SocketChannel;
+import java.nio.ByteBuffer;
 
+import com.schlimm.webappbenchmarker.protocol.PooledSlab;
+
+/**
+ * Slot of the {@link RequestRing}. Slots are allocated once and refilled for every request.
+ */
 class ServerDataEvent {
-	public NioServer server;
-	public SocketChannel socket;
+	public NioReactor reactor;
+	public Connection connection;
+	public int requestId;
+	// The encoded request, a slice of the reactor's read buffer or a copy of it
+	public ByteBuffer frame;
+	// Reference to the read buffer the frame is sliced from, null if the frame is a copy
+	public PooledSlab slab;
 	public Object data;
 	public Object result;
-	
-	public ServerDataEvent(NioServer server, SocketChannel socket, Object data) {
-		this.server = server;
-		this.socket = socket;
-		this.data = data;
+	// Set if the request could not be decoded or executed, sent back in an error frame
+	public String error;
+	// Set if the request was handed to another executor that sends the result itself
+	public boolean detached;
+	// Set by the sender once the result is on its way, the slot may still wait for the slots in front of it
+	public boolean sent;
+
+	public void set(NioReactor reactor, Connection connection, int requestId, ByteBuffer frame, PooledSlab slab) {
+		this.reactor = reactor;
+		this.connection = connection;
+		this.requestId = requestId;
+		this.frame = frame;
+		this.slab = slab;
+		this.data = null;
+		this.result = null;
+		this.error = null;
+		this.detached = false;
+		this.sent = false;
 	}
-	
-}
\ No newline at end of file
+
+	/**
+	 * Drops the references to the request so the slot does not keep them reachable until it is reused.
+	 */
+	public void clear() {
+		this.reactor = null;
+		this.connection = null;
+		this.frame = null;
+		this.slab = null;
+		this.data = null;
+		this.result = null;
+	}
+
+}
@@ -0,0 +1,52 @@
+package com.schlimm.webappbenchmarker.server;
+
+/**
+ * Rate limiter of a client address. The bucket holds up to burst tokens and is refilled with the configured rate,
+ * every request takes one token.
+ *
+ * @author Niklas Schlimm
+ *
+ */
+class TokenBucket {
+
+	private double ratePerNano;
+
+	private double burst;
+
+	private double tokens;
+
+	private long lastRefill;
+
+	// Open connections of the client address, the bucket is dropped when the last one closes
+	private int connections = 0;
+
+	TokenBucket(double ratePerSecond, double burst) {
+		super();
+		this.ratePerNano = ratePerSecond / 1000000000d;
+		this.burst = burst;
+		this.tokens = burst;
+		this.lastRefill = System.nanoTime();
+	}
+
+	synchronized boolean tryAcquire() {
+		long now = System.nanoTime();
+		tokens = Math.min(burst, tokens + (now - lastRefill) * ratePerNano);
+		lastRefill = now;
+		if (tokens < 1)
+			return false;
+		tokens--;
+		return true;
+	}
+
+	synchronized void connected() {
+		connections++;
+	}
+
+	/**
+	 * @return true if that was the last open connection
+	 */
+	synchronized boolean disconnected() {
+		return --connections == 0;
+	}
+
+}
@@ -0,0 +1,58 @@
+package com.schlimm.webappbenchmarker.server;
+
+/**
+ * How the stages of the {@link WorkProcessor} and the reactors wait on the {@link RequestRing} when there is nothing to
+ * consume or no free slot to claim. The strategies trade CPU burned while idle for the latency of picking up the next
+ * event.
+ *
+ * @author Niklas Schlimm
+ *
+ */
+public enum WaitStrategy {
+
+	/**
+	 * Spins on the sequence. Lowest latency, keeps one core busy per waiting thread.
+	 */
+	BUSY_SPIN {
+		@Override
+		void idle(int attempts, RequestRing ring) {
+			// spin
+		}
+	},
+
+	/**
+	 * Spins for a while, then yields the core to other runnable threads.
+	 */
+	YIELD {
+		@Override
+		void idle(int attempts, RequestRing ring) {
+			if (attempts > SPIN_TRIES) {
+				Thread.yield();
+			}
+		}
+	},
+
+	/**
+	 * Spins briefly, then parks the thread until another thread moves a sequence of the ring. Cheapest on CPU and the
+	 * right choice when there are fewer cores than server threads.
+	 */
+	PARK {
+		@Override
+		void idle(int attempts, RequestRing ring) {
+			if (attempts > SPIN_TRIES) {
+				ring.await();
+			}
+		}
+	};
+
+	private static final int SPIN_TRIES = 100;
+
+	/**
+	 * Called once per unsuccessful attempt.
+	 *
+	 * @param attempts
+	 *            number of attempts so far, starts at 0 every time the thread begins to wait
+	 */
+	abstract void idle(int attempts, RequestRing ring);
+
+}
@@ -1,96 +1,288 @@
 package com.schlimm.webappbenchmarker.server;
 
-import java.io.IOException;
-import java.nio.channels.SocketChannel;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.Callable;
-import java.util.concurrent.CompletionService;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorCompletionService;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
+import com.schlimm.webappbenchmarker.command.ClientCommand;
+import com.schlimm.webappbenchmarker.command.CommandExecutor;
 import com.schlimm.webappbenchmarker.command.ServerCommand;
 import com.schlimm.webappbenchmarker.command.system.ServerCommandHandler;
-import com.schlimm.webappbenchmarker.protocol.ApplicationLayerProtocol;
-import com.schlimm.webappbenchmarker.protocol.StandardJavaSerialization;
+import com.schlimm.webappbenchmarker.protocol.PooledSlab;
 
+/**
+ * Executes the requests read by the {@link NioReactor}s. Requests travel through a pre-allocated {@link RequestRing}
+ * in two stages: a pool of workers decodes and executes them, the work processor thread itself encodes the results
+ * and hands them to the reactors as soon as their slot is completed, so a long running command holds back no other
+ * request. Responses carry the request ID, the client does not depend on their order. Slots are freed in ring order
+ * once every slot in front of them was sent. When the ring is full a reactor stops reading from the connection
+ * whose request did not fit and retries it once a slot is free, the reactor thread never blocks. Depending on
+ * the {@link ExecutionMode} a worker hands blocking commands to a virtual thread, which sends the result itself, so
+ * the worker is free for the next request right away.
+ *
+ * @author Niklas Schlimm
+ *
+ */
 public class WorkProcessor implements Runnable {
-	
-	private BlockingQueue<ServerDataEvent> sharedWorkQueue = new LinkedBlockingQueue<ServerDataEvent>();
+
+	public static final int DEFAULT_RING_SIZE = 1024;
+
 	private int poolSize = Runtime.getRuntime().availableProcessors();
-	private ExecutorService threadPool = Executors.newFixedThreadPool(poolSize);
-	private CompletionService<Object> service = new ExecutorCompletionService<Object>(threadPool);
-	private boolean running = true;
-	private ServerCommand standardDispatcher = new ServerCommandHandler();
-
-	public void dropData(NioServer server, SocketChannel socket, byte[] data, int count) throws IOException, ClassNotFoundException {
-		ApplicationLayerProtocol protocol = new StandardJavaSerialization();
-		byte[] dataCopy = new byte[count];
-		System.arraycopy(data, 0, dataCopy, 0, count);
-		sharedWorkQueue.add(new ServerDataEvent(server, socket, protocol.fromByteArray(dataCopy)));
+	private ExecutorService threadPool = Executors.newFixedThreadPool(poolSize, new WorkerThreadFactory("Work-Processor-Worker-"));
+	private ServerCommandHandler standardDispatcher = new ServerCommandHandler();
+	// Reactors hand out slices of their read buffers instead of copying every request
+	private boolean zeroCopy;
+
+	private ExecutionMode executionMode;
+
+	// Runs the commands that do not go to the worker pool, created unless every command is pooled
+	private ExecutorService blockingExecutor;
+
+	private RequestRing ring;
+
+	// Highest sequence claimed by any of the workers
+	private AtomicLong workSequence = new AtomicLong(-1);
+
+	private TaskWorker[] workers = new TaskWorker[poolSize];
+
+	// Highest sequence up to which every slot was sent, gates the reactors
+	private AtomicLong sendSequence = new AtomicLong(-1);
+
+	public WorkProcessor() {
+		this(true);
 	}
 
-	public class TaskWorker implements Callable<Object> {
+	public WorkProcessor(boolean zeroCopy) {
+		this(zeroCopy, DEFAULT_RING_SIZE, WaitStrategy.PARK, ExecutionMode.DECLARED);
+	}
 
-		private ServerDataEvent event;
+	public WorkProcessor(boolean zeroCopy, int ringSize, WaitStrategy waitStrategy, ExecutionMode executionMode) {
+		super();
+		this.zeroCopy = zeroCopy;
+		this.executionMode = executionMode;
+		if (executionMode != ExecutionMode.POOLED) {
+			this.blockingExecutor = newVirtualThreadPerTaskExecutor();
+		}
+		this.ring = new RequestRing(ringSize, waitStrategy);
+		SequenceBarrier workBarrier = new SequenceBarrier(ring);
+		for (int i = 0; i < poolSize; i++) {
+			workers[i] = new TaskWorker(workBarrier);
+		}
+		this.ring.setGatingSequences(sendSequence);
+	}
 
-		public TaskWorker(ServerDataEvent event) {
+	public boolean isZeroCopy() {
+		return zeroCopy;
+	}
+
+	/**
+	 * Publishes a request to the ring unless the ring is full. The frame is decoded by a worker thread, if it is a
+	 * slice of a reactor's read buffer the worker releases the slab once the request is decoded.
+	 *
+	 * @return false if the ring is full, the caller keeps the frame and the slab and tries again later
+	 */
+	public boolean dropData(NioReactor reactor, Connection connection, int requestId, ByteBuffer frame, PooledSlab slab) {
+		if (ring.isHalted()) {
+			// we are shutting down
+			if (slab != null)
+				slab.release();
+			return true;
+		}
+		long sequence = ring.tryNext();
+		if (sequence < 0)
+			return false;
+		ring.get(sequence).set(reactor, connection, requestId, frame, slab);
+		ring.publish(sequence);
+		return true;
+	}
+
+	/**
+	 * Stops the workers and the sender.
+	 */
+	public void stop() {
+		ring.halt();
+		threadPool.shutdown();
+		if (blockingExecutor != null) {
+			blockingExecutor.shutdown();
+		}
+	}
+
+	// Virtual threads need Java 21, older JVMs get a platform thread per task instead
+	private static ExecutorService newVirtualThreadPerTaskExecutor() {
+		try {
+			Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) factory.invoke(null);
+		} catch (Exception e) {
+			System.out.println("Virtual threads not supported by this JVM, running blocking commands on a thread per request");
+			return Executors.newCachedThreadPool(new WorkerThreadFactory("Work-Processor-Blocking-"));
+		}
+	}
+
+	private static class WorkerThreadFactory implements ThreadFactory {
+
+		private String namePrefix;
+		private AtomicInteger threadNumber = new AtomicInteger(0);
+
+		public WorkerThreadFactory(String namePrefix) {
 			super();
-			this.event = event;
+			this.namePrefix = namePrefix;
 		}
 
 		@Override
-		public Object call() throws Exception {
-			event.result = standardDispatcher.execute(event.data);
-			return event;
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, namePrefix + threadNumber.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
 		}
 	}
 
-	public class ResultSender implements Runnable {
+	/**
+	 * Decodes and executes requests. The workers share the slots, each claims the next unclaimed sequence and marks
+	 * the slot completed when it is done with it, whatever the command threw.
+	 */
+	public class TaskWorker implements Runnable {
 
-		private CompletionService<Object> service;
-		private boolean running = true;
-		private ApplicationLayerProtocol protocol = new StandardJavaSerialization();
+		private SequenceBarrier barrier;
 
-		public ResultSender(CompletionService<Object> service) {
+		public TaskWorker(SequenceBarrier barrier) {
 			super();
-			this.service = service;
+			this.barrier = barrier;
 		}
 
 		@Override
 		public void run() {
-			while (this.running) {
-				ServerDataEvent event;
+			boolean processed = true;
+			long next = 0;
+			long available = -1;
+			while (true) {
+				if (processed) {
+					processed = false;
+					next = workSequence.incrementAndGet();
+					ring.signal();
+				}
+				if (available >= next) {
+					process(ring.get(next));
+					ring.complete(next);
+					processed = true;
+				} else {
+					available = barrier.waitFor(next);
+					if (available < 0)
+						break;
+				}
+			}
+		}
+
+		private void process(ServerDataEvent event) {
+			try {
 				try {
-					event = (ServerDataEvent) service.take().get();
-				    event.server.send(event.socket, protocol.toByteArray(event.result));
-				} catch (InterruptedException e) {
-					Thread.currentThread().interrupt();
-					break;
-				} catch (ExecutionException e) {
-					e.printStackTrace();
+					event.data = event.connection.getProtocol().decode(event.frame);
+				} finally {
+					if (event.slab != null) {
+						event.slab.release();
+					}
+					event.frame = null;
+					event.slab = null;
+				}
+				ClientCommand command = (ClientCommand) event.data;
+				ServerCommand serverCommand = standardDispatcher.lookup(command);
+				if (serverCommand == null)
+					throw new IllegalArgumentException("Unknown server command: " + command.getServerCommandClassName());
+				if (executionMode.executorFor(serverCommand) == CommandExecutor.VIRTUAL_THREAD) {
+					blockingExecutor.execute(new DetachedTask(event.reactor, event.connection, event.requestId, command));
+					event.detached = true;
+					return;
 				}
+				event.result = standardDispatcher.execute(command);
+			} catch (Throwable e) {
+				// an error of one command must neither kill the worker nor leave the slot uncompleted
+				e.printStackTrace();
+				event.error = e.toString();
 			}
 		}
+	}
+
+	/**
+	 * Executes a command off the ring and sends the result itself.
+	 */
+	private class DetachedTask implements Runnable {
+
+		private NioReactor reactor;
+		private Connection connection;
+		private int requestId;
+		private ClientCommand command;
+
+		public DetachedTask(NioReactor reactor, Connection connection, int requestId, ClientCommand command) {
+			super();
+			this.reactor = reactor;
+			this.connection = connection;
+			this.requestId = requestId;
+			this.command = command;
+		}
 
+		@Override
+		public void run() {
+			try {
+				Object result = standardDispatcher.execute(command);
+				reactor.send(connection, requestId, connection.getProtocol().encode(result));
+			} catch (Throwable e) {
+				e.printStackTrace();
+				reactor.requestFailed(connection, requestId, e.toString());
+			}
+		}
 	}
 
 	public void run() {
 
-		Executors.newSingleThreadExecutor().submit(new ResultSender(service));
+		for (TaskWorker worker : workers) {
+			threadPool.execute(worker);
+		}
 
-		while (running) {
-			ServerDataEvent event;
-			try {
-				event = sharedWorkQueue.take();
-				service.submit(new TaskWorker(event));
-			} catch (InterruptedException e) {
-				Thread.currentThread().interrupt();
-				break;
+		// Send the results as the slots complete, free the slots in ring order
+		long next = sendSequence.get() + 1;
+		int attempts = 0;
+		while (!ring.isHalted()) {
+			boolean progress = false;
+			long claimed = ring.claimed();
+			for (long sequence = next; sequence <= claimed; sequence++) {
+				if (ring.isCompleted(sequence) && !ring.get(sequence).sent) {
+					send(ring.get(sequence));
+					progress = true;
+				}
+			}
+			long free = next;
+			while (free <= claimed && ring.isCompleted(free)) {
+				free++;
+			}
+			if (free > next) {
+				next = free;
+				sendSequence.set(next - 1);
+				ring.signal();
+				progress = true;
+			}
+			if (progress) {
+				attempts = 0;
+			} else {
+				ring.getWaitStrategy().idle(attempts++, ring);
 			}
 		}
 
 	}
-}
\ No newline at end of file
+
+	private void send(ServerDataEvent event) {
+		try {
+			if (event.error != null) {
+				event.reactor.requestFailed(event.connection, event.requestId, event.error);
+			} else if (!event.detached) {
+				event.reactor.send(event.connection, event.requestId, event.connection.getProtocol().encode(event.result));
+			}
+		} catch (RuntimeException e) {
+			e.printStackTrace();
+		}
+		event.sent = true;
+		event.clear();
+	}
+}
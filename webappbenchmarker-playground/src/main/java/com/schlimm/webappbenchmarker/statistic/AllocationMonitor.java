@@ -0,0 +1,62 @@
+package com.schlimm.webappbenchmarker.statistic;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Measures the heap allocated by a group of threads, identified by their name prefixes. Relies on the allocation
+ * counters of the HotSpot {@link com.sun.management.ThreadMXBean}, only threads alive at the time of the measurement
+ * are counted, so the monitored threads should be long-lived (reactors, workers).
+ * 
+ * @author Niklas Schlimm
+ * 
+ */
+public class AllocationMonitor {
+
+	private com.sun.management.ThreadMXBean threadBean;
+
+	private String[] threadNamePrefixes;
+
+	public AllocationMonitor(String... threadNamePrefixes) {
+		super();
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean && ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported()) {
+			this.threadBean = (com.sun.management.ThreadMXBean) bean;
+			this.threadBean.setThreadAllocatedMemoryEnabled(true);
+		}
+		this.threadNamePrefixes = threadNamePrefixes;
+	}
+
+	public boolean isSupported() {
+		return threadBean != null;
+	}
+
+	/**
+	 * @return the number of bytes allocated so far by the live threads of the group, -1 if the JVM does not support
+	 *         allocation counters
+	 */
+	public long allocatedBytes() {
+		if (threadBean == null)
+			return -1;
+		long[] ids = threadBean.getAllThreadIds();
+		ThreadInfo[] infos = threadBean.getThreadInfo(ids);
+		long[] allocated = threadBean.getThreadAllocatedBytes(ids);
+		long total = 0;
+		for (int i = 0; i < ids.length; i++) {
+			if (infos[i] != null && allocated[i] > 0 && matches(infos[i].getThreadName())) {
+				total += allocated[i];
+			}
+		}
+		return total;
+	}
+
+	private boolean matches(String threadName) {
+		for (String prefix : threadNamePrefixes) {
+			if (threadName.startsWith(prefix))
+				return true;
+		}
+		return false;
+	}
+
+}
@@ -0,0 +1,247 @@
+package com.schlimm.webappbenchmarker.statistic;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Fixed memory histogram of non-negative values, laid out like an HdrHistogram: values below 2^subBucketBits get a
+ * bucket of their own, larger values share buckets whose width doubles with every power of two, so every value is
+ * recorded with a relative error below 2^-(subBucketBits-1). Alongside the buckets the exact count, min, max and the
+ * Welford running mean and variance are kept, so mean and standard deviation are exact while percentiles are accurate
+ * to the bucket width. Recording does not allocate and is not thread-safe, every thread records into a histogram of
+ * its own and the histograms are merged afterwards, which is lossless.
+ *
+ * @author Niklas Schlimm
+ *
+ */
+public class Histogram implements Serializable {
+
+	/**
+	 * Version
+	 */
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * 128 exact buckets, less than 1.6% relative error above.
+	 */
+	public static final int DEFAULT_SUB_BUCKET_BITS = 7;
+
+	private int subBucketBits;
+
+	private long count = 0;
+
+	private double mean = 0;
+
+	// Sum of squared deviations from the mean (Welford)
+	private double m2 = 0;
+
+	private double min = Double.NaN;
+
+	private double max = Double.NaN;
+
+	// Serialized sparsely, see writeObject()
+	private transient long[] counts;
+
+	public Histogram() {
+		this(DEFAULT_SUB_BUCKET_BITS);
+	}
+
+	public Histogram(int subBucketBits) {
+		super();
+		if (subBucketBits < 1 || subBucketBits > 16)
+			throw new IllegalArgumentException("Sub bucket bits must be within 1 and 16: " + subBucketBits);
+		this.subBucketBits = subBucketBits;
+		this.counts = new long[bucketIndex(Long.MAX_VALUE, subBucketBits) + 1];
+	}
+
+	/**
+	 * Records a value. The histogram buckets hold the value rounded to a long, negative values are counted in the
+	 * bucket of 0, mean, variance, min and max use the exact value.
+	 */
+	public void record(double value) {
+		count++;
+		double delta = value - mean;
+		mean += delta / count;
+		m2 += delta * (value - mean);
+		if (count == 1 || value < min)
+			min = value;
+		if (count == 1 || value > max)
+			max = value;
+		counts[bucketIndex(Math.max(0, Math.round(value)), subBucketBits)]++;
+	}
+
+	/**
+	 * Records a value measured by a closed loop that expected to take a sample every expectedInterval. A value longer
+	 * than the interval held back the samples that would have been taken meanwhile, they are recorded as well, each one
+	 * interval shorter than the one before (coordinated omission correction as in HdrHistogram).
+	 * 
+	 * @param expectedInterval
+	 *            in the unit of the value, no correction if not positive
+	 */
+	public void recordCorrected(double value, double expectedInterval) {
+		record(value);
+		if (expectedInterval <= 0)
+			return;
+		for (double missing = value - expectedInterval; missing >= expectedInterval; missing -= expectedInterval) {
+			record(missing);
+		}
+	}
+
+	/**
+	 * Adds the values recorded by the other histogram, as if they had been recorded by this one. Mean and variance are
+	 * combined with Chan's parallel algorithm.
+	 */
+	public void merge(Histogram other) {
+		if (other.subBucketBits != subBucketBits)
+			throw new IllegalArgumentException("Histograms of different precision: " + subBucketBits + " / " + other.subBucketBits);
+		if (other.count == 0)
+			return;
+		if (count == 0) {
+			min = other.min;
+			max = other.max;
+		} else {
+			min = Math.min(min, other.min);
+			max = Math.max(max, other.max);
+		}
+		long total = count + other.count;
+		double delta = other.mean - mean;
+		mean += delta * other.count / total;
+		m2 += other.m2 + delta * delta * ((double) count * other.count / total);
+		count = total;
+		for (int i = 0; i < counts.length; i++) {
+			counts[i] += other.counts[i];
+		}
+	}
+
+	public void reset() {
+		count = 0;
+		mean = 0;
+		m2 = 0;
+		min = Double.NaN;
+		max = Double.NaN;
+		Arrays.fill(counts, 0);
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	public double getMean() {
+		return mean;
+	}
+
+	/**
+	 * @return the population variance
+	 */
+	public double getVariance() {
+		return count == 0 ? 0 : m2 / count;
+	}
+
+	public double getMin() {
+		return min;
+	}
+
+	public double getMax() {
+		return max;
+	}
+
+	/**
+	 * @param percentile
+	 *            within 0 and 100, e.g. 99.9
+	 * @return the largest value the bucket holding the given percentile may contain, never more than the maximum
+	 *         recorded, NaN if nothing was recorded
+	 */
+	public double getValueAtPercentile(double percentile) {
+		if (count == 0)
+			return Double.NaN;
+		long rank = Math.max(1, (long) Math.ceil(Math.min(100, Math.max(0, percentile)) / 100 * count));
+		long seen = 0;
+		for (int i = 0; i < counts.length; i++) {
+			seen += counts[i];
+			if (seen >= rank) {
+				return Math.min(max, highestEquivalentValue(i, subBucketBits));
+			}
+		}
+		return max;
+	}
+
+	/**
+	 * Writes the histogram compactly: the exact statistics, then index and count of every non-empty bucket.
+	 */
+	public void encode(ByteBuffer out) {
+		out.put((byte) subBucketBits).putLong(count).putDouble(mean).putDouble(m2).putDouble(min).putDouble(max);
+		out.putInt(nonEmptyBuckets());
+		for (int i = 0; i < counts.length; i++) {
+			if (counts[i] != 0) {
+				out.putInt(i).putLong(counts[i]);
+			}
+		}
+	}
+
+	public static Histogram decode(ByteBuffer in) {
+		Histogram histogram = new Histogram(in.get());
+		histogram.count = in.getLong();
+		histogram.mean = in.getDouble();
+		histogram.m2 = in.getDouble();
+		histogram.min = in.getDouble();
+		histogram.max = in.getDouble();
+		int buckets = in.getInt();
+		for (int i = 0; i < buckets; i++) {
+			int index = in.getInt();
+			histogram.counts[index] = in.getLong();
+		}
+		return histogram;
+	}
+
+	private int nonEmptyBuckets() {
+		int buckets = 0;
+		for (long bucketCount : counts) {
+			if (bucketCount != 0)
+				buckets++;
+		}
+		return buckets;
+	}
+
+	static int bucketIndex(long value, int subBucketBits) {
+		if (value < (1L << subBucketBits))
+			return (int) value;
+		// shift the value until it fits into the upper half of the sub buckets
+		int shift = 64 - Long.numberOfLeadingZeros(value) - subBucketBits;
+		return (shift << (subBucketBits - 1)) + (int) (value >>> shift);
+	}
+
+	static long highestEquivalentValue(int index, int subBucketBits) {
+		if (index < (1 << subBucketBits))
+			return index;
+		int half = 1 << (subBucketBits - 1);
+		int shift = index / half - 1;
+		long subBucket = index % half + half;
+		return ((subBucket + 1) << shift) - 1;
+	}
+
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		out.defaultWriteObject();
+		out.writeInt(nonEmptyBuckets());
+		for (int i = 0; i < counts.length; i++) {
+			if (counts[i] != 0) {
+				out.writeInt(i);
+				out.writeLong(counts[i]);
+			}
+		}
+	}
+
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		counts = new long[bucketIndex(Long.MAX_VALUE, subBucketBits) + 1];
+		int buckets = in.readInt();
+		for (int i = 0; i < buckets; i++) {
+			int index = in.readInt();
+			counts[index] = in.readLong();
+		}
+	}
+
+}
@@ -1,72 +1,190 @@
 package com.schlimm.webappbenchmarker.statistic;
 
-import java.util.*;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Runs a task as often as possible for the test time and returns the number of calls, normalized to exactly the test
+ * time. The deadline is taken from {@link System#nanoTime()} and checked once per batch of calls, the batch grows until
+ * it takes about {@link #BATCH_NANOS}, so reading the clock costs next to nothing and the run overshoots the deadline by
+ * at most two batches. The cost of the measuring loop itself is calibrated once per JVM with an empty task and
+ * subtracted from the elapsed time, but never more than half of it: a task that costs about as much as the loop is
+ * below the resolution of the calibration. A run never has to be retried: a run that overshoots on a loaded box is
+ * scaled back to the test time instead of being thrown away.
+ *
+ * @author Heinz Kabutz, adopted by Niklas Schlimm
+ */
 public class PerformanceChecker {
 
-  private volatile boolean expired = false;
-  private final long testTime;
-  private final Runnable task;
-  /**
-   * Accuracy of test.  It must finish within 20ms of the testTime
-   * otherwise we retry the test.  This could be configurable.
-   */
-  public static final int EPSILON = 20;
-  
-  private static final int MAXIMUM_ATTEMPTS = 3;
-
-  public PerformanceChecker(long testTime, Runnable task) {
-    this.testTime = testTime;
-    this.task = task;
-  }
-
-  public long start() {
-    long numberOfLoops;
-    long start;
-    int runs = 0;
-    do {
-      if (++runs > MAXIMUM_ATTEMPTS) {
-        throw new IllegalStateException("Test not accurate");
-      }
-      collectGarbage();
-      expired = false;
-      start = System.currentTimeMillis();
-      numberOfLoops = 0;
-      Timer timer = new Timer();
-      timer.schedule(new TimerTask() {
-        public void run() {
-          expired = true;
-        }
-      }, testTime);
-      while (!expired) {
-        getTask().run();
-        numberOfLoops++;
-      }
-      start = System.currentTimeMillis() - start;
-      timer.cancel();
-    } while (Math.abs(start - testTime) > EPSILON);
-    collectGarbage();
-    return numberOfLoops;
-  }
-
-  private void collectGarbage() {
-    for (int i = 0; i < 3; i++) {
-      System.gc();
-      try {
-        Thread.sleep(10);
-      } catch (InterruptedException e) {
-        Thread.currentThread().interrupt();
-        break;
-      }
-    }
-  }
-
-public Runnable getTask() {
-	return task;
-}
+	/**
+	 * Target duration of a batch of calls between two reads of the clock.
+	 */
+	public static final long BATCH_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+	private static final int MAXIMUM_BATCH = 1 << 20;
+
+	private static final long CALIBRATION_TIME = 100;
+
+	private static final int CALIBRATION_RUNS = 5;
+
+	// Nanoseconds the measuring loop costs per call of an empty task, -1 until calibrated
+	private static volatile double loopOverhead = -1;
+
+	/**
+	 * Two-sided 95% quantiles of Student's t-distribution for 1 to 30 degrees of freedom, the normal quantile is used
+	 * above.
+	 */
+	private static final double[] T_95 = { 12.706, 4.303, 3.182, 2.776, 2.571, 2.447, 2.365, 2.306, 2.262, 2.228, 2.201, 2.179, 2.160, 2.145, 2.131, 2.120, 2.110, 2.101, 2.093, 2.086, 2.080, 2.074, 2.069, 2.064, 2.060, 2.056, 2.052, 2.048, 2.045, 2.042 };
+
+	private final long testTime;
+	private final Runnable task;
+
+	private long lastOperations;
+	private long lastElapsedNanos;
+	private double lastNanosPerOperation;
+
+	/**
+	 * @param testTime
+	 *            the number of milliseconds that the test should execute
+	 * @param task
+	 *            the task that should be executed repeatedly until the time is used up
+	 */
+	public PerformanceChecker(long testTime, Runnable task) {
+		this.testTime = testTime;
+		this.task = task;
+	}
+
+	/**
+	 * Runs the task for the test time.
+	 *
+	 * @return the number of times the task could be called in the test time, without the cost of the measuring loop
+	 */
+	public long start() {
+		double overhead = loopOverhead();
+		collectGarbage();
+		long testNanos = TimeUnit.MILLISECONDS.toNanos(testTime);
+		long[] result = measure(task, testNanos);
+		long operations = result[0];
+		long elapsed = result[1];
+		long net = netNanos(operations, elapsed, overhead);
+		lastOperations = operations;
+		lastElapsedNanos = elapsed;
+		lastNanosPerOperation = (double) net / operations;
+		collectGarbage();
+		return Math.round(operations * (double) testNanos / net);
+	}
+
+	/**
+	 * @return the elapsed time without the cost of the measuring loop, at least half of the elapsed time
+	 */
+	static long netNanos(long operations, long elapsed, double overhead) {
+		return elapsed - Math.min(Math.round(operations * overhead), elapsed / 2);
+	}
+
+	/**
+	 * @param degreesOfFreedom
+	 *            at least 1
+	 * @return the two-sided 95% quantile of Student's t-distribution
+	 */
+	static double studentT95(long degreesOfFreedom) {
+		return degreesOfFreedom <= T_95.length ? T_95[(int) degreesOfFreedom - 1] : 1.96;
+	}
+
+	/**
+	 * The measuring loop, shared by the calibration and the test runs so both pay for the same call site.
+	 *
+	 * @return number of calls and elapsed nanoseconds
+	 */
+	private static long[] measure(Runnable task, long testNanos) {
+		long operations = 0;
+		int batch = 1;
+		long begin = System.nanoTime();
+		long deadline = begin + testNanos;
+		long now = begin;
+		while (now - deadline < 0) {
+			long batchStart = now;
+			for (int i = 0; i < batch; i++) {
+				task.run();
+			}
+			operations += batch;
+			now = System.nanoTime();
+			if (now - batchStart < BATCH_NANOS && batch < MAXIMUM_BATCH)
+				batch <<= 1;
+		}
+		return new long[] { operations, now - begin };
+	}
 
-@Override
+	/**
+	 * Calibrates the cost of the measuring loop on first use. The fastest of a few runs is taken, slower runs were
+	 * disturbed by something else.
+	 */
+	private static double loopOverhead() {
+		if (loopOverhead < 0) {
+			synchronized (PerformanceChecker.class) {
+				if (loopOverhead < 0) {
+					Runnable empty = new Runnable() {
+						@Override
+						public void run() {
+						}
+					};
+					double fastest = Double.MAX_VALUE;
+					for (int i = 0; i < CALIBRATION_RUNS; i++) {
+						long[] result = measure(empty, TimeUnit.MILLISECONDS.toNanos(CALIBRATION_TIME));
+						fastest = Math.min(fastest, (double) result[1] / result[0]);
+					}
+					loopOverhead = fastest;
+				}
+			}
+		}
+		return loopOverhead;
+	}
+
+	private void collectGarbage() {
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+			try {
+				Thread.sleep(10);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			}
+		}
+	}
+
+	public Runnable getTask() {
+		return task;
+	}
+
+	public long getTestTime() {
+		return testTime;
+	}
+
+	/**
+	 * @return number of calls of the last run, not normalized
+	 */
+	public long getLastOperations() {
+		return lastOperations;
+	}
+
+	/**
+	 * @return wall clock time of the last run including the loop overhead
+	 */
+	public long getLastElapsedNanos() {
+		return lastElapsedNanos;
+	}
+
+	/**
+	 * @return nanoseconds per call of the last run, without the loop overhead
+	 */
+	public double getLastNanosPerOperation() {
+		return lastNanosPerOperation;
+	}
+
+	public static double getLoopOverhead() {
+		return loopOverhead();
+	}
+
+	@Override
 	public String toString() {
-		return "Performance checker - test time : " + testTime + " - epsilon : " + EPSILON + " - max attempts : " + MAXIMUM_ATTEMPTS + " - task details : " + task.toString();
+		return "Performance checker - test time : " + testTime + " - batch nanos : " + BATCH_NANOS + " - loop overhead ns : " + String.format("%.2f", loopOverhead) + " - task details : " + task.toString();
 	}
-}
\ No newline at end of file
+}
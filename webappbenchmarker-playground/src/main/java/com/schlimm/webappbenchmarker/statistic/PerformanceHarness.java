@@ -15,7 +15,8 @@ public class PerformanceHarness {
 	 *            The test that we want to evaluate
 	 * @param runs
 	 *            How many times it should be executed
-	 * @return an average number of times that test could run
+	 * @return the number of times that test could run per test time, {@link Statistics#opsPerSecond()} and
+	 *         {@link Statistics#nanosPerOperation()} convert it to rates
 	 */
 	public Statistics calculatePerf(PerformanceChecker check, int runs) {
 		Statistics avg = new Statistics();
@@ -32,6 +33,7 @@ public class PerformanceHarness {
 		long jitAfter = ManagementFactory.getCompilationMXBean().getTotalCompilationTime();
 		long classesLoadedAfter = ManagementFactory.getClassLoadingMXBean().getTotalLoadedClassCount();
 		System.out.println("Stopped test harness for: " + check.toString());
+		avg.setTestTime(check.getTestTime());
 		avg.setJitTimeBeforeHarness(jitBefore);
 		avg.setJitTimeAfterHarness(jitAfter);
 		avg.setClassesLoadedBeforeHarness(classesLoadedPrior);
@@ -1,10 +1,11 @@
 package com.schlimm.webappbenchmarker.statistic;
 
 import java.io.Serializable;
-import java.util.*;
 
 /**
- * Calculates the mean and average of a series of numbers. Not the most efficient algorithm, but fast enough.
+ * Calculates the mean, standard deviation and percentiles of a series of numbers. The values are not kept, they are
+ * recorded into a fixed memory {@link Histogram}, so adding a value does not allocate and the statistics of many
+ * threads or runs can be merged.
  * 
  * @author Heinz Kabutz, adopted by Niklas Schlimm
  */
@@ -13,10 +14,9 @@ public class Statistics implements Serializable {
 	/**
 	 * Version
 	 */
-	private static final long serialVersionUID = 1L;
+	private static final long serialVersionUID = 2L;
 
-	/** The set of values stored as doubles. Autoboxed. */
-	private Collection<Double> values = new ArrayList<Double>();
+	private Histogram histogram;
 
 	private long jitTimeBeforeHarness = 0;
 	private long jitTimeAfterHarness = 0;
@@ -25,6 +25,18 @@ public class Statistics implements Serializable {
 
 	private long classesLoadedBeforeHarness;
 
+	// Milliseconds each value of the series was measured over, 0 if the values are not rates
+	private long testTime = 0;
+
+	public Statistics() {
+		this(new Histogram());
+	}
+
+	public Statistics(Histogram histogram) {
+		super();
+		this.histogram = histogram;
+	}
+
 	/**
 	 * Add a new value to the series. Changes the values returned by mean() and stddev().
 	 * 
@@ -32,43 +44,128 @@ public class Statistics implements Serializable {
 	 *            the new value to add to the series.
 	 */
 	public void add(double value) {
-		values.add(value);
+		histogram.record(value);
+	}
+
+	/**
+	 * Adds the series of the other statistics to this one.
+	 */
+	public void merge(Statistics other) {
+		histogram.merge(other.histogram);
 	}
 
 	/**
-	 * Calculate and return the mean of the series of numbers. Throws an exception if this is called before the add() method.
+	 * Return the mean of the series of numbers. Throws an exception if this is called before the add() method.
 	 * 
 	 * @return the mean of all the numbers added to the series.
 	 * @throws IllegalStateException
-	 *             if no values have been added yet. Otherwise we could cause a NullPointerException.
+	 *             if no values have been added yet.
 	 */
 	public double mean() {
-		int elements = values.size();
-		if (elements == 0)
-			throw new IllegalStateException("No values");
-		double sum = 0;
-		for (double value : values) {
-			sum += value;
-		}
-		return sum / elements;
+		checkNotEmpty();
+		return histogram.getMean();
 	}
 
 	/**
-	 * Calculate and return the standard deviation of the series of numbers. See Stats 101 for more information... Throws an
-	 * exception if this is called before the add() method.
+	 * Return the standard deviation of the series of numbers. See Stats 101 for more information... Throws an exception
+	 * if this is called before the add() method.
 	 * 
 	 * @return the standard deviation of numbers added to the series.
 	 * @throws IllegalStateException
-	 *             if no values have been added yet. Otherwise we could cause a NullPointerException.
+	 *             if no values have been added yet.
 	 */
 	public double stddev() {
-		double mean = mean();
-		double stddevtotal = 0;
-		for (double value : values) {
-			double dev = value - mean;
-			stddevtotal += dev * dev;
-		}
-		return Math.sqrt(stddevtotal / values.size());
+		checkNotEmpty();
+		return Math.sqrt(histogram.getVariance());
+	}
+
+	/**
+	 * @param percentile
+	 *            within 0 and 100, e.g. 99.9
+	 * @return the value below or at which the given percentage of the series lies, accurate to the histogram precision
+	 * @throws IllegalStateException
+	 *             if no values have been added yet.
+	 */
+	public double percentile(double percentile) {
+		checkNotEmpty();
+		return histogram.getValueAtPercentile(percentile);
+	}
+
+	public double p50() {
+		return percentile(50);
+	}
+
+	public double p90() {
+		return percentile(90);
+	}
+
+	public double p99() {
+		return percentile(99);
+	}
+
+	public double p999() {
+		return percentile(99.9);
+	}
+
+	public double min() {
+		checkNotEmpty();
+		return histogram.getMin();
+	}
+
+	public double max() {
+		checkNotEmpty();
+		return histogram.getMax();
+	}
+
+	public long count() {
+		return histogram.getCount();
+	}
+
+	/**
+	 * Half width of the 95% confidence interval of the mean, the series is treated as a sample of independent runs.
+	 * 
+	 * @return the value the true mean lies within around {@link #mean()} with 95% confidence, NaN for a single value
+	 * @throws IllegalStateException
+	 *             if no values have been added yet.
+	 */
+	public double confidenceInterval() {
+		checkNotEmpty();
+		long count = histogram.getCount();
+		if (count < 2)
+			return Double.NaN;
+		double sampleStddev = Math.sqrt(histogram.getVariance() * count / (count - 1));
+		return PerformanceChecker.studentT95(count - 1) * sampleStddev / Math.sqrt(count);
+	}
+
+	/**
+	 * @return the mean number of operations per second, the series must hold operation counts per {@link #getTestTime()},
+	 *         NaN if the series has no test time
+	 */
+	public double opsPerSecond() {
+		return testTime > 0 ? mean() * 1000d / testTime : Double.NaN;
+	}
+
+	/**
+	 * @return half width of the 95% confidence interval of {@link #opsPerSecond()}, NaN if the series has no test time
+	 */
+	public double opsPerSecondConfidenceInterval() {
+		return testTime > 0 ? confidenceInterval() * 1000d / testTime : Double.NaN;
+	}
+
+	/**
+	 * @return nanoseconds per operation at the mean rate, NaN if the series has no test time
+	 */
+	public double nanosPerOperation() {
+		return testTime > 0 ? testTime * 1000000d / mean() : Double.NaN;
+	}
+
+	public Histogram getHistogram() {
+		return histogram;
+	}
+
+	private void checkNotEmpty() {
+		if (histogram.getCount() == 0)
+			throw new IllegalStateException("No values");
 	}
 
 	public void setJitTimeBeforeHarness(long jitTimeBeforeHarness) {
@@ -102,4 +199,12 @@ public class Statistics implements Serializable {
 	public long getClassesLoadedBeforeHarness() {
 		return classesLoadedBeforeHarness;
 	}
+
+	public void setTestTime(long testTime) {
+		this.testTime = testTime;
+	}
+
+	public long getTestTime() {
+		return testTime;
+	}
 }
\ No newline at end of file
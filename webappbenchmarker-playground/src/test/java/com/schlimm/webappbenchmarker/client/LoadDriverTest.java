@@ -0,0 +1,112 @@
+package com.schlimm.webappbenchmarker.client;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import com.schlimm.webappbenchmarker.protocol.ApplicationLayerProtocol;
+import com.schlimm.webappbenchmarker.protocol.Protocols;
+import com.schlimm.webappbenchmarker.statistic.Histogram;
+
+public class LoadDriverTest extends TestCase {
+
+	/**
+	 * Answers every request after a fixed delay from a single thread, like the selecting thread of the NioClient.
+	 */
+	private static class DelayingClient implements WBClient {
+
+		private ScheduledExecutorService responder = Executors.newSingleThreadScheduledExecutor();
+
+		private long delayMillis;
+
+		public DelayingClient(long delayMillis) {
+			super();
+			this.delayMillis = delayMillis;
+		}
+
+		@Override
+		public void send(byte[] data, final AbstractResponseHandler handler) {
+			responder.schedule(new Runnable() {
+				@Override
+				public void run() {
+					handler.handleResponse(new byte[0]);
+				}
+			}, delayMillis, TimeUnit.MILLISECONDS);
+		}
+
+		@Override
+		public ApplicationLayerProtocol getProtocol() {
+			return Protocols.JAVA_SERIALIZATION;
+		}
+
+		public void shutdown() {
+			responder.shutdownNow();
+		}
+	}
+
+	public void testProfilePhases() {
+		LoadProfile profile = new LoadProfile(LoadProfile.Model.OPEN, 100, 100, 200, 100);
+		assertEquals(400, profile.getDuration());
+		assertEquals(0.5d, profile.fraction(50), 1e-9);
+		assertEquals(1d, profile.fraction(150), 1e-9);
+		assertEquals(0.25d, profile.fraction(375), 1e-9);
+		assertEquals(0d, profile.fraction(400), 1e-9);
+		assertFalse(profile.isSteady(99));
+		assertTrue(profile.isSteady(100));
+		assertFalse(profile.isSteady(300));
+	}
+
+	public void testOpenModelKeepsArrivalRate() throws Exception {
+		DelayingClient client = new DelayingClient(2);
+		try {
+			LoadProfile profile = new LoadProfile(LoadProfile.Model.OPEN, 500, 100, 400, 100);
+			LoadResult result = new LoadDriver(client, profile, 2).run(new byte[0]);
+			// 500/s for 400 ms steady, half of it during each ramp
+			assertEquals(200, result.getSteadyCompleted(), 10);
+			assertEquals(250, result.getSent(), 15);
+			assertEquals(0, result.getLost());
+			assertTrue(result.getLatency().getValueAtPercentile(50) >= 2000);
+		} finally {
+			client.shutdown();
+		}
+	}
+
+	public void testClosedModelIsThrottledByResponses() throws Exception {
+		DelayingClient client = new DelayingClient(10);
+		try {
+			LoadProfile profile = new LoadProfile(LoadProfile.Model.CLOSED, 4, 0, 300, 0);
+			LoadResult result = new LoadDriver(client, profile).run(new byte[0]);
+			// 4 users, 10 ms per request
+			assertTrue(result.getThroughput() > 200 && result.getThroughput() <= 400);
+			assertEquals(result.getSteadyCompleted(), result.getLatency().getCount());
+		} finally {
+			client.shutdown();
+		}
+	}
+
+	public void testCorrectedRecording() {
+		Histogram histogram = new Histogram();
+		histogram.recordCorrected(1000, 100);
+		// 1000 plus the held back samples 900 ... 100
+		assertEquals(10, histogram.getCount());
+		assertEquals(100d, histogram.getMin(), 0d);
+		histogram.recordCorrected(50, 100);
+		assertEquals(11, histogram.getCount());
+	}
+
+	public void testMerge() {
+		Histogram first = new Histogram();
+		first.record(100);
+		Histogram second = new Histogram();
+		second.record(300);
+		LoadResult result = new LoadResult(first, 10, 12, 11, 1, 0, 1000);
+		result.merge(new LoadResult(second, 20, 22, 22, 0, 0, 1000));
+		assertEquals(2, result.getDrivers());
+		assertEquals(30d, result.getThroughput(), 1e-9);
+		assertEquals(200d, result.getLatency().getMean(), 1e-9);
+		assertEquals(0, result.getLost());
+	}
+
+}
@@ -0,0 +1,132 @@
+package com.schlimm.webappbenchmarker.command.cachebenchmark;
+
+import java.util.function.Function;
+
+import junit.framework.TestCase;
+
+import com.schlimm.webappbenchmarker.command.cachebenchmark.KeyDistribution.KeyGenerator;
+
+public class CacheEngineTest extends TestCase {
+
+	private static class CountingLoader implements Function<Integer, String> {
+
+		private int loads = 0;
+
+		@Override
+		public String apply(Integer key) {
+			loads++;
+			return "value-" + key;
+		}
+
+	}
+
+	public void testEveryEngineLoadsOnce() {
+		for (CacheEngine engine : CacheEngine.values()) {
+			Cache<Integer, String> cache = engine.create(100);
+			CountingLoader loader = new CountingLoader();
+			assertEquals(engine.name(), "value-7", cache.get(7, loader));
+			assertEquals(engine.name(), "value-7", cache.get(7, loader));
+			assertEquals(engine.name(), 1, loader.loads);
+			assertEquals(engine.name(), 1, cache.size());
+		}
+	}
+
+	public void testBoundedEnginesKeepCapacity() {
+		for (CacheEngine engine : new CacheEngine[] { CacheEngine.STRIPED_LOCK, CacheEngine.SEGMENTED_LRU, CacheEngine.TINY_LFU }) {
+			Cache<Integer, String> cache = engine.create(100);
+			CountingLoader loader = new CountingLoader();
+			for (int i = 0; i < 10000; i++) {
+				cache.get(i, loader);
+			}
+			assertTrue(engine.name() + " " + cache.size(), cache.size() <= 100);
+		}
+	}
+
+	public void testStripedCacheHoldsExactCapacity() {
+		for (int capacity : new int[] { 3, 10, 100 }) {
+			Cache<Integer, String> cache = new StripedLockCache<Integer, String>(capacity, 8);
+			CountingLoader loader = new CountingLoader();
+			for (int i = 0; i < 10000; i++) {
+				cache.get(i, loader);
+			}
+			assertEquals(capacity, cache.size());
+		}
+	}
+
+	public void testTinyLfuKeepsPopularKeysDuringScan() {
+		Cache<Integer, String> lfu = CacheEngine.TINY_LFU.create(100);
+		Cache<Integer, String> lru = CacheEngine.STRIPED_LOCK.create(100);
+		CountingLoader loader = new CountingLoader();
+		for (int round = 0; round < 5; round++) {
+			for (int key = 0; key < 50; key++) {
+				lfu.get(key, loader);
+				lru.get(key, loader);
+			}
+		}
+		// one pass over many keys nobody asks for again
+		for (int key = 1000; key < 3000; key++) {
+			lfu.get(key, loader);
+			lru.get(key, loader);
+		}
+		CountingLoader lfuMisses = new CountingLoader();
+		CountingLoader lruMisses = new CountingLoader();
+		for (int key = 0; key < 50; key++) {
+			lfu.get(key, lfuMisses);
+			lru.get(key, lruMisses);
+		}
+		assertTrue("TinyLFU misses " + lfuMisses.loads, lfuMisses.loads < 5);
+		// a plain LRU loses all of them
+		assertEquals(50, lruMisses.loads);
+	}
+
+	public void testSegmentedLruProtectsKeysHitTwice() {
+		Cache<Integer, String> cache = CacheEngine.SEGMENTED_LRU.create(10);
+		CountingLoader loader = new CountingLoader();
+		cache.get(1, loader);
+		cache.get(1, loader);
+		for (int key = 100; key < 120; key++) {
+			cache.get(key, loader);
+		}
+		CountingLoader misses = new CountingLoader();
+		cache.get(1, misses);
+		assertEquals(0, misses.loads);
+	}
+
+	public void testZipfianIsSkewed() {
+		KeyGenerator generator = KeyDistribution.ZIPFIAN.generators(1000, 1, 1)[0];
+		int[] counts = new int[1000];
+		for (int i = 0; i < 100000; i++) {
+			counts[generator.next()]++;
+		}
+		assertTrue(counts[0] > counts[1]);
+		assertTrue(counts[1] > counts[100]);
+		// the first 10% of the keys take more than half of the lookups
+		int top = 0;
+		for (int i = 0; i < 100; i++) {
+			top += counts[i];
+		}
+		assertTrue("Top keys " + top, top > 50000);
+	}
+
+	public void testScanWalksKeySpaceFromOffsets() {
+		KeyGenerator[] generators = KeyDistribution.SCAN.generators(10, 2, 1);
+		assertEquals(0, generators[0].next());
+		assertEquals(1, generators[0].next());
+		assertEquals(5, generators[1].next());
+		for (int i = 0; i < 8; i++) {
+			generators[0].next();
+		}
+		assertEquals(0, generators[0].next());
+	}
+
+	public void testBenchmarkReportsHitRateAndLatency() {
+		CacheBenchmarkResult result = (CacheBenchmarkResult) new CacheEngineBenchmark().execute("tiny_lfu", "zipfian", 100, 1000, 2, 100L, 0)[0];
+		assertTrue(result.getOperations() > 0);
+		assertTrue(result.getHitRate() > 0.3 && result.getHitRate() < 1);
+		assertTrue(result.getThroughput() > 0);
+		assertEquals(result.getOperations(), result.getLatency().getCount());
+		assertTrue(result.getSize() <= 100);
+		assertTrue(result.row().startsWith("TINY_LFU"));
+	}
+
+}
@@ -0,0 +1,72 @@
+package com.schlimm.webappbenchmarker.command.clientscenarios;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import com.schlimm.webappbenchmarker.command.ClientCommand;
+import com.schlimm.webappbenchmarker.command.clientscenarios.ScenarioMatrix.Cell;
+import com.schlimm.webappbenchmarker.command.system.BenchmarkCommand;
+import com.schlimm.webappbenchmarker.statistic.Statistics;
+
+public class ScenarioMatrixTest extends TestCase {
+
+	public void testCacheMatrixIsCartesianProduct() {
+		List<Cell> cells = ScenarioMatrix.parse(CachePerformanceBenchmark.CACHE_MATRIX).cells();
+		assertEquals(18, cells.size());
+		// classes vary fastest, the three solutions on the same parameters form a group
+		assertEquals("CacheSolution_CheckNull cacheSize=10 initialize=false", cells.get(0).toString());
+		assertEquals("CacheSolution_PutIfAbsent cacheSize=10 initialize=false", cells.get(2).toString());
+		assertEquals("CacheSolution_CheckNull cacheSize=10 initialize=true", cells.get(3).toString());
+		assertEquals(cells.get(0).getGroup(), cells.get(2).getGroup());
+		assertFalse(cells.get(2).getGroup() == cells.get(3).getGroup());
+		assertEquals("CacheSolution_PutIfAbsent cacheSize=1000000 initialize=true", cells.get(17).toString());
+	}
+
+	public void testCellCommandMatchesBenchmarkCommandArguments() {
+		Cell cell = ScenarioMatrix.parse(CachePerformanceBenchmark.CACHE_MATRIX).cells().get(4);
+		ClientCommand command = cell.toCommand();
+		assertEquals(BenchmarkCommand.class.getName(), command.getServerCommandClassName());
+		Object[] arguments = command.getArguments();
+		assertEquals("com.schlimm.webappbenchmarker.command.cachebenchmark.CacheSolution_CheckMap", arguments[0]);
+		assertEquals(Long.valueOf(500), arguments[1]);
+		assertEquals(Integer.valueOf(5), arguments[2]);
+		assertEquals(Integer.valueOf(10), arguments[3]);
+		assertEquals(Boolean.TRUE, arguments[4]);
+	}
+
+	public void testLaterItemsOverride() {
+		ScenarioMatrix matrix = ScenarioMatrix.parse(CachePerformanceBenchmark.CACHE_MATRIX + ";classes:CacheSolution_CheckNull;cacheSize:10;mode:fork;threads:2;seed:42");
+		assertEquals(2, matrix.cells().size());
+		assertEquals(ScenarioMatrix.Mode.FORK, matrix.getMode());
+		assertEquals(2, matrix.getThreads());
+		assertEquals(42, matrix.getSeed());
+		assertEquals("[cacheSize, initialize]", matrix.getAxisNames().toString());
+	}
+
+	public void testReports() {
+		ScenarioMatrix matrix = ScenarioMatrix.parse("classes:a.Fast,a.Slow;size:1;testTime:1000");
+		Map<Cell, Statistics> results = new LinkedHashMap<Cell, Statistics>();
+		double[][] samples = { { 1000, 1010, 990 }, { 500, 505, 495 } };
+		int i = 0;
+		for (Cell cell : matrix.cells()) {
+			Statistics statistics = new Statistics();
+			statistics.setTestTime(1000);
+			for (double sample : samples[i]) {
+				statistics.add(sample);
+			}
+			results.put(cell, statistics);
+			i++;
+		}
+		String table = MatrixBenchmark.table(matrix, results);
+		assertTrue(table, table.contains("0.5 *"));
+		String csv = MatrixBenchmark.csv(matrix, results);
+		assertTrue(csv, csv.startsWith("class,size,samples,mean"));
+		assertTrue(csv, csv.contains("a.Slow,1,3,500,"));
+		String json = MatrixBenchmark.json(matrix, results);
+		assertTrue(json, json.contains("{\"class\":\"a.Fast\",\"parameters\":{\"size\":1},\"samples\":3,\"mean\":1000,"));
+	}
+
+}
@@ -0,0 +1,166 @@
+package com.schlimm.webappbenchmarker.command.monitoring;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.locks.ReentrantLock;
+
+import junit.framework.TestCase;
+
+import com.schlimm.webappbenchmarker.command.monitoring.ContentionReport.Hotspot;
+
+public class ContentionProfilerTest extends TestCase {
+
+	private final Object monitor = new Object();
+
+	private final ReentrantLock lock = new ReentrantLock();
+
+	private volatile boolean stopped = false;
+
+	private void holdMonitor() throws InterruptedException {
+		synchronized (monitor) {
+			Thread.sleep(5);
+		}
+	}
+
+	private void holdLock() throws InterruptedException {
+		lock.lock();
+		try {
+			Thread.sleep(5);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private Thread[] contend(final boolean useMonitor) {
+		Thread[] threads = new Thread[3];
+		for (int i = 0; i < threads.length; i++) {
+			threads[i] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						while (!stopped) {
+							if (useMonitor)
+								holdMonitor();
+							else
+								holdLock();
+						}
+					} catch (InterruptedException e) {
+						// done
+					}
+				}
+			}, "Contender-" + i);
+			threads[i].start();
+		}
+		return threads;
+	}
+
+	private void stop(Thread[] threads) throws InterruptedException {
+		stopped = true;
+		for (Thread thread : threads) {
+			thread.join();
+		}
+	}
+
+	public void testMonitorIsTopHotspot() throws Exception {
+		ContentionProfiler profiler = new ContentionProfiler();
+		Thread[] threads = contend(true);
+		ContentionReport report;
+		try {
+			report = (ContentionReport) profiler.execute("profile", 500L, 5L)[0];
+		} finally {
+			stop(threads);
+		}
+		assertTrue(report.getSampleRounds() > 10);
+		Hotspot top = report.getLocks().get(0);
+		assertTrue(top.getName(), top.getName().startsWith("java.lang.Object@"));
+		assertTrue(top.getSamples() > 10);
+		assertTrue(top.getThreads().size() > 1);
+		assertTrue(top.getBlockedCount() > 0);
+		assertTrue(top.getRelated().toString(), top.getRelated().keySet().iterator().next().contains("holdMonitor"));
+		assertTrue(top.getHeldAt().toString(), top.getHeldAt().keySet().iterator().next().contains("holdMonitor"));
+		assertTrue(report.getLocations().get(0).getName().contains("holdMonitor"));
+		assertTrue(report.toString().contains("Contention hotspots"));
+	}
+
+	public void testWaitingForNotificationIsNotContention() throws Exception {
+		Thread waiter = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				synchronized (monitor) {
+					while (!stopped) {
+						try {
+							monitor.wait();
+						} catch (InterruptedException e) {
+							return;
+						}
+					}
+				}
+			}
+		}, "Waiter");
+		waiter.start();
+		// a single holder, the monitor has an owner while the waiter waits on it, but nobody is blocked
+		Thread holder = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					while (!stopped) {
+						holdMonitor();
+						Thread.sleep(1);
+					}
+				} catch (InterruptedException e) {
+					// done
+				}
+			}
+		}, "Holder");
+		holder.start();
+		ContentionReport report;
+		try {
+			report = (ContentionReport) new ContentionProfiler().execute("profile", 300L, 5L)[0];
+		} finally {
+			stopped = true;
+			synchronized (monitor) {
+				monitor.notifyAll();
+			}
+			holder.join();
+			waiter.join();
+		}
+		assertTrue(report.toString(), report.getLocks().isEmpty());
+	}
+
+	public void testMonitoringRestoredAfterLastSampler() throws Exception {
+		ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+		if (!threadMXBean.isThreadContentionMonitoringSupported())
+			return;
+		threadMXBean.setThreadContentionMonitoringEnabled(false);
+		ContentionProfiler background = new ContentionProfiler();
+		background.execute("start", 5L);
+		new ContentionProfiler().execute("profile", 20L, 5L);
+		// the background sampler still needs it
+		assertTrue(threadMXBean.isThreadContentionMonitoringEnabled());
+		background.execute("stop");
+		assertFalse(threadMXBean.isThreadContentionMonitoringEnabled());
+	}
+
+	public void testParkedOnLockIsContention() throws Exception {
+		ContentionProfiler profiler = new ContentionProfiler();
+		profiler.execute("start", 5L);
+		Thread[] threads = contend(false);
+		Thread.sleep(500);
+		ContentionReport report;
+		try {
+			report = (ContentionReport) profiler.execute("stop")[0];
+		} finally {
+			stop(threads);
+		}
+		Hotspot top = report.getLocks().get(0);
+		assertTrue(top.getName(), top.getName().startsWith("java.util.concurrent.locks.ReentrantLock"));
+		assertTrue(top.getRelated().toString(), top.getRelated().keySet().iterator().next().contains("holdLock"));
+		try {
+			profiler.execute("stop");
+			fail("Profiler is not running");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+	}
+
+}
@@ -0,0 +1,99 @@
+package com.schlimm.webappbenchmarker.command.system;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.reflect.Field;
+
+import junit.framework.TestCase;
+
+import com.schlimm.webappbenchmarker.command.ClientCommand;
+import com.schlimm.webappbenchmarker.command.CommandRegistry;
+import com.schlimm.webappbenchmarker.command.ServerCommand;
+import com.schlimm.webappbenchmarker.command.cachebenchmark.CacheSolution_CheckNull;
+import com.schlimm.webappbenchmarker.command.trial.EchoCommand;
+import com.schlimm.webappbenchmarker.command.trial.SleepCommand;
+
+public class ServerCommandHandlerTest extends TestCase {
+
+	private ServerCommandHandler handler = new ServerCommandHandler();
+
+	public void testCommandIsCreatedOnce() {
+		ServerCommand first = handler.lookup(EchoCommand.class.getName());
+		assertTrue(first instanceof EchoCommand);
+		assertSame(first, handler.lookup(EchoCommand.class.getName()));
+		assertEquals("ping", handler.execute(new ClientCommand(EchoCommand.class.getName(), "ping"))[0]);
+	}
+
+	public void testLookupByIdFindsSameCommandAsByName() {
+		ClientCommand byId = ClientCommand.interned(EchoCommand.class.getName(), "ping");
+		assertEquals(CommandRegistry.idOf(EchoCommand.class.getName()), byId.getCommandId());
+		ServerCommand command = handler.lookup(byId);
+		assertSame(command, handler.lookup(byId));
+		assertSame(command, handler.lookup(EchoCommand.class.getName()));
+		assertEquals("ping", handler.execute(byId)[0]);
+	}
+
+	public void testCommandRegisteredLater() {
+		int id = CommandRegistry.register(ServerCommandHandlerTest.class.getName() + "$Constant");
+		assertEquals(id, CommandRegistry.register(ServerCommandHandlerTest.class.getName() + "$Constant"));
+		assertEquals(ServerCommandHandlerTest.class.getName() + "$Constant", CommandRegistry.nameOf(id));
+		assertEquals("constant", handler.execute(new ClientCommand(id))[0]);
+	}
+
+	public void testUnknownCommand() {
+		assertNull(handler.lookup("com.schlimm.webappbenchmarker.DoesNotExist"));
+		try {
+			handler.execute(new ClientCommand("com.schlimm.webappbenchmarker.DoesNotExist"));
+			fail("Command does not exist");
+		} catch (IllegalArgumentException e) {
+			assertTrue(e.getMessage().contains("DoesNotExist"));
+		}
+		try {
+			new ClientCommand(CommandRegistry.maxId() + 1);
+			fail("Id is not registered");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	public void testForgedIdFallsBackToName() throws Exception {
+		int sleepId = CommandRegistry.idOf(SleepCommand.class.getName());
+		ClientCommand forged = withId(new ClientCommand(EchoCommand.class.getName(), "ping"), sleepId);
+		assertTrue(handler.lookup(forged) instanceof EchoCommand);
+		assertEquals("ping", handler.execute(forged)[0]);
+		// the forged ID did not end up in the cache
+		assertTrue(handler.lookup(new ClientCommand(sleepId)) instanceof SleepCommand);
+	}
+
+	public void testOutOfRangeIdFallsBackToName() throws Exception {
+		int[] ids = new int[] { -1, Integer.MIN_VALUE, CommandRegistry.maxId() + 1, 1 << 30, Integer.MAX_VALUE };
+		for (int id : ids) {
+			ClientCommand command = withId(new ClientCommand(EchoCommand.class.getName(), "ping"), id);
+			assertTrue("id " + id, handler.lookup(command) instanceof EchoCommand);
+		}
+	}
+
+	// Sets the ID the way a client could send it with Java serialization
+	private static ClientCommand withId(ClientCommand command, int id) throws Exception {
+		Field commandId = ClientCommand.class.getDeclaredField("commandId");
+		commandId.setAccessible(true);
+		commandId.setInt(command, id);
+		return command;
+	}
+
+	public void testBenchmarkFactoryIsCached() throws Throwable {
+		Object[] arguments = new Object[] { 10, true };
+		MethodHandle factory = BenchmarkCommand.factoryFor(CacheSolution_CheckNull.class.getName(), arguments);
+		assertSame(factory, BenchmarkCommand.factoryFor(CacheSolution_CheckNull.class.getName(), new Object[] { 20, false }));
+		assertTrue((Runnable) factory.invokeExact(arguments) instanceof CacheSolution_CheckNull);
+	}
+
+	public static class Constant implements ServerCommand {
+
+		@Override
+		public Object[] execute(Object... arguments) {
+			return new Object[] { "constant" };
+		}
+
+	}
+
+}
@@ -0,0 +1,104 @@
+package com.schlimm.webappbenchmarker.command.system;
+
+import java.io.IOException;
+
+import junit.framework.TestCase;
+
+import com.schlimm.webappbenchmarker.command.ClientCommand;
+import com.schlimm.webappbenchmarker.command.cachebenchmark.CacheSolution_CheckNull;
+import com.schlimm.webappbenchmarker.command.trial.SleepCommand;
+import com.schlimm.webappbenchmarker.statistic.Statistics;
+
+public class WorkerJvmTest extends TestCase {
+
+	private static ClientCommand benchmark() {
+		return new ClientCommand(BenchmarkCommand.class.getName(), CacheSolution_CheckNull.class.getName(), 50L, 2, 10, true);
+	}
+
+	public void testWorkerExecutesCommandsOverPipe() throws Exception {
+		WorkerJvm worker = new WorkerJvm("-Xmx64m");
+		try {
+			Statistics first = (Statistics) worker.execute(benchmark())[0];
+			assertEquals(2, first.count());
+			assertTrue(first.opsPerSecond() > 0);
+			// the same worker takes the next command
+			Statistics second = (Statistics) worker.execute(benchmark())[0];
+			assertEquals(2, second.count());
+			assertEquals(2, worker.getExecuted());
+			assertTrue(worker.isAlive());
+		} finally {
+			worker.close();
+		}
+	}
+
+	public void testFailureInWorkerIsReported() throws Exception {
+		WorkerJvm worker = new WorkerJvm();
+		try {
+			worker.execute(new ClientCommand("com.schlimm.webappbenchmarker.DoesNotExist"));
+			fail("Command cannot succeed");
+		} catch (IllegalStateException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("failed in worker JVM"));
+			// the worker survives a failing command
+			assertTrue(worker.isAlive());
+		} finally {
+			worker.close();
+		}
+	}
+
+	public void testWorkerIsKilledAfterTimeout() throws Exception {
+		WorkerJvm worker = new WorkerJvm();
+		try {
+			worker.execute(new ClientCommand(SleepCommand.class.getName(), 60000L), 500);
+			fail("Command must time out");
+		} catch (IllegalStateException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("took longer than 500 ms"));
+			assertFalse(worker.isAlive());
+		} finally {
+			worker.close();
+		}
+	}
+
+	public void testPoolReplacesTimedOutWorker() throws Exception {
+		WorkerPool pool = new WorkerPool(1, 10, 500);
+		try {
+			try {
+				pool.execute(new ClientCommand(SleepCommand.class.getName(), 60000L));
+				fail("Command must time out");
+			} catch (IllegalStateException e) {
+				// expected
+			}
+			// a replacement takes the next command
+			assertEquals("Hurra", pool.execute(new ClientCommand(SleepCommand.class.getName(), 10L))[0]);
+			assertTrue(pool.getLive() <= 1);
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	public void testStartFailureReachesCaller() throws Exception {
+		WorkerPool pool = new WorkerPool(1, 1, "-XX:+NoSuchOptionForTheWorker");
+		try {
+			pool.execute(benchmark());
+			fail("Worker cannot start");
+		} catch (IOException e) {
+			// expected, from the background start or the caller's own
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	public void testPoolHandsOutFreshWorkers() throws Exception {
+		WorkerPool pool = new WorkerPool(1, 1);
+		try {
+			Statistics statistics = (Statistics) pool.execute(benchmark())[0];
+			assertEquals(2, statistics.count());
+			statistics = (Statistics) pool.execute(benchmark())[0];
+			assertEquals(2, statistics.count());
+			// the retired workers were replaced, not added to
+			assertTrue(pool.getLive() <= 1);
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+}
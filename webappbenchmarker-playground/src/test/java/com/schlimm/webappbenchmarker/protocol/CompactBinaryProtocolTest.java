@@ -0,0 +1,125 @@
+package com.schlimm.webappbenchmarker.protocol;
+
+import java.math.BigDecimal;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import com.schlimm.webappbenchmarker.command.ClientCommand;
+import com.schlimm.webappbenchmarker.command.CommandRegistry;
+import com.schlimm.webappbenchmarker.command.trial.EchoCommand;
+import com.schlimm.webappbenchmarker.statistic.Statistics;
+
+public class CompactBinaryProtocolTest extends TestCase {
+
+	private CompactBinaryProtocol protocol = new CompactBinaryProtocol();
+
+	public void testClientCommand() {
+		ClientCommand command = new ClientCommand("some.Command", "text", 500L, 5, 2.5d, false, null, new int[] { 1, 2, 3 });
+		ClientCommand decoded = (ClientCommand) protocol.fromByteArray(protocol.toByteArray(command));
+		assertEquals("some.Command", decoded.getServerCommandClassName());
+		Object[] arguments = decoded.getArguments();
+		assertEquals(7, arguments.length);
+		assertEquals("text", arguments[0]);
+		assertEquals(Long.valueOf(500L), arguments[1]);
+		assertEquals(Integer.valueOf(5), arguments[2]);
+		assertEquals(Double.valueOf(2.5d), arguments[3]);
+		assertEquals(Boolean.FALSE, arguments[4]);
+		assertNull(arguments[5]);
+		assertTrue(Arrays.equals(new int[] { 1, 2, 3 }, (int[]) arguments[6]));
+	}
+
+	public void testInternedClientCommand() {
+		ClientCommand command = ClientCommand.interned(EchoCommand.class.getName(), "ping");
+		assertTrue(command.getCommandId() != CommandRegistry.NO_ID);
+		byte[] encoded = protocol.toByteArray(command);
+		// tag, id, arguments, the class name is not sent
+		assertTrue(encoded.length < protocol.toByteArray(new ClientCommand(EchoCommand.class.getName(), "ping")).length);
+		ClientCommand decoded = (ClientCommand) protocol.fromByteArray(encoded);
+		assertEquals(command.getCommandId(), decoded.getCommandId());
+		assertEquals(EchoCommand.class.getName(), decoded.getServerCommandClassName());
+		assertEquals("ping", decoded.getArguments()[0]);
+	}
+
+	public void testUnknownCommandIdIsRejected() {
+		byte[] encoded = protocol.toByteArray(ClientCommand.interned(EchoCommand.class.getName(), "ping"));
+		// a command the server has not registered, the ID follows the tag
+		ByteBuffer.wrap(encoded).putInt(1, CommandRegistry.maxId() + 1);
+		try {
+			protocol.fromByteArray(encoded);
+			fail("Unknown command id must be rejected");
+		} catch (IllegalArgumentException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("Unknown command id"));
+		}
+	}
+
+	public void testStatisticsResult() {
+		Statistics statistics = new Statistics();
+		statistics.add(10);
+		statistics.add(20);
+		statistics.setJitTimeBeforeHarness(1);
+		statistics.setJitTimeAfterHarness(2);
+		statistics.setClassesLoadedBeforeHarness(3);
+		statistics.setClassesLoadedAfterHarness(4);
+		Object[] decoded = (Object[]) protocol.decode(protocol.encode(new Object[] { statistics }));
+		Statistics result = (Statistics) decoded[0];
+		assertEquals(statistics.mean(), result.mean(), 0d);
+		assertEquals(statistics.stddev(), result.stddev(), 0d);
+		assertEquals(1, result.getJitTimeBeforeHarness());
+		assertEquals(2, result.getJitTimeAfterHarness());
+		assertEquals(3, result.getClassesLoadedBeforeHarness());
+		assertEquals(4, result.getClassesLoadedAfterHarness());
+	}
+
+	public void testSerializableFallback() {
+		Object[] decoded = (Object[]) protocol.fromByteArray(protocol.toByteArray(new Object[] { new BigDecimal("1.5"), "after" }));
+		assertEquals(new BigDecimal("1.5"), decoded[0]);
+		assertEquals("after", decoded[1]);
+	}
+
+	public void testEncodeGrowsBuffer() {
+		byte[] large = new byte[100000];
+		large[large.length - 1] = 7;
+		ByteBuffer encoded = protocol.encode(large);
+		assertTrue(Arrays.equals(large, (byte[]) protocol.decode(encoded)));
+	}
+
+	public void testOversizedLengthIsRejected() {
+		// a long array of almost Integer.MAX_VALUE elements inside a client command, nothing follows
+		ByteBuffer forged = ByteBuffer.allocate(10);
+		forged.put((byte) 18).putInt(2).put((byte) 11).putInt(Integer.MAX_VALUE - 8).flip();
+		assertRejected(forged);
+		ByteBuffer negative = ByteBuffer.allocate(5);
+		negative.put((byte) 13).putInt(-1).flip();
+		assertRejected(negative);
+	}
+
+	public void testTruncatedLengthIsRejected() {
+		byte[] encoded = protocol.toByteArray(new Object[] { "some text", new int[] { 1, 2, 3 } });
+		for (int length = 1; length < encoded.length; length++) {
+			try {
+				protocol.decode(ByteBuffer.wrap(encoded, 0, length));
+				fail("Truncated data must be rejected at " + length + " bytes");
+			} catch (IllegalArgumentException e) {
+				// length check
+			} catch (BufferUnderflowException e) {
+				// fixed size field cut off
+			}
+		}
+		ByteBuffer string = ByteBuffer.allocate(9);
+		string.put((byte) 1).putInt(100).putInt(0).flip();
+		assertRejected(string);
+	}
+
+	private void assertRejected(ByteBuffer data) {
+		try {
+			protocol.decode(data);
+			fail("Invalid length must be rejected");
+		} catch (IllegalArgumentException e) {
+			assertTrue(e.getMessage(), e.getMessage().startsWith("Invalid length"));
+		}
+	}
+
+}
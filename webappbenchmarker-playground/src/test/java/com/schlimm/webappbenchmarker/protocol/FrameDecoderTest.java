@@ -0,0 +1,156 @@
+package com.schlimm.webappbenchmarker.protocol;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+public class FrameDecoderTest extends TestCase {
+
+	private DirectBufferPool pool = new DirectBufferPool(1024 * 1024, 4);
+
+	public void testFrameSplitAcrossReads() throws IOException {
+		byte[] payload = payload(100, 1);
+		ChunkedChannel channel = new ChunkedChannel(frames(payload), 3);
+		FrameDecoder decoder = new FrameDecoder(pool);
+		byte[] frame = null;
+		while (frame == null && decoder.read(channel) > 0) {
+			frame = decoder.nextFrame();
+		}
+		assertTrue(Arrays.equals(payload, frame));
+	}
+
+	public void testPipelinedFramesInOneRead() throws IOException {
+		byte[] first = payload(10, 1);
+		byte[] second = payload(20, 2);
+		byte[] third = payload(0, 3);
+		FrameDecoder decoder = new FrameDecoder(pool);
+		decoder.read(new ChunkedChannel(frames(first, second, third), Integer.MAX_VALUE));
+		assertTrue(Arrays.equals(first, decoder.nextFrame()));
+		assertEquals(0, decoder.getRequestId());
+		assertTrue(Arrays.equals(second, decoder.nextFrame()));
+		assertEquals(1, decoder.getRequestId());
+		assertTrue(Arrays.equals(third, decoder.nextFrame()));
+		assertEquals(2, decoder.getRequestId());
+		assertEquals(FrameDecoder.TYPE_DATA, decoder.getFrameType());
+		assertNull(decoder.nextFrame());
+	}
+
+	public void testFrameLargerThanAccumulationBuffer() throws IOException {
+		byte[] small = payload(5, 1);
+		byte[] large = payload(5 * DirectBufferPool.MIN_CAPACITY + 17, 7);
+		ChunkedChannel channel = new ChunkedChannel(frames(small, large), 1000);
+		FrameDecoder decoder = new FrameDecoder(pool);
+		byte[][] received = new byte[2][];
+		int count = 0;
+		while (count < 2 && decoder.read(channel) > 0) {
+			byte[] frame;
+			while ((frame = decoder.nextFrame()) != null) {
+				received[count++] = frame;
+			}
+		}
+		assertTrue(Arrays.equals(small, received[0]));
+		assertTrue(Arrays.equals(large, received[1]));
+	}
+
+	public void testSlicesSurviveFurtherReads() throws IOException {
+		byte[] first = payload(3000, 1);
+		byte[] second = payload(3000, 2);
+		byte[] third = payload(3000, 3);
+		ChunkedChannel channel = new ChunkedChannel(frames(first, second, third), 1024);
+		FrameDecoder decoder = new FrameDecoder(pool);
+		ByteBuffer[] slices = new ByteBuffer[3];
+		PooledSlab[] slabs = new PooledSlab[3];
+		int count = 0;
+		while (count < 3 && decoder.read(channel) > 0) {
+			ByteBuffer slice;
+			while ((slice = decoder.nextSlice()) != null) {
+				slabs[count] = decoder.getSlab();
+				slices[count++] = slice;
+			}
+		}
+		// the decoder must not have overwritten frames still in use
+		assertTrue(Arrays.equals(first, bytes(slices[0])));
+		assertTrue(Arrays.equals(second, bytes(slices[1])));
+		assertTrue(Arrays.equals(third, bytes(slices[2])));
+		for (PooledSlab slab : slabs) {
+			slab.release();
+		}
+		decoder.release();
+	}
+
+	public void testIllegalLength() throws IOException {
+		ByteBuffer corrupt = ByteBuffer.allocate(13);
+		corrupt.putInt(-1).putInt(0).put(FrameDecoder.TYPE_DATA).putInt(0);
+		FrameDecoder decoder = new FrameDecoder(pool);
+		decoder.read(new ChunkedChannel(corrupt.array(), 13));
+		try {
+			decoder.nextFrame();
+			fail("Expected IOException");
+		} catch (IOException e) {
+		}
+	}
+
+	private static byte[] payload(int length, int seed) {
+		byte[] payload = new byte[length];
+		for (int i = 0; i < length; i++) {
+			payload[i] = (byte) (i * seed);
+		}
+		return payload;
+	}
+
+	private static byte[] bytes(ByteBuffer slice) {
+		byte[] bytes = new byte[slice.remaining()];
+		slice.duplicate().get(bytes);
+		return bytes;
+	}
+
+	private static byte[] frames(byte[]... payloads) {
+		int length = 0;
+		for (int i = 0; i < payloads.length; i++) {
+			length += FrameEncoder.encode(i, FrameDecoder.TYPE_DATA, payloads[i]).remaining();
+		}
+		ByteBuffer all = ByteBuffer.allocate(length);
+		for (int i = 0; i < payloads.length; i++) {
+			all.put(FrameEncoder.encode(i, FrameDecoder.TYPE_DATA, payloads[i]));
+		}
+		return all.array();
+	}
+
+	/**
+	 * Delivers the data in chunks of at most chunkSize bytes per read, like a socket that receives small segments.
+	 */
+	private static class ChunkedChannel implements ReadableByteChannel {
+
+		private ByteBuffer data;
+		private int chunkSize;
+
+		public ChunkedChannel(byte[] data, int chunkSize) {
+			this.data = ByteBuffer.wrap(data);
+			this.chunkSize = chunkSize;
+		}
+
+		@Override
+		public int read(ByteBuffer dst) {
+			if (!data.hasRemaining())
+				return -1;
+			int count = Math.min(Math.min(chunkSize, dst.remaining()), data.remaining());
+			for (int i = 0; i < count; i++) {
+				dst.put(data.get());
+			}
+			return count;
+		}
+
+		@Override
+		public boolean isOpen() {
+			return true;
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+
+}
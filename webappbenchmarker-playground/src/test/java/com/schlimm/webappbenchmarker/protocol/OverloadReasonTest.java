@@ -0,0 +1,18 @@
+package com.schlimm.webappbenchmarker.protocol;
+
+import junit.framework.TestCase;
+
+public class OverloadReasonTest extends TestCase {
+
+	public void testCodesRoundTrip() {
+		for (OverloadReason reason : OverloadReason.values()) {
+			assertEquals(reason, OverloadReason.forCode(reason.getCode()));
+		}
+	}
+
+	public void testUnknownCodesHaveFallback() {
+		assertEquals(OverloadReason.UNKNOWN, OverloadReason.forCode((byte) -1));
+		assertEquals(OverloadReason.UNKNOWN, OverloadReason.forCode((byte) 100));
+	}
+
+}
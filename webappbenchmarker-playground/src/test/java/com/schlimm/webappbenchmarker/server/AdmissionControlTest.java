@@ -0,0 +1,79 @@
+package com.schlimm.webappbenchmarker.server;
+
+import java.net.InetAddress;
+
+import junit.framework.TestCase;
+
+import com.schlimm.webappbenchmarker.protocol.OverloadReason;
+
+public class AdmissionControlTest extends TestCase {
+
+	public void testInFlightPerConnection() {
+		AdmissionControl admission = new AdmissionControl(10, 2, 100, 0, 0);
+		Connection connection = new Connection(null, null);
+		assertNull(admission.admit(connection));
+		assertNull(admission.admit(connection));
+		assertEquals(OverloadReason.IN_FLIGHT, admission.admit(connection));
+		admission.completed(connection);
+		assertNull(admission.admit(connection));
+		assertEquals(1, admission.getRejectedInFlight());
+		assertEquals(2, admission.getInFlight());
+	}
+
+	public void testQueueDepthAcrossConnections() {
+		AdmissionControl admission = new AdmissionControl(10, 10, 3, 0, 0);
+		Connection first = new Connection(null, null);
+		Connection second = new Connection(null, null);
+		assertNull(admission.admit(first));
+		assertNull(admission.admit(first));
+		assertNull(admission.admit(second));
+		assertEquals(OverloadReason.QUEUE_DEPTH, admission.admit(second));
+		assertEquals(3, admission.getInFlight());
+	}
+
+	public void testClosedConnectionReleasesItsRequests() {
+		AdmissionControl admission = new AdmissionControl(10, 10, 10, 0, 0);
+		assertTrue(admission.acceptConnection());
+		Connection connection = new Connection(null, null);
+		admission.admit(connection);
+		admission.admit(connection);
+		admission.disconnected(connection);
+		// a late response must not release the requests again
+		admission.completed(connection);
+		assertEquals(0, admission.getInFlight());
+		assertEquals(0, admission.getConnections());
+	}
+
+	public void testMaxConnections() {
+		AdmissionControl admission = new AdmissionControl(1, 10, 10, 0, 0);
+		assertTrue(admission.acceptConnection());
+		assertFalse(admission.acceptConnection());
+		assertEquals(1, admission.getRejectedConnections());
+	}
+
+	public void testRateLimitPerAddress() throws Exception {
+		AdmissionControl admission = new AdmissionControl(10, 100, 100, 1, 2);
+		InetAddress address = InetAddress.getByName("127.0.0.1");
+		Connection first = new Connection(null, null, address, admission.connected(address));
+		Connection second = new Connection(null, null, address, admission.connected(address));
+		assertNull(admission.admit(first));
+		assertNull(admission.admit(second));
+		// the burst is used up by both connections of the address together
+		assertEquals(OverloadReason.RATE_LIMIT, admission.admit(first));
+		assertEquals(OverloadReason.RATE_LIMIT, admission.admit(second));
+		assertEquals(2, admission.getRejectedRateLimit());
+	}
+
+	public void testRejectedRequestKeepsItsToken() throws Exception {
+		AdmissionControl admission = new AdmissionControl(10, 1, 100, 1, 2);
+		InetAddress address = InetAddress.getByName("127.0.0.1");
+		Connection connection = new Connection(null, null, address, admission.connected(address));
+		assertNull(admission.admit(connection));
+		assertEquals(OverloadReason.IN_FLIGHT, admission.admit(connection));
+		admission.completed(connection);
+		// the second token of the burst is still there
+		assertNull(admission.admit(connection));
+		assertEquals(0, admission.getRejectedRateLimit());
+	}
+
+}
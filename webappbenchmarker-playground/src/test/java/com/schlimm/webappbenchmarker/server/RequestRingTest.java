@@ -0,0 +1,90 @@
+package com.schlimm.webappbenchmarker.server;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import junit.framework.TestCase;
+
+public class RequestRingTest extends TestCase {
+
+	public void testConsumerSeesEveryPublishedSlot() throws InterruptedException {
+		final RequestRing ring = new RequestRing(8, WaitStrategy.YIELD);
+		final AtomicLong consumed = new AtomicLong(-1);
+		ring.setGatingSequences(consumed);
+		final int producers = 4;
+		final int perProducer = 1000;
+		Thread[] threads = new Thread[producers];
+		for (int p = 0; p < producers; p++) {
+			final int requestBase = p * perProducer;
+			threads[p] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					for (int i = 0; i < perProducer; i++) {
+						long sequence = ring.next();
+						ring.get(sequence).set(null, null, requestBase + i, null, null);
+						ring.publish(sequence);
+					}
+				}
+			});
+			threads[p].start();
+		}
+		SequenceBarrier barrier = new SequenceBarrier(ring);
+		boolean[] seen = new boolean[producers * perProducer];
+		long next = 0;
+		while (next < seen.length) {
+			long available = barrier.waitFor(next);
+			for (; next <= available; next++) {
+				int requestId = ring.get(next).requestId;
+				assertFalse(seen[requestId]);
+				seen[requestId] = true;
+			}
+			consumed.set(available);
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+	}
+
+	public void testFullRingBlocksProducerUntilHalted() throws InterruptedException {
+		final RequestRing ring = new RequestRing(4, WaitStrategy.PARK);
+		ring.setGatingSequences(new AtomicLong(-1));
+		for (int i = 0; i < 4; i++) {
+			ring.publish(ring.next());
+		}
+		final AtomicLong claimed = new AtomicLong(Long.MIN_VALUE);
+		Thread producer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				claimed.set(ring.next());
+			}
+		});
+		producer.start();
+		producer.join(200);
+		// the consumer never moved, so there is no free slot
+		assertEquals(Long.MIN_VALUE, claimed.get());
+		ring.halt();
+		producer.join(5000);
+		assertEquals(-1, claimed.get());
+	}
+
+	public void testTryNextFailsOnFullRing() {
+		RequestRing ring = new RequestRing(4, WaitStrategy.PARK);
+		AtomicLong consumed = new AtomicLong(-1);
+		ring.setGatingSequences(consumed);
+		for (int i = 0; i < 4; i++) {
+			ring.publish(ring.tryNext());
+		}
+		assertEquals(-1, ring.tryNext());
+		consumed.set(0);
+		assertEquals(4, ring.tryNext());
+	}
+
+	public void testIllegalSize() {
+		try {
+			new RequestRing(6, WaitStrategy.BUSY_SPIN);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+}
@@ -0,0 +1,95 @@
+package com.schlimm.webappbenchmarker.statistic;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class HistogramTest extends TestCase {
+
+	public void testSmallValuesAreExact() {
+		Histogram histogram = new Histogram();
+		for (int i = 1; i <= 100; i++) {
+			histogram.record(i);
+		}
+		assertEquals(50d, histogram.getValueAtPercentile(50), 0d);
+		assertEquals(90d, histogram.getValueAtPercentile(90), 0d);
+		assertEquals(99d, histogram.getValueAtPercentile(99), 0d);
+		assertEquals(100d, histogram.getValueAtPercentile(100), 0d);
+		assertEquals(50.5d, histogram.getMean(), 1e-9);
+	}
+
+	public void testLargeValuesWithinPrecision() {
+		Histogram histogram = new Histogram();
+		for (long value = 1000000; value < 2000000; value += 1000) {
+			histogram.record(value);
+		}
+		double p50 = histogram.getValueAtPercentile(50);
+		assertEquals(1499000d, p50, 1499000d / 64);
+		assertEquals(1999000d, histogram.getValueAtPercentile(100), 0d);
+	}
+
+	public void testBucketBoundaries() {
+		for (int bits = 1; bits <= 10; bits++) {
+			long previous = -1;
+			for (int index = 0; index <= Histogram.bucketIndex(Long.MAX_VALUE, bits); index++) {
+				long highest = Histogram.highestEquivalentValue(index, bits);
+				assertEquals(index, Histogram.bucketIndex(highest, bits));
+				assertEquals(index, Histogram.bucketIndex(previous + 1, bits));
+				previous = highest;
+			}
+			assertEquals(Long.MAX_VALUE, previous);
+		}
+	}
+
+	public void testMergeEqualsSingleRecording() {
+		Random random = new Random(42);
+		Histogram all = new Histogram();
+		Histogram first = new Histogram();
+		Histogram second = new Histogram();
+		for (int i = 0; i < 10000; i++) {
+			double value = random.nextInt(100000) + random.nextDouble();
+			all.record(value);
+			(i % 3 == 0 ? first : second).record(value);
+		}
+		first.merge(second);
+		assertEquals(all.getCount(), first.getCount());
+		assertEquals(all.getMean(), first.getMean(), 1e-6);
+		assertEquals(all.getVariance(), first.getVariance(), all.getVariance() * 1e-9);
+		assertEquals(all.getMin(), first.getMin(), 0d);
+		assertEquals(all.getMax(), first.getMax(), 0d);
+		assertEquals(all.getValueAtPercentile(99.9), first.getValueAtPercentile(99.9), 0d);
+	}
+
+	public void testEncodeDecode() {
+		Histogram histogram = new Histogram();
+		histogram.record(3);
+		histogram.record(300000);
+		ByteBuffer buffer = ByteBuffer.allocate(1024);
+		histogram.encode(buffer);
+		buffer.flip();
+		Histogram decoded = Histogram.decode(buffer);
+		assertEquals(histogram.getMean(), decoded.getMean(), 0d);
+		assertEquals(histogram.getValueAtPercentile(99), decoded.getValueAtPercentile(99), 0d);
+		assertFalse(buffer.hasRemaining());
+	}
+
+	public void testJavaSerializationIsSparse() throws Exception {
+		Statistics statistics = new Statistics();
+		statistics.add(10);
+		statistics.add(20);
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(statistics);
+		out.close();
+		assertTrue("Serialized size: " + bytes.size(), bytes.size() < 1024);
+		Statistics result = (Statistics) new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject();
+		assertEquals(15d, result.mean(), 0d);
+		assertEquals(20d, result.p99(), 0d);
+	}
+
+}
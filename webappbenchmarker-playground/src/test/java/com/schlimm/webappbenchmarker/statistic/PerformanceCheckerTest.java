@@ -0,0 +1,66 @@
+package com.schlimm.webappbenchmarker.statistic;
+
+import junit.framework.TestCase;
+
+public class PerformanceCheckerTest extends TestCase {
+
+	public void testRunIsNormalizedToTestTime() {
+		final long[] calls = new long[1];
+		PerformanceChecker checker = new PerformanceChecker(50, new Runnable() {
+			@Override
+			public void run() {
+				calls[0]++;
+			}
+		});
+		long operations = checker.start();
+		assertTrue(operations > 0);
+		assertEquals(calls[0], checker.getLastOperations());
+		assertTrue(checker.getLastElapsedNanos() >= 50000000L);
+		assertTrue(checker.getLastNanosPerOperation() > 0);
+		assertTrue(PerformanceChecker.getLoopOverhead() > 0);
+	}
+
+	public void testSlowTaskDoesNotFail() {
+		PerformanceChecker checker = new PerformanceChecker(20, new Runnable() {
+			@Override
+			public void run() {
+				try {
+					Thread.sleep(15);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		});
+		checker.start();
+		assertTrue(checker.getLastOperations() >= 1);
+		// at most half of the elapsed time is taken for the loop
+		assertTrue(checker.getLastNanosPerOperation() >= 7500000d);
+	}
+
+	public void testLoopOverheadIsClamped() {
+		assertEquals(900, PerformanceChecker.netNanos(100, 1000, 1d));
+		assertEquals(500, PerformanceChecker.netNanos(100, 1000, 9.9d));
+	}
+
+	public void testConfidenceIntervalAndRates() {
+		Statistics statistics = new Statistics();
+		for (int value = 10; value <= 18; value += 2) {
+			statistics.add(value);
+		}
+		statistics.setTestTime(1000);
+		// sample deviation sqrt(10), t quantile for 4 degrees of freedom
+		assertEquals(2.776 * Math.sqrt(10) / Math.sqrt(5), statistics.confidenceInterval(), 1e-9);
+		assertEquals(14d, statistics.opsPerSecond(), 1e-9);
+		assertEquals(1000000000d / 14, statistics.nanosPerOperation(), 1e-6);
+	}
+
+	public void testSingleValueHasNoConfidenceInterval() {
+		Statistics statistics = new Statistics();
+		statistics.add(10);
+		assertTrue(Double.isNaN(statistics.confidenceInterval()));
+		// the test time is missing
+		assertTrue(Double.isNaN(statistics.opsPerSecond()));
+		assertTrue(Double.isNaN(statistics.nanosPerOperation()));
+	}
+
+}